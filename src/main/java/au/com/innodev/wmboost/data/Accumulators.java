@@ -0,0 +1,371 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Accumulators used by {@link DocumentAggregation}.
+ * <p>
+ * A {@link Spec} describes an aggregate and creates one {@link Accumulator}
+ * per group. Accumulators keep their state in primitive fields where the
+ * aggregate allows it. They aren't thread-safe; parallel aggregations create
+ * separate accumulators per worker and merge them.
+ */
+final class Accumulators {
+
+	private Accumulators() {
+
+	}
+
+	/**
+	 * Describes an aggregate. Immutable and thread-safe.
+	 */
+	abstract static class Spec {
+		private final String outputKey;
+
+		Spec(String outputKey) {
+			this.outputKey = Preconditions.checkHasLength(outputKey,
+					"Invalid output key was provided (null or empty string)");
+		}
+
+		final String getOutputKey() {
+			return outputKey;
+		}
+
+		/**
+		 * Binds the aggregate to a converter. The result is thread-safe.
+		 */
+		abstract Bound bind(BulkArrayConverter converter);
+	}
+
+	/**
+	 * An aggregate bound to a converter, which creates accumulators.
+	 */
+	interface Bound {
+		Accumulator newAccumulator();
+	}
+
+	interface Accumulator {
+		void add(IData element);
+
+		/**
+		 * Adds the state of another accumulator of the same type, which
+		 * accumulated elements that come after this one's.
+		 */
+		void merge(Accumulator other);
+
+		Object getResult();
+	}
+
+	static Spec count(String outputKey) {
+		return new Spec(outputKey) {
+			@Override
+			Bound bind(BulkArrayConverter converter) {
+				return new Bound() {
+					@Override
+					public Accumulator newAccumulator() {
+						return new CountAccumulator();
+					}
+				};
+			}
+		};
+	}
+
+	static Spec sumLong(final String key, String outputKey) {
+		Preconditions.checkHasLength(key, "Invalid key was provided (null or empty string)");
+		return new Spec(outputKey) {
+			@Override
+			Bound bind(BulkArrayConverter converter) {
+				final FieldReader<Long> reader = new FieldReader<Long>(Field.of(key, Long.class), converter);
+				return new Bound() {
+					@Override
+					public Accumulator newAccumulator() {
+						return new LongSumAccumulator(reader);
+					}
+				};
+			}
+		};
+	}
+
+	static Spec sumDouble(final String key, String outputKey) {
+		Preconditions.checkHasLength(key, "Invalid key was provided (null or empty string)");
+		return new Spec(outputKey) {
+			@Override
+			Bound bind(BulkArrayConverter converter) {
+				final FieldReader<Double> reader = new FieldReader<Double>(Field.of(key, Double.class), converter);
+				return new Bound() {
+					@Override
+					public Accumulator newAccumulator() {
+						return new DoubleSumAccumulator(reader);
+					}
+				};
+			}
+		};
+	}
+
+	static Spec sumDecimal(final String key, String outputKey) {
+		Preconditions.checkHasLength(key, "Invalid key was provided (null or empty string)");
+		return new Spec(outputKey) {
+			@Override
+			Bound bind(BulkArrayConverter converter) {
+				final FieldReader<BigDecimal> reader = new FieldReader<BigDecimal>(
+						Field.of(key, BigDecimal.class), converter);
+				return new Bound() {
+					@Override
+					public Accumulator newAccumulator() {
+						return new DecimalSumAccumulator(reader);
+					}
+				};
+			}
+		};
+	}
+
+	static <T extends Comparable<? super T>> Spec extreme(final Field<T> field, String outputKey, final boolean max) {
+		Preconditions.checkNotNull(field, "field cannot be null");
+		return new Spec(outputKey) {
+			@Override
+			Bound bind(BulkArrayConverter converter) {
+				final FieldReader<T> reader = new FieldReader<T>(field, converter);
+				return new Bound() {
+					@Override
+					public Accumulator newAccumulator() {
+						return new ExtremeAccumulator<T>(reader, max);
+					}
+				};
+			}
+		};
+	}
+
+	static <T extends Comparable<? super T>> Spec topK(final Field<T> field, final int k, String outputKey) {
+		Preconditions.checkNotNull(field, "field cannot be null");
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be at least 1 but was " + k);
+		}
+		return new Spec(outputKey) {
+			@Override
+			Bound bind(BulkArrayConverter converter) {
+				final FieldReader<T> reader = new FieldReader<T>(field, converter);
+				return new Bound() {
+					@Override
+					public Accumulator newAccumulator() {
+						return new TopKAccumulator<T>(reader, field.getType(), k);
+					}
+				};
+			}
+		};
+	}
+
+	private static final class CountAccumulator implements Accumulator {
+		private long count;
+
+		@Override
+		public void add(IData element) {
+			count++;
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			count += ((CountAccumulator) other).count;
+		}
+
+		@Override
+		public Object getResult() {
+			return Long.valueOf(count);
+		}
+	}
+
+	private static final class LongSumAccumulator implements Accumulator {
+		private final FieldReader<Long> reader;
+		private long sum;
+
+		LongSumAccumulator(FieldReader<Long> reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public void add(IData element) {
+			Long value = reader.read(element);
+			if (value != null) {
+				sum += value.longValue();
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			sum += ((LongSumAccumulator) other).sum;
+		}
+
+		@Override
+		public Object getResult() {
+			return Long.valueOf(sum);
+		}
+	}
+
+	private static final class DoubleSumAccumulator implements Accumulator {
+		private final FieldReader<Double> reader;
+		private double sum;
+
+		DoubleSumAccumulator(FieldReader<Double> reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public void add(IData element) {
+			Double value = reader.read(element);
+			if (value != null) {
+				sum += value.doubleValue();
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			sum += ((DoubleSumAccumulator) other).sum;
+		}
+
+		@Override
+		public Object getResult() {
+			return Double.valueOf(sum);
+		}
+	}
+
+	private static final class DecimalSumAccumulator implements Accumulator {
+		private final FieldReader<BigDecimal> reader;
+		private BigDecimal sum = BigDecimal.ZERO;
+
+		DecimalSumAccumulator(FieldReader<BigDecimal> reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public void add(IData element) {
+			BigDecimal value = reader.read(element);
+			if (value != null) {
+				sum = sum.add(value);
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			sum = sum.add(((DecimalSumAccumulator) other).sum);
+		}
+
+		@Override
+		public Object getResult() {
+			return sum;
+		}
+	}
+
+	private static final class ExtremeAccumulator<T extends Comparable<? super T>> implements Accumulator {
+		private final FieldReader<T> reader;
+		private final boolean max;
+		private T extreme;
+
+		ExtremeAccumulator(FieldReader<T> reader, boolean max) {
+			this.reader = reader;
+			this.max = max;
+		}
+
+		@Override
+		public void add(IData element) {
+			offer(reader.read(element));
+		}
+
+		private void offer(T value) {
+			if (value == null) {
+				return;
+			}
+			if (extreme == null) {
+				extreme = value;
+			} else {
+				int comparison = value.compareTo(extreme);
+				if (max ? comparison > 0 : comparison < 0) {
+					extreme = value;
+				}
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			@SuppressWarnings("unchecked")
+			ExtremeAccumulator<T> casted = (ExtremeAccumulator<T>) other;
+			offer(casted.extreme);
+		}
+
+		@Override
+		public Object getResult() {
+			return extreme;
+		}
+	}
+
+	private static final class TopKAccumulator<T extends Comparable<? super T>> implements Accumulator {
+		private final FieldReader<T> reader;
+		private final Class<T> type;
+		private final int k;
+		// Min-heap, so the smallest of the retained values is evicted first
+		private final PriorityQueue<T> heap;
+
+		TopKAccumulator(FieldReader<T> reader, Class<T> type, int k) {
+			this.reader = reader;
+			this.type = type;
+			this.k = k;
+			this.heap = new PriorityQueue<T>(Math.min(k, 64));
+		}
+
+		@Override
+		public void add(IData element) {
+			offer(reader.read(element));
+		}
+
+		private void offer(T value) {
+			if (value == null) {
+				return;
+			}
+			if (heap.size() < k) {
+				heap.add(value);
+			} else if (value.compareTo(heap.peek()) > 0) {
+				heap.poll();
+				heap.add(value);
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			@SuppressWarnings("unchecked")
+			TopKAccumulator<T> casted = (TopKAccumulator<T>) other;
+			for (T value : casted.heap) {
+				offer(value);
+			}
+		}
+
+		@Override
+		public Object getResult() {
+			@SuppressWarnings("unchecked")
+			T[] values = heap.toArray((T[]) Array.newInstance(type, heap.size()));
+			// Largest first
+			Arrays.sort(values, Collections.reverseOrder());
+			return values;
+		}
+	}
+}
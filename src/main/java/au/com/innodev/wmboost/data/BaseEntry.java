@@ -59,6 +59,17 @@ class BaseEntry<A, M> {
 		return document.getInternalConversionService();
 	}
 
+	final BulkArrayConverter getBulkConverter() {
+		return document.getBulkConverter();
+	}
+
+	/**
+	 * Returns whether values are normalised when they're retrieved.
+	 */
+	final boolean isNormalisingForGet() {
+		return !normaliseOption.isDontNormalise();
+	}
+
 	protected final <T> T getConvertedValue(Object value, TypeDescriptor destTypeSpec, TypeDescriptor sourceTypeDescriptor) {
 		ConversionService conversionService = getConversionService();
 
@@ -67,7 +78,7 @@ class BaseEntry<A, M> {
 		// Single value
 		if (destTypeSpec.isCollection() || destTypeSpec.isArray()) {
 			try {
-				convertedValue = conversionService.convert(value, sourceTypeDescriptor, destTypeSpec);
+				convertedValue = getBulkConverter().convert(value, sourceTypeDescriptor, destTypeSpec);
 			} catch (RuntimeException e) {
 				throw new IllegalArgumentException("Unable to convert value to '" + destTypeSpec
 						+ "' while retrieving document field '" + key + "'", e);
@@ -105,7 +116,7 @@ class BaseEntry<A, M> {
 		if (normaliseOption.isDontNormalise()) {
 			normalised = convertedValue;
 		} else {
-			normalised = EntryUtil.normaliseValueForGet(convertedValue, getConversionService());
+			normalised = EntryUtil.normaliseValueForGet(convertedValue, getBulkConverter());
 		}
 
 		return normalised;
@@ -118,7 +129,7 @@ class BaseEntry<A, M> {
 			normalised = getConvertedValue(value, mutatorType);
 		}
 		else if (! normaliseOption.isDontNormalise()) {			
-			normalised = EntryUtil.normaliseValueForPut(value, getConversionService());
+			normalised = EntryUtil.normaliseValueForPut(value, getBulkConverter());
 		}
 		else {
 			normalised = value;
@@ -131,7 +142,39 @@ class BaseEntry<A, M> {
 	protected final void deleteCurrentEntry(IDataCursor cursor) {
 		// Note: delete's return value indicates whether delete succeeded AND cursor not at end of document after invocation.
 		// This means we can't rely on this value to see if deletion worked
+		Object value = cursor.getValue();
 		cursor.delete();
+
+		releaseRemovedValue(value, null);
+	}
+
+	/**
+	 * Puts the value under the entry key, like {@code IDataUtil.put}, and
+	 * releases the resources held by the value it replaces.
+	 */
+	protected final void putValue(IDataCursor cursor, Object value) {
+		if (cursor.first(key)) {
+			Object previous = cursor.getValue();
+			cursor.setValue(value);
+			releaseRemovedValue(previous, value);
+		} else {
+			cursor.last();
+			cursor.insertAfter(key, value);
+		}
+	}
+
+	/**
+	 * Releases the resources held by a value that is no longer reachable
+	 * through the document, such as the temporary file of a
+	 * {@link SpillingDocumentList}.
+	 * 
+	 * @param removed value removed from the document
+	 * @param replacement value that took its place, if any
+	 */
+	static void releaseRemovedValue(Object removed, Object replacement) {
+		if (removed instanceof SpillingDocumentList && removed != replacement) {
+			((SpillingDocumentList) removed).close();
+		}
 	}
 	
 	protected final DocumentImpl getDocument() {
@@ -67,7 +67,37 @@ class BaseUnitEntryImpl<A, M> extends BaseEntry<A,M> {
 		return internalGetVal();
 	}
 
-	protected final A internalGetVal() {
+	final TypeDescriptor getAccessorType() {
+		return accessorType;
+	}
+
+	/**
+	 * Returns the stored value without conversion or normalisation.
+	 */
+	final Object getRawVal() {
+		IDataCursorResource cursorRes = newCursorResource();
+		try {
+			return IDataUtil.get(cursorRes.getCursor(), getKey());
+		}
+		finally {
+			cursorRes.close();
+		}
+	}
+
+	/**
+	 * Stores the value as is, without conversion or normalisation.
+	 */
+	final void putRawVal(Object value) {
+		IDataCursorResource cursorRes = newCursorResource();
+		try {
+			putValue(cursorRes.getCursor(), value);
+		}
+		finally {
+			cursorRes.close();
+		}
+	}
+
+	protected A internalGetVal() {
 		IDataCursorResource cursorRes = newCursorResource();
 		try {
 			Object value = IDataUtil.get(cursorRes.getCursor(), getKey());
@@ -85,7 +115,7 @@ class BaseUnitEntryImpl<A, M> extends BaseEntry<A,M> {
 
 		IDataCursorResource cursorRes = newCursorResource();
 		try {
-			IDataUtil.put(cursorRes.getCursor(), getKey(), valueToPut);
+			putValue(cursorRes.getCursor(), valueToPut);
 		}
 		finally {
 			cursorRes.close();
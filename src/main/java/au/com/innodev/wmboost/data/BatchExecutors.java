@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that run {@link DocumentBatchProcessor} tasks.
+ * <p>
+ * This implementation uses a bounded pool of platform threads. On Java 21 and
+ * higher, the multi-release JAR provides a version based on virtual threads.
+ */
+final class BatchExecutors {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/** Seconds after which idle threads end */
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private BatchExecutors() {
+
+	}
+
+	/**
+	 * Returns a new executor for all the batches of a processor. Threads are
+	 * started on demand and end once idle, so the executor doesn't hold any
+	 * thread between bursts of batches and doesn't need to be shut down.
+	 *
+	 * @param maxConcurrency maximum number of tasks that run at the same time
+	 * @return a new executor
+	 */
+	static ExecutorService newExecutor(int maxConcurrency) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "wmboost-data-batch-" + THREAD_COUNTER.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Returns whether tasks run on virtual threads.
+	 *
+	 * @return {@code true} if tasks run on virtual threads
+	 */
+	static boolean usesVirtualThreads() {
+		return false;
+	}
+}
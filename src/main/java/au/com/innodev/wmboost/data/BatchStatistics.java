@@ -0,0 +1,108 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the counters of a {@link DocumentBatchProcessor}.
+ */
+public final class BatchStatistics {
+
+	private final long batchCount;
+	private final long documentCount;
+	private final long failureCount;
+	private final long totalNanos;
+	private final long lastBatchNanos;
+	private final long maxBatchNanos;
+
+	BatchStatistics(long batchCount, long documentCount, long failureCount, long totalNanos, long lastBatchNanos,
+			long maxBatchNanos) {
+		this.batchCount = batchCount;
+		this.documentCount = documentCount;
+		this.failureCount = failureCount;
+		this.totalNanos = totalNanos;
+		this.lastBatchNanos = lastBatchNanos;
+		this.maxBatchNanos = maxBatchNanos;
+	}
+
+	/**
+	 * Returns the number of batches processed so far.
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Returns the number of documents processed so far, including the ones
+	 * whose transformation failed.
+	 */
+	public long getDocumentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * Returns the number of documents whose transformation failed.
+	 */
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * Returns the time spent processing batches.
+	 *
+	 * @param unit time unit of the result
+	 */
+	public long getTotalTime(TimeUnit unit) {
+		return unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns how long the last batch took.
+	 *
+	 * @param unit time unit of the result
+	 */
+	public long getLastBatchLatency(TimeUnit unit) {
+		return unit.convert(lastBatchNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns how long the slowest batch took.
+	 *
+	 * @param unit time unit of the result
+	 */
+	public long getMaxBatchLatency(TimeUnit unit) {
+		return unit.convert(maxBatchNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the average number of documents processed per second.
+	 *
+	 * @return documents per second; zero if nothing was processed yet
+	 */
+	public double getThroughputPerSecond() {
+		if (totalNanos == 0) {
+			return 0;
+		}
+		return documentCount * (double) TimeUnit.SECONDS.toNanos(1) / totalNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "{batches=" + batchCount + ", documents=" + documentCount + ", failures=" + failureCount
+				+ ", throughputPerSecond=" + getThroughputPerSecond() + "}";
+	}
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Converts arrays and collections in bulk.
+ * <p>
+ * Instead of going through the conversion service for every element, the
+ * element converter is resolved once per run of elements with the same runtime
+ * type and the result is written into a pre-sized array. Resolved element
+ * converters are cached, so converting many arrays of the same types doesn't
+ * repeat the lookup either.
+ * <p>
+ * Conversions not covered by the bulk path (e.g. primitive arrays or nested
+ * collections) are delegated to the conversion service.
+ */
+final class BulkArrayConverter {
+
+	/**
+	 * Converts a single, non-null element.
+	 */
+	interface ElementConverter {
+		Object convert(Object element);
+	}
+
+	private static final ElementConverter IDENTITY = new ElementConverter() {
+		@Override
+		public Object convert(Object element) {
+			return element;
+		}
+	};
+
+	private static final ElementConverter DOCUMENT_TO_IDATA = new ElementConverter() {
+		@Override
+		public Object convert(Object element) {
+			return ((Document) element).getIData();
+		}
+	};
+
+	// Upper bound to avoid pinning classes from reloaded packages indefinitely
+	private static final int MAX_CACHED_CONVERTERS = 256;
+
+	private final ConversionService conversionService;
+	private final ElementConverter idataToDocument;
+	private final ConcurrentMap<ConverterKey, ElementConverter> converterCache = new ConcurrentHashMap<ConverterKey, ElementConverter>();
+
+	public BulkArrayConverter(ConversionService conversionService, final DocumentFactory documentFactory) {
+		this.conversionService = Preconditions.checkNotNull(conversionService);
+		Preconditions.checkNotNull(documentFactory);
+
+		this.idataToDocument = new ElementConverter() {
+			@Override
+			public Object convert(Object element) {
+				return documentFactory.wrap((IData) element);
+			}
+		};
+	}
+
+	ConversionService getConversionService() {
+		return conversionService;
+	}
+
+	/**
+	 * Converts the value to the target type. Arrays and collections of
+	 * supported element types are converted in bulk; any other value is
+	 * converted by the conversion service.
+	 *
+	 * @param source value to convert, possibly {@code null}
+	 * @param sourceType source type
+	 * @param targetType target type
+	 * @return converted value
+	 */
+	public Object convert(Object source, TypeDescriptor sourceType, TypeDescriptor targetType) {
+		if (source instanceof SpillingDocumentList && isDocumentListType(targetType)) {
+			// Spilled elements are read on demand, so the list must not be copied
+			return source;
+		}
+		if (!isBulkConvertible(source, targetType)) {
+			return conversionService.convert(source, sourceType, targetType);
+		}
+
+		TypeDescriptor targetElementType = targetType.getElementTypeDescriptor();
+
+		if (targetType.isArray()) {
+			if (targetType.getType().isInstance(source)) {
+				// Elements are already of the expected type
+				return source;
+			}
+
+			Object[] elements = toElementArray(source);
+			Object[] target = (Object[]) Array.newInstance(targetElementType.getType(), elements.length);
+			convertElements(elements, target, targetElementType);
+			return target;
+		} else {
+			if (targetType.getType().isInstance(source) && (targetElementType == null
+					|| CollectionUtil.areAllElementsOfType((Collection<?>) source, targetElementType.getObjectType()))) {
+				// Nothing to convert: return the collection as is, like the conversion service does
+				return source;
+			}
+
+			Object[] elements = toElementArray(source);
+			Object[] target = new Object[elements.length];
+			if (targetElementType != null) {
+				convertElements(elements, target, targetElementType);
+			} else {
+				System.arraycopy(elements, 0, target, 0, elements.length);
+			}
+			return new ArrayList<Object>(Arrays.asList(target));
+		}
+	}
+
+	/**
+	 * Returns the {@code IData} instances wrapped by the documents in a single
+	 * pass.
+	 *
+	 * @param values values that may be documents
+	 * @return an array with the wrapped {@code IData} instances or {@code null}
+	 *         if not all values are (non-null) documents
+	 */
+	public IData[] toIDataArray(Iterable<?> values) {
+		if (values instanceof Collection<?>) {
+			Collection<?> collection = (Collection<?>) values;
+			IData[] result = new IData[collection.size()];
+			int i = 0;
+			for (Object value : collection) {
+				if (!(value instanceof Document)) {
+					return null;
+				}
+				result[i++] = ((Document) value).getIData();
+			}
+			return result;
+		} else {
+			List<IData> result = new ArrayList<IData>();
+			for (Object value : values) {
+				if (!(value instanceof Document)) {
+					return null;
+				}
+				result.add(((Document) value).getIData());
+			}
+			return result.toArray(new IData[result.size()]);
+		}
+	}
+
+	/**
+	 * Returns the {@code IData} instances wrapped by the documents. Null
+	 * elements are kept as {@code null}.
+	 *
+	 * @param documents documents
+	 * @return wrapped {@code IData} instances
+	 */
+	public IData[] toIDataArray(Document[] documents) {
+		IData[] result = new IData[documents.length];
+		for (int i = 0; i < documents.length; i++) {
+			result[i] = (documents[i] != null) ? documents[i].getIData() : null;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a converter for elements of the given runtime type. The result
+	 * is cached.
+	 *
+	 * @param sourceClass runtime type of the elements
+	 * @param targetElementType type to convert elements to
+	 * @return element converter
+	 */
+	ElementConverter getElementConverter(Class<?> sourceClass, TypeDescriptor targetElementType) {
+		ConverterKey key = new ConverterKey(sourceClass, targetElementType);
+		ElementConverter converter = converterCache.get(key);
+		if (converter == null) {
+			converter = resolveElementConverter(sourceClass, targetElementType);
+			if (converterCache.size() < MAX_CACHED_CONVERTERS) {
+				converterCache.putIfAbsent(key, converter);
+			}
+		}
+		return converter;
+	}
+
+	private ElementConverter resolveElementConverter(Class<?> sourceClass, final TypeDescriptor targetElementType) {
+		Class<?> targetClass = targetElementType.getObjectType();
+
+		if (targetClass.isAssignableFrom(sourceClass)) {
+			return IDENTITY;
+		} else if (IData.class.isAssignableFrom(sourceClass) && targetClass.isAssignableFrom(Document.class)) {
+			return idataToDocument;
+		} else if (Document.class.isAssignableFrom(sourceClass) && targetClass.isAssignableFrom(IData.class)) {
+			return DOCUMENT_TO_IDATA;
+		} else {
+			final TypeDescriptor sourceElementType = TypeDescriptor.valueOf(sourceClass);
+			final ConversionService layer;
+			if (conversionService instanceof OverlayedConversionService) {
+				layer = ((OverlayedConversionService) conversionService).resolveLayer(sourceElementType, targetElementType);
+			} else {
+				layer = conversionService;
+			}
+
+			return new ElementConverter() {
+				@Override
+				public Object convert(Object element) {
+					return layer.convert(element, sourceElementType, targetElementType);
+				}
+			};
+		}
+	}
+
+	private void convertElements(Object[] elements, Object[] target, TypeDescriptor targetElementType) {
+		Class<?> runClass = null;
+		ElementConverter runConverter = null;
+
+		for (int i = 0; i < elements.length; i++) {
+			Object element = elements[i];
+			if (element == null) {
+				continue;
+			}
+
+			Class<?> elementClass = element.getClass();
+			if (elementClass != runClass) {
+				runConverter = getElementConverter(elementClass, targetElementType);
+				runClass = elementClass;
+			}
+			target[i] = runConverter.convert(element);
+		}
+	}
+
+	private static Object[] toElementArray(Object source) {
+		if (source instanceof Object[]) {
+			return (Object[]) source;
+		} else {
+			return ((Collection<?>) source).toArray();
+		}
+	}
+
+	private static boolean isDocumentListType(TypeDescriptor targetType) {
+		if (!targetType.isCollection() || !targetType.getType().isAssignableFrom(SpillingDocumentList.class)) {
+			return false;
+		}
+		TypeDescriptor targetElementType = targetType.getElementTypeDescriptor();
+		return targetElementType == null || targetElementType.getType().isAssignableFrom(Document.class);
+	}
+
+	private static boolean isBulkConvertible(Object source, TypeDescriptor targetType) {
+		if (!(source instanceof Object[]) && !(source instanceof Collection<?>)) {
+			return false;
+		}
+
+		TypeDescriptor targetElementType = targetType.getElementTypeDescriptor();
+		if (targetType.isArray()) {
+			return targetElementType != null && !targetElementType.isPrimitive() && isScalar(targetElementType);
+		} else if (targetType.isCollection()) {
+			return targetType.getType().isAssignableFrom(ArrayList.class)
+					&& (targetElementType == null || isScalar(targetElementType));
+		} else {
+			return false;
+		}
+	}
+
+	private static boolean isScalar(TypeDescriptor typeDescriptor) {
+		return !typeDescriptor.isArray() && !typeDescriptor.isCollection() && !typeDescriptor.isMap();
+	}
+
+	private static final class ConverterKey {
+		private final Class<?> sourceClass;
+		private final TypeDescriptor targetType;
+
+		ConverterKey(Class<?> sourceClass, TypeDescriptor targetType) {
+			this.sourceClass = sourceClass;
+			this.targetType = targetType;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * sourceClass.hashCode() + targetType.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ConverterKey)) {
+				return false;
+			}
+			ConverterKey other = (ConverterKey) obj;
+			return sourceClass == other.sourceClass && targetType.equals(other.targetType);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * Whether iterating over a list in chunks keeps the elements that were
+ * already processed.
+ *
+ * @see CollectionEntry#chunks(int, ChunkOption)
+ * @see SplitEntry#chunks(int, ChunkOption)
+ */
+public enum ChunkOption {
+
+	/** Processed elements stay in the document */
+	RETAIN,
+
+	/**
+	 * Processed elements are released from the document as the iteration
+	 * moves on, so they can be garbage collected before the loop ends
+	 */
+	CONSUME
+}
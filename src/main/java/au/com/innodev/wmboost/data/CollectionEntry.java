@@ -179,6 +179,47 @@ public interface CollectionEntry<E>
 	List<E> getValOrDefault(List<? extends E> defaultValue, NullValHandling nullValHandling)
 			throws UnexpectedEntryValueException;
 
+	/**
+	 * Iterates over the value in consecutive chunks of up to {@code size}
+	 * elements, retaining the value.
+	 * 
+	 * @param size
+	 *            maximum number of elements per chunk
+	 * @return chunks of the entry value
+	 * @see #chunks(int, ChunkOption)
+	 */
+	Iterable<List<E>> chunks(int size);
+
+	/**
+	 * Iterates over the value in consecutive chunks of up to {@code size}
+	 * elements. Only the elements of the current chunk are converted.
+	 * <p>
+	 * With {@link ChunkOption#CONSUME}, the stored array is first replaced by a
+	 * copy through the document, so arrays shared with other documents or
+	 * snapshots are never modified, and read-only documents fail with an
+	 * {@link UnsupportedOperationException} before any element is released.
+	 * The slots of the copy that belong to a chunk are then set to
+	 * {@code null} when the next chunk is requested or the iteration ends, so
+	 * elements that were processed can be garbage collected during the loop:
+	 * 
+	 * <pre>
+	 * for (List&lt;Document&gt; chunk : doc.docsEntry("records").chunks(500, ChunkOption.CONSUME)) {
+	 * 	write(chunk);
+	 * }
+	 * </pre>
+	 * <p>
+	 * If the entry doesn't exist or its value is {@code null}, there are no
+	 * chunks. Each call to {@code iterator()} starts a new iteration over the
+	 * current value.
+	 * 
+	 * @param size
+	 *            maximum number of elements per chunk
+	 * @param option
+	 *            whether processed elements are released
+	 * @return chunks of the entry value
+	 */
+	Iterable<List<E>> chunks(int size, ChunkOption option);
+
 	/** -------- Mutators ------------------------------------------ */
 
 	/**
@@ -15,8 +15,12 @@
  */
 package au.com.innodev.wmboost.data;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.springframework.core.convert.TypeDescriptor;
 
@@ -124,5 +128,120 @@ class CollectionEntryImpl<E> extends BaseUnitEntryImpl<List<E>, Iterable<E>> imp
 	public void putConverted(Iterable<?> value) {
 		super.putConverted(value);		
 	}
+
+	@Override
+	public Iterable<List<E>> chunks(int size) {
+		return chunks(size, ChunkOption.RETAIN);
+	}
+
+	@Override
+	public Iterable<List<E>> chunks(final int size, final ChunkOption option) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1 but was " + size);
+		}
+		Preconditions.checkNotNull(option, "option cannot be null");
+
+		return new Iterable<List<E>>() {
+			@Override
+			public Iterator<List<E>> iterator() {
+				return new ChunkIterator(size, ChunkOption.CONSUME.equals(option));
+			}
+		};
+	}
+
+	/**
+	 * Iterates over windows of the stored array or list, converting one window
+	 * at a time.
+	 */
+	private final class ChunkIterator implements Iterator<List<E>> {
+		private final Object[] array;
+		private final List<Object> list;
+		private final int length;
+		private final int size;
+		private final boolean consume;
+		private int position;
+		private int released;
+
+		@SuppressWarnings("unchecked")
+		ChunkIterator(int size, boolean consume) {
+			this.size = size;
+			this.consume = consume;
+
+			Object rawVal = getRawVal();
+			if (rawVal instanceof Object[]) {
+				Object[] stored = (Object[]) rawVal;
+				if (consume && stored.length > 0) {
+					// The stored array may be shared (e.g. with a snapshot), so release slots of a copy
+					stored = stored.clone();
+					putRawVal(stored);
+				}
+				array = stored;
+				list = null;
+				length = array.length;
+			} else if (rawVal instanceof List<?>) {
+				List<Object> stored = (List<Object>) rawVal;
+				if (consume && !stored.isEmpty()) {
+					stored = new ArrayList<Object>(stored);
+					putRawVal(stored);
+				}
+				array = null;
+				list = stored;
+				length = list.size();
+			} else {
+				// Other values are converted as a whole; there's nothing to release
+				List<E> val = (rawVal != null) ? internalGetVal() : null;
+				array = (val != null) ? val.toArray() : new Object[0];
+				list = null;
+				length = array.length;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (position < length) {
+				return true;
+			}
+			release();
+			return false;
+		}
+
+		@Override
+		public List<E> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			release();
+
+			int to = Math.min(position + size, length);
+			Object window;
+			if (array != null) {
+				window = Arrays.copyOfRange(array, position, to);
+			} else {
+				window = new ArrayList<Object>(list.subList(position, to));
+			}
+			position = to;
+
+			return convertAndNormaliseValForGet(window, getAccessorType());
+		}
+
+		private void release() {
+			if (!consume) {
+				return;
+			}
+			for (int i = released; i < position; i++) {
+				if (array != null) {
+					array[i] = null;
+				} else {
+					list.set(i, null);
+				}
+			}
+			released = position;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Chunks can't be removed");
+		}
+	}
 }
 
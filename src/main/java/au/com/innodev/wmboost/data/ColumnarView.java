@@ -0,0 +1,429 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A few fields of every document in a list, stored column by column in
+ * primitive and {@code String} arrays (a <em>struct of arrays</em>).
+ * <p>
+ * Fields are mapped to arrays by their type:
+ * <ul>
+ * <li>{@code Integer}: {@code int[]}</li>
+ * <li>{@code Long}: {@code long[]}</li>
+ * <li>{@code Double}: {@code double[]}</li>
+ * <li>{@code String}: {@code String[]}</li>
+ * <li>{@code BigDecimal}: {@code BigDecimal[]}</li>
+ * </ul>
+ * Each column has a null bitmap with a bit set for every row whose value is
+ * missing or {@code null}, including rows for {@code null} documents.
+ * Numeric arrays hold zero in those positions.
+ * 
+ * <pre>
+ * ColumnarView view = ColumnarView.of(pipeDoc.docsEntry("trades"), QTY, PRICE);
+ * long[] qty = view.getLongs("qty");
+ * double[] price = view.getDoubles("price");
+ * for (int i = 0; i &lt; view.size(); i++) {
+ * 	total += qty[i] * price[i];
+ * }
+ * </pre>
+ * <p>
+ * The arrays and bitmaps returned by the getters are the view's storage (not
+ * copies), so they can be modified and then written back as a document list
+ * with {@link #writeTo(CollectionEntry)}. A view is not thread-safe if it's
+ * modified.
+ */
+public final class ColumnarView {
+
+	private final int size;
+	private final Map<String, Column> columns;
+
+	private ColumnarView(int size, Map<String, Column> columns) {
+		this.size = size;
+		this.columns = columns;
+	}
+
+	/**
+	 * Extracts the given fields of every element of a document list, reading
+	 * each element once.
+	 * <p>
+	 * Values are converted to the field types. If an element contains the same
+	 * key more than once, its first value is extracted.
+	 *
+	 * @param entry
+	 *            document list entry; a missing entry is treated as an empty
+	 *            list
+	 * @param fields
+	 *            fields to extract, one column each
+	 * @return a view with one row per element
+	 */
+	public static ColumnarView of(CollectionEntry<Document> entry, Field<?>... fields) {
+		IData[] elements = DocumentArrays.readOrEmpty(entry);
+		BulkArrayConverter converter = DocumentArrays.getOwner(entry).getBulkConverter();
+
+		Map<String, Column> columns = newColumns(fields, elements.length);
+		Map<String, Extractor> extractors = new HashMap<String, Extractor>();
+		for (Column column : columns.values()) {
+			extractors.put(column.field.getKey(), new Extractor(column, converter));
+		}
+
+		for (int row = 0; row < elements.length; row++) {
+			IData element = elements[row];
+			if (element != null) {
+				extractRow(element, row, extractors);
+			}
+		}
+
+		for (Extractor extractor : extractors.values()) {
+			// Rows not reached by the extractor had no value
+			extractor.markMissing(elements.length);
+		}
+
+		return new ColumnarView(elements.length, columns);
+	}
+
+	/**
+	 * Creates a view with empty columns, to be filled in and written as a
+	 * document list.
+	 * <p>
+	 * Numeric columns start with zero values and {@code String} and
+	 * {@code BigDecimal} columns with {@code null} values. No bit is set in the
+	 * null bitmaps.
+	 *
+	 * @param size
+	 *            number of rows
+	 * @param fields
+	 *            columns
+	 * @return a new view
+	 */
+	public static ColumnarView create(int size, Field<?>... fields) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Size cannot be negative but was " + size);
+		}
+		return new ColumnarView(size, newColumns(fields, size));
+	}
+
+	private static Map<String, Column> newColumns(Field<?>[] fields, int size) {
+		Preconditions.checkNotNull(fields, "fields cannot be null");
+
+		Map<String, Column> columns = new LinkedHashMap<String, Column>();
+		for (Field<?> field : fields) {
+			Preconditions.checkNotNull(field, "fields cannot contain null");
+			if (columns.containsKey(field.getKey())) {
+				throw new IllegalArgumentException("Duplicate column '" + field.getKey() + "'");
+			}
+			columns.put(field.getKey(), new Column(field, newArray(field, size), new BitSet(size)));
+		}
+		return columns;
+	}
+
+	private static Object newArray(Field<?> field, int size) {
+		Class<?> type = field.getType();
+		if (type == Integer.class) {
+			return new int[size];
+		} else if (type == Long.class) {
+			return new long[size];
+		} else if (type == Double.class) {
+			return new double[size];
+		} else if (type == String.class) {
+			return new String[size];
+		} else if (type == BigDecimal.class) {
+			return new BigDecimal[size];
+		} else {
+			throw new IllegalArgumentException("Unsupported column type for field " + field
+					+ ". Supported types are Integer, Long, Double, String and BigDecimal");
+		}
+	}
+
+	private static void extractRow(IData element, int row, Map<String, Extractor> extractors) {
+		int remaining = extractors.size();
+		IDataCursor cursor = element.getCursor();
+		try {
+			boolean hasMore = cursor.first();
+			while (hasMore && remaining > 0) {
+				Extractor extractor = extractors.get(cursor.getKey());
+				if (extractor != null && extractor.extract(row, cursor.getValue())) {
+					remaining--;
+				}
+				hasMore = cursor.next();
+			}
+		} finally {
+			cursor.destroy();
+		}
+	}
+
+	/**
+	 * Writes the rows as the value of a document list entry, one new document
+	 * per row.
+	 * <p>
+	 * Entries are added in column order. Values marked in the null bitmap, or
+	 * {@code null} values of {@code String} and {@code BigDecimal} columns,
+	 * are left out.
+	 *
+	 * @param entry
+	 *            document list entry to write to
+	 */
+	public void writeTo(CollectionEntry<Document> entry) {
+		DirectIDataFactory iDataFactory = DocumentArrays.getOwner(entry).getConfig().getCustomIDataFactory();
+
+		IData[] elements = new IData[size];
+		for (int row = 0; row < size; row++) {
+			IData element = iDataFactory.create();
+			IDataCursor cursor = element.getCursor();
+			try {
+				cursor.last();
+				for (Column column : columns.values()) {
+					Object value = column.getBoxed(row);
+					if (value != null) {
+						cursor.insertAfter(column.field.getKey(), value);
+					}
+				}
+			} finally {
+				cursor.destroy();
+			}
+			elements[row] = element;
+		}
+
+		DocumentArrays.write(entry, elements);
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the fields, in column order.
+	 *
+	 * @return column fields
+	 */
+	public List<Field<?>> getFields() {
+		List<Field<?>> fields = new ArrayList<Field<?>>(columns.size());
+		for (Column column : columns.values()) {
+			fields.add(column.field);
+		}
+		return Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * Returns the values of an {@code Integer} column.
+	 *
+	 * @param key
+	 *            column key
+	 * @return column values
+	 */
+	public int[] getInts(String key) {
+		return (int[]) getArray(key, Integer.class);
+	}
+
+	/**
+	 * Returns the values of a {@code Long} column.
+	 *
+	 * @param key
+	 *            column key
+	 * @return column values
+	 */
+	public long[] getLongs(String key) {
+		return (long[]) getArray(key, Long.class);
+	}
+
+	/**
+	 * Returns the values of a {@code Double} column.
+	 *
+	 * @param key
+	 *            column key
+	 * @return column values
+	 */
+	public double[] getDoubles(String key) {
+		return (double[]) getArray(key, Double.class);
+	}
+
+	/**
+	 * Returns the values of a {@code String} column.
+	 *
+	 * @param key
+	 *            column key
+	 * @return column values
+	 */
+	public String[] getStrings(String key) {
+		return (String[]) getArray(key, String.class);
+	}
+
+	/**
+	 * Returns the values of a {@code BigDecimal} column.
+	 *
+	 * @param key
+	 *            column key
+	 * @return column values
+	 */
+	public BigDecimal[] getDecimals(String key) {
+		return (BigDecimal[]) getArray(key, BigDecimal.class);
+	}
+
+	/**
+	 * Returns the null bitmap of a column. A set bit means the value in that
+	 * row is {@code null}.
+	 *
+	 * @param key
+	 *            column key
+	 * @return null bitmap
+	 */
+	public BitSet getNulls(String key) {
+		return getColumn(key).nulls;
+	}
+
+	/**
+	 * Returns whether the value of a column is {@code null} in a row.
+	 *
+	 * @param key
+	 *            column key
+	 * @param row
+	 *            row index
+	 * @return {@code true} if the value is {@code null}
+	 */
+	public boolean isNull(String key, int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " is out of range for " + size + " rows");
+		}
+		return getColumn(key).isNull(row);
+	}
+
+	private Object getArray(String key, Class<?> type) {
+		Column column = getColumn(key);
+		if (column.field.getType() != type) {
+			throw new IllegalArgumentException("Column '" + key + "' holds values of type "
+					+ column.field.getType().getName() + ", not " + type.getName());
+		}
+		return column.values;
+	}
+
+	private Column getColumn(String key) {
+		Column column = columns.get(key);
+		if (column == null) {
+			throw new IllegalArgumentException("No column '" + key + "' in view. Columns are " + columns.keySet());
+		}
+		return column;
+	}
+
+	private static final class Column {
+		final Field<?> field;
+		final Object values;
+		final BitSet nulls;
+
+		Column(Field<?> field, Object values, BitSet nulls) {
+			this.field = field;
+			this.values = values;
+			this.nulls = nulls;
+		}
+
+		boolean isNull(int row) {
+			if (nulls.get(row)) {
+				return true;
+			}
+			return (values instanceof Object[]) && ((Object[]) values)[row] == null;
+		}
+
+		void set(int row, Object value) {
+			if (values instanceof int[]) {
+				((int[]) values)[row] = ((Integer) value).intValue();
+			} else if (values instanceof long[]) {
+				((long[]) values)[row] = ((Long) value).longValue();
+			} else if (values instanceof double[]) {
+				((double[]) values)[row] = ((Double) value).doubleValue();
+			} else {
+				((Object[]) values)[row] = value;
+			}
+		}
+
+		Object getBoxed(int row) {
+			if (nulls.get(row)) {
+				return null;
+			}
+			if (values instanceof int[]) {
+				return Integer.valueOf(((int[]) values)[row]);
+			} else if (values instanceof long[]) {
+				return Long.valueOf(((long[]) values)[row]);
+			} else if (values instanceof double[]) {
+				return Double.valueOf(((double[]) values)[row]);
+			} else {
+				return ((Object[]) values)[row];
+			}
+		}
+	}
+
+	/**
+	 * Fills a column during extraction.
+	 */
+	private static final class Extractor {
+		private final Column column;
+		private final FieldReader<?> reader;
+		private final BitSet extracted;
+
+		Extractor(Column column, BulkArrayConverter converter) {
+			this.column = column;
+			this.reader = newReader(column.field, converter);
+			this.extracted = new BitSet();
+		}
+
+		private static <T> FieldReader<T> newReader(Field<T> field, BulkArrayConverter converter) {
+			return new FieldReader<T>(field, converter);
+		}
+
+		/**
+		 * Stores the value of a row, unless the row already has one.
+		 *
+		 * @return {@code true} if the value was stored
+		 */
+		boolean extract(int row, Object rawValue) {
+			if (extracted.get(row)) {
+				return false;
+			}
+			extracted.set(row);
+
+			Object value = reader.convert(rawValue);
+			if (value == null) {
+				column.nulls.set(row);
+			} else {
+				column.set(row, value);
+			}
+			return true;
+		}
+
+		void markMissing(int size) {
+			BitSet missing = new BitSet(size);
+			missing.set(0, size);
+			missing.andNot(extracted);
+			column.nulls.or(missing);
+		}
+	}
+}
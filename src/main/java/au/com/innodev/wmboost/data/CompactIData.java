@@ -0,0 +1,507 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.Arrays;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+/**
+ * A compact {@link IData} implementation that stores keys and values in two
+ * parallel arrays.
+ * <p>
+ * Small documents are searched linearly. Once a document holds
+ * {@value #INDEX_THRESHOLD} or more elements, keyed lookups build an
+ * open-addressing index from key to positions. The index is kept up to date
+ * when elements are appended and is rebuilt lazily after any other structural
+ * change, so the typical pattern of filling a document and then reading it
+ * doesn't pay for rebuilds.
+ * <p>
+ * Cursors follow the {@link IDataCursor} contract, including duplicate keys,
+ * positional inserts and deletion. In particular:
+ * <ul>
+ * <li>A new cursor is positioned before the first element.</li>
+ * <li>{@link IDataCursor#insertAfter(String, Object)} on a cursor that isn't
+ * positioned on an element appends the element;
+ * {@link IDataCursor#insertBefore(String, Object)} inserts it at the start
+ * if the cursor is before the first element. In both cases the cursor is then
+ * positioned on the new element.</li>
+ * <li>{@link IDataCursor#delete()} positions the cursor on the element that
+ * followed the deleted one and returns whether there was such an
+ * element.</li>
+ * <li>Keyed moves (e.g. {@link IDataCursor#next(String)}) leave the cursor
+ * where it was if no matching element is found.</li>
+ * </ul>
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @see au.com.innodev.wmboost.data.preset.DirectIDataFactories#getCompactFactory()
+ */
+public final class CompactIData implements IData {
+
+	/**
+	 * Minimum number of elements for which keyed lookups use an index.
+	 */
+	static final int INDEX_THRESHOLD = 8;
+
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final int NONE = -1;
+
+	private String[] keys;
+	private Object[] values;
+	private int size;
+
+	/* Index: open-addressing table from key to its first and last positions */
+	private int[] firstPositions;
+	private int[] lastPositions;
+	/* Per position: next position holding the same key */
+	private int[] nextSame;
+	private int indexedSize;
+
+	/**
+	 * Creates an empty instance.
+	 */
+	public CompactIData() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty instance able to hold the given number of elements
+	 * before growing.
+	 *
+	 * @param initialCapacity
+	 *            expected number of elements
+	 */
+	public CompactIData(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Initial capacity cannot be negative: " + initialCapacity);
+		}
+		this.keys = new String[initialCapacity];
+		this.values = new Object[initialCapacity];
+	}
+
+	/**
+	 * Creates an instance holding copies of the first {@code size} keys and
+	 * values of the given arrays.
+	 */
+	CompactIData(String[] keys, Object[] values, int size) {
+		this(Math.max(size, DEFAULT_CAPACITY));
+		System.arraycopy(keys, 0, this.keys, 0, size);
+		System.arraycopy(values, 0, this.values, 0, size);
+		this.size = size;
+	}
+
+	@Override
+	public IDataCursor getCursor() {
+		return new Cursor(NONE);
+	}
+
+	/**
+	 * Returns a cursor at the given position, following the same convention
+	 * as positions of cursors of this class: -1 is before the first element
+	 * and {@link #size()} or greater is after the last element.
+	 *
+	 * @param position cursor position
+	 * @return new cursor
+	 */
+	IDataCursor getCursor(int position) {
+		return new Cursor(position);
+	}
+
+	/**
+	 * Returns the number of elements, including elements with duplicate keys.
+	 *
+	 * @return number of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of elements the instance can hold without growing.
+	 *
+	 * @return current capacity
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Removes all elements, keeping the allocated capacity.
+	 */
+	void clear() {
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		invalidateIndex();
+	}
+
+	private void insert(int position, String key, Object value) {
+		if (size == keys.length) {
+			int newCapacity = Math.max(DEFAULT_CAPACITY, keys.length + (keys.length >> 1));
+			keys = Arrays.copyOf(keys, newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+		}
+
+		if (position < size) {
+			System.arraycopy(keys, position, keys, position + 1, size - position);
+			System.arraycopy(values, position, values, position + 1, size - position);
+			invalidateIndex();
+		}
+		keys[position] = key;
+		values[position] = value;
+		size++;
+
+		if (firstPositions != null) {
+			if (size * 2 > firstPositions.length) {
+				invalidateIndex();
+			} else {
+				addToIndex(position);
+			}
+		}
+	}
+
+	private void remove(int position) {
+		int moved = size - position - 1;
+		if (moved > 0) {
+			System.arraycopy(keys, position + 1, keys, position, moved);
+			System.arraycopy(values, position + 1, values, position, moved);
+		}
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		invalidateIndex();
+	}
+
+	private void setKey(int position, String key) {
+		if (!equal(keys[position], key)) {
+			keys[position] = key;
+			invalidateIndex();
+		}
+	}
+
+	/**
+	 * Returns the first position at or after {@code from} holding the key.
+	 */
+	private int indexOf(String key, int from) {
+		if (from >= size) {
+			return NONE;
+		}
+
+		if (size < INDEX_THRESHOLD) {
+			for (int i = from; i < size; i++) {
+				if (equal(keys[i], key)) {
+					return i;
+				}
+			}
+			return NONE;
+		}
+
+		int slot = findSlot(key);
+		if (slot == NONE) {
+			return NONE;
+		}
+		int position = firstPositions[slot] - 1;
+		while (position != NONE && position < from) {
+			position = nextSame[position];
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the last position at or before {@code to} holding the key.
+	 */
+	private int lastIndexOf(String key, int to) {
+		if (to < 0) {
+			return NONE;
+		}
+
+		if (size < INDEX_THRESHOLD) {
+			for (int i = Math.min(to, size - 1); i >= 0; i--) {
+				if (equal(keys[i], key)) {
+					return i;
+				}
+			}
+			return NONE;
+		}
+
+		int slot = findSlot(key);
+		if (slot == NONE) {
+			return NONE;
+		}
+		if (lastPositions[slot] <= to) {
+			return lastPositions[slot];
+		}
+		int result = NONE;
+		int position = firstPositions[slot] - 1;
+		while (position != NONE && position <= to) {
+			result = position;
+			position = nextSame[position];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index slot holding the key, building the index first if
+	 * needed.
+	 */
+	private int findSlot(String key) {
+		ensureIndex();
+		int mask = firstPositions.length - 1;
+		int slot = hash(key) & mask;
+		while (firstPositions[slot] != 0) {
+			if (equal(keys[firstPositions[slot] - 1], key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NONE;
+	}
+
+	private void ensureIndex() {
+		if (firstPositions != null) {
+			return;
+		}
+
+		int capacity = 16;
+		while (capacity < size * 2) {
+			capacity <<= 1;
+		}
+		firstPositions = new int[capacity];
+		lastPositions = new int[capacity];
+		if (nextSame == null || nextSame.length < keys.length) {
+			nextSame = new int[keys.length];
+		}
+		indexedSize = 0;
+		for (int i = 0; i < size; i++) {
+			addToIndex(i);
+		}
+	}
+
+	/**
+	 * Adds the last position to the index. Only positions appended after the
+	 * index was built can be added incrementally.
+	 */
+	private void addToIndex(int position) {
+		if (position != indexedSize) {
+			invalidateIndex();
+			return;
+		}
+		if (nextSame.length < keys.length) {
+			nextSame = Arrays.copyOf(nextSame, keys.length);
+		}
+
+		String key = keys[position];
+		int mask = firstPositions.length - 1;
+		int slot = hash(key) & mask;
+		while (firstPositions[slot] != 0) {
+			if (equal(keys[firstPositions[slot] - 1], key)) {
+				nextSame[lastPositions[slot]] = position;
+				lastPositions[slot] = position;
+				nextSame[position] = NONE;
+				indexedSize++;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		firstPositions[slot] = position + 1;
+		lastPositions[slot] = position;
+		nextSame[position] = NONE;
+		indexedSize++;
+	}
+
+	private void invalidateIndex() {
+		firstPositions = null;
+		lastPositions = null;
+	}
+
+	private static int hash(String key) {
+		if (key == null) {
+			return 0;
+		}
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equal(String key1, String key2) {
+		return key1 == null ? key2 == null : key1.equals(key2);
+	}
+
+	private final class Cursor implements IDataCursor {
+
+		/* -1: before the first element; size or greater: after the last element */
+		private int position;
+
+		Cursor(int position) {
+			this.position = position;
+		}
+
+		private boolean isPositioned() {
+			return position >= 0 && position < size;
+		}
+
+		private void ensurePositioned() {
+			if (!isPositioned()) {
+				throw new IllegalStateException("Cursor is not positioned on an element");
+			}
+		}
+
+		@Override
+		public void home() {
+			position = NONE;
+		}
+
+		@Override
+		public String getKey() {
+			return isPositioned() ? keys[position] : null;
+		}
+
+		@Override
+		public void setKey(String key) {
+			ensurePositioned();
+			CompactIData.this.setKey(position, key);
+		}
+
+		@Override
+		public Object getValue() {
+			return isPositioned() ? values[position] : null;
+		}
+
+		@Override
+		public void setValue(Object value) {
+			ensurePositioned();
+			values[position] = value;
+		}
+
+		@Override
+		public boolean delete() {
+			if (!isPositioned()) {
+				return false;
+			}
+			remove(position);
+			return position < size;
+		}
+
+		@Override
+		public void insertBefore(String key, Object value) {
+			int target = position < 0 ? 0 : Math.min(position, size);
+			insert(target, key, value);
+			position = target;
+		}
+
+		@Override
+		public void insertAfter(String key, Object value) {
+			int target = position < 0 ? size : Math.min(position + 1, size);
+			insert(target, key, value);
+			position = target;
+		}
+
+		@Override
+		public IData insertDataBefore(String key) {
+			IData data = new CompactIData();
+			insertBefore(key, data);
+			return data;
+		}
+
+		@Override
+		public IData insertDataAfter(String key) {
+			IData data = new CompactIData();
+			insertAfter(key, data);
+			return data;
+		}
+
+		@Override
+		public boolean next() {
+			if (position + 1 < size) {
+				position++;
+				return true;
+			}
+			position = size;
+			return false;
+		}
+
+		@Override
+		public boolean next(String key) {
+			return moveTo(indexOf(key, position + 1));
+		}
+
+		@Override
+		public boolean previous() {
+			int target = Math.min(position, size) - 1;
+			if (target >= 0) {
+				position = target;
+				return true;
+			}
+			position = NONE;
+			return false;
+		}
+
+		@Override
+		public boolean previous(String key) {
+			return moveTo(lastIndexOf(key, Math.min(position, size) - 1));
+		}
+
+		@Override
+		public boolean first() {
+			if (size == 0) {
+				position = NONE;
+				return false;
+			}
+			position = 0;
+			return true;
+		}
+
+		@Override
+		public boolean first(String key) {
+			return moveTo(indexOf(key, 0));
+		}
+
+		@Override
+		public boolean last() {
+			position = size - 1;
+			return position >= 0;
+		}
+
+		@Override
+		public boolean last(String key) {
+			return moveTo(lastIndexOf(key, size - 1));
+		}
+
+		private boolean moveTo(int target) {
+			if (target == NONE) {
+				return false;
+			}
+			position = target;
+			return true;
+		}
+
+		@Override
+		public boolean hasMoreData() {
+			return position + 1 < size;
+		}
+
+		@Override
+		public void destroy() {
+			position = NONE;
+		}
+
+		@Override
+		public IDataCursor getCursorClone() {
+			return new Cursor(position);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Describes how {@link DocumentTrees#compact(Document, CompactOptions)}
+ * deduplicates the values of a document.
+ * 
+ * <pre>
+ * CompactOptions options = CompactOptions.defaults().withMaxSubtreeSize(32);
+ * </pre>
+ * <p>
+ * By default, both string interning and subtree sharing are enabled, and a
+ * new {@link StringInterner} is used for each compaction. Instances are
+ * immutable.
+ */
+public final class CompactOptions {
+
+	/**
+	 * Default maximum number of values of a shared subtree.
+	 */
+	public static final int DEFAULT_MAX_SUBTREE_SIZE = 64;
+
+	private static final CompactOptions DEFAULTS = new CompactOptions(true, null, true, DEFAULT_MAX_SUBTREE_SIZE);
+
+	private final boolean stringInterning;
+	private final StringInterner stringInterner;
+	private final boolean subtreeSharing;
+	private final int maxSubtreeSize;
+
+	private CompactOptions(boolean stringInterning, StringInterner stringInterner, boolean subtreeSharing,
+			int maxSubtreeSize) {
+		this.stringInterning = stringInterning;
+		this.stringInterner = stringInterner;
+		this.subtreeSharing = subtreeSharing;
+		this.maxSubtreeSize = maxSubtreeSize;
+	}
+
+	/**
+	 * Returns the default options.
+	 * 
+	 * @return default options
+	 */
+	public static CompactOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Returns options that do or don't make equal string values share one
+	 * instance.
+	 * 
+	 * @param enabled
+	 *            whether to intern string values
+	 * @return new options
+	 */
+	public CompactOptions withStringInterning(boolean enabled) {
+		return new CompactOptions(enabled, stringInterner, subtreeSharing, maxSubtreeSize);
+	}
+
+	/**
+	 * Returns options that intern strings through the given table, so that
+	 * strings are shared across the documents compacted with it.
+	 * 
+	 * @param interner
+	 *            table of canonical strings
+	 * @return new options
+	 */
+	public CompactOptions withStringInterner(StringInterner interner) {
+		Preconditions.checkNotNull(interner, "interner cannot be null");
+		return new CompactOptions(stringInterning, interner, subtreeSharing, maxSubtreeSize);
+	}
+
+	/**
+	 * Returns options that do or don't make structurally identical subtrees
+	 * share one {@code IData} instance.
+	 * 
+	 * @param enabled
+	 *            whether to share subtrees
+	 * @return new options
+	 */
+	public CompactOptions withSubtreeSharing(boolean enabled) {
+		return new CompactOptions(stringInterning, stringInterner, enabled, maxSubtreeSize);
+	}
+
+	/**
+	 * Returns options that only share subtrees with up to the given number of
+	 * values, counting the values of nested documents and the elements of
+	 * arrays. Large subtrees are rarely identical, so checking them is mostly
+	 * wasted effort.
+	 * 
+	 * @param maxSize
+	 *            maximum number of values
+	 * @return new options
+	 */
+	public CompactOptions withMaxSubtreeSize(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		return new CompactOptions(stringInterning, stringInterner, subtreeSharing, maxSize);
+	}
+
+	boolean isStringInterning() {
+		return stringInterning;
+	}
+
+	/**
+	 * Returns the interner to use: the configured one or a new one.
+	 */
+	StringInterner newOrSharedInterner() {
+		return (stringInterner != null) ? stringInterner : new StringInterner();
+	}
+
+	boolean isSubtreeSharing() {
+		return subtreeSharing;
+	}
+
+	int getMaxSubtreeSize() {
+		return maxSubtreeSize;
+	}
+}
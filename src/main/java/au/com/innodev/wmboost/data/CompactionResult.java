@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * The outcome of {@link DocumentTrees#compact(Document, CompactOptions)}.
+ * <p>
+ * Sizes are estimates of the heap used by the document, assuming a 64-bit
+ * JVM with compressed references. They are meant to compare the document
+ * before and after the compaction, not as exact measurements.
+ */
+public final class CompactionResult {
+
+	private final long bytesBefore;
+	private final long bytesAfter;
+	private final int internedStringCount;
+	private final int sharedSubtreeCount;
+
+	CompactionResult(long bytesBefore, long bytesAfter, int internedStringCount, int sharedSubtreeCount) {
+		this.bytesBefore = bytesBefore;
+		this.bytesAfter = bytesAfter;
+		this.internedStringCount = internedStringCount;
+		this.sharedSubtreeCount = sharedSubtreeCount;
+	}
+
+	/**
+	 * Returns the estimated size of the document before the compaction, in
+	 * bytes.
+	 */
+	public long getBytesBefore() {
+		return bytesBefore;
+	}
+
+	/**
+	 * Returns the estimated size of the document after the compaction, in
+	 * bytes.
+	 */
+	public long getBytesAfter() {
+		return bytesAfter;
+	}
+
+	/**
+	 * Returns the estimated number of bytes saved by the compaction.
+	 */
+	public long getBytesSaved() {
+		return bytesBefore - bytesAfter;
+	}
+
+	/**
+	 * Returns the number of string values replaced by an equal, shared
+	 * instance.
+	 */
+	public int getInternedStringCount() {
+		return internedStringCount;
+	}
+
+	/**
+	 * Returns the number of nested documents replaced by a structurally
+	 * identical, shared instance.
+	 */
+	public int getSharedSubtreeCount() {
+		return sharedSubtreeCount;
+	}
+
+	@Override
+	public String toString() {
+		return "CompactionResult [bytesBefore=" + bytesBefore + ", bytesAfter=" + bytesAfter + ", internedStrings="
+				+ internedStringCount + ", sharedSubtrees=" + sharedSubtreeCount + "]";
+	}
+}
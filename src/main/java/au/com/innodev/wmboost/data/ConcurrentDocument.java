@@ -0,0 +1,259 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A document that can be read and modified by several threads at the same
+ * time without external locking, e.g. to hold shared counters, caches or
+ * aggregation buckets.
+ * <p>
+ * Reads don't lock: they work on an immutable snapshot of the content. Each
+ * write replaces the snapshot atomically. Besides the regular
+ * {@link Document} API, available through {@link #getDocument()}, it
+ * provides atomic read-modify-write operations such as
+ * {@link #compute(String, Class, ValueFunction)}. Sequences of regular entry
+ * operations (e.g. a get followed by a put) aren't atomic as a whole.
+ * <p>
+ * Keys are unique: inserting a key that already exists, e.g. putting several
+ * values in a split entry, throws an {@link UnsupportedOperationException}.
+ * Values themselves must be immutable or thread-safe to be modified
+ * concurrently; in particular, nested documents should be created through
+ * the document (e.g. {@link NestedDocEntry#putNew()}), which makes them
+ * concurrent too.
+ * <p>
+ * Example:
+ * 
+ * <pre>
+ * ConcurrentDocument counters = ConcurrentDocument.create(docFactory);
+ * // From any thread:
+ * counters.compute(&quot;processed&quot;, Integer.class, new ValueFunction&lt;Integer&gt;() {
+ * 	public Integer apply(Integer count) {
+ * 		return count == null ? 1 : count + 1;
+ * 	}
+ * });
+ * </pre>
+ */
+public final class ConcurrentDocument {
+
+	private final ConcurrentIData iData;
+	private final DocumentImpl document;
+
+	private ConcurrentDocument(DocumentImpl prototype, ConcurrentIData iData) {
+		this.iData = iData;
+		this.document = new ConcurrentDocumentFactory(prototype.getConfig()).wrap(iData);
+	}
+
+	/**
+	 * Creates an empty concurrent document that uses the factory's
+	 * configuration (e.g. type conversions).
+	 * 
+	 * @param factory
+	 *            document factory
+	 * @return new concurrent document
+	 */
+	public static ConcurrentDocument create(DocumentFactory factory) {
+		Preconditions.checkNotNull(factory, "factory cannot be null");
+		return new ConcurrentDocument(DocumentTrees.getImpl(factory.create()), new ConcurrentIData(PersistentIData.empty()));
+	}
+
+	/**
+	 * Creates a concurrent document with a copy of the content of another
+	 * document. Nested documents are copied as concurrent documents too.
+	 * 
+	 * @param document
+	 *            document to copy
+	 * @return new concurrent document
+	 */
+	public static ConcurrentDocument copyOf(Document document) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		return new ConcurrentDocument(DocumentTrees.getImpl(document), ConcurrentIData.copyOf(document.getIData()));
+	}
+
+	/**
+	 * Returns the document to access the content through the regular API.
+	 * Each of its operations is thread-safe.
+	 * 
+	 * @return the document
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current content. Nested concurrent
+	 * documents are replaced by snapshots of their own, so later changes to
+	 * them aren't visible through the snapshot and the snapshot can't be used
+	 * to change them. The content itself isn't copied: only the entries that
+	 * hold nested concurrent documents are replaced.
+	 * 
+	 * @return an immutable document
+	 * @throws IllegalArgumentException
+	 *             if the document contains itself
+	 * @see PersistentIData
+	 */
+	public Document snapshot() {
+		return document.newSibling(iData.getDeepSnapshot());
+	}
+
+	/**
+	 * Returns the entries of a snapshot of the current content. Changes made
+	 * during the iteration aren't visible to it.
+	 * 
+	 * @return the entries
+	 */
+	public EntryIterableResource getAllEntries() {
+		return snapshot().getAllEntries();
+	}
+
+	/**
+	 * Atomically replaces the value of an entry with the result of a
+	 * function.
+	 * <p>
+	 * If other threads modify the document concurrently, the function may be
+	 * invoked more than once.
+	 * 
+	 * @param key
+	 *            entry key
+	 * @param type
+	 *            value type; the current value is converted to it
+	 * @param function
+	 *            function that computes the new value from the current one;
+	 *            returning {@code null} removes the entry
+	 * @param <T>
+	 *            value type
+	 * @return the new value
+	 */
+	public <T> T compute(String key, Class<T> type, ValueFunction<T> function) {
+		Preconditions.checkNotNull(key, "key cannot be null");
+		Preconditions.checkNotNull(type, "type cannot be null");
+		Preconditions.checkNotNull(function, "function cannot be null");
+
+		while (true) {
+			PersistentIData current = iData.getSnapshot();
+			T currentValue = document.newSibling(current).entry(key, type).getValOrNull();
+			T newValue = function.apply(currentValue);
+
+			PersistentIData updated;
+			if (newValue == null) {
+				updated = current.without(key);
+			} else {
+				updated = current.with(key, toStoredValue(key, type, newValue));
+			}
+			if (updated == current || iData.compareAndSet(current, updated)) {
+				return newValue;
+			}
+		}
+	}
+
+	/**
+	 * Associates the value to the key if the key doesn't exist yet.
+	 * 
+	 * @param key
+	 *            entry key
+	 * @param value
+	 *            value to put
+	 * @return {@code true} if the value was put; {@code false} if the key
+	 *         already existed
+	 */
+	public boolean putIfAbsent(String key, Object value) {
+		Preconditions.checkNotNull(key, "key cannot be null");
+		Object storedValue = toStoredValue(key, Object.class, value);
+
+		while (true) {
+			PersistentIData current = iData.getSnapshot();
+			if (current.containsKey(key)) {
+				return false;
+			}
+			if (iData.compareAndSet(current, current.with(key, storedValue))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the value of an entry only if its current value equals the
+	 * expected one.
+	 * 
+	 * @param key
+	 *            entry key
+	 * @param expectedValue
+	 *            expected current value, compared with
+	 *            {@link Object#equals(Object)}; {@code null} matches an
+	 *            inexistent entry or a {@code null} value
+	 * @param newValue
+	 *            value to put
+	 * @return {@code true} if the value was replaced
+	 */
+	public boolean compareAndSet(String key, Object expectedValue, Object newValue) {
+		Preconditions.checkNotNull(key, "key cannot be null");
+		Object storedValue = toStoredValue(key, Object.class, newValue);
+
+		while (true) {
+			PersistentIData current = iData.getSnapshot();
+			Object currentValue = current.get(key);
+			if (expectedValue == null ? currentValue != null : !expectedValue.equals(currentValue)) {
+				return false;
+			}
+			if (iData.compareAndSet(current, current.with(key, storedValue))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the value as it would be stored by an entry put, e.g. with
+	 * documents converted to {@code IData}.
+	 */
+	private <T> Object toStoredValue(String key, Class<T> type, T value) {
+		IData scratch = new CompactIData(1);
+		document.newSibling(scratch).entry(key, type).put(value);
+		IDataCursor cursor = scratch.getCursor();
+		try {
+			return cursor.first() ? cursor.getValue() : null;
+		} finally {
+			cursor.destroy();
+		}
+	}
+
+	/**
+	 * Creates the nested documents of a concurrent document (e.g. through
+	 * {@link NestedDocEntry#putNew()}) as concurrent documents too.
+	 */
+	private static final class ConcurrentDocumentFactory implements DocumentFactory {
+
+		private final DocumentConfig config;
+
+		ConcurrentDocumentFactory(DocumentConfig config) {
+			this.config = config;
+		}
+
+		@Override
+		public DocumentImpl wrap(IData iData) {
+			Preconditions.checkNotNull(iData, "iData cannot be null");
+			return new DocumentImpl(iData, this, config);
+		}
+
+		@Override
+		public Document create() {
+			return wrap(new ConcurrentIData(PersistentIData.empty()));
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Collects the documents produced by several threads into a single document
+ * list.
+ * <p>
+ * Each thread appends to its own buffer, so adding doesn't lock or contend
+ * with other threads. Buffers are assembled into a single {@code IData[]}
+ * when the list is published, and the array is stored as is, without
+ * converting each element.
+ * 
+ * <pre>
+ * final ConcurrentDocumentListBuilder results = new ConcurrentDocumentListBuilder();
+ * // in each worker:
+ * results.add(sequenceNumber, outputDoc);
+ * // once all workers have completed:
+ * results.publishTo(pipeDoc, "results");
+ * </pre>
+ * <p>
+ * Documents added with a sequence number are published in sequence order
+ * (documents with the same number in the order they were added by each
+ * thread). Documents added without one are published grouped by thread, in
+ * the order each thread added them. Both kinds can't be mixed in the same
+ * list.
+ * <p>
+ * {@link #publishTo(Document, String)} and {@link #toArray()} must only be
+ * called once all threads have stopped adding, after synchronising with them
+ * (e.g. through {@code Future.get()} or {@code Thread.join()}). Publishing
+ * empties the builder, so it can be reused for another list.
+ */
+public final class ConcurrentDocumentListBuilder {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Queue<Buffer> buffers = new ConcurrentLinkedQueue<Buffer>();
+	private final ThreadLocal<Buffer> threadBuffer = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			Buffer buffer = new Buffer();
+			buffers.add(buffer);
+			return buffer;
+		}
+	};
+
+	/**
+	 * Adds a document to the list.
+	 *
+	 * @param document
+	 *            document to add, possibly {@code null}
+	 */
+	public void add(Document document) {
+		add(toIData(document));
+	}
+
+	/**
+	 * Adds an {@code IData} instance to the list.
+	 *
+	 * @param iData
+	 *            element to add, possibly {@code null}
+	 */
+	public void add(IData iData) {
+		threadBuffer.get().add(iData);
+	}
+
+	/**
+	 * Adds a document to the list at the position given by a sequence number.
+	 *
+	 * @param sequence
+	 *            sequence number that determines the position in the list
+	 * @param document
+	 *            document to add, possibly {@code null}
+	 */
+	public void add(long sequence, Document document) {
+		add(sequence, toIData(document));
+	}
+
+	/**
+	 * Adds an {@code IData} instance to the list at the position given by a
+	 * sequence number.
+	 *
+	 * @param sequence
+	 *            sequence number that determines the position in the list
+	 * @param iData
+	 *            element to add, possibly {@code null}
+	 */
+	public void add(long sequence, IData iData) {
+		threadBuffer.get().add(sequence, iData);
+	}
+
+	/**
+	 * Stores the collected elements as a document list in the given document
+	 * and empties the builder.
+	 *
+	 * @param document
+	 *            document to store the list in
+	 * @param key
+	 *            key of the document list entry
+	 * @return number of elements stored
+	 * @throws IllegalStateException
+	 *             if documents were added both with and without a sequence
+	 *             number
+	 */
+	public int publishTo(Document document, String key) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		Preconditions.checkHasLength(key, "Invalid key was provided (null or empty string)");
+
+		IData[] elements = toArray();
+		DocumentArrays.write(document.docsEntry(key), elements);
+		return elements.length;
+	}
+
+	/**
+	 * Returns the collected elements and empties the builder.
+	 *
+	 * @return collected elements, in publishing order
+	 * @throws IllegalStateException
+	 *             if documents were added both with and without a sequence
+	 *             number
+	 */
+	public IData[] toArray() {
+		int total = 0;
+		boolean sequenced = false;
+		boolean unsequenced = false;
+		for (Buffer buffer : buffers) {
+			total += buffer.size;
+			sequenced |= buffer.sequenced;
+			unsequenced |= buffer.unsequenced;
+		}
+		if (sequenced && unsequenced) {
+			throw new IllegalStateException("Documents were added both with and without a sequence number");
+		}
+
+		IData[] elements = new IData[total];
+		final long[] sequences = sequenced ? new long[total] : null;
+		int position = 0;
+		for (Buffer buffer : buffers) {
+			System.arraycopy(buffer.elements, 0, elements, position, buffer.size);
+			if (sequenced) {
+				System.arraycopy(buffer.sequences, 0, sequences, position, buffer.size);
+			}
+			position += buffer.size;
+			// The thread keeps its (now empty) buffer, but no longer the elements
+			buffer.clear();
+		}
+
+		if (!sequenced) {
+			return elements;
+		}
+
+		int[] order = new int[total];
+		for (int i = 0; i < total; i++) {
+			order[i] = i;
+		}
+		IndexSort.sort(order, new IndexSort.IndexComparator() {
+			@Override
+			public int compare(int index1, int index2) {
+				long sequence1 = sequences[index1];
+				long sequence2 = sequences[index2];
+				return (sequence1 < sequence2) ? -1 : ((sequence1 == sequence2) ? 0 : 1);
+			}
+		});
+
+		IData[] ordered = new IData[total];
+		for (int i = 0; i < total; i++) {
+			ordered[i] = elements[order[i]];
+		}
+		return ordered;
+	}
+
+	/**
+	 * Returns the number of elements added so far. The count is only exact
+	 * when no thread is adding.
+	 *
+	 * @return number of elements
+	 */
+	public int size() {
+		int total = 0;
+		for (Buffer buffer : buffers) {
+			total += buffer.size;
+		}
+		return total;
+	}
+
+	private static IData toIData(Document document) {
+		return (document != null) ? document.getIData() : null;
+	}
+
+	/**
+	 * Elements added by one thread. Only that thread modifies it until the
+	 * list is assembled.
+	 */
+	private static final class Buffer {
+		IData[] elements = new IData[0];
+		long[] sequences;
+		int size;
+		boolean sequenced;
+		boolean unsequenced;
+
+		void add(IData iData) {
+			unsequenced = true;
+			ensureCapacity();
+			elements[size++] = iData;
+		}
+
+		void add(long sequence, IData iData) {
+			sequenced = true;
+			ensureCapacity();
+			if (sequences == null || sequences.length < elements.length) {
+				long[] newSequences = new long[elements.length];
+				if (sequences != null) {
+					System.arraycopy(sequences, 0, newSequences, 0, size);
+				}
+				sequences = newSequences;
+			}
+			sequences[size] = sequence;
+			elements[size++] = iData;
+		}
+
+		private void ensureCapacity() {
+			if (size == elements.length) {
+				IData[] newElements = new IData[Math.max(INITIAL_CAPACITY, elements.length * 2)];
+				System.arraycopy(elements, 0, newElements, 0, size);
+				elements = newElements;
+			}
+		}
+
+		void clear() {
+			elements = new IData[0];
+			sequences = null;
+			size = 0;
+			sequenced = false;
+			unsequenced = false;
+		}
+	}
+}
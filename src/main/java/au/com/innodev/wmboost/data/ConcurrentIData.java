@@ -0,0 +1,377 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+/**
+ * A thread-safe {@link IData} implementation.
+ * <p>
+ * The content is a {@link PersistentIData} snapshot held in an atomic
+ * reference. Reads never lock: a cursor reads the snapshot that was current
+ * when it was created (or when it last wrote). Writes replace the snapshot
+ * with a compare-and-set, so concurrent writers never see each other's
+ * partial changes.
+ * <p>
+ * Keys are unique. Inserting a key that the cursor's snapshot already holds
+ * throws an {@link UnsupportedOperationException} instead of adding a second
+ * value. If another thread added the key after the cursor read its snapshot,
+ * the insert replaces that value, which makes concurrent inserts of the same
+ * new key (e.g. concurrent puts of a new entry) safe. New keys are added at
+ * the end, whatever the cursor position.
+ */
+final class ConcurrentIData implements IData {
+
+	private final AtomicReference<PersistentIData> state;
+
+	ConcurrentIData(PersistentIData initial) {
+		this.state = new AtomicReference<PersistentIData>(initial);
+	}
+
+	/**
+	 * Returns a concurrent copy of an {@code IData} instance. Nested documents
+	 * and document arrays are copied as concurrent instances too.
+	 *
+	 * @param source
+	 *            document to copy
+	 * @return concurrent copy
+	 * @throws IllegalArgumentException
+	 *             if the source contains itself
+	 */
+	static ConcurrentIData copyOf(IData source) {
+		return copyOf(source, new IdentityHashMap<IData, ConcurrentIData>());
+	}
+
+	private static ConcurrentIData copyOf(IData source, Map<IData, ConcurrentIData> copies) {
+		if (copies.containsKey(source)) {
+			ConcurrentIData copy = copies.get(source);
+			if (copy == null) {
+				throw new IllegalArgumentException("Document contains itself and can't be copied");
+			}
+			return copy;
+		}
+		copies.put(source, null);
+
+		PersistentIData content = PersistentIData.empty();
+		IDataCursor cursor = source.getCursor();
+		try {
+			while (cursor.next()) {
+				content = content.with(cursor.getKey(), copyValue(cursor.getValue(), copies));
+			}
+		} finally {
+			cursor.destroy();
+		}
+
+		ConcurrentIData result = new ConcurrentIData(content);
+		copies.put(source, result);
+		return result;
+	}
+
+	private static Object copyValue(Object value, Map<IData, ConcurrentIData> copies) {
+		if (value instanceof IData) {
+			return copyOf((IData) value, copies);
+		} else if (value instanceof Document) {
+			return copyOf(((Document) value).getIData(), copies);
+		} else if (value instanceof IData[]) {
+			IData[] array = (IData[]) value;
+			IData[] copy = new IData[array.length];
+			for (int i = 0; i < array.length; i++) {
+				copy[i] = array[i] != null ? copyOf(array[i], copies) : null;
+			}
+			return copy;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the current content with nested concurrent documents replaced
+	 * by their own current content, at any depth, so that the result doesn't
+	 * change when the document or its nested documents do. Only the parts
+	 * that hold nested concurrent documents are copied.
+	 *
+	 * @return immutable content
+	 * @throws IllegalArgumentException
+	 *             if the content contains itself
+	 */
+	PersistentIData getDeepSnapshot() {
+		return freeze(state.get(), new IdentityHashMap<PersistentIData, PersistentIData>());
+	}
+
+	private static PersistentIData freeze(PersistentIData snapshot, Map<PersistentIData, PersistentIData> frozen) {
+		if (frozen.containsKey(snapshot)) {
+			PersistentIData result = frozen.get(snapshot);
+			if (result == null) {
+				throw new IllegalArgumentException("Document contains itself and can't be frozen");
+			}
+			return result;
+		}
+		frozen.put(snapshot, null);
+
+		PersistentIData result = snapshot;
+		IDataCursor cursor = snapshot.getCursor();
+		try {
+			while (cursor.next()) {
+				Object value = cursor.getValue();
+				Object frozenValue = freezeValue(value, frozen);
+				if (frozenValue != value) {
+					result = result.with(cursor.getKey(), frozenValue);
+				}
+			}
+		} finally {
+			cursor.destroy();
+		}
+
+		frozen.put(snapshot, result);
+		return result;
+	}
+
+	private static Object freezeValue(Object value, Map<PersistentIData, PersistentIData> frozen) {
+		if (value instanceof ConcurrentIData) {
+			return freeze(((ConcurrentIData) value).getSnapshot(), frozen);
+		} else if (value instanceof PersistentIData) {
+			return freeze((PersistentIData) value, frozen);
+		} else if (value instanceof IData[]) {
+			IData[] array = (IData[]) value;
+			IData[] copy = null;
+			for (int i = 0; i < array.length; i++) {
+				Object frozenElement = freezeValue(array[i], frozen);
+				if (frozenElement != array[i]) {
+					if (copy == null) {
+						copy = array.clone();
+					}
+					copy[i] = (IData) frozenElement;
+				}
+			}
+			return copy != null ? copy : array;
+		} else {
+			return value;
+		}
+	}
+
+	PersistentIData getSnapshot() {
+		return state.get();
+	}
+
+	boolean compareAndSet(PersistentIData expected, PersistentIData update) {
+		return state.compareAndSet(expected, update);
+	}
+
+	@Override
+	public IDataCursor getCursor() {
+		return new Cursor();
+	}
+
+	private PersistentIData put(String key, Object value) {
+		while (true) {
+			PersistentIData current = state.get();
+			PersistentIData updated = current.with(key, value);
+			if (updated == current || state.compareAndSet(current, updated)) {
+				return updated;
+			}
+		}
+	}
+
+	private PersistentIData remove(String key) {
+		while (true) {
+			PersistentIData current = state.get();
+			PersistentIData updated = current.without(key);
+			if (updated == current || state.compareAndSet(current, updated)) {
+				return updated;
+			}
+		}
+	}
+
+	private PersistentIData rename(String oldKey, String newKey) {
+		while (true) {
+			PersistentIData current = state.get();
+			if (!current.containsKey(oldKey)) {
+				return current;
+			}
+			PersistentIData updated = current.without(oldKey).with(newKey, current.get(oldKey));
+			if (state.compareAndSet(current, updated)) {
+				return updated;
+			}
+		}
+	}
+
+	private final class Cursor implements IDataCursor {
+
+		private PersistentIData snapshot;
+		private IDataCursor snapshotCursor;
+
+		Cursor() {
+			this.snapshot = state.get();
+			this.snapshotCursor = snapshot.getCursor();
+		}
+
+		private Cursor(PersistentIData snapshot, IDataCursor snapshotCursor) {
+			this.snapshot = snapshot;
+			this.snapshotCursor = snapshotCursor;
+		}
+
+		private String currentKey() {
+			String key = snapshotCursor.getKey();
+			if (key == null) {
+				throw new IllegalStateException("Cursor is not positioned on an element");
+			}
+			return key;
+		}
+
+		/**
+		 * Moves the cursor to the given snapshot, positioned on the key or
+		 * after the last element if the key no longer exists.
+		 */
+		private boolean moveTo(PersistentIData snapshot, String key) {
+			this.snapshot = snapshot;
+			snapshotCursor = snapshot.getCursor();
+			if (key != null && snapshotCursor.first(key)) {
+				return true;
+			}
+			snapshotCursor.last();
+			snapshotCursor.next();
+			return false;
+		}
+
+		@Override
+		public void home() {
+			snapshotCursor.home();
+		}
+
+		@Override
+		public String getKey() {
+			return snapshotCursor.getKey();
+		}
+
+		@Override
+		public void setKey(String key) {
+			moveTo(rename(currentKey(), key), key);
+		}
+
+		@Override
+		public Object getValue() {
+			return snapshotCursor.getValue();
+		}
+
+		@Override
+		public void setValue(Object value) {
+			String key = currentKey();
+			moveTo(put(key, value), key);
+		}
+
+		@Override
+		public boolean delete() {
+			if (snapshotCursor.getKey() == null) {
+				return false;
+			}
+			String key = snapshotCursor.getKey();
+			IDataCursor follower = snapshotCursor.getCursorClone();
+			String followingKey = follower.next() ? follower.getKey() : null;
+			return moveTo(remove(key), followingKey);
+		}
+
+		private void insert(String key, Object value) {
+			if (snapshot.containsKey(key)) {
+				throw new UnsupportedOperationException("Key '" + key + "' already exists and duplicate keys aren't supported");
+			}
+			moveTo(put(key, value), key);
+		}
+
+		@Override
+		public void insertBefore(String key, Object value) {
+			insert(key, value);
+		}
+
+		@Override
+		public void insertAfter(String key, Object value) {
+			insert(key, value);
+		}
+
+		@Override
+		public IData insertDataBefore(String key) {
+			IData data = new ConcurrentIData(PersistentIData.empty());
+			insertBefore(key, data);
+			return data;
+		}
+
+		@Override
+		public IData insertDataAfter(String key) {
+			IData data = new ConcurrentIData(PersistentIData.empty());
+			insertAfter(key, data);
+			return data;
+		}
+
+		@Override
+		public boolean next() {
+			return snapshotCursor.next();
+		}
+
+		@Override
+		public boolean next(String key) {
+			return snapshotCursor.next(key);
+		}
+
+		@Override
+		public boolean previous() {
+			return snapshotCursor.previous();
+		}
+
+		@Override
+		public boolean previous(String key) {
+			return snapshotCursor.previous(key);
+		}
+
+		@Override
+		public boolean first() {
+			return snapshotCursor.first();
+		}
+
+		@Override
+		public boolean first(String key) {
+			return snapshotCursor.first(key);
+		}
+
+		@Override
+		public boolean last() {
+			return snapshotCursor.last();
+		}
+
+		@Override
+		public boolean last(String key) {
+			return snapshotCursor.last(key);
+		}
+
+		@Override
+		public boolean hasMoreData() {
+			return snapshotCursor.hasMoreData();
+		}
+
+		@Override
+		public void destroy() {
+			snapshotCursor.destroy();
+		}
+
+		@Override
+		public IDataCursor getCursorClone() {
+			return new Cursor(snapshot, snapshotCursor.getCursorClone());
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Copies {@code IData} trees without recursion.
+ * <p>
+ * Pending documents and arrays are kept in an explicit deque: it's used as a
+ * stack (depth-first) when copying sequentially, and as a queue
+ * (breadth-first) to find independent subtrees before copying in parallel.
+ * <p>
+ * Documents and arrays are copied; values known to be immutable (strings,
+ * boxed primitives, {@code BigDecimal}, {@code BigInteger} and enums) are
+ * shared with the source. Primitive arrays and dates are copied. Other values
+ * are shared as well, since there's no general way to copy them.
+ * <p>
+ * Each source document or array is copied once: values referenced from
+ * several places, including cycles, are referenced the same way in the copy.
+ * When copying in parallel, this only holds within the subtree processed by
+ * each task: values shared between subtrees processed by different tasks are
+ * copied once per task.
+ */
+final class DeepCopier {
+
+	/* Pending documents per worker once the tree is split for parallel copying */
+	private static final int ITEMS_PER_WORKER = 8;
+
+	private final DirectIDataFactory factory;
+	private final Map<Object, Object> copies;
+	private final Map<Object, Object> inheritedCopies;
+	private final Deque<Pending> pending = new ArrayDeque<Pending>();
+
+	DeepCopier(DirectIDataFactory factory) {
+		this(factory, Collections.<Object, Object> emptyMap());
+	}
+
+	private DeepCopier(DirectIDataFactory factory, Map<Object, Object> inheritedCopies) {
+		this.factory = Preconditions.checkNotNull(factory);
+		this.copies = new IdentityHashMap<Object, Object>();
+		this.inheritedCopies = inheritedCopies;
+	}
+
+	/**
+	 * Copies a document and everything reachable from it.
+	 *
+	 * @param source document to copy
+	 * @return the copy
+	 */
+	IData copy(IData source) {
+		IData target = (IData) copyValue(source);
+		while (!pending.isEmpty()) {
+			process(pending.pollLast());
+		}
+		return target;
+	}
+
+	/**
+	 * Copies a document, processing independent subtrees concurrently once the
+	 * tree is wide enough.
+	 *
+	 * @param source document to copy
+	 * @param parallelism maximum number of concurrent workers
+	 * @param executor executor that runs the additional workers
+	 * @return the copy
+	 */
+	IData copy(IData source, int parallelism, ExecutorService executor) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+		}
+
+		IData target = (IData) copyValue(source);
+
+		// Breadth-first until there are enough independent subtrees to share out
+		int wanted = parallelism * ITEMS_PER_WORKER;
+		while (!pending.isEmpty() && pending.size() < wanted) {
+			process(pending.pollFirst());
+		}
+		if (pending.isEmpty()) {
+			return target;
+		}
+
+		final List<Pending> subtrees = new ArrayList<Pending>(pending);
+		pending.clear();
+		final Map<Object, Object> sharedCopies = Collections.unmodifiableMap(copies);
+		ParallelRanges.execute(subtrees.size(), parallelism, executor, new ParallelRanges.RangeTask() {
+			@Override
+			public void run(int fromIndex, int toIndex) {
+				DeepCopier worker = new DeepCopier(factory, sharedCopies);
+				for (int i = fromIndex; i < toIndex; i++) {
+					worker.pending.addLast(subtrees.get(i));
+					while (!worker.pending.isEmpty()) {
+						worker.process(worker.pending.pollLast());
+					}
+				}
+			}
+		});
+		return target;
+	}
+
+	private void process(Pending item) {
+		if (item.source instanceof IData) {
+			IDataCursor sourceCursor = ((IData) item.source).getCursor();
+			IDataCursor targetCursor = ((IData) item.target).getCursor();
+			try {
+				while (sourceCursor.next()) {
+					targetCursor.insertAfter(sourceCursor.getKey(), copyValue(sourceCursor.getValue()));
+				}
+			} finally {
+				sourceCursor.destroy();
+				targetCursor.destroy();
+			}
+		} else {
+			Object[] source = (Object[]) item.source;
+			Object[] target = (Object[]) item.target;
+			for (int i = 0; i < source.length; i++) {
+				target[i] = copyValue(source[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the copy of a value. Documents and object arrays are created
+	 * empty and filled in when their pending item is processed.
+	 */
+	private Object copyValue(Object value) {
+		if (value == null || isImmutable(value)) {
+			return value;
+		}
+
+		Object copy = copies.get(value);
+		if (copy == null) {
+			copy = inheritedCopies.get(value);
+		}
+		if (copy != null) {
+			return copy;
+		}
+
+		if (value instanceof IData) {
+			copy = factory.create();
+			pending.addLast(new Pending(value, copy));
+		} else if (value instanceof Document) {
+			DocumentImpl document = DocumentTrees.getImpl((Document) value);
+			copy = document.newSibling((IData) copyValue(document.getIData()));
+		} else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			// Copied documents may be of another IData class than the source's elements
+			Class<?> componentType = (value instanceof IData[]) ? IData.class : array.getClass().getComponentType();
+			copy = Array.newInstance(componentType, array.length);
+			pending.addLast(new Pending(value, copy));
+		} else if (value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			copy = Array.newInstance(value.getClass().getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+		} else if (value instanceof Date) {
+			copy = ((Date) value).clone();
+		} else {
+			return value;
+		}
+
+		copies.put(value, copy);
+		return copy;
+	}
+
+	private static boolean isImmutable(Object value) {
+		return value instanceof String || value instanceof Integer || value instanceof Long
+				|| value instanceof Boolean || value instanceof Double || value instanceof BigDecimal
+				|| value instanceof Short || value instanceof Byte || value instanceof Float
+				|| value instanceof Character || value instanceof BigInteger || value instanceof Enum<?>;
+	}
+
+	private static final class Pending {
+		final Object source;
+		final Object target;
+
+		Pending(Object source, Object target) {
+			this.source = source;
+			this.target = target;
+		}
+	}
+}
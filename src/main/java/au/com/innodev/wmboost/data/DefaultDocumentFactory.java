@@ -37,7 +37,9 @@ class DefaultDocumentFactory implements DocumentFactory {
 		Preconditions.checkNotNull(conversionService, "ConversionService cannot be null");
 		Preconditions.checkNotNull(directIDataFactory, "directIDataFactory cannot be null");
 		
-		this.config = new DocumentConfig(conversionService, createInternalConversionService(conversionService), directIDataFactory);
+		ConversionService internalConversionService = createInternalConversionService(conversionService);
+		BulkArrayConverter bulkConverter = new BulkArrayConverter(internalConversionService, this);
+		this.config = new DocumentConfig(conversionService, internalConversionService, bulkConverter, directIDataFactory);
 	}
 	
 	@Override
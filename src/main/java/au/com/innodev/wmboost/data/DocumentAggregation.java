@@ -0,0 +1,390 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.Accumulators.Accumulator;
+import au.com.innodev.wmboost.data.Accumulators.Bound;
+import au.com.innodev.wmboost.data.Accumulators.Spec;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * An aggregation over a document list, optionally grouped by one or more
+ * fields. Created through {@link DocumentAggregations}.
+ * <p>
+ * Each method that adds an aggregate returns a new aggregation, so instances
+ * are immutable and can be kept in constants. See
+ * {@link DocumentAggregations} for details on how elements are processed and
+ * how results are returned.
+ */
+public final class DocumentAggregation {
+
+	// Group key used when there are no group fields
+	private static final Object ALL = new Object();
+
+	private final Field<?>[] groupFields;
+	private final List<Spec> specs;
+
+	DocumentAggregation(Field<?>[] groupFields, List<Spec> specs) {
+		this.groupFields = groupFields;
+		this.specs = specs;
+	}
+
+	/**
+	 * Counts the elements in each group.
+	 * 
+	 * @param outputKey
+	 *            key of the result entry
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public DocumentAggregation count(String outputKey) {
+		return with(Accumulators.count(outputKey));
+	}
+
+	/**
+	 * Sums the values of a field as {@code long} values. The result is a
+	 * {@link Long}.
+	 * 
+	 * @param key
+	 *            key of the field to sum
+	 * @param outputKey
+	 *            key of the result entry
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public DocumentAggregation sumLong(String key, String outputKey) {
+		return with(Accumulators.sumLong(key, outputKey));
+	}
+
+	/**
+	 * Sums the values of a field as {@code double} values. The result is a
+	 * {@link Double}.
+	 * 
+	 * @param key
+	 *            key of the field to sum
+	 * @param outputKey
+	 *            key of the result entry
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public DocumentAggregation sumDouble(String key, String outputKey) {
+		return with(Accumulators.sumDouble(key, outputKey));
+	}
+
+	/**
+	 * Sums the values of a field without loss of precision. The result is a
+	 * {@link java.math.BigDecimal}.
+	 * 
+	 * @param key
+	 *            key of the field to sum
+	 * @param outputKey
+	 *            key of the result entry
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public DocumentAggregation sumDecimal(String key, String outputKey) {
+		return with(Accumulators.sumDecimal(key, outputKey));
+	}
+
+	/**
+	 * Computes the smallest value of a field. The result is {@code null} if
+	 * no element in the group has a value.
+	 * 
+	 * @param field
+	 *            field to compare
+	 * @param outputKey
+	 *            key of the result entry
+	 * @param <T>
+	 *            value type
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public <T extends Comparable<? super T>> DocumentAggregation min(Field<T> field, String outputKey) {
+		return with(Accumulators.extreme(field, outputKey, false));
+	}
+
+	/**
+	 * Computes the largest value of a field. The result is {@code null} if no
+	 * element in the group has a value.
+	 * 
+	 * @param field
+	 *            field to compare
+	 * @param outputKey
+	 *            key of the result entry
+	 * @param <T>
+	 *            value type
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public <T extends Comparable<? super T>> DocumentAggregation max(Field<T> field, String outputKey) {
+		return with(Accumulators.extreme(field, outputKey, true));
+	}
+
+	/**
+	 * Collects the {@code k} largest values of a field. The result is an
+	 * array of the field type, largest value first.
+	 * 
+	 * @param field
+	 *            field to compare
+	 * @param k
+	 *            maximum number of values to keep
+	 * @param outputKey
+	 *            key of the result entry
+	 * @param <T>
+	 *            value type
+	 * @return a new aggregation that also includes this aggregate
+	 */
+	public <T extends Comparable<? super T>> DocumentAggregation topK(Field<T> field, int k, String outputKey) {
+		return with(Accumulators.topK(field, k, outputKey));
+	}
+
+	/**
+	 * Aggregates the elements of a document list.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @return one document per group, in order of first appearance
+	 */
+	public List<Document> aggregate(CollectionEntry<Document> entry) {
+		return aggregate(DocumentArrays.readOrEmpty(entry), DocumentArrays.getOwner(entry), 1, null);
+	}
+
+	/**
+	 * Aggregates the elements of a document list in parallel, using the
+	 * default executor.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param parallelism
+	 *            maximum number of concurrent workers
+	 * @return one document per group, in order of first appearance
+	 */
+	public List<Document> aggregate(CollectionEntry<Document> entry, int parallelism) {
+		return aggregate(entry, parallelism, ParallelRanges.getDefaultExecutor());
+	}
+
+	/**
+	 * Aggregates the elements of a document list in parallel. Each worker
+	 * aggregates a range of the list and partial results are merged at the end,
+	 * so the result is the same as for a sequential aggregation.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param parallelism
+	 *            maximum number of concurrent workers
+	 * @param executor
+	 *            executor that runs the workers
+	 * @return one document per group, in order of first appearance
+	 */
+	public List<Document> aggregate(CollectionEntry<Document> entry, int parallelism, ExecutorService executor) {
+		Preconditions.checkNotNull(executor, "executor cannot be null");
+		return aggregate(DocumentArrays.readOrEmpty(entry), DocumentArrays.getOwner(entry), parallelism, executor);
+	}
+
+	/**
+	 * Aggregates the documents in a split entry.
+	 * 
+	 * @param entry
+	 *            split entry
+	 * @return one document per group, in order of first appearance
+	 */
+	public List<Document> aggregate(SplitEntry<Document> entry) {
+		Preconditions.checkNotNull(entry, "entry cannot be null");
+		if (!(entry instanceof SplitEntryImpl<?>)) {
+			throw new IllegalArgumentException("Unsupported entry implementation: " + entry.getClass().getName());
+		}
+
+		SplitEntryImpl<?> impl = (SplitEntryImpl<?>) entry;
+		Object[] values = impl.getRawVals();
+		IData[] elements = new IData[values.length];
+		for (int i = 0; i < values.length; i++) {
+			Object value = values[i];
+			if (value instanceof IData) {
+				elements[i] = (IData) value;
+			} else if (value instanceof Document) {
+				elements[i] = ((Document) value).getIData();
+			} else if (value != null) {
+				throw new IllegalArgumentException("Value " + i + " of split entry '" + entry.getKey()
+						+ "' is not a document. Actual type was '" + value.getClass() + "'");
+			}
+		}
+
+		return aggregate(elements, impl.getDocument(), 1, null);
+	}
+
+	private DocumentAggregation with(Spec spec) {
+		List<Spec> newSpecs = new ArrayList<Spec>(specs.size() + 1);
+		newSpecs.addAll(specs);
+		newSpecs.add(spec);
+		return new DocumentAggregation(groupFields, Collections.unmodifiableList(newSpecs));
+	}
+
+	private List<Document> aggregate(final IData[] elements, DocumentImpl owner, int parallelism,
+			ExecutorService executor) {
+		BulkArrayConverter converter = owner.getBulkConverter();
+
+		final FieldReader<?>[] keyReaders = new FieldReader<?>[groupFields.length];
+		for (int i = 0; i < groupFields.length; i++) {
+			keyReaders[i] = newReader(groupFields[i], converter);
+		}
+		final Bound[] bound = new Bound[specs.size()];
+		for (int i = 0; i < bound.length; i++) {
+			bound[i] = specs.get(i).bind(converter);
+		}
+
+		Groups groups;
+		if (parallelism <= 1 || executor == null) {
+			groups = new Groups(keyReaders, bound);
+			groups.addRange(elements, 0, elements.length);
+		} else {
+			// Partial results by start index, so they can be merged in list order
+			final Map<Integer, Groups> partials = new TreeMap<Integer, Groups>();
+			ParallelRanges.execute(elements.length, parallelism, executor, new ParallelRanges.RangeTask() {
+				@Override
+				public void run(int fromIndex, int toIndex) {
+					Groups partial = new Groups(keyReaders, bound);
+					partial.addRange(elements, fromIndex, toIndex);
+					synchronized (partials) {
+						partials.put(Integer.valueOf(fromIndex), partial);
+					}
+				}
+			});
+
+			groups = new Groups(keyReaders, bound);
+			for (Groups partial : partials.values()) {
+				groups.merge(partial);
+			}
+		}
+
+		if (groupFields.length == 0) {
+			// An aggregation without groups always returns a single result
+			groups.getOrCreate(ALL);
+		}
+
+		return toDocuments(groups, owner);
+	}
+
+	private List<Document> toDocuments(Groups groups, DocumentImpl owner) {
+		DirectIDataFactory iDataFactory = owner.getConfig().getCustomIDataFactory();
+		List<Document> documents = new ArrayList<Document>(groups.accumulatorsByKey.size());
+
+		for (Map.Entry<Object, Accumulator[]> group : groups.accumulatorsByKey.entrySet()) {
+			IData result = iDataFactory.create();
+			IDataCursor cursor = result.getCursor();
+			try {
+				// Entries are only appended, so no existing keys need to be looked up
+				cursor.last();
+				if (groupFields.length == 1) {
+					cursor.insertAfter(groupFields[0].getKey(), group.getKey());
+				} else if (groupFields.length > 1) {
+					List<?> keyValues = (List<?>) group.getKey();
+					for (int i = 0; i < groupFields.length; i++) {
+						cursor.insertAfter(groupFields[i].getKey(), keyValues.get(i));
+					}
+				}
+
+				Accumulator[] accumulators = group.getValue();
+				for (int i = 0; i < accumulators.length; i++) {
+					cursor.insertAfter(specs.get(i).getOutputKey(), accumulators[i].getResult());
+				}
+			} finally {
+				cursor.destroy();
+			}
+			documents.add(owner.newSibling(result));
+		}
+		return documents;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FieldReader<?> newReader(Field<?> field, BulkArrayConverter converter) {
+		return new FieldReader<Object>((Field<Object>) field, converter);
+	}
+
+	/**
+	 * Accumulators per group key, in order of first appearance. Not
+	 * thread-safe.
+	 */
+	private static final class Groups {
+		private final FieldReader<?>[] keyReaders;
+		private final Bound[] bound;
+		private final Map<Object, Accumulator[]> accumulatorsByKey = new LinkedHashMap<Object, Accumulator[]>();
+
+		Groups(FieldReader<?>[] keyReaders, Bound[] bound) {
+			this.keyReaders = keyReaders;
+			this.bound = bound;
+		}
+
+		void addRange(IData[] elements, int fromIndex, int toIndex) {
+			for (int i = fromIndex; i < toIndex; i++) {
+				IData element = elements[i];
+				if (element == null) {
+					continue;
+				}
+
+				Accumulator[] accumulators = getOrCreate(readKey(element));
+				for (Accumulator accumulator : accumulators) {
+					accumulator.add(element);
+				}
+			}
+		}
+
+		void merge(Groups other) {
+			for (Map.Entry<Object, Accumulator[]> group : other.accumulatorsByKey.entrySet()) {
+				Accumulator[] accumulators = accumulatorsByKey.get(group.getKey());
+				if (accumulators == null) {
+					accumulatorsByKey.put(group.getKey(), group.getValue());
+				} else {
+					Accumulator[] otherAccumulators = group.getValue();
+					for (int i = 0; i < accumulators.length; i++) {
+						accumulators[i].merge(otherAccumulators[i]);
+					}
+				}
+			}
+		}
+
+		Accumulator[] getOrCreate(Object key) {
+			Accumulator[] accumulators = accumulatorsByKey.get(key);
+			if (accumulators == null) {
+				accumulators = new Accumulator[bound.length];
+				for (int i = 0; i < bound.length; i++) {
+					accumulators[i] = bound[i].newAccumulator();
+				}
+				accumulatorsByKey.put(key, accumulators);
+			}
+			return accumulators;
+		}
+
+		private Object readKey(IData element) {
+			if (keyReaders.length == 0) {
+				return ALL;
+			} else if (keyReaders.length == 1) {
+				return keyReaders[0].read(element);
+			} else {
+				Object[] values = new Object[keyReaders.length];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = keyReaders[i].read(element);
+				}
+				return Arrays.asList(values);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.Collections;
+
+import au.com.innodev.wmboost.data.Accumulators.Spec;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Single-pass aggregations over document lists, such as totals per customer
+ * or counts per status.
+ * 
+ * <pre>
+ * List&lt;Document&gt; totals = DocumentAggregations.groupBy(Field.of("customer", String.class))
+ * 		.count("orders")
+ * 		.sumDecimal("amount", "total")
+ * 		.max(Field.of("orderDate", Date.class), "lastOrderDate")
+ * 		.aggregate(pipeDoc.docsEntry("orders"));
+ * pipeDoc.docsEntry("totals").put(totals);
+ * </pre>
+ * <p>
+ * Field values are read straight from the underlying {@code IData} elements
+ * and converted to the type each aggregate needs; counts and sums of
+ * {@code long} and {@code double} values are accumulated in primitive
+ * fields. {@code null} elements are ignored, and so are {@code null} or
+ * missing values, except by {@code count}.
+ * <p>
+ * The result has one new document per group, in order of first appearance.
+ * Each one contains the group fields followed by the aggregates, in the order
+ * they were added.
+ */
+public final class DocumentAggregations {
+
+	private DocumentAggregations() {
+		// Non-instantiable
+	}
+
+	/**
+	 * Starts an aggregation grouped by the given fields. Elements whose group
+	 * fields are missing or {@code null} are grouped together.
+	 * 
+	 * @param groupFields
+	 *            fields whose values identify a group
+	 * @return an aggregation without aggregates yet
+	 */
+	public static DocumentAggregation groupBy(Field<?>... groupFields) {
+		Preconditions.checkNotNull(groupFields, "groupFields cannot be null");
+		if (groupFields.length == 0) {
+			throw new IllegalArgumentException("At least one group field must be provided. Use all() instead");
+		}
+		for (Field<?> groupField : groupFields) {
+			Preconditions.checkNotNull(groupField, "group fields cannot be null");
+		}
+
+		return new DocumentAggregation(groupFields.clone(), Collections.<Spec> emptyList());
+	}
+
+	/**
+	 * Starts an aggregation over all elements, which always returns a single
+	 * document.
+	 * 
+	 * @return an aggregation without aggregates yet
+	 */
+	public static DocumentAggregation all() {
+		return new DocumentAggregation(new Field<?>[0], Collections.<Spec> emptyList());
+	}
+}
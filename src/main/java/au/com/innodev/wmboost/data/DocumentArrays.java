@@ -0,0 +1,100 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.List;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Raw access to the {@code IData[]} value of document list entries, without
+ * wrapping each element in a {@link Document}.
+ */
+final class DocumentArrays {
+
+	static final IData[] EMPTY = new IData[0];
+
+	private DocumentArrays() {
+
+	}
+
+	/**
+	 * Returns the implementation behind an entry reference.
+	 *
+	 * @param entry entry reference
+	 * @return entry implementation
+	 */
+	static CollectionEntryImpl<?> getImpl(CollectionEntry<?> entry) {
+		Preconditions.checkNotNull(entry, "entry cannot be null");
+		if (!(entry instanceof CollectionEntryImpl<?>)) {
+			throw new IllegalArgumentException("Unsupported entry implementation: " + entry.getClass().getName());
+		}
+		return (CollectionEntryImpl<?>) entry;
+	}
+
+	/**
+	 * Returns the document that owns the entry.
+	 *
+	 * @param entry entry reference
+	 * @return owning document
+	 */
+	static DocumentImpl getOwner(CollectionEntry<?> entry) {
+		return getImpl(entry).getDocument();
+	}
+
+	/**
+	 * Returns the entry value as an {@code IData} array. If the value is
+	 * already stored as an {@code IData[]}, the stored array is returned (i.e.
+	 * not a copy).
+	 * <p>
+	 * An empty array is returned if the entry doesn't exist or its value is
+	 * {@code null}.
+	 *
+	 * @param entry document list entry
+	 * @return entry value, never {@code null}
+	 */
+	static IData[] readOrEmpty(CollectionEntry<Document> entry) {
+		Object rawVal = getImpl(entry).getRawVal();
+
+		if (rawVal instanceof IData[]) {
+			return (IData[]) rawVal;
+		} else if (rawVal == null) {
+			return EMPTY;
+		} else {
+			List<Document> documents = entry.getValOrEmpty();
+			IData[] result = new IData[documents.size()];
+			for (int i = 0; i < result.length; i++) {
+				Document document = documents.get(i);
+				result[i] = (document != null) ? document.getIData() : null;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Stores the array as the entry value with a single put. The array is
+	 * stored as is, so elements aren't converted.
+	 *
+	 * @param entry document list entry
+	 * @param values new value
+	 */
+	static void write(CollectionEntry<Document> entry, IData[] values) {
+		getImpl(entry).putRawVal(values);
+	}
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Runs the same transformation over many independent documents concurrently,
+ * e.g. one document per message.
+ * <p>
+ * Each input is wrapped by the processor's {@link DocumentFactory} in the
+ * task that processes it, so tasks don't share document instances. On Java 21
+ * and higher, tasks run on virtual threads; on older versions, they run on a
+ * pool of platform threads. Either way, at most {@code maxConcurrency} tasks
+ * run at the same time and inputs are only read as permits become available.
+ * <p>
+ * Results are returned in input order. If any transformation fails, the
+ * remaining inputs are still processed and a
+ * {@link DocumentListProcessingException} reporting the failed indexes is
+ * thrown at the end.
+ * <p>
+ * A processor is thread-safe and can be reused for many batches. On older
+ * Java versions, its pool starts up to {@code maxConcurrency} threads as
+ * needed, keeps them between batches and lets them end once idle for a
+ * while, so a processor doesn't need to be closed. Counters accumulated over
+ * all batches are available through {@link #getStatistics()}.
+ */
+public final class DocumentBatchProcessor {
+
+	private final DocumentFactory documentFactory;
+	private final int maxConcurrency;
+	private final ExecutorService executor;
+
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong documentCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong lastBatchNanos = new AtomicLong();
+	private final AtomicLong maxBatchNanos = new AtomicLong();
+
+	/**
+	 * Creates a processor.
+	 *
+	 * @param documentFactory
+	 *            factory used to wrap {@code IData} inputs
+	 * @param maxConcurrency
+	 *            maximum number of transformations that run at the same time
+	 */
+	public DocumentBatchProcessor(DocumentFactory documentFactory, int maxConcurrency) {
+		this.documentFactory = Preconditions.checkNotNull(documentFactory, "documentFactory cannot be null");
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("Maximum concurrency must be at least 1 but was " + maxConcurrency);
+		}
+		this.maxConcurrency = maxConcurrency;
+		this.executor = BatchExecutors.newExecutor(maxConcurrency);
+	}
+
+	/**
+	 * Applies the transformation to every input and returns the results in
+	 * input order.
+	 *
+	 * @param inputs
+	 *            {@link IData} or {@link Document} instances; {@code null}
+	 *            inputs are passed to the transformation as {@code null}
+	 * @param transform
+	 *            transformation to apply to each input
+	 * @param <R>
+	 *            result type
+	 * @return results, in input order
+	 * @throws DocumentListProcessingException
+	 *             if the transformation failed for any input
+	 * @throws IllegalArgumentException
+	 *             if an input is neither an {@code IData} nor a
+	 *             {@code Document}; the inputs already submitted are
+	 *             cancelled and counted as failures
+	 */
+	public <R> List<R> process(Iterable<?> inputs, final DocumentFunction<? extends R> transform) {
+		Preconditions.checkNotNull(inputs, "inputs cannot be null");
+		Preconditions.checkNotNull(transform, "transform cannot be null");
+
+		long start = System.nanoTime();
+		final Semaphore permits = new Semaphore(maxConcurrency);
+		List<Future<R>> futures = new ArrayList<Future<R>>();
+		FailureCollector failures = new FailureCollector();
+		List<R> results;
+
+		try {
+			for (final Object input : inputs) {
+				if (input != null && !(input instanceof IData) && !(input instanceof Document)) {
+					throw new IllegalArgumentException("Unsupported input at index " + futures.size()
+							+ ". Expected IData or Document but was " + input.getClass().getName());
+				}
+
+				permits.acquire();
+				try {
+					futures.add(executor.submit(new Callable<R>() {
+						@Override
+						public R call() {
+							try {
+								return transform.apply(toDocument(input));
+							} finally {
+								permits.release();
+							}
+						}
+					}));
+				} catch (RejectedExecutionException e) {
+					permits.release();
+					throw e;
+				}
+			}
+
+			results = new ArrayList<R>(futures.size());
+			for (int i = 0; i < futures.size(); i++) {
+				R result = null;
+				try {
+					result = futures.get(i).get();
+				} catch (ExecutionException e) {
+					failures.add(i, e.getCause());
+				}
+				results.add(result);
+			}
+		} catch (InterruptedException e) {
+			abort(futures, start);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for batch processing to complete", e);
+		} catch (RuntimeException e) {
+			// E.g. an unsupported input: don't leave submitted tasks running unobserved
+			abort(futures, start);
+			throw e;
+		}
+
+		record(futures.size(), failures.getTotalFailures(), System.nanoTime() - start);
+		failures.throwIfAny("Batch processing");
+
+		return results;
+	}
+
+	/**
+	 * Returns whether transformations run on virtual threads, which depends on
+	 * the Java version.
+	 *
+	 * @return {@code true} if virtual threads are used
+	 */
+	public boolean usesVirtualThreads() {
+		return BatchExecutors.usesVirtualThreads();
+	}
+
+	/**
+	 * Returns the counters accumulated over all batches processed so far.
+	 *
+	 * @return a snapshot of the counters
+	 */
+	public BatchStatistics getStatistics() {
+		return new BatchStatistics(batchCount.get(), documentCount.get(), failureCount.get(), totalNanos.get(),
+				lastBatchNanos.get(), maxBatchNanos.get());
+	}
+
+	private Document toDocument(Object input) {
+		if (input == null) {
+			return null;
+		} else if (input instanceof Document) {
+			return (Document) input;
+		} else {
+			return documentFactory.wrap((IData) input);
+		}
+	}
+
+	private void abort(List<? extends Future<?>> futures, long start) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+		record(futures.size(), futures.size(), System.nanoTime() - start);
+	}
+
+	private void record(int documents, int failures, long nanos) {
+		batchCount.incrementAndGet();
+		documentCount.addAndGet(documents);
+		failureCount.addAndGet(failures);
+		totalNanos.addAndGet(nanos);
+		lastBatchNanos.set(nanos);
+
+		long max;
+		do {
+			max = maxBatchNanos.get();
+		} while (nanos > max && !maxBatchNanos.compareAndSet(max, nanos));
+	}
+}
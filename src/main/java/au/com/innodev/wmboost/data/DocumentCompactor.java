@@ -0,0 +1,413 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Deduplicates the values of an {@code IData} tree in place: string values
+ * are interned and structurally identical subtrees are replaced by a single,
+ * shared, immutable {@link PersistentIData} copy (<em>hash-consing</em>).
+ * <p>
+ * The tree is walked iteratively in post-order, so the nested documents of a
+ * subtree have already been matched with the first identical document found
+ * (their <em>canonical</em> document) by the time the subtree itself is
+ * checked. This way two subtrees are identical if they have the same keys,
+ * in the same order, the same leaf values and the same canonical nested
+ * documents, which keeps both hashing and comparing shallow. A second pass,
+ * in the same order, replaces the documents found more than once with an
+ * immutable copy of their canonical document, so that writing to a shared
+ * subtree fails instead of changing all its occurrences. Documents found
+ * only once are left as they are.
+ * <p>
+ * Only subtrees whose values are all immutable (strings, boxed primitives,
+ * {@code BigDecimal}, {@code BigInteger}, {@code null}, shareable nested
+ * documents and arrays of those) are shared. Leaf values are only identical
+ * if they have the same class, so sharing never changes the type of a value.
+ * {@link PersistentIData} instances can't be modified and are left as they
+ * are.
+ */
+final class DocumentCompactor {
+
+	private static final Set<Class<?>> IMMUTABLE_LEAVES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+			String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+			Float.class, Double.class, BigDecimal.class, BigInteger.class));
+
+	private static final long NULL_HASH = 0x6a09e667f3bcc909L;
+	private static final long IDATA_TAG = 0x5be0cd19137e2179L;
+	private static final long ARRAY_TAG = 0xcbbb9d5dc1059ed8L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * Marks documents that are being processed, i.e. that contain themselves
+	 * when found again.
+	 */
+	private static final Node IN_PROGRESS = new Node(null, -1);
+
+	private final StringInterner interner;
+	private final boolean subtreeSharing;
+	private final int maxSubtreeSize;
+
+	private final Map<IData, Node> nodes = new IdentityHashMap<IData, Node>();
+	private final List<IData> processed = new ArrayList<IData>();
+	private final Map<Long, List<IData>> sharedByHash = new HashMap<Long, List<IData>>();
+	private int internedStringCount;
+	private int sharedSubtreeCount;
+
+	/**
+	 * Creates a compactor. A compactor processes a single tree.
+	 * 
+	 * @param options compaction options
+	 */
+	DocumentCompactor(CompactOptions options) {
+		Preconditions.checkNotNull(options, "options cannot be null");
+		this.interner = options.isStringInterning() ? options.newOrSharedInterner() : null;
+		this.subtreeSharing = options.isSubtreeSharing();
+		this.maxSubtreeSize = options.getMaxSubtreeSize();
+	}
+
+	/**
+	 * Compacts the tree in place. The root itself is never replaced.
+	 * 
+	 * @param root root of the tree
+	 * @return the outcome
+	 */
+	CompactionResult compact(IData root) {
+		long bytesBefore = IDataFootprint.estimate(root);
+
+		List<Frame> stack = new ArrayList<Frame>();
+		stack.add(new Frame(root));
+		while (!stack.isEmpty()) {
+			Frame frame = stack.get(stack.size() - 1);
+			if (!frame.expanded) {
+				frame.expanded = true;
+				if (nodes.containsKey(frame.iData)) {
+					// Referenced more than once and already processed
+					stack.remove(stack.size() - 1);
+				} else if (frame.iData instanceof PersistentIData) {
+					nodes.put(frame.iData, new Node(null, -1));
+					stack.remove(stack.size() - 1);
+				} else {
+					nodes.put(frame.iData, IN_PROGRESS);
+					pushChildren(frame.iData, stack);
+				}
+			} else {
+				stack.remove(stack.size() - 1);
+				nodes.put(frame.iData, rewrite(frame.iData));
+				processed.add(frame.iData);
+			}
+		}
+
+		for (IData iData : processed) {
+			replaceSharedChildren(iData);
+		}
+
+		long bytesAfter = IDataFootprint.estimate(root);
+		return new CompactionResult(bytesBefore, bytesAfter, internedStringCount, sharedSubtreeCount);
+	}
+
+	private void pushChildren(IData iData, List<Frame> stack) {
+		IDataCursor cursor = iData.getCursor();
+		try {
+			while (cursor.next()) {
+				pushChild(cursor.getValue(), stack);
+			}
+		} finally {
+			cursor.destroy();
+		}
+	}
+
+	private void pushChild(Object value, List<Frame> stack) {
+		if (value instanceof IData) {
+			if (!nodes.containsKey(value)) {
+				stack.add(new Frame((IData) value));
+			}
+		} else if (value instanceof Object[]) {
+			for (Object element : (Object[]) value) {
+				pushChild(element, stack);
+			}
+		}
+	}
+
+	/**
+	 * Interns the strings of a document whose nested documents have all been
+	 * processed, and looks the document up among the canonical ones.
+	 */
+	private Node rewrite(IData iData) {
+		Accumulator accumulator = new Accumulator(subtreeSharing);
+		IDataCursor cursor = iData.getCursor();
+		try {
+			while (cursor.next()) {
+				String key = cursor.getKey();
+				Object value = cursor.getValue();
+				Object compacted = internStrings(key, value);
+				if (compacted != value) {
+					cursor.setValue(compacted);
+				}
+
+				if (accumulator.shareable) {
+					accumulator.mix(key != null ? key.hashCode() : 0);
+					accumulate(accumulator, compacted, true);
+					if (accumulator.size > maxSubtreeSize) {
+						accumulator.shareable = false;
+					}
+				}
+			}
+		} finally {
+			cursor.destroy();
+		}
+
+		if (!accumulator.shareable) {
+			return new Node(null, -1);
+		}
+
+		IData canonical = findOrAddCanonical(iData, accumulator.hash);
+		Node node = new Node(canonical, accumulator.size);
+		if (canonical == iData) {
+			node.occurrences = 1;
+		} else {
+			nodes.get(canonical).occurrences++;
+		}
+		return node;
+	}
+
+	private Object internStrings(String key, Object value) {
+		if (value instanceof String) {
+			if (interner != null) {
+				String interned = interner.intern(key, (String) value);
+				if (interned != value) {
+					internedStringCount++;
+				}
+				return interned;
+			}
+		} else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			for (int i = 0; i < array.length; i++) {
+				Object compacted = internStrings(key, array[i]);
+				if (compacted != array[i]) {
+					array[i] = compacted;
+				}
+			}
+		}
+		return value;
+	}
+
+	private void replaceSharedChildren(IData iData) {
+		IDataCursor cursor = iData.getCursor();
+		try {
+			while (cursor.next()) {
+				Object value = cursor.getValue();
+				Object replacement = replaceShared(value);
+				if (replacement != value) {
+					cursor.setValue(replacement);
+				}
+			}
+		} finally {
+			cursor.destroy();
+		}
+	}
+
+	private Object replaceShared(Object value) {
+		if (value instanceof IData) {
+			Node node = nodes.get(value);
+			if (node == null || node.canonical == null) {
+				return value;
+			}
+			Node canonicalNode = nodes.get(node.canonical);
+			if (canonicalNode.occurrences < 2) {
+				return value;
+			}
+			if (canonicalNode.replacement == null) {
+				// Nested shared documents have already been replaced, so the copy reuses them
+				canonicalNode.replacement = PersistentIData.copyOf(node.canonical);
+			}
+			if (value != node.canonical) {
+				sharedSubtreeCount++;
+			}
+			return canonicalNode.replacement;
+		} else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			for (int i = 0; i < array.length; i++) {
+				Object replacement = replaceShared(array[i]);
+				if (replacement != array[i]) {
+					array[i] = replacement;
+				}
+			}
+		}
+		return value;
+	}
+
+	/*
+	 * Nested documents are only shareable as direct values or elements of an
+	 * IData[] value, since PersistentIData.copyOf doesn't copy them elsewhere.
+	 */
+	private void accumulate(Accumulator accumulator, Object value, boolean documentAllowed) {
+		accumulator.size++;
+		if (value == null) {
+			accumulator.mix(NULL_HASH);
+		} else if (IMMUTABLE_LEAVES.contains(value.getClass())) {
+			accumulator.mix(value.getClass().getName().hashCode() * 31L + value.hashCode());
+		} else if (value instanceof IData) {
+			Node node = nodes.get(value);
+			if (!documentAllowed || node == null || node.size < 0) {
+				accumulator.shareable = false;
+			} else {
+				// Nested documents are already matched, so identity is enough
+				accumulator.mix(IDATA_TAG ^ System.identityHashCode(node.canonical));
+				accumulator.size += node.size;
+			}
+		} else if (value.getClass() == Object[].class || value.getClass() == String[].class
+				|| value.getClass() == IData[].class) {
+			Object[] array = (Object[]) value;
+			accumulator.mix(ARRAY_TAG ^ value.getClass().getName().hashCode() ^ array.length);
+			boolean elementDocumentAllowed = documentAllowed && value.getClass() == IData[].class;
+			for (int i = 0; i < array.length && accumulator.shareable; i++) {
+				accumulate(accumulator, array[i], elementDocumentAllowed);
+			}
+		} else {
+			accumulator.shareable = false;
+		}
+	}
+
+	private IData findOrAddCanonical(IData iData, long hash) {
+		Long bucketKey = Long.valueOf(hash);
+		List<IData> bucket = sharedByHash.get(bucketKey);
+		if (bucket == null) {
+			bucket = new ArrayList<IData>(1);
+			sharedByHash.put(bucketKey, bucket);
+		}
+
+		for (IData candidate : bucket) {
+			if (shallowEqual(iData, candidate)) {
+				return candidate;
+			}
+		}
+		bucket.add(iData);
+		return iData;
+	}
+
+	private boolean shallowEqual(IData iData1, IData iData2) {
+		IDataCursor cursor1 = iData1.getCursor();
+		IDataCursor cursor2 = iData2.getCursor();
+		try {
+			while (true) {
+				boolean hasMore1 = cursor1.next();
+				boolean hasMore2 = cursor2.next();
+				if (hasMore1 != hasMore2) {
+					return false;
+				} else if (!hasMore1) {
+					return true;
+				}
+
+				String key1 = cursor1.getKey();
+				String key2 = cursor2.getKey();
+				if (key1 == null ? key2 != null : !key1.equals(key2)) {
+					return false;
+				}
+				if (!valuesEqual(cursor1.getValue(), cursor2.getValue())) {
+					return false;
+				}
+			}
+		} finally {
+			cursor1.destroy();
+			cursor2.destroy();
+		}
+	}
+
+	private boolean valuesEqual(Object value1, Object value2) {
+		if (value1 == value2) {
+			return true;
+		} else if (value1 == null || value2 == null || value1.getClass() != value2.getClass()) {
+			return false;
+		} else if (value1 instanceof IData) {
+			return nodes.get(value1).canonical == nodes.get(value2).canonical;
+		} else if (value1 instanceof Object[]) {
+			Object[] array1 = (Object[]) value1;
+			Object[] array2 = (Object[]) value2;
+			if (array1.length != array2.length) {
+				return false;
+			}
+			for (int i = 0; i < array1.length; i++) {
+				if (!valuesEqual(array1[i], array2[i])) {
+					return false;
+				}
+			}
+			return true;
+		} else {
+			return value1.equals(value2);
+		}
+	}
+
+	/**
+	 * The outcome of processing a document.
+	 */
+	private static final class Node {
+		/**
+		 * First identical document found, possibly itself, or {@code null} if
+		 * the document can't be shared
+		 */
+		private final IData canonical;
+		/** Number of values in the subtree, or -1 if it can't be shared */
+		private final int size;
+		/** For a canonical document, number of distinct identical documents */
+		private int occurrences;
+		/** For a canonical document, immutable copy shared by its occurrences */
+		private PersistentIData replacement;
+
+		Node(IData canonical, int size) {
+			this.canonical = canonical;
+			this.size = size;
+		}
+	}
+
+	private static final class Frame {
+		private final IData iData;
+		private boolean expanded;
+
+		Frame(IData iData) {
+			this.iData = iData;
+		}
+	}
+
+	private static final class Accumulator {
+		private long hash = IDATA_TAG;
+		private int size;
+		private boolean shareable;
+
+		Accumulator(boolean shareable) {
+			this.shareable = shareable;
+		}
+
+		void mix(long value) {
+			hash = (hash ^ value) * FNV_PRIME;
+			hash ^= hash >>> 29;
+		}
+	}
+}
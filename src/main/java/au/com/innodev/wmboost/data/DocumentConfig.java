@@ -26,11 +26,13 @@ final class DocumentConfig {
 
 	private final ConversionService conversionService;
 	private final ConversionService internalConversionService;	
+	private final BulkArrayConverter bulkConverter;
 	private final DirectIDataFactory directIDataFactory;
 	
-	public DocumentConfig(ConversionService conversionService, ConversionService internalConversionService, DirectIDataFactory directIDataFactory) {
+	public DocumentConfig(ConversionService conversionService, ConversionService internalConversionService, BulkArrayConverter bulkConverter, DirectIDataFactory directIDataFactory) {
 		this.conversionService = Preconditions.checkNotNull(conversionService);
 		this.internalConversionService = Preconditions.checkNotNull(internalConversionService);
+		this.bulkConverter = Preconditions.checkNotNull(bulkConverter);
 		this.directIDataFactory = Preconditions.checkNotNull(directIDataFactory);
 	}
 	
@@ -43,6 +45,10 @@ final class DocumentConfig {
 		return internalConversionService;
 	}
 	
+	BulkArrayConverter getBulkConverter() {
+		return bulkConverter;
+	}
+	
 	public DirectIDataFactory getCustomIDataFactory() {
 		return directIDataFactory;
 	}
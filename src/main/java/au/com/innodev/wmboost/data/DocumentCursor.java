@@ -0,0 +1,190 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.NoSuchElementException;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A cursor over a list of documents that exposes every element through the
+ * same, reusable {@link Document} instance (a <em>flyweight</em>).
+ * <p>
+ * Each call to {@link #next()} rebinds the flyweight to the next
+ * {@link IData} element. No document or entry objects are created per
+ * element, which makes it suitable for processing very large lists. Entry
+ * references obtained from {@link #getDocument()} follow the cursor, so they
+ * can be created once, before the loop:
+ *
+ * <pre>
+ * DocumentCursor cursor = DocumentLists.cursor(pipeDoc.docsEntry("records"));
+ * StringEntry sku = cursor.getDocument().stringEntry("sku");
+ * while (cursor.next()) {
+ * 	if (!cursor.isNull()) {
+ * 		process(sku.getVal());
+ * 	}
+ * }
+ * </pre>
+ * <p>
+ * Because the document instance is reused, it must not be kept beyond the
+ * current iteration step (e.g. added to a collection). Use
+ * {@link Document#getIData()} if the current element needs to be retained.
+ * <p>
+ * On {@code null} elements, the document is bound to a shared, empty and
+ * read-only instance: reading entries works as for an empty document, while
+ * modifying it throws an {@link UnsupportedOperationException}.
+ * <p>
+ * A cursor is not thread-safe. Create one cursor per thread instead.
+ *
+ * @see DocumentLists#cursor(CollectionEntry)
+ */
+public final class DocumentCursor {
+
+	private final IData[] elements;
+	private final int fromIndex;
+	private final int toIndex;
+	private final DocumentImpl owner;
+	private FlyweightDocument flyweight;
+	private int index;
+	private boolean currentNull;
+
+	DocumentCursor(IData[] elements, int fromIndex, int toIndex, DocumentImpl owner) {
+		this.elements = Preconditions.checkNotNull(elements);
+		if (fromIndex < 0 || toIndex > elements.length || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException(
+					"Invalid range [" + fromIndex + ", " + toIndex + ") for " + elements.length + " elements");
+		}
+		this.fromIndex = fromIndex;
+		this.toIndex = toIndex;
+		this.owner = Preconditions.checkNotNull(owner);
+		this.index = fromIndex - 1;
+	}
+
+	/**
+	 * Moves to the next element.
+	 *
+	 * @return {@code true} if the cursor is positioned on an element;
+	 *         {@code false} if there are no more elements
+	 */
+	public boolean next() {
+		if (index + 1 >= toIndex) {
+			index = toIndex;
+			return false;
+		}
+
+		index++;
+		IData element = elements[index];
+		currentNull = (element == null);
+		if (currentNull) {
+			// Null elements are bound to a shared empty document so that stale values are never read
+			getFlyweight().rebind(PersistentIData.empty());
+		} else {
+			getFlyweight().rebind(element);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the reusable document instance. After {@link #next()} returns
+	 * {@code true}, it wraps the current element.
+	 * <p>
+	 * The same instance is always returned.
+	 *
+	 * @return the flyweight document
+	 */
+	public Document getDocument() {
+		return getFlyweight();
+	}
+
+	private FlyweightDocument getFlyweight() {
+		if (flyweight == null) {
+			IData initial = firstNonNull();
+			if (initial == null) {
+				initial = PersistentIData.empty();
+			}
+			flyweight = owner.newFlyweight(initial);
+		}
+		return flyweight;
+	}
+
+	/**
+	 * Returns the document for the current element.
+	 *
+	 * @return the flyweight document bound to the current element or
+	 *         {@code null} if the current element is {@code null}
+	 * @throws NoSuchElementException
+	 *             if the cursor is not positioned on an element
+	 */
+	public Document get() {
+		ensurePositioned();
+		return currentNull ? null : getDocument();
+	}
+
+	/**
+	 * Returns whether the current element is {@code null}.
+	 *
+	 * @return {@code true} if the current element is {@code null}
+	 * @throws NoSuchElementException
+	 *             if the cursor is not positioned on an element
+	 */
+	public boolean isNull() {
+		ensurePositioned();
+		return currentNull;
+	}
+
+	/**
+	 * Returns the position of the current element in the list.
+	 *
+	 * @return zero-based index of the current element
+	 */
+	public int getIndex() {
+		ensurePositioned();
+		return index;
+	}
+
+	/**
+	 * Returns the number of elements the cursor iterates over.
+	 *
+	 * @return number of elements
+	 */
+	public int size() {
+		return toIndex - fromIndex;
+	}
+
+	/**
+	 * Positions the cursor before the first element again.
+	 */
+	public void reset() {
+		index = fromIndex - 1;
+	}
+
+	private IData firstNonNull() {
+		for (int i = fromIndex; i < toIndex; i++) {
+			if (elements[i] != null) {
+				return elements[i];
+			}
+		}
+		return null;
+	}
+
+	private void ensurePositioned() {
+		if (index < fromIndex || index >= toIndex) {
+			throw new NoSuchElementException("Cursor is not positioned on an element");
+		}
+	}
+}
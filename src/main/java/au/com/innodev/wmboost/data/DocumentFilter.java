@@ -0,0 +1,215 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.BitSet;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.FilterConditions.Condition;
+import au.com.innodev.wmboost.data.FilterConditions.Matcher;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A filter over the elements of a document list.
+ * <p>
+ * Filters are built from field conditions:
+ * 
+ * <pre>
+ * DocumentFilter openAndLarge = DocumentFilter.field("status").eq("OPEN")
+ * 		.and(DocumentFilter.field("amount", BigDecimal.class).gt(100));
+ * IData[] matching = openAndLarge.filter(pipeDoc.docsEntry("orders"));
+ * </pre>
+ * <p>
+ * Before it's first applied, a filter is compiled into a tree of field
+ * readers with every constant already converted to its field type. Elements
+ * are then matched straight from the underlying {@link IData} array, without
+ * wrapping them in documents. The compiled form is kept for as long as the
+ * filter is used with documents that share the same conversion service.
+ * <p>
+ * {@code null} elements never match. Filters are immutable and thread-safe.
+ */
+public final class DocumentFilter {
+
+	private final Condition condition;
+	private volatile Compiled compiled;
+
+	DocumentFilter(Condition condition) {
+		this.condition = Preconditions.checkNotNull(condition);
+	}
+
+	/**
+	 * Starts a condition on a field whose type is taken from the constants it's
+	 * compared with.
+	 * 
+	 * @param key
+	 *            entry key
+	 * @return a field to build a condition on
+	 */
+	public static FilterField field(String key) {
+		return new FilterField(key, null);
+	}
+
+	/**
+	 * Starts a condition on a field of the given type.
+	 * 
+	 * @param key
+	 *            entry key
+	 * @param type
+	 *            type that both values and constants are converted to
+	 * @return a field to build a condition on
+	 */
+	public static FilterField field(String key, Class<?> type) {
+		Preconditions.checkNotNull(type, "type cannot be null");
+		return new FilterField(key, type);
+	}
+
+	/**
+	 * Starts a condition on a field.
+	 * 
+	 * @param field
+	 *            field
+	 * @return a field to build a condition on
+	 */
+	public static FilterField field(Field<?> field) {
+		Preconditions.checkNotNull(field, "field cannot be null");
+		return new FilterField(field.getKey(), field.getType());
+	}
+
+	/**
+	 * Returns a filter that matches elements that match both this filter and
+	 * the other one.
+	 */
+	public DocumentFilter and(DocumentFilter other) {
+		Preconditions.checkNotNull(other, "other cannot be null");
+		return new DocumentFilter(FilterConditions.and(condition, other.condition));
+	}
+
+	/**
+	 * Returns a filter that matches elements that match this filter, the other
+	 * one or both.
+	 */
+	public DocumentFilter or(DocumentFilter other) {
+		Preconditions.checkNotNull(other, "other cannot be null");
+		return new DocumentFilter(FilterConditions.or(condition, other.condition));
+	}
+
+	/**
+	 * Returns a filter that matches the (non-null) elements this filter doesn't
+	 * match.
+	 */
+	public DocumentFilter negate() {
+		return new DocumentFilter(FilterConditions.not(condition));
+	}
+
+	/**
+	 * Returns the elements that match the filter, in list order.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @return matching elements; an empty array if none matches or the entry
+	 *         doesn't exist
+	 */
+	public IData[] filter(CollectionEntry<Document> entry) {
+		IData[] elements = DocumentArrays.readOrEmpty(entry);
+		BitSet matches = matches(elements, getMatcher(entry));
+
+		IData[] result = new IData[matches.cardinality()];
+		int position = 0;
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			result[position++] = elements[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the indexes of the elements that match the filter.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @return a bitmap where bit {@code i} is set if element {@code i}
+	 *         matches
+	 */
+	public BitSet matches(CollectionEntry<Document> entry) {
+		return matches(DocumentArrays.readOrEmpty(entry), getMatcher(entry));
+	}
+
+	/**
+	 * Returns the number of elements that match the filter.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @return number of matching elements
+	 */
+	public int count(CollectionEntry<Document> entry) {
+		return matches(entry).cardinality();
+	}
+
+	/**
+	 * Returns whether a single document matches the filter.
+	 * 
+	 * @param document
+	 *            document to test, possibly {@code null}
+	 * @return {@code true} if the document matches
+	 */
+	public boolean test(Document document) {
+		if (document == null) {
+			return false;
+		}
+		if (!(document instanceof DocumentImpl)) {
+			throw new IllegalArgumentException("Unsupported document implementation: " + document.getClass().getName());
+		}
+		return getMatcher(((DocumentImpl) document).getBulkConverter()).matches(document.getIData());
+	}
+
+	private Matcher getMatcher(CollectionEntry<Document> entry) {
+		return getMatcher(DocumentArrays.getOwner(entry).getBulkConverter());
+	}
+
+	private Matcher getMatcher(BulkArrayConverter converter) {
+		Compiled current = compiled;
+		if (current == null || current.converter != converter) {
+			current = new Compiled(converter, condition.compile(converter));
+			compiled = current;
+		}
+		return current.matcher;
+	}
+
+	private static BitSet matches(IData[] elements, Matcher matcher) {
+		BitSet matches = new BitSet(elements.length);
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] != null && matcher.matches(elements[i])) {
+				matches.set(i);
+			}
+		}
+		return matches;
+	}
+
+	@Override
+	public String toString() {
+		return condition.toString();
+	}
+
+	private static final class Compiled {
+		final BulkArrayConverter converter;
+		final Matcher matcher;
+
+		Compiled(BulkArrayConverter converter, Matcher matcher) {
+			this.converter = converter;
+			this.matcher = matcher;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * A function that computes a result from a document.
+ *
+ * @param <R>
+ *            result type
+ */
+public interface DocumentFunction<R> {
+
+	/**
+	 * Computes the result for the given document.
+	 * <p>
+	 * The provided document may be a reused instance that is only valid during
+	 * this invocation. Don't keep a reference to it; if the result is the
+	 * document itself, it's captured before the instance is reused.
+	 * 
+	 * @param document
+	 *            input document, possibly {@code null} for {@code null} list
+	 *            elements
+	 * @return the result
+	 */
+	R apply(Document document);
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * Thrown when documents can't be written to or read from external storage,
+ * such as the temporary files of an external sort.
+ */
+@SuppressWarnings("serial")
+public class DocumentIOException extends RuntimeException {
+
+	public DocumentIOException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public DocumentIOException(String message) {
+		super(message);
+	}
+
+}
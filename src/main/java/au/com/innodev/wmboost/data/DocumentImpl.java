@@ -37,20 +37,47 @@ import au.com.innodev.wmboost.data.internal.Preconditions;
 /**
  * {@link Document} implementation.
  */
-final class DocumentImpl implements Document {
+class DocumentImpl implements Document {
 
 	private final DocumentFactory factory;
+	private final DocumentConfig config;
 	private final IData iData;
 	private final ConversionService internalConversionService;
+	private final BulkArrayConverter bulkConverter;
 
 	DocumentImpl(IData document, DocumentFactory factory, DocumentConfig config) {
 		this.factory = factory;
+		this.config = config;
 		this.iData = Preconditions.checkNotNull(document);
 		this.internalConversionService = config.getInternalConversionService();
+		this.bulkConverter = config.getBulkConverter();
+	}
+
+	/**
+	 * Creates a document with the same configuration as this one.
+	 */
+	DocumentImpl newSibling(IData document) {
+		return new DocumentImpl(document, factory, config);
+	}
+
+	/**
+	 * Creates a document with the same configuration as this one that can be
+	 * rebound to other {@code IData} instances.
+	 */
+	FlyweightDocument newFlyweight(IData document) {
+		return new FlyweightDocument(document, factory, config);
+	}
+
+	DocumentFactory getFactory() {
+		return factory;
+	}
+
+	DocumentConfig getConfig() {
+		return config;
 	}
 
 	IDataCursorResource newCursorResource() {
-		return new IDataCursorResource(iData);
+		return new IDataCursorResource(getIData());
 	}
 
 	public boolean containsKey(String key) {
@@ -93,6 +120,10 @@ final class DocumentImpl implements Document {
 		return internalConversionService;
 	}
 
+	BulkArrayConverter getBulkConverter() {
+		return bulkConverter;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -106,7 +137,7 @@ final class DocumentImpl implements Document {
 				sb.append(" entries");
 			}
 			sb.append(", wrapping IData of type ");
-			sb.append(iData.getClass().getCanonicalName());
+			sb.append(getIData().getClass().getCanonicalName());
 			sb.append("}");
 
 		return sb.toString();
@@ -152,7 +183,9 @@ final class DocumentImpl implements Document {
 			try {
 				hasMore = cursorRes.getCursor().first();
 				if (hasMore) {
+					Object value = cursorRes.getCursor().getValue();
 					cursorRes.getCursor().delete();
+					BaseEntry.releaseRemovedValue(value, null);
 				}				
 			}
 			finally {
@@ -294,7 +327,7 @@ final class DocumentImpl implements Document {
 	public CollectionEntry<String> stringsEntry(String key) {
 		return typedCollectionEntry(key, String.class);
 	}
-	
+
 	@Override
 	public CollectionEntry<Boolean> booleansEntry(String key) {
 		return typedCollectionEntry(key, Boolean.class);		
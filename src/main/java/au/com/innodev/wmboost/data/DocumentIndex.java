@@ -0,0 +1,334 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A hash index over a list of documents, such as reference data in
+ * {@link Document#docsEntry(String)}.
+ * <p>
+ * The index is built in a single pass over the underlying {@link IData}
+ * array. It replaces nested loops over two lists with constant time lookups:
+ * 
+ * <pre>
+ * DocumentIndex&lt;String&gt; catalog = DocumentIndex.buildUnique(pipeDoc.docsEntry("catalog"), Field.of("sku", String.class));
+ * for (Document line : pipeDoc.docsEntry("lines").getValOrEmpty()) {
+ * 	Document product = catalog.get(line.stringEntry("sku").getVal());
+ * 	...
+ * }
+ * </pre>
+ * <p>
+ * {@code null} elements and elements whose key is {@code null} or missing
+ * aren't indexed. The index references the indexed elements, not copies of
+ * them, but changes to the list or to the elements' keys after the index is
+ * built aren't reflected.
+ * <p>
+ * An index is immutable and thread-safe, so it can be cached and shared.
+ *
+ * @param <K>
+ *            key type
+ */
+public final class DocumentIndex<K> {
+
+	private static final IData[] NO_ELEMENTS = new IData[0];
+
+	// Values are IData[] so that unique and multi-valued indexes share lookups
+	private final Map<K, IData[]> elementsByKey;
+	private final boolean unique;
+	private final int indexedCount;
+	// Only what's needed to wrap elements, so that the index doesn't keep the source document alive
+	private final DocumentFactory factory;
+	private final DocumentConfig config;
+
+	private DocumentIndex(Map<K, IData[]> elementsByKey, boolean unique, int indexedCount, DocumentImpl owner) {
+		this.elementsByKey = Collections.unmodifiableMap(elementsByKey);
+		this.unique = unique;
+		this.indexedCount = indexedCount;
+		this.factory = owner.getFactory();
+		this.config = owner.getConfig();
+	}
+
+	/**
+	 * Builds an index where many documents may share the same key.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param keyField
+	 *            field whose value is the index key
+	 * @param <K>
+	 *            key type
+	 * @return a multi-valued index
+	 */
+	public static <K> DocumentIndex<K> build(CollectionEntry<Document> entry, Field<K> keyField) {
+		return build(entry, fieldKeyReader(entry, keyField), false);
+	}
+
+	/**
+	 * Builds an index where many documents may share the same key, using a
+	 * custom key extractor.
+	 * <p>
+	 * The document passed to the extractor is a reused instance (see
+	 * {@link DocumentCursor}), so the extractor must only return a value
+	 * derived from it.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param keyExtractor
+	 *            returns the key of each document
+	 * @param <K>
+	 *            key type
+	 * @return a multi-valued index
+	 */
+	public static <K> DocumentIndex<K> build(CollectionEntry<Document> entry,
+			DocumentFunction<? extends K> keyExtractor) {
+		return build(entry, functionKeyReader(entry, keyExtractor), false);
+	}
+
+	/**
+	 * Builds an index where each key identifies a single document.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param keyField
+	 *            field whose value is the index key
+	 * @param <K>
+	 *            key type
+	 * @return a unique index
+	 * @throws IllegalArgumentException
+	 *             if more than one document has the same key
+	 */
+	public static <K> DocumentIndex<K> buildUnique(CollectionEntry<Document> entry, Field<K> keyField) {
+		return build(entry, fieldKeyReader(entry, keyField), true);
+	}
+
+	/**
+	 * Builds an index where each key identifies a single document, using a
+	 * custom key extractor.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param keyExtractor
+	 *            returns the key of each document
+	 * @param <K>
+	 *            key type
+	 * @return a unique index
+	 * @throws IllegalArgumentException
+	 *             if more than one document has the same key
+	 * @see #build(CollectionEntry, DocumentFunction)
+	 */
+	public static <K> DocumentIndex<K> buildUnique(CollectionEntry<Document> entry,
+			DocumentFunction<? extends K> keyExtractor) {
+		return build(entry, functionKeyReader(entry, keyExtractor), true);
+	}
+
+	/**
+	 * Returns the first document with the given key.
+	 * 
+	 * @param key
+	 *            key to look up
+	 * @return the first matching document, in list order, or {@code null} if
+	 *         there is none
+	 */
+	public Document get(K key) {
+		IData element = getFirstElement(key);
+		return (element != null) ? wrap(element) : null;
+	}
+
+	/**
+	 * Returns all documents with the given key, in list order.
+	 * 
+	 * @param key
+	 *            key to look up
+	 * @return matching documents; an empty list if there are none
+	 */
+	public List<Document> getAll(K key) {
+		IData[] elements = getElements(key);
+		List<Document> documents = new ArrayList<Document>(elements.length);
+		for (IData element : elements) {
+			documents.add(wrap(element));
+		}
+		return documents;
+	}
+
+	/**
+	 * Returns whether at least one document has the given key.
+	 * 
+	 * @param key
+	 *            key to look up
+	 * @return {@code true} if the key is in the index
+	 */
+	public boolean containsKey(K key) {
+		return elementsByKey.containsKey(key);
+	}
+
+	/**
+	 * Returns the distinct keys in the index.
+	 * 
+	 * @return an unmodifiable set of keys
+	 */
+	public Set<K> keySet() {
+		return elementsByKey.keySet();
+	}
+
+	/**
+	 * Returns the number of distinct keys.
+	 * 
+	 * @return number of keys
+	 */
+	public int size() {
+		return elementsByKey.size();
+	}
+
+	/**
+	 * Returns the number of indexed documents, which is greater than
+	 * {@link #size()} if some documents share the same key.
+	 * 
+	 * @return number of indexed documents
+	 */
+	public int getIndexedCount() {
+		return indexedCount;
+	}
+
+	/**
+	 * Returns whether the index was built as a unique one, i.e. with
+	 * {@code buildUnique}.
+	 * 
+	 * @return {@code true} if each key identifies a single document
+	 */
+	public boolean isUnique() {
+		return unique;
+	}
+
+	IData getFirstElement(K key) {
+		IData[] elements = elementsByKey.get(key);
+		return (elements != null) ? elements[0] : null;
+	}
+
+	IData[] getElements(K key) {
+		IData[] elements = elementsByKey.get(key);
+		return (elements != null) ? elements : NO_ELEMENTS;
+	}
+
+	private Document wrap(IData element) {
+		return new DocumentImpl(element, factory, config);
+	}
+
+	/**
+	 * Reads the key of a list element.
+	 */
+	private interface KeyReader<K> {
+		K read(IData element);
+	}
+
+	private static <K> KeyReader<K> fieldKeyReader(CollectionEntry<Document> entry, Field<K> keyField) {
+		final FieldReader<K> reader = new FieldReader<K>(keyField, DocumentArrays.getOwner(entry).getBulkConverter());
+		return new KeyReader<K>() {
+			@Override
+			public K read(IData element) {
+				return reader.read(element);
+			}
+		};
+	}
+
+	private static <K> KeyReader<K> functionKeyReader(CollectionEntry<Document> entry,
+			final DocumentFunction<? extends K> keyExtractor) {
+		Preconditions.checkNotNull(keyExtractor, "keyExtractor cannot be null");
+		final DocumentImpl owner = DocumentArrays.getOwner(entry);
+		return new KeyReader<K>() {
+			private FlyweightDocument flyweight;
+
+			@Override
+			public K read(IData element) {
+				if (flyweight == null) {
+					flyweight = owner.newFlyweight(element);
+				} else {
+					flyweight.rebind(element);
+				}
+				return keyExtractor.apply(flyweight);
+			}
+		};
+	}
+
+	private static <K> DocumentIndex<K> build(CollectionEntry<Document> entry, KeyReader<K> keyReader, boolean unique) {
+		IData[] elements = DocumentArrays.readOrEmpty(entry);
+
+		// Multi-valued keys are collected in lists first and turned into arrays at the end
+		Map<K, Object> collected = new HashMap<K, Object>();
+		int indexedCount = 0;
+
+		for (int i = 0; i < elements.length; i++) {
+			IData element = elements[i];
+			if (element == null) {
+				continue;
+			}
+
+			K key = keyReader.read(element);
+			if (key == null) {
+				continue;
+			}
+
+			Object previous = collected.put(key, element);
+			if (previous != null) {
+				if (unique) {
+					throw new IllegalArgumentException("Duplicate key [" + key + "] found at index " + i
+							+ " while building unique index over entry '" + entry.getKey() + "'");
+				}
+				collected.put(key, append(previous, element));
+			}
+			indexedCount++;
+		}
+
+		Map<K, IData[]> elementsByKey = new HashMap<K, IData[]>(Math.max(16, (int) (collected.size() / 0.75f) + 1));
+		for (Map.Entry<K, Object> mapEntry : collected.entrySet()) {
+			Object value = mapEntry.getValue();
+			IData[] keyElements;
+			if (value instanceof IData) {
+				keyElements = new IData[] { (IData) value };
+			} else {
+				@SuppressWarnings("unchecked")
+				List<IData> list = (List<IData>) value;
+				keyElements = list.toArray(new IData[list.size()]);
+			}
+			elementsByKey.put(mapEntry.getKey(), keyElements);
+		}
+
+		return new DocumentIndex<K>(elementsByKey, unique, indexedCount, DocumentArrays.getOwner(entry));
+	}
+
+	private static Object append(Object previous, IData element) {
+		List<IData> list;
+		if (previous instanceof IData) {
+			list = new ArrayList<IData>(4);
+			list.add((IData) previous);
+		} else {
+			@SuppressWarnings("unchecked")
+			List<IData> previousList = (List<IData>) previous;
+			list = previousList;
+		}
+		list.add(element);
+		return list;
+	}
+}
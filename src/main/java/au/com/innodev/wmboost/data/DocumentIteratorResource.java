@@ -0,0 +1,35 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An iterator over documents that holds resources, such as open files, until
+ * it's closed.
+ * <p>
+ * Close it when done, typically in a {@code finally} block.
+ */
+public interface DocumentIteratorResource extends Iterator<Document>, Closeable {
+
+	/**
+	 * Releases the resources held by the iterator. Closing an iterator more
+	 * than once has no effect.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataUtil;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Hash joins between document lists.
+ * <p>
+ * The right list is indexed with a {@link DocumentIndex} and the left list is
+ * probed in a single pass, so a join costs O(n + m) instead of the O(n &middot;
+ * m) of nested loops. An index can also be built once, cached and reused for
+ * many joins.
+ * <p>
+ * Keys are compared with {@code equals}, after converting them to the type of
+ * their {@link Field}, so both key fields should have the same type.
+ */
+public final class DocumentJoins {
+
+	private DocumentJoins() {
+		// Non-instantiable
+	}
+
+	/**
+	 * Performs an inner join between two document lists.
+	 * 
+	 * @param left
+	 *            left document list
+	 * @param right
+	 *            right document list
+	 * @param leftKey
+	 *            join key in the left documents
+	 * @param rightKey
+	 *            join key in the right documents
+	 * @param <K>
+	 *            key type
+	 * @return joined documents
+	 * @see #hashJoin(CollectionEntry, Field, DocumentIndex, JoinType)
+	 */
+	public static <K> List<Document> hashJoin(CollectionEntry<Document> left, CollectionEntry<Document> right,
+			Field<K> leftKey, Field<K> rightKey) {
+		return hashJoin(left, right, leftKey, rightKey, JoinType.INNER);
+	}
+
+	/**
+	 * Performs a join between two document lists.
+	 * 
+	 * @param left
+	 *            left document list
+	 * @param right
+	 *            right document list
+	 * @param leftKey
+	 *            join key in the left documents
+	 * @param rightKey
+	 *            join key in the right documents
+	 * @param joinType
+	 *            type of join
+	 * @param <K>
+	 *            key type
+	 * @return joined documents
+	 * @see #hashJoin(CollectionEntry, Field, DocumentIndex, JoinType)
+	 */
+	public static <K> List<Document> hashJoin(CollectionEntry<Document> left, CollectionEntry<Document> right,
+			Field<K> leftKey, Field<K> rightKey, JoinType joinType) {
+		return hashJoin(left, leftKey, DocumentIndex.build(right, rightKey), joinType);
+	}
+
+	/**
+	 * Joins a document list with an index over the right documents.
+	 * <p>
+	 * One document is returned for every pair of matching documents, in left
+	 * list order and then in right list order. Each joined document is a new
+	 * document that contains the entries of the left document followed by the
+	 * entries of the right one; when both have an entry with the same key, only
+	 * the left entry is kept. Entry values are not copied, so the joined
+	 * documents share nested values with the originals.
+	 * 
+	 * @param left
+	 *            left document list
+	 * @param leftKey
+	 *            join key in the left documents
+	 * @param rightIndex
+	 *            index over the right documents
+	 * @param joinType
+	 *            type of join
+	 * @param <K>
+	 *            key type
+	 * @return joined documents
+	 */
+	public static <K> List<Document> hashJoin(CollectionEntry<Document> left, Field<K> leftKey,
+			DocumentIndex<K> rightIndex, JoinType joinType) {
+		Preconditions.checkNotNull(rightIndex, "rightIndex cannot be null");
+		Preconditions.checkNotNull(joinType, "joinType cannot be null");
+
+		IData[] elements = DocumentArrays.readOrEmpty(left);
+		DocumentImpl owner = DocumentArrays.getOwner(left);
+		DirectIDataFactory iDataFactory = owner.getConfig().getCustomIDataFactory();
+		FieldReader<K> keyReader = new FieldReader<K>(leftKey, owner.getBulkConverter());
+
+		List<Document> joined = new ArrayList<Document>(elements.length);
+		for (IData element : elements) {
+			if (element == null) {
+				continue;
+			}
+
+			K key = keyReader.read(element);
+			IData[] matches = (key != null) ? rightIndex.getElements(key) : null;
+
+			if (matches == null || matches.length == 0) {
+				if (joinType == JoinType.LEFT) {
+					joined.add(owner.newSibling(merge(element, null, iDataFactory)));
+				}
+			} else {
+				for (IData match : matches) {
+					joined.add(owner.newSibling(merge(element, match, iDataFactory)));
+				}
+			}
+		}
+
+		return joined;
+	}
+
+	/**
+	 * Enriches each document of a list, in place, with its matching document
+	 * from an index. A copy of the first matching document is put as a nested
+	 * document under {@code targetEntryKey}, so enriched documents can be
+	 * modified independently of each other and of the index. The copy is
+	 * shallow: entry values of the matching document, such as nested
+	 * documents, are shared. Documents without a match are left unchanged.
+	 * 
+	 * <pre>
+	 * DocumentJoins.enrich(pipeDoc.docsEntry("lines"), Field.of("sku", String.class), catalogIndex, "product");
+	 * </pre>
+	 * 
+	 * @param target
+	 *            document list to enrich
+	 * @param targetKey
+	 *            join key in the target documents
+	 * @param index
+	 *            index over the documents to add
+	 * @param targetEntryKey
+	 *            key of the entry that holds the matching document
+	 * @param <K>
+	 *            key type
+	 * @return number of enriched documents
+	 */
+	public static <K> int enrich(CollectionEntry<Document> target, Field<K> targetKey, DocumentIndex<K> index,
+			String targetEntryKey) {
+		Preconditions.checkNotNull(index, "index cannot be null");
+		Preconditions.checkHasLength(targetEntryKey, "Invalid target entry key was provided (null or empty string)");
+
+		IData[] elements = DocumentArrays.readOrEmpty(target);
+		DocumentImpl owner = DocumentArrays.getOwner(target);
+		DirectIDataFactory iDataFactory = owner.getConfig().getCustomIDataFactory();
+		FieldReader<K> keyReader = new FieldReader<K>(targetKey, owner.getBulkConverter());
+
+		int enriched = 0;
+		for (IData element : elements) {
+			if (element == null) {
+				continue;
+			}
+
+			K key = keyReader.read(element);
+			IData match = (key != null) ? index.getFirstElement(key) : null;
+			if (match != null) {
+				IDataCursor cursor = element.getCursor();
+				try {
+					IDataUtil.put(cursor, targetEntryKey, merge(match, null, iDataFactory));
+				} finally {
+					cursor.destroy();
+				}
+				enriched++;
+			}
+		}
+		return enriched;
+	}
+
+	private static IData merge(IData left, IData right, DirectIDataFactory iDataFactory) {
+		IData result = iDataFactory.create();
+		IDataCursor output = result.getCursor();
+		try {
+			output.last();
+			Set<String> leftKeys = new HashSet<String>();
+			copyEntries(left, output, leftKeys, null);
+			if (right != null) {
+				copyEntries(right, output, null, leftKeys);
+			}
+		} finally {
+			output.destroy();
+		}
+		return result;
+	}
+
+	private static void copyEntries(IData source, IDataCursor output, Set<String> copiedKeys, Set<String> excludedKeys) {
+		IDataCursor input = source.getCursor();
+		try {
+			boolean hasMore = input.first();
+			while (hasMore) {
+				String key = input.getKey();
+				if (excludedKeys == null || !excludedKeys.contains(key)) {
+					output.insertAfter(key, input.getValue());
+					if (copiedKeys != null) {
+						copiedKeys.add(key);
+					}
+				}
+				hasMore = input.next();
+			}
+		} finally {
+			input.destroy();
+		}
+	}
+}
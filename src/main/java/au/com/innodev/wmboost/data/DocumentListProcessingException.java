@@ -0,0 +1,86 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception thrown when processing one or more elements of a document list
+ * failed. It reports the failures together with the position of the elements
+ * that caused them.
+ * <p>
+ * The first failure is also set as the exception cause.
+ */
+@SuppressWarnings("serial")
+public class DocumentListProcessingException extends RuntimeException {
+
+	/**
+	 * A failure while processing a single list element.
+	 */
+	public static final class ElementFailure {
+		private final int index;
+		private final Throwable cause;
+
+		public ElementFailure(int index, Throwable cause) {
+			this.index = index;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return zero-based position of the element in the list
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the exception thrown while processing the element
+		 */
+		public Throwable getCause() {
+			return cause;
+		}
+	}
+
+	private final List<ElementFailure> failures;
+	private final int totalFailures;
+
+	public DocumentListProcessingException(String message, List<ElementFailure> failures, int totalFailures) {
+		super(message, failures.isEmpty() ? null : failures.get(0).getCause());
+		this.failures = Collections.unmodifiableList(failures);
+		this.totalFailures = totalFailures;
+	}
+
+	/**
+	 * Returns the reported failures, ordered by element position. Only the
+	 * first failures are reported if there were many of them.
+	 * 
+	 * @return reported failures
+	 */
+	public List<ElementFailure> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the number of elements that failed, which may be greater than
+	 * the size of {@link #getFailures()}.
+	 * 
+	 * @return total number of failed elements
+	 */
+	public int getTotalFailures() {
+		return totalFailures;
+	}
+}
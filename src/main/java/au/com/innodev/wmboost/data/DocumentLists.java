@@ -0,0 +1,282 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.ExecutorService;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Utilities for processing large lists of documents, such as the value of
+ * {@link Document#docsEntry(String)}.
+ * <p>
+ * Methods in this class operate on the underlying {@link IData} array rather
+ * than on a {@code List<Document>}, so individual elements don't need to be
+ * wrapped. A missing entry or an entry with a {@code null} value is treated as
+ * an empty list.
+ * <p>
+ * The parallel methods split the list into ranges that are processed by
+ * concurrent workers, each with its own {@link DocumentCursor}. The provided
+ * function or visitor must therefore be thread-safe and elements must not
+ * share mutable state. Failures are collected for all elements and reported
+ * together in a {@link DocumentListProcessingException}.
+ */
+public final class DocumentLists {
+
+	private DocumentLists() {
+		// Non-instantiable
+	}
+
+	/**
+	 * Returns a cursor that exposes each element of the list through a single,
+	 * reusable document instance.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @return a cursor positioned before the first element
+	 * @see DocumentCursor
+	 */
+	public static DocumentCursor cursor(CollectionEntry<Document> entry) {
+		IData[] elements = DocumentArrays.readOrEmpty(entry);
+		return new DocumentCursor(elements, 0, elements.length, DocumentArrays.getOwner(entry));
+	}
+
+	/**
+	 * Invokes the visitor for each element of the list, reusing a single
+	 * document instance for all elements.
+	 * <p>
+	 * The document passed to the visitor is only valid during the invocation.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param visitor
+	 *            callback for each element
+	 * @see DocumentCursor
+	 */
+	public static void forEachReusing(CollectionEntry<Document> entry, DocumentVisitor visitor) {
+		Preconditions.checkNotNull(visitor, "visitor cannot be null");
+
+		DocumentCursor cursor = cursor(entry);
+		while (cursor.next()) {
+			visitor.visit(cursor.get(), cursor.getIndex());
+		}
+	}
+
+	/**
+	 * Transforms each element of the list in parallel, using the default
+	 * executor, and replaces the entry value with the results.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param function
+	 *            transformation applied to each element
+	 * @param parallelism
+	 *            maximum number of elements processed concurrently
+	 * @throws DocumentListProcessingException
+	 *             if the function failed for any element, in which case the
+	 *             entry is left unchanged
+	 * @see #parallelMap(CollectionEntry, DocumentFunction, int,
+	 *      ExecutorService)
+	 */
+	public static void parallelMap(CollectionEntry<Document> entry, DocumentFunction<? extends Document> function,
+			int parallelism) {
+		parallelMap(entry, function, parallelism, ParallelRanges.getDefaultExecutor());
+	}
+
+	/**
+	 * Transforms each element of the list in parallel and replaces the entry
+	 * value with the results.
+	 * <p>
+	 * Results are kept in the same order as the original elements and they're
+	 * stored with a single put once all elements have been processed. A
+	 * {@code null} result is stored as a {@code null} element.
+	 * <p>
+	 * The calling thread also processes elements, so at most
+	 * {@code parallelism - 1} tasks are submitted to the executor.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param function
+	 *            transformation applied to each element
+	 * @param parallelism
+	 *            maximum number of elements processed concurrently
+	 * @param executor
+	 *            executor that runs the workers
+	 * @throws DocumentListProcessingException
+	 *             if the function failed for any element, in which case the
+	 *             entry is left unchanged
+	 */
+	public static void parallelMap(CollectionEntry<Document> entry, final DocumentFunction<? extends Document> function,
+			int parallelism, ExecutorService executor) {
+		Preconditions.checkNotNull(function, "function cannot be null");
+
+		final IData[] elements = DocumentArrays.readOrEmpty(entry);
+		final DocumentImpl owner = DocumentArrays.getOwner(entry);
+		final IData[] results = new IData[elements.length];
+		final FailureCollector failures = new FailureCollector();
+
+		ParallelRanges.execute(elements.length, parallelism, executor, new ParallelRanges.RangeTask() {
+			@Override
+			public void run(int fromIndex, int toIndex) {
+				DocumentCursor cursor = new DocumentCursor(elements, fromIndex, toIndex, owner);
+				while (cursor.next()) {
+					try {
+						Document result = function.apply(cursor.get());
+						results[cursor.getIndex()] = (result != null) ? result.getIData() : null;
+					} catch (RuntimeException e) {
+						failures.add(cursor.getIndex(), e);
+					}
+				}
+			}
+		});
+
+		failures.throwIfAny("Parallel map of entry '" + entry.getKey() + "'");
+		if (results.length > 0) {
+			DocumentArrays.write(entry, results);
+		}
+	}
+
+	/**
+	 * Invokes the visitor for each element of the list in parallel, using the
+	 * default executor.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param visitor
+	 *            callback for each element
+	 * @param parallelism
+	 *            maximum number of elements processed concurrently
+	 * @throws DocumentListProcessingException
+	 *             if the visitor failed for any element
+	 * @see #parallelForEach(CollectionEntry, DocumentVisitor, int,
+	 *      ExecutorService)
+	 */
+	public static void parallelForEach(CollectionEntry<Document> entry, DocumentVisitor visitor, int parallelism) {
+		parallelForEach(entry, visitor, parallelism, ParallelRanges.getDefaultExecutor());
+	}
+
+	/**
+	 * Invokes the visitor for each element of the list in parallel.
+	 * <p>
+	 * Elements may be modified in place by the visitor; the entry value itself
+	 * is not replaced.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param visitor
+	 *            callback for each element
+	 * @param parallelism
+	 *            maximum number of elements processed concurrently
+	 * @param executor
+	 *            executor that runs the workers
+	 * @throws DocumentListProcessingException
+	 *             if the visitor failed for any element
+	 */
+	public static void parallelForEach(CollectionEntry<Document> entry, final DocumentVisitor visitor, int parallelism,
+			ExecutorService executor) {
+		Preconditions.checkNotNull(visitor, "visitor cannot be null");
+
+		final IData[] elements = DocumentArrays.readOrEmpty(entry);
+		final DocumentImpl owner = DocumentArrays.getOwner(entry);
+		final FailureCollector failures = new FailureCollector();
+
+		ParallelRanges.execute(elements.length, parallelism, executor, new ParallelRanges.RangeTask() {
+			@Override
+			public void run(int fromIndex, int toIndex) {
+				DocumentCursor cursor = new DocumentCursor(elements, fromIndex, toIndex, owner);
+				while (cursor.next()) {
+					try {
+						visitor.visit(cursor.get(), cursor.getIndex());
+					} catch (RuntimeException e) {
+						failures.add(cursor.getIndex(), e);
+					}
+				}
+			}
+		});
+
+		failures.throwIfAny("Parallel processing of entry '" + entry.getKey() + "'");
+	}
+
+	/**
+	 * Removes structurally equal duplicates from a document list, keeping the
+	 * first occurrence of each document. The order of entries is significant.
+	 *
+	 * @param entry
+	 *            document list entry
+	 * @return number of elements removed
+	 * @see #distinct(CollectionEntry, KeyOrder)
+	 */
+	public static int distinct(CollectionEntry<Document> entry) {
+		return distinct(entry, KeyOrder.SIGNIFICANT);
+	}
+
+	/**
+	 * Removes structurally equal duplicates from a document list, keeping the
+	 * first occurrence of each document in its original position.
+	 * <p>
+	 * Elements are compared as in
+	 * {@link DocumentTrees#structurallyEquals(Document, Document, KeyOrder)}. Each
+	 * element is hashed once; elements with the same hash are then compared in
+	 * full. {@code null} elements are duplicates of each other. The entry is
+	 * only updated if duplicates were found.
+	 *
+	 * @param entry
+	 *            document list entry
+	 * @param keyOrder
+	 *            whether the order of entries is significant
+	 * @return number of elements removed
+	 */
+	public static int distinct(CollectionEntry<Document> entry, KeyOrder keyOrder) {
+		Preconditions.checkNotNull(keyOrder, "keyOrder cannot be null");
+
+		IData[] elements = DocumentArrays.readOrEmpty(entry);
+		if (elements.length < 2) {
+			return 0;
+		}
+
+		StructuralHasher hasher = new StructuralHasher(
+				DocumentArrays.getOwner(entry).getConfig().getConversionService(), keyOrder);
+		IData[] distinct = hasher.distinct(elements);
+		if (distinct != elements) {
+			DocumentArrays.write(entry, distinct);
+		}
+		return elements.length - distinct.length;
+	}
+
+	/**
+	 * Stores a new, empty {@link SpillingDocumentList} as the value of a
+	 * document list entry and returns it, so that elements can be appended
+	 * directly to it.
+	 * <p>
+	 * Elements stay in memory until their estimated size exceeds
+	 * {@code heapBudgetBytes}. From then on, they're stored in a temporary
+	 * file, which is deleted when the list is closed or the entry removed.
+	 *
+	 * @param entry
+	 *            document list entry
+	 * @param heapBudgetBytes
+	 *            approximate maximum number of bytes of elements kept in
+	 *            memory
+	 * @return the new list
+	 */
+	public static SpillingDocumentList newSpillingList(CollectionEntry<Document> entry, long heapBudgetBytes) {
+		SpillingDocumentList list = new SpillingDocumentList(DocumentArrays.getOwner(entry), heapBudgetBytes);
+		DocumentArrays.getImpl(entry).putRawVal(list);
+		return list;
+	}
+}
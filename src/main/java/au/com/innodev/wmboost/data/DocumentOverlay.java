@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A copy-on-write view of a document, typically used to snapshot a pipeline
+ * before a step that may need to be undone.
+ * <p>
+ * Changes made through {@link #getDocument()} are kept by the overlay, while
+ * the base document is left untouched. Reads of content that hasn't been
+ * changed fall through to the base. Each document level is copied (its
+ * element references, not its values) the first time it's modified; nested
+ * documents that are only read are never copied.
+ * <p>
+ * Example:
+ * 
+ * <pre>
+ * DocumentOverlay overlay = DocumentTrees.overlay(pipeDoc);
+ * try {
+ * 	riskyStep(overlay.getDocument());
+ * 	overlay.commit();
+ * } catch (StepFailedException e) {
+ * 	overlay.discard();
+ * }
+ * </pre>
+ * <p>
+ * Cursors, iterators and entry values obtained through the overlay document
+ * must not be used after {@link #commit()} or {@link #discard()}. Entry
+ * references remain valid. The base document must not be modified directly
+ * while an overlay has pending changes. An overlay isn't thread-safe.
+ *
+ * @see DocumentTrees#overlay(Document)
+ */
+public final class DocumentOverlay {
+
+	private final Document base;
+	private final OverlayIData overlayIData;
+	private final Document document;
+
+	DocumentOverlay(DocumentImpl base) {
+		this.base = Preconditions.checkNotNull(base);
+		this.overlayIData = new OverlayIData(base.getIData());
+		this.document = base.newSibling(overlayIData);
+	}
+
+	/**
+	 * Returns the document to read and modify through the overlay. Its
+	 * entries are iterated in the same order as the base document's until it
+	 * is modified, after which the usual {@link com.wm.data.IDataCursor}
+	 * ordering rules apply.
+	 *
+	 * @return the overlay document
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Returns the base document.
+	 *
+	 * @return the base document
+	 */
+	public Document getBase() {
+		return base;
+	}
+
+	/**
+	 * Applies the changes made through the overlay to the base document.
+	 * Afterwards, the overlay starts again without changes.
+	 */
+	public void commit() {
+		overlayIData.commit();
+	}
+
+	/**
+	 * Drops the changes made through the overlay. Afterwards, the overlay
+	 * document shows the base document's content again.
+	 */
+	public void discard() {
+		overlayIData.discard();
+	}
+}
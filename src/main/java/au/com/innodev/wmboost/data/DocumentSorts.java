@@ -0,0 +1,150 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.ExecutorService;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Sorts document lists by one or more fields.
+ * <p>
+ * Sorting a {@code List<Document>} with a comparator reads and converts the
+ * sort fields every time two documents are compared. Instead, the methods in
+ * this class extract and convert every sort key once, into arrays, sort a
+ * permutation of the list indexes and store the reordered {@link IData}
+ * array with a single put:
+ * 
+ * <pre>
+ * DocumentSorts.sort(pipeDoc.docsEntry("orders"), SortSpec.descending(Field.of("date", Date.class)));
+ * </pre>
+ * <p>
+ * The sort is stable: documents with equal keys keep their relative order.
+ * {@code null} elements are moved to the end of the list. If the entry doesn't
+ * exist or its value is {@code null}, it's left as is.
+ */
+public final class DocumentSorts {
+
+	private DocumentSorts() {
+		// Non-instantiable
+	}
+
+	/**
+	 * Sorts a document list.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param spec
+	 *            sort fields and directions
+	 */
+	public static void sort(CollectionEntry<Document> entry, SortSpec spec) {
+		sort(entry, spec, 1, null);
+	}
+
+	/**
+	 * Sorts a document list using up to {@code parallelism} workers from the
+	 * default executor. Small lists are sorted sequentially.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param spec
+	 *            sort fields and directions
+	 * @param parallelism
+	 *            maximum number of concurrent workers
+	 */
+	public static void sort(CollectionEntry<Document> entry, SortSpec spec, int parallelism) {
+		sort(entry, spec, parallelism, ParallelRanges.getDefaultExecutor());
+	}
+
+	/**
+	 * Sorts a document list using up to {@code parallelism} workers. Both key
+	 * extraction and sorting are done in parallel; small lists are sorted
+	 * sequentially.
+	 * 
+	 * @param entry
+	 *            document list entry
+	 * @param spec
+	 *            sort fields and directions
+	 * @param parallelism
+	 *            maximum number of concurrent workers
+	 * @param executor
+	 *            executor that runs the workers
+	 */
+	public static void sort(CollectionEntry<Document> entry, SortSpec spec, int parallelism,
+			ExecutorService executor) {
+		Preconditions.checkNotNull(spec, "spec cannot be null");
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+		}
+
+		IData[] elements = DocumentArrays.readOrEmpty(entry);
+		if (elements.length == 0) {
+			return;
+		}
+
+		IData[] sorted = sort(elements, spec, DocumentArrays.getOwner(entry).getBulkConverter(), parallelism,
+				executor);
+		DocumentArrays.write(entry, sorted);
+	}
+
+	/**
+	 * Returns a sorted copy of the elements.
+	 */
+	static IData[] sort(IData[] elements, SortSpec spec, BulkArrayConverter converter, int parallelism,
+			ExecutorService executor) {
+		// Null elements are left out of the sort and appended at the end
+		int nonNullCount = 0;
+		for (IData element : elements) {
+			if (element != null) {
+				nonNullCount++;
+			}
+		}
+
+		IData[] nonNull;
+		if (nonNullCount == elements.length) {
+			nonNull = elements;
+		} else {
+			nonNull = new IData[nonNullCount];
+			int position = 0;
+			for (IData element : elements) {
+				if (element != null) {
+					nonNull[position++] = element;
+				}
+			}
+		}
+
+		SortKeys keys = SortKeys.extract(nonNull, spec, converter, parallelism, executor);
+
+		int[] indexes = new int[nonNull.length];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = i;
+		}
+
+		if (parallelism > 1) {
+			indexes = IndexSort.parallelSort(indexes, keys, parallelism, executor);
+		} else {
+			IndexSort.sort(indexes, keys);
+		}
+
+		IData[] sorted = new IData[elements.length];
+		for (int i = 0; i < indexes.length; i++) {
+			sorted[i] = nonNull[indexes[i]];
+		}
+		return sorted;
+	}
+}
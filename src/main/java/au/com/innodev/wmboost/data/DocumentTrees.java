@@ -0,0 +1,346 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Utilities that operate on whole documents, including nested documents.
+ */
+public final class DocumentTrees {
+
+	private DocumentTrees() {
+
+	}
+
+	/**
+	 * Returns a 64-bit hash of the document structure that takes the order of
+	 * entries into account.
+	 *
+	 * @param document
+	 *            document to hash
+	 * @return structural hash
+	 * @see #structuralHash(Document, KeyOrder)
+	 */
+	public static long structuralHash(Document document) {
+		return structuralHash(document, KeyOrder.SIGNIFICANT);
+	}
+
+	/**
+	 * Returns a 64-bit hash of the document structure: its keys and values,
+	 * including those of nested documents and lists.
+	 * <p>
+	 * Structurally equal documents (see
+	 * {@link #structurallyEquals(Document, Document, KeyOrder)}) always have
+	 * the same hash.
+	 *
+	 * @param document
+	 *            document to hash
+	 * @param keyOrder
+	 *            whether the order of entries is significant
+	 * @return structural hash
+	 * @throws IllegalArgumentException
+	 *             if the document contains itself
+	 */
+	public static long structuralHash(Document document, KeyOrder keyOrder) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		return newHasher(document, keyOrder).hash(document.getIData());
+	}
+
+	/**
+	 * Returns whether two documents have the same entries in the same order.
+	 *
+	 * @param document1
+	 *            first document
+	 * @param document2
+	 *            second document
+	 * @return {@code true} if they're structurally equal
+	 * @see #structurallyEquals(Document, Document, KeyOrder)
+	 */
+	public static boolean structurallyEquals(Document document1, Document document2) {
+		return structurallyEquals(document1, document2, KeyOrder.SIGNIFICANT);
+	}
+
+	/**
+	 * Returns whether two documents have the same entries, comparing nested
+	 * documents and lists by value.
+	 * <p>
+	 * Numbers are compared by numeric value, so an {@code Integer} and a
+	 * {@code Long} with the same value are equal, and lists are equal to
+	 * arrays with the same elements. Strings are never equal to numbers.
+	 *
+	 * @param document1
+	 *            first document
+	 * @param document2
+	 *            second document
+	 * @param keyOrder
+	 *            whether the order of entries is significant
+	 * @return {@code true} if they're structurally equal
+	 * @throws IllegalArgumentException
+	 *             if a document contains itself
+	 */
+	public static boolean structurallyEquals(Document document1, Document document2, KeyOrder keyOrder) {
+		Preconditions.checkNotNull(document1, "document1 cannot be null");
+		Preconditions.checkNotNull(document2, "document2 cannot be null");
+		return newHasher(document1, keyOrder).equal(document1.getIData(), document2.getIData());
+	}
+
+	/**
+	 * Releases the resources held by the values of the document's entries,
+	 * such as the temporary files of {@link SpillingDocumentList} values.
+	 * Nested documents are processed as well. The entries themselves are
+	 * kept.
+	 *
+	 * @param document
+	 *            document to close
+	 */
+	public static void close(Document document) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+
+		List<IData> pending = new ArrayList<IData>();
+		Set<IData> visited = Collections.newSetFromMap(new IdentityHashMap<IData, Boolean>());
+		pending.add(document.getIData());
+		while (!pending.isEmpty()) {
+			IData iData = pending.remove(pending.size() - 1);
+			if (!visited.add(iData)) {
+				continue;
+			}
+
+			IDataCursor cursor = iData.getCursor();
+			try {
+				boolean hasMore = cursor.first();
+				while (hasMore) {
+					Object value = cursor.getValue();
+					if (value instanceof SpillingDocumentList) {
+						((SpillingDocumentList) value).close();
+					} else if (value instanceof IData) {
+						pending.add((IData) value);
+					} else if (value instanceof IData[]) {
+						for (IData element : (IData[]) value) {
+							if (element != null) {
+								pending.add(element);
+							}
+						}
+					}
+					hasMore = cursor.next();
+				}
+			} finally {
+				cursor.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Releases the underlying {@link IData} instance so that its storage can
+	 * be reused, if it was created by a {@link PooledIDataFactory}. Otherwise,
+	 * it does nothing and the instance is garbage collected as usual.
+	 * <p>
+	 * Once released, a pooled document must not be used anymore, nor any
+	 * reference to its {@code IData} instance. Nested documents aren't
+	 * released.
+	 *
+	 * @param document
+	 *            document to release
+	 * @throws IllegalStateException
+	 *             if the document had already been released
+	 */
+	public static void release(Document document) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+
+		IData iData = document.getIData();
+		if (iData instanceof PooledIData) {
+			((PooledIData) iData).release();
+		}
+	}
+
+	/**
+	 * Returns an immutable copy of the document, backed by a
+	 * {@link PersistentIData}. Nested documents are copied too, so the copy
+	 * can be shared among threads without further copying. Any attempt to
+	 * modify the copy throws an {@link UnsupportedOperationException}.
+	 * <p>
+	 * The copy uses the same configuration (e.g. type conversions) as the
+	 * original document.
+	 *
+	 * @param document
+	 *            document to copy
+	 * @return immutable copy
+	 * @see PersistentIData#copyOf(IData)
+	 */
+	public static Document immutableCopy(Document document) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		return getImpl(document).newSibling(PersistentIData.copyOf(document.getIData()));
+	}
+
+	/**
+	 * Returns a deep copy of the document.
+	 * <p>
+	 * Nested documents, document lists and other arrays are copied, at any
+	 * depth. Immutable values such as strings and boxed numbers are shared
+	 * with the original. Values referenced more than once, including
+	 * circular references, are copied once and referenced the same way in the
+	 * copy. The copy is iterative, so very deep documents don't exhaust the
+	 * stack.
+	 * <p>
+	 * New {@code IData} instances are created with the document's
+	 * {@link DirectIDataFactory}.
+	 *
+	 * @param document
+	 *            document to copy
+	 * @return the copy
+	 */
+	public static Document deepCopy(Document document) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		DocumentImpl impl = getImpl(document);
+		return impl.newSibling(new DeepCopier(impl.getConfig().getCustomIDataFactory()).copy(impl.getIData()));
+	}
+
+	/**
+	 * Returns a deep copy of the document, copying independent subtrees in
+	 * parallel using the default executor.
+	 *
+	 * @param document
+	 *            document to copy
+	 * @param parallelism
+	 *            maximum number of subtrees copied concurrently
+	 * @return the copy
+	 * @see #deepCopy(Document, int, ExecutorService)
+	 */
+	public static Document deepCopy(Document document, int parallelism) {
+		return deepCopy(document, parallelism, ParallelRanges.getDefaultExecutor());
+	}
+
+	/**
+	 * Returns a deep copy of the document, copying independent subtrees in
+	 * parallel. Meant for very large documents: small documents are copied by
+	 * the calling thread only.
+	 * <p>
+	 * The copy is the same as the one of {@link #deepCopy(Document)}, except
+	 * that a value referenced from subtrees copied by different workers may be
+	 * copied more than once. The {@link DirectIDataFactory} of the document
+	 * must be thread-safe.
+	 *
+	 * @param document
+	 *            document to copy
+	 * @param parallelism
+	 *            maximum number of subtrees copied concurrently
+	 * @param executor
+	 *            executor that runs the workers
+	 * @return the copy
+	 */
+	public static Document deepCopy(Document document, int parallelism, ExecutorService executor) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		DocumentImpl impl = getImpl(document);
+		DeepCopier copier = new DeepCopier(impl.getConfig().getCustomIDataFactory());
+		return impl.newSibling(copier.copy(impl.getIData(), parallelism, executor));
+	}
+
+	/**
+	 * Returns a deep copy of an {@code IData} instance. See
+	 * {@link #deepCopy(Document)} for the copy semantics.
+	 *
+	 * @param iData
+	 *            instance to copy
+	 * @param factory
+	 *            factory of the new {@code IData} instances
+	 * @return the copy
+	 */
+	public static IData deepCopy(IData iData, DirectIDataFactory factory) {
+		Preconditions.checkNotNull(iData, "iData cannot be null");
+		Preconditions.checkNotNull(factory, "factory cannot be null");
+		return new DeepCopier(factory).copy(iData);
+	}
+
+	/**
+	 * Returns a copy-on-write overlay of the document. Changes made through
+	 * the overlay don't affect the document until they are committed.
+	 * <p>
+	 * Creating an overlay is cheap: nothing is copied until the overlay is
+	 * modified.
+	 *
+	 * @param base
+	 *            document to overlay
+	 * @return new overlay
+	 */
+	public static DocumentOverlay overlay(Document base) {
+		Preconditions.checkNotNull(base, "base cannot be null");
+		return new DocumentOverlay(getImpl(base));
+	}
+
+	/**
+	 * Deduplicates the values of the document in place, using the default
+	 * options.
+	 *
+	 * @param document
+	 *            document to compact
+	 * @return the outcome, including the estimated number of bytes saved
+	 * @see #compact(Document, CompactOptions)
+	 */
+	public static CompactionResult compact(Document document) {
+		return compact(document, CompactOptions.defaults());
+	}
+
+	/**
+	 * Deduplicates the values of the document in place, at any depth. Meant
+	 * for large documents that are read much more than they are modified,
+	 * such as parsed messages or reference data kept in memory.
+	 * <p>
+	 * Equal string values are replaced by a single instance, interned through
+	 * a bounded table that only references them weakly and where each entry
+	 * key may only take part of the table (see {@link StringInterner}).
+	 * Nested documents that are structurally identical (same keys in the same
+	 * order and equal values of the same classes) and that only hold
+	 * immutable values are replaced by a single, shared
+	 * {@link PersistentIData} copy. The document itself is never replaced.
+	 * <p>
+	 * Because a shared nested document is referenced from several places, it
+	 * can't be modified: any attempt throws an
+	 * {@link UnsupportedOperationException}. To change it, put a new document
+	 * instead or work on a {@link #deepCopy(Document)} of the document.
+	 *
+	 * @param document
+	 *            document to compact
+	 * @param options
+	 *            what to deduplicate
+	 * @return the outcome, including the estimated number of bytes saved
+	 */
+	public static CompactionResult compact(Document document, CompactOptions options) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		Preconditions.checkNotNull(options, "options cannot be null");
+		return new DocumentCompactor(options).compact(document.getIData());
+	}
+
+	private static StructuralHasher newHasher(Document document, KeyOrder keyOrder) {
+		return new StructuralHasher(getImpl(document).getConfig().getConversionService(), keyOrder);
+	}
+
+	static DocumentImpl getImpl(Document document) {
+		if (!(document instanceof DocumentImpl)) {
+			throw new IllegalArgumentException("Unsupported document implementation: " + document.getClass().getName());
+		}
+		return (DocumentImpl) document;
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * Callback invoked for each element of a document list.
+ *
+ * @see DocumentLists#forEachReusing(CollectionEntry, DocumentVisitor)
+ */
+public interface DocumentVisitor {
+
+	/**
+	 * Processes a document list element.
+	 * <p>
+	 * The provided document may be a reused instance that is only valid during
+	 * this invocation. Don't keep a reference to it.
+	 * 
+	 * @param document
+	 *            the element, or {@code null} if the element is {@code null}
+	 * @param index
+	 *            zero-based position of the element in the list
+	 */
+	void visit(Document document, int index);
+}
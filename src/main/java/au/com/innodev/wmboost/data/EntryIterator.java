@@ -19,8 +19,6 @@ import java.io.Closeable;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-import org.springframework.core.convert.ConversionService;
-
 import com.wm.data.IDataCursor;
 
 import au.com.innodev.wmboost.data.internal.Preconditions;
@@ -30,13 +28,13 @@ import au.com.innodev.wmboost.data.internal.Preconditions;
  */
 class EntryIterator implements Iterator<KeyValue>, Closeable {
 
-	private final ConversionService conversionService;
+	private final BulkArrayConverter bulkConverter;
 	private IDataCursor cursor;
 	
 	EntryIterator(DocumentImpl document) {
 		Preconditions.checkNotNull(document, "document cannot be null");
 		this.cursor = document.getIData().getCursor();
-		this.conversionService =  document.getInternalConversionService();
+		this.bulkConverter = document.getBulkConverter();
 	}
 
 	@Override
@@ -55,7 +53,7 @@ class EntryIterator implements Iterator<KeyValue>, Closeable {
 		}
 		
 		String key = cursor.getKey();
-		Object value = EntryUtil.normaliseValueForGet(cursor.getValue(), conversionService);
+		Object value = EntryUtil.normaliseValueForGet(cursor.getValue(), bulkConverter);
 		return new ImmutableKeyValue(key, value);
 	}
 
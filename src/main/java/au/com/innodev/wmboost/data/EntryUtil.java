@@ -15,26 +15,26 @@
  */
 package au.com.innodev.wmboost.data;
 
-import java.util.Collection;
 import java.util.List;
 
-import org.springframework.core.convert.ConversionService;
 import org.springframework.core.convert.TypeDescriptor;
 
 import com.wm.data.IData;
 
 class EntryUtil {
 
-	public static Object normaliseValueForPut(Object value, ConversionService conversionService) {
+	public static Object normaliseValueForPut(Object value, BulkArrayConverter converter) {
 		if (value instanceof Document) {
-			return conversionService.convert(value, TypeDescriptor.forObject(value), TypeDescriptor.valueOf(IData.class));
+			return converter.getConversionService().convert(value, TypeDescriptor.forObject(value), TypeDescriptor.valueOf(IData.class));
 		}
 		else if (value instanceof Document[]) {
-			return conversionService.convert(value, TypeDescriptor.forObject(value), TypeDescriptor.valueOf(IData[].class));
+			return converter.toIDataArray((Document[]) value);
 		}
 		else if (value instanceof Iterable<?>) {
-			if (CollectionUtil.areAllElementsOfType((Collection<?>) value, Document.class)) {
-				return conversionService.convert(value, TypeDescriptor.forObject(value), TypeDescriptor.valueOf(IData[].class));
+			// Single pass: null if not all elements are documents
+			IData[] iDataArray = converter.toIDataArray((Iterable<?>) value);
+			if (iDataArray != null) {
+				return iDataArray;
 			}
 			else {
 				return value;
@@ -46,20 +46,20 @@ class EntryUtil {
 		}
 	}
 	
-	public static <A> A normaliseValueForGet(A value, ConversionService conversionService) {
+	public static <A> A normaliseValueForGet(A value, BulkArrayConverter converter) {
 		if (value instanceof IData) {
 			@SuppressWarnings("unchecked")
-			A normalised = (A) conversionService.convert(value, TypeDescriptor.forObject(value), TypeDescriptor.valueOf(Document.class));
+			A normalised = (A) converter.getConversionService().convert(value, TypeDescriptor.forObject(value), TypeDescriptor.valueOf(Document.class));
 			return normalised;
 		}		
 		else if (value instanceof IData[]) {
 			@SuppressWarnings("unchecked")
-			A normalised = (A) conversionService.convert(value, TypeDescriptor.forObject(value), getDocListType());
+			A normalised = (A) converter.convert(value, TypeDescriptor.forObject(value), getDocListType());
 			return normalised;
 		}
 		else if (value instanceof Object[]) {
 			@SuppressWarnings("unchecked")
-			A normalised = (A) conversionService.convert(value, TypeDescriptor.forObject(value), getObjectListType());
+			A normalised = (A) converter.convert(value, TypeDescriptor.forObject(value), getObjectListType());
 			return normalised;
 		}
 		else {
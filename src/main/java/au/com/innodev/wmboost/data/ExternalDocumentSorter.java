@@ -0,0 +1,575 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.SortSpec.SortKey;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Sorts sequences of documents that may not fit in memory.
+ * <p>
+ * Documents are read into memory until their estimated size reaches the
+ * memory budget. Each of these runs is then sorted and written to a temporary
+ * file in a compact binary form, and the runs are finally merged while the
+ * result is iterated. If all the documents fit within the budget, nothing is
+ * written to disk.
+ * <p>
+ * Sort keys are extracted and converted once per document, when it's read,
+ * and are stored with it, so merging doesn't read fields again. As with
+ * {@link DocumentSorts}, the sort is stable, {@code null} field values are
+ * sorted last and {@code null} documents are moved to the end.
+ * 
+ * <pre>
+ * DocumentIteratorResource sorted = new ExternalDocumentSorter(docFactory,
+ * 		SortSpec.ascending(Field.of("customerId", String.class)), 64 * 1024 * 1024).sort(records);
+ * try {
+ * 	while (sorted.hasNext()) {
+ * 		process(sorted.next());
+ * 	}
+ * } finally {
+ * 	sorted.close();
+ * }
+ * </pre>
+ * <p>
+ * Values held by the documents must be of common types (strings, numbers,
+ * dates, documents and arrays of them) or be {@link java.io.Serializable}.
+ * Disk failures are reported as {@link DocumentIOException}.
+ * <p>
+ * A sorter can be reused and shared by several threads.
+ */
+public final class ExternalDocumentSorter {
+
+	// Maximum number of runs merged at once, which bounds the number of open files
+	private static final int MAX_MERGE_WIDTH = 64;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Estimated per-record bookkeeping besides the document and its keys
+	private static final long RECORD_OVERHEAD = 48;
+
+	private final DocumentFactory documentFactory;
+	private final DirectIDataFactory iDataFactory;
+	private final BulkArrayConverter converter;
+	private final List<SortKey> sortKeys;
+	private final long memoryBudget;
+	private volatile File tempDirectory;
+
+	/**
+	 * Creates a sorter.
+	 *
+	 * @param documentFactory
+	 *            factory that creates the sorted documents and whose
+	 *            conversion rules are used to read sort fields
+	 * @param spec
+	 *            sort spec
+	 * @param memoryBudgetBytes
+	 *            approximate maximum number of bytes of documents kept in
+	 *            memory while sorting
+	 */
+	public ExternalDocumentSorter(DocumentFactory documentFactory, SortSpec spec, long memoryBudgetBytes) {
+		this.documentFactory = Preconditions.checkNotNull(documentFactory, "documentFactory cannot be null");
+		Preconditions.checkNotNull(spec, "spec cannot be null");
+		if (memoryBudgetBytes < 1) {
+			throw new IllegalArgumentException("Memory budget must be positive but was " + memoryBudgetBytes);
+		}
+
+		Document prototype = documentFactory.create();
+		if (!(prototype instanceof DocumentImpl)) {
+			throw new IllegalArgumentException(
+					"Unsupported document implementation: " + prototype.getClass().getName());
+		}
+		DocumentImpl prototypeImpl = (DocumentImpl) prototype;
+		this.iDataFactory = prototypeImpl.getConfig().getCustomIDataFactory();
+		this.converter = prototypeImpl.getBulkConverter();
+		this.sortKeys = spec.getKeys();
+		this.memoryBudget = memoryBudgetBytes;
+	}
+
+	/**
+	 * Sets the directory where runs are written. By default, the system's
+	 * temporary directory is used.
+	 *
+	 * @param tempDirectory
+	 *            directory for temporary files, or {@code null} to use the
+	 *            default
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Sorts the given documents.
+	 * <p>
+	 * All inputs are read before this method returns. Temporary files are
+	 * deleted when the returned iterator is closed or exhausted.
+	 *
+	 * @param inputs
+	 *            {@link IData} or {@link Document} instances, possibly
+	 *            {@code null}
+	 * @return the documents in sort order; {@code null} inputs are returned as
+	 *         {@code null}
+	 */
+	public DocumentIteratorResource sort(Iterable<?> inputs) {
+		Preconditions.checkNotNull(inputs, "inputs cannot be null");
+		return sort(inputs.iterator());
+	}
+
+	/**
+	 * Sorts the documents returned by an iterator.
+	 *
+	 * @param inputs
+	 *            iterator over {@link IData} or {@link Document} instances,
+	 *            possibly {@code null}
+	 * @return the documents in sort order; {@code null} inputs are returned as
+	 *         {@code null}
+	 * @see #sort(Iterable)
+	 */
+	public DocumentIteratorResource sort(Iterator<?> inputs) {
+		Preconditions.checkNotNull(inputs, "inputs cannot be null");
+
+		FieldReader<?>[] readers = newReaders();
+		RecordComparator comparator = new RecordComparator(sortKeys);
+		List<Record> buffer = new ArrayList<Record>();
+		List<File> runs = new ArrayList<File>();
+		long bufferedBytes = 0;
+		boolean completed = false;
+
+		try {
+			int index = 0;
+			while (inputs.hasNext()) {
+				Record record = newRecord(inputs.next(), index, readers);
+				buffer.add(record);
+				bufferedBytes += record.estimateSize();
+				index++;
+
+				if (bufferedBytes >= memoryBudget) {
+					runs.add(writeRun(buffer, comparator));
+					buffer.clear();
+					bufferedBytes = 0;
+				}
+			}
+
+			DocumentIteratorResource result;
+			if (runs.isEmpty()) {
+				Collections.sort(buffer, comparator);
+				result = new BufferIterator(buffer.iterator());
+			} else {
+				if (!buffer.isEmpty()) {
+					runs.add(writeRun(buffer, comparator));
+					buffer.clear();
+				}
+				while (runs.size() > MAX_MERGE_WIDTH) {
+					runs = mergePass(runs, comparator);
+				}
+				result = new MergeIterator(runs, comparator);
+			}
+			completed = true;
+			return result;
+		} finally {
+			if (!completed) {
+				deleteAll(runs);
+			}
+		}
+	}
+
+	private FieldReader<?>[] newReaders() {
+		FieldReader<?>[] readers = new FieldReader<?>[sortKeys.size()];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = newReader(sortKeys.get(i).getField());
+		}
+		return readers;
+	}
+
+	private <T> FieldReader<T> newReader(Field<T> field) {
+		return new FieldReader<T>(field, converter);
+	}
+
+	private Record newRecord(Object input, int index, FieldReader<?>[] readers) {
+		IData iData;
+		if (input == null) {
+			iData = null;
+		} else if (input instanceof IData) {
+			iData = (IData) input;
+		} else if (input instanceof Document) {
+			iData = ((Document) input).getIData();
+		} else {
+			throw new IllegalArgumentException("Unsupported input at index " + index
+					+ ". Expected IData or Document but was " + input.getClass().getName());
+		}
+
+		Object[] keys = new Object[readers.length];
+		if (iData != null) {
+			for (int i = 0; i < readers.length; i++) {
+				keys[i] = readers[i].read(iData);
+			}
+		}
+		return new Record(keys, iData);
+	}
+
+	private File writeRun(List<Record> records, RecordComparator comparator) {
+		Collections.sort(records, comparator);
+		return writeRun(records.iterator());
+	}
+
+	private File writeRun(Iterator<Record> records) {
+		File file = null;
+		try {
+			file = File.createTempFile("wmboost-sort-", ".run", tempDirectory);
+			DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+			try {
+				IDataCodec.Writer writer = new IDataCodec.Writer(output);
+				while (records.hasNext()) {
+					Record record = records.next();
+					output.writeBoolean(true);
+					output.writeBoolean(record.iData != null);
+					for (Object key : record.keys) {
+						writer.writeValue(key);
+					}
+					if (record.iData != null) {
+						writer.writeIData(record.iData);
+					}
+				}
+				output.writeBoolean(false);
+			} finally {
+				output.close();
+			}
+			return file;
+		} catch (IOException e) {
+			delete(file);
+			throw new DocumentIOException("Unable to write sort run to temporary file", e);
+		} catch (RuntimeException e) {
+			delete(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Merges consecutive groups of runs, so that earlier inputs remain in
+	 * earlier runs.
+	 */
+	private List<File> mergePass(List<File> runs, RecordComparator comparator) {
+		List<File> merged = new ArrayList<File>();
+		int processed = 0;
+		try {
+			for (int from = 0; from < runs.size(); from += MAX_MERGE_WIDTH) {
+				List<File> group = runs.subList(from, Math.min(from + MAX_MERGE_WIDTH, runs.size()));
+				MergeIterator groupIterator = new MergeIterator(new ArrayList<File>(group), comparator);
+				try {
+					merged.add(writeRun(groupIterator.records()));
+				} finally {
+					groupIterator.close();
+				}
+				processed = from + group.size();
+			}
+			return merged;
+		} catch (RuntimeException e) {
+			deleteAll(merged);
+			deleteAll(runs.subList(processed, runs.size()));
+			throw e;
+		}
+	}
+
+	private Document toDocument(IData iData) {
+		return (iData != null) ? documentFactory.wrap(iData) : null;
+	}
+
+	private static void deleteAll(List<File> files) {
+		for (File file : files) {
+			delete(file);
+		}
+	}
+
+	private static void delete(File file) {
+		if (file != null && file.exists() && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	private static final class Record {
+		final Object[] keys;
+		final IData iData;
+
+		Record(Object[] keys, IData iData) {
+			this.keys = keys;
+			this.iData = iData;
+		}
+
+		long estimateSize() {
+			long size = RECORD_OVERHEAD;
+			for (Object key : keys) {
+				size += IDataFootprint.estimateValue(key);
+			}
+			if (iData != null) {
+				size += IDataFootprint.estimate(iData);
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Compares records by their stored keys; {@code null} documents go last.
+	 */
+	private static final class RecordComparator implements Comparator<Record> {
+		private final boolean[] descending;
+
+		RecordComparator(List<SortKey> keys) {
+			this.descending = new boolean[keys.size()];
+			for (int i = 0; i < descending.length; i++) {
+				descending[i] = keys.get(i).isDescending();
+			}
+		}
+
+		@Override
+		public int compare(Record record1, Record record2) {
+			boolean null1 = (record1.iData == null);
+			boolean null2 = (record2.iData == null);
+			if (null1 || null2) {
+				return (null1 == null2) ? 0 : (null1 ? 1 : -1);
+			}
+
+			for (int i = 0; i < descending.length; i++) {
+				int comparison = compareKeys(record1.keys[i], record2.keys[i], descending[i]);
+				if (comparison != 0) {
+					return comparison;
+				}
+			}
+			return 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static int compareKeys(Object key1, Object key2, boolean descending) {
+			if (key1 == null || key2 == null) {
+				return (key1 == key2) ? 0 : ((key1 == null) ? 1 : -1);
+			}
+			int comparison = ((Comparable<Object>) key1).compareTo(key2);
+			return descending ? -comparison : comparison;
+		}
+	}
+
+	/**
+	 * Reads the records of a run, one at a time.
+	 */
+	private final class RunReader {
+		final int runIndex;
+		private final DataInputStream input;
+		private final IDataCodec.Reader reader;
+		private final int keyCount;
+		Record current;
+
+		RunReader(File file, int runIndex) throws IOException {
+			this.runIndex = runIndex;
+			this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			this.reader = new IDataCodec.Reader(input, iDataFactory);
+			this.keyCount = sortKeys.size();
+		}
+
+		boolean advance() throws IOException {
+			if (!input.readBoolean()) {
+				current = null;
+				return false;
+			}
+
+			boolean hasData = input.readBoolean();
+			Object[] keys = new Object[keyCount];
+			for (int i = 0; i < keyCount; i++) {
+				keys[i] = reader.readValue();
+			}
+			current = new Record(keys, hasData ? reader.readIData() : null);
+			return true;
+		}
+
+		void close() {
+			try {
+				input.close();
+			} catch (IOException e) {
+				// Nothing else can be done: the file is deleted next
+			}
+		}
+	}
+
+	/**
+	 * Iterates over a run sorted in memory.
+	 */
+	private final class BufferIterator implements DocumentIteratorResource {
+		private Iterator<Record> records;
+
+		BufferIterator(Iterator<Record> records) {
+			this.records = records;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (records != null && !records.hasNext()) {
+				close();
+			}
+			return records != null;
+		}
+
+		@Override
+		public Document next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return toDocument(records.next().iData);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Sorted documents can't be removed");
+		}
+
+		@Override
+		public void close() {
+			records = null;
+		}
+	}
+
+	/**
+	 * Merges runs written to disk, taking records from the earlier run when
+	 * keys are equal.
+	 */
+	private final class MergeIterator implements DocumentIteratorResource {
+		private final List<File> runs;
+		private final List<RunReader> readers;
+		private final PriorityQueue<RunReader> queue;
+		private boolean closed;
+
+		MergeIterator(List<File> runs, final RecordComparator comparator) {
+			this.runs = runs;
+			this.readers = new ArrayList<RunReader>(runs.size());
+			this.queue = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+				@Override
+				public int compare(RunReader reader1, RunReader reader2) {
+					int comparison = comparator.compare(reader1.current, reader2.current);
+					return (comparison != 0) ? comparison : (reader1.runIndex - reader2.runIndex);
+				}
+			});
+
+			boolean opened = false;
+			try {
+				for (int i = 0; i < runs.size(); i++) {
+					RunReader reader = new RunReader(runs.get(i), i);
+					readers.add(reader);
+					if (reader.advance()) {
+						queue.add(reader);
+					}
+				}
+				opened = true;
+			} catch (IOException e) {
+				throw new DocumentIOException("Unable to read sort run from temporary file", e);
+			} finally {
+				if (!opened) {
+					close();
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!closed && queue.isEmpty()) {
+				close();
+			}
+			return !closed;
+		}
+
+		@Override
+		public Document next() {
+			return toDocument(nextRecord().iData);
+		}
+
+		Record nextRecord() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			RunReader reader = queue.poll();
+			Record record = reader.current;
+			boolean advanced = false;
+			try {
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+				advanced = true;
+			} catch (IOException e) {
+				throw new DocumentIOException("Unable to read sort run from temporary file", e);
+			} finally {
+				if (!advanced) {
+					close();
+				}
+			}
+			return record;
+		}
+
+		/**
+		 * Returns the merged records, as used for intermediate merge passes.
+		 */
+		Iterator<Record> records() {
+			return new Iterator<Record>() {
+				@Override
+				public boolean hasNext() {
+					return MergeIterator.this.hasNext();
+				}
+
+				@Override
+				public Record next() {
+					return nextRecord();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Sorted documents can't be removed");
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			queue.clear();
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+			deleteAll(runs);
+		}
+	}
+}
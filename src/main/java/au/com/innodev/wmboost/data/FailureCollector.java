@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import au.com.innodev.wmboost.data.DocumentListProcessingException.ElementFailure;
+
+/**
+ * Collects element failures from concurrent workers.
+ * <p>
+ * Only the first failures are kept in order to bound memory usage when most
+ * elements fail.
+ */
+final class FailureCollector {
+
+	private static final int MAX_REPORTED_FAILURES = 100;
+
+	private final List<ElementFailure> failures = new ArrayList<ElementFailure>();
+	private int totalFailures;
+
+	synchronized void add(int index, Throwable cause) {
+		totalFailures++;
+		if (failures.size() < MAX_REPORTED_FAILURES) {
+			failures.add(new ElementFailure(index, cause));
+		}
+	}
+
+	synchronized int getTotalFailures() {
+		return totalFailures;
+	}
+
+	/**
+	 * Throws an exception if any failure was collected.
+	 *
+	 * @param operation description of the operation, used in the message
+	 */
+	synchronized void throwIfAny(String operation) {
+		if (totalFailures == 0) {
+			return;
+		}
+
+		List<ElementFailure> sorted = new ArrayList<ElementFailure>(failures);
+		Collections.sort(sorted, new Comparator<ElementFailure>() {
+			@Override
+			public int compare(ElementFailure failure1, ElementFailure failure2) {
+				int index1 = failure1.getIndex();
+				int index2 = failure2.getIndex();
+				return (index1 < index2) ? -1 : ((index1 == index2) ? 0 : 1);
+			}
+		});
+
+		throw new DocumentListProcessingException(operation + " failed for " + totalFailures
+				+ " element(s). First reported failure was at index " + sorted.get(0).getIndex(), sorted, totalFailures);
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Identifies a field of the documents in a list by its key and the type its
+ * value is converted to.
+ * <p>
+ * Fields are used by the operations that work over whole document lists
+ * (e.g. {@link DocumentIndex}). Because the type is known upfront, those
+ * operations read the value straight from each element and resolve the
+ * conversion once, instead of wrapping every element in a {@link Document}.
+ * <p>
+ * Instances are immutable and can be kept in constants:
+ * 
+ * <pre>
+ * private static final Field&lt;String&gt; SKU = Field.of("sku", String.class);
+ * </pre>
+ *
+ * @param <T>
+ *            value type
+ */
+public final class Field<T> {
+
+	private final String key;
+	private final Class<T> type;
+	private final TypeDescriptor typeDescriptor;
+
+	private Field(String key, Class<T> type) {
+		this.key = Preconditions.checkHasLength(key, "Invalid key was provided (null or empty string)");
+		this.type = Preconditions.checkNotNull(type, "type cannot be null");
+		if (type.isPrimitive()) {
+			throw new IllegalArgumentException("Primitive types are not supported. Use the wrapper type instead of " + type);
+		}
+		this.typeDescriptor = TypeDescriptor.valueOf(type);
+	}
+
+	/**
+	 * Creates a field.
+	 * 
+	 * @param key
+	 *            entry key
+	 * @param type
+	 *            type the value is converted to (e.g. {@code String.class})
+	 * @param <T>
+	 *            value type
+	 * @return a field
+	 */
+	public static <T> Field<T> of(String key, Class<T> type) {
+		return new Field<T>(key, type);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	TypeDescriptor getTypeDescriptor() {
+		return typeDescriptor;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * key.hashCode() + type.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Field<?>)) {
+			return false;
+		}
+		Field<?> other = (Field<?>) obj;
+		return key.equals(other.key) && type.equals(other.type);
+	}
+
+	@Override
+	public String toString() {
+		return key + " (" + type.getName() + ")";
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataUtil;
+
+import au.com.innodev.wmboost.data.BulkArrayConverter.ElementConverter;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+import au.com.innodev.wmboost.data.internal.TextUtil;
+
+/**
+ * Reads a {@link Field} straight from {@code IData} elements.
+ * <p>
+ * The converter is resolved once per run of values with the same runtime
+ * type, so reading the same field from many elements only looks it up once.
+ * A reader is thread-safe, so readers can be shared by compiled structures
+ * such as {@link DocumentFilter}.
+ *
+ * @param <T>
+ *            value type
+ */
+final class FieldReader<T> {
+
+	private final String key;
+	private final TypeDescriptor type;
+	private final BulkArrayConverter converter;
+
+	// Replaced as a whole so that concurrent readers always see a consistent pair
+	private Run run;
+
+	FieldReader(Field<T> field, BulkArrayConverter converter) {
+		Preconditions.checkNotNull(field, "field cannot be null");
+		this.key = field.getKey();
+		this.type = field.getTypeDescriptor();
+		this.converter = Preconditions.checkNotNull(converter);
+	}
+
+	/**
+	 * Returns the converted field value.
+	 *
+	 * @param element
+	 *            element to read from
+	 * @return the converted value or {@code null} if the entry doesn't exist
+	 *         or its value is {@code null}
+	 */
+	T read(IData element) {
+		Object value;
+		IDataCursor cursor = element.getCursor();
+		try {
+			value = IDataUtil.get(cursor, key);
+		} finally {
+			cursor.destroy();
+		}
+
+		return convert(value);
+	}
+
+	/**
+	 * Converts a value that was read from the field.
+	 *
+	 * @param value
+	 *            raw value, possibly {@code null}
+	 * @return the converted value
+	 */
+	T convert(Object value) {
+		if (value == null) {
+			return null;
+		}
+
+		Class<?> valueClass = value.getClass();
+		Run current = run;
+		if (current == null || current.valueClass != valueClass) {
+			current = new Run(valueClass, converter.getElementConverter(valueClass, type));
+			run = current;
+		}
+
+		Object converted;
+		try {
+			converted = current.converter.convert(value);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Unable to convert value to type '" + type
+					+ "' while retrieving document field '" + key + "'. Actual value was ["
+					+ TextUtil.abbreviateObj(value, 100) + "] of type '" + valueClass + "'", e);
+		}
+
+		@SuppressWarnings("unchecked")
+		T casted = (T) converted;
+		return casted;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	TypeDescriptor getType() {
+		return type;
+	}
+
+	private static final class Run {
+		final Class<?> valueClass;
+		final ElementConverter converter;
+
+		Run(Class<?> valueClass, ElementConverter converter) {
+			this.valueClass = valueClass;
+			this.converter = converter;
+		}
+	}
+}
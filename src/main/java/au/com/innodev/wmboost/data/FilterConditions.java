@@ -0,0 +1,344 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Conditions of a {@link DocumentFilter} and the matchers they compile into.
+ * <p>
+ * A condition is independent of any conversion service. Compiling it resolves
+ * a {@link FieldReader} for every field and converts constants to the field
+ * type, so matching an element doesn't involve any lookup.
+ */
+final class FilterConditions {
+
+	private FilterConditions() {
+
+	}
+
+	/**
+	 * A filter condition, before compilation.
+	 */
+	interface Condition {
+		Matcher compile(BulkArrayConverter converter);
+	}
+
+	/**
+	 * A compiled condition. Thread-safe.
+	 */
+	interface Matcher {
+		boolean matches(IData element);
+	}
+
+	enum Operator {
+		EQ("=="), NE("!="), GT(">"), GE(">="), LT("<"), LE("<="), IN("in"), IS_NULL("is null"), IS_NOT_NULL("is not null");
+
+		private final String symbol;
+
+		private Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		boolean isOrdering() {
+			return this == GT || this == GE || this == LT || this == LE;
+		}
+	}
+
+	static Condition field(Field<?> field, Operator operator, Object... constants) {
+		return new FieldCondition(field, operator, constants);
+	}
+
+	static Condition and(Condition condition1, Condition condition2) {
+		return new AndCondition(flatten(AndCondition.class, condition1, condition2));
+	}
+
+	static Condition or(Condition condition1, Condition condition2) {
+		return new OrCondition(flatten(OrCondition.class, condition1, condition2));
+	}
+
+	static Condition not(Condition condition) {
+		if (condition instanceof NotCondition) {
+			return ((NotCondition) condition).condition;
+		}
+		return new NotCondition(condition);
+	}
+
+	private static Condition[] flatten(Class<? extends CompositeCondition> type, Condition condition1,
+			Condition condition2) {
+		List<Condition> conditions = new ArrayList<Condition>();
+		for (Condition condition : new Condition[] { condition1, condition2 }) {
+			if (type.isInstance(condition)) {
+				conditions.addAll(Arrays.asList(((CompositeCondition) condition).conditions));
+			} else {
+				conditions.add(condition);
+			}
+		}
+		return conditions.toArray(new Condition[conditions.size()]);
+	}
+
+	/**
+	 * Makes equal values compare as equal, regardless of representation (e.g.
+	 * {@code 1.0} and {@code 1.00}).
+	 */
+	private static Object normalise(Object value) {
+		if (value instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) value;
+			return (decimal.signum() == 0) ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+		}
+		return value;
+	}
+
+	private static final class FieldCondition implements Condition {
+		private final Field<?> field;
+		private final Operator operator;
+		private final Object[] constants;
+
+		FieldCondition(Field<?> field, Operator operator, Object[] constants) {
+			this.field = Preconditions.checkNotNull(field);
+			this.operator = Preconditions.checkNotNull(operator);
+			this.constants = constants.clone();
+
+			for (Object constant : this.constants) {
+				if (constant == null) {
+					throw new IllegalArgumentException("Constants cannot be null for field '" + field.getKey()
+							+ "'. Use isNull() or isNotNull() instead");
+				}
+			}
+			if (operator.isOrdering() && !Comparable.class.isAssignableFrom(field.getType())) {
+				throw new IllegalArgumentException("Operator '" + operator.symbol + "' requires a comparable type but "
+						+ field + " isn't comparable");
+			}
+		}
+
+		@Override
+		public Matcher compile(BulkArrayConverter converter) {
+			final FieldReader<?> reader = new FieldReader<Object>(castField(field), converter);
+			Object[] converted = convertConstants(converter.getConversionService(), reader.getType());
+
+			switch (operator) {
+			case IS_NULL:
+				return new Matcher() {
+					@Override
+					public boolean matches(IData element) {
+						return reader.read(element) == null;
+					}
+				};
+			case IS_NOT_NULL:
+				return new Matcher() {
+					@Override
+					public boolean matches(IData element) {
+						return reader.read(element) != null;
+					}
+				};
+			case EQ:
+			case NE:
+				final Object expected = normalise(converted[0]);
+				final boolean equal = (operator == Operator.EQ);
+				return new Matcher() {
+					@Override
+					public boolean matches(IData element) {
+						Object value = reader.read(element);
+						return value != null && normalise(value).equals(expected) == equal;
+					}
+				};
+			case IN:
+				final Set<Object> candidates = new HashSet<Object>();
+				for (Object constant : converted) {
+					candidates.add(normalise(constant));
+				}
+				return new Matcher() {
+					@Override
+					public boolean matches(IData element) {
+						Object value = reader.read(element);
+						return value != null && candidates.contains(normalise(value));
+					}
+				};
+			default:
+				@SuppressWarnings("unchecked")
+				final Comparable<Object> bound = (Comparable<Object>) converted[0];
+				final Operator ordering = operator;
+				return new Matcher() {
+					@Override
+					public boolean matches(IData element) {
+						Object value = reader.read(element);
+						if (value == null) {
+							return false;
+						}
+						// Compares the bound to the value, so the result is reversed
+						int comparison = -bound.compareTo(value);
+						switch (ordering) {
+						case GT:
+							return comparison > 0;
+						case GE:
+							return comparison >= 0;
+						case LT:
+							return comparison < 0;
+						default:
+							return comparison <= 0;
+						}
+					}
+				};
+			}
+		}
+
+		private Object[] convertConstants(ConversionService conversionService, TypeDescriptor type) {
+			Object[] converted = new Object[constants.length];
+			for (int i = 0; i < constants.length; i++) {
+				try {
+					converted[i] = conversionService.convert(constants[i], TypeDescriptor.forObject(constants[i]), type);
+				} catch (RuntimeException e) {
+					throw new IllegalArgumentException("Unable to convert constant [" + constants[i] + "] to type '"
+							+ type + "' for field '" + field.getKey() + "'", e);
+				}
+			}
+			return converted;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Field<Object> castField(Field<?> field) {
+			return (Field<Object>) field;
+		}
+
+		@Override
+		public String toString() {
+			if (constants.length == 0) {
+				return field.getKey() + " " + operator.symbol;
+			} else if (operator == Operator.IN) {
+				return field.getKey() + " in " + Arrays.toString(constants);
+			} else {
+				return field.getKey() + " " + operator.symbol + " " + constants[0];
+			}
+		}
+	}
+
+	private abstract static class CompositeCondition implements Condition {
+		final Condition[] conditions;
+
+		CompositeCondition(Condition[] conditions) {
+			this.conditions = conditions;
+		}
+
+		final Matcher[] compileAll(BulkArrayConverter converter) {
+			Matcher[] matchers = new Matcher[conditions.length];
+			for (int i = 0; i < conditions.length; i++) {
+				matchers[i] = conditions[i].compile(converter);
+			}
+			return matchers;
+		}
+
+		final String toString(String separator) {
+			StringBuilder sb = new StringBuilder("(");
+			for (int i = 0; i < conditions.length; i++) {
+				if (i > 0) {
+					sb.append(separator);
+				}
+				sb.append(conditions[i]);
+			}
+			return sb.append(")").toString();
+		}
+	}
+
+	private static final class AndCondition extends CompositeCondition {
+		AndCondition(Condition[] conditions) {
+			super(conditions);
+		}
+
+		@Override
+		public Matcher compile(BulkArrayConverter converter) {
+			final Matcher[] matchers = compileAll(converter);
+			return new Matcher() {
+				@Override
+				public boolean matches(IData element) {
+					for (Matcher matcher : matchers) {
+						if (!matcher.matches(element)) {
+							return false;
+						}
+					}
+					return true;
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return toString(" and ");
+		}
+	}
+
+	private static final class OrCondition extends CompositeCondition {
+		OrCondition(Condition[] conditions) {
+			super(conditions);
+		}
+
+		@Override
+		public Matcher compile(BulkArrayConverter converter) {
+			final Matcher[] matchers = compileAll(converter);
+			return new Matcher() {
+				@Override
+				public boolean matches(IData element) {
+					for (Matcher matcher : matchers) {
+						if (matcher.matches(element)) {
+							return true;
+						}
+					}
+					return false;
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return toString(" or ");
+		}
+	}
+
+	private static final class NotCondition implements Condition {
+		private final Condition condition;
+
+		NotCondition(Condition condition) {
+			this.condition = condition;
+		}
+
+		@Override
+		public Matcher compile(BulkArrayConverter converter) {
+			final Matcher matcher = condition.compile(converter);
+			return new Matcher() {
+				@Override
+				public boolean matches(IData element) {
+					return !matcher.matches(element);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "not " + condition;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.math.BigDecimal;
+
+import au.com.innodev.wmboost.data.FilterConditions.Operator;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A field in a {@link DocumentFilter} condition.
+ * <p>
+ * Constants are converted to the field type when the filter is compiled. If
+ * the field was created without a type, the type of the constant is used
+ * (e.g. {@code String} for {@code eq("OPEN")}), except for numbers, which are
+ * all compared as {@code BigDecimal}: {@code field("amount").gt(100)} matches
+ * an amount of {@code "150.75"}. Give the type explicitly when it differs
+ * from the constant's, e.g. {@code field("count", Integer.class).gt(100)}.
+ * <p>
+ * Comparisons are {@code false} for elements where the field is missing or
+ * {@code null}; use {@link #isNull()} to match those. Applying a filter
+ * throws an {@code IllegalArgumentException} if an element value can't be
+ * converted to the field type.
+ */
+public final class FilterField {
+
+	private final String key;
+	private final Class<?> type;
+
+	FilterField(String key, Class<?> type) {
+		this.key = Preconditions.checkHasLength(key, "Invalid key was provided (null or empty string)");
+		this.type = type;
+	}
+
+	/**
+	 * Matches elements whose value equals the given value. Decimal values are
+	 * compared regardless of their scale.
+	 */
+	public DocumentFilter eq(Object value) {
+		return newFilter(Operator.EQ, value);
+	}
+
+	/**
+	 * Matches elements whose value is not {@code null} and doesn't equal the
+	 * given value.
+	 */
+	public DocumentFilter ne(Object value) {
+		return newFilter(Operator.NE, value);
+	}
+
+	/**
+	 * Matches elements whose value is greater than the given value. Missing
+	 * and {@code null} values don't match. Throws an
+	 * {@code IllegalArgumentException} if the field type isn't
+	 * {@link Comparable}.
+	 */
+	public DocumentFilter gt(Object value) {
+		return newFilter(Operator.GT, value);
+	}
+
+	/**
+	 * Matches elements whose value is greater than or equal to the given
+	 * value. Missing and {@code null} values don't match. Throws an
+	 * {@code IllegalArgumentException} if the field type isn't
+	 * {@link Comparable}.
+	 */
+	public DocumentFilter ge(Object value) {
+		return newFilter(Operator.GE, value);
+	}
+
+	/**
+	 * Matches elements whose value is less than the given value. Missing and
+	 * {@code null} values don't match. Throws an
+	 * {@code IllegalArgumentException} if the field type isn't
+	 * {@link Comparable}.
+	 */
+	public DocumentFilter lt(Object value) {
+		return newFilter(Operator.LT, value);
+	}
+
+	/**
+	 * Matches elements whose value is less than or equal to the given value.
+	 * Missing and {@code null} values don't match. Throws an
+	 * {@code IllegalArgumentException} if the field type isn't
+	 * {@link Comparable}.
+	 */
+	public DocumentFilter le(Object value) {
+		return newFilter(Operator.LE, value);
+	}
+
+	/**
+	 * Matches elements whose value equals any of the given values.
+	 */
+	public DocumentFilter in(Object... values) {
+		Preconditions.checkNotNull(values, "values cannot be null");
+		if (values.length == 0) {
+			throw new IllegalArgumentException("At least one value must be provided for field '" + key + "'");
+		}
+		return newFilter(Operator.IN, values);
+	}
+
+	/**
+	 * Matches elements where the field is missing or {@code null}.
+	 */
+	public DocumentFilter isNull() {
+		return newFilter(Operator.IS_NULL);
+	}
+
+	/**
+	 * Matches elements where the field is present and not {@code null}.
+	 */
+	public DocumentFilter isNotNull() {
+		return newFilter(Operator.IS_NOT_NULL);
+	}
+
+	private DocumentFilter newFilter(Operator operator, Object... constants) {
+		Class<?> fieldType = type;
+		if (fieldType == null) {
+			fieldType = inferType(constants);
+		}
+		return new DocumentFilter(FilterConditions.field(Field.of(key, fieldType), operator, constants));
+	}
+
+	private static Class<?> inferType(Object[] constants) {
+		if (constants.length == 0 || constants[0] == null) {
+			return Object.class;
+		} else if (constants[0] instanceof Number) {
+			// Integral constants must still match decimal values
+			return BigDecimal.class;
+		} else {
+			return constants[0].getClass();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A document that can be rebound to another {@code IData} instance. Used as
+ * the reusable document of flyweight iterations (see {@link DocumentCursor})
+ * and never exposed as a regular document.
+ * <p>
+ * Regular documents keep their {@code IData} in a final field; only this
+ * class trades that for rebinding.
+ */
+final class FlyweightDocument extends DocumentImpl {
+
+	private IData current;
+
+	FlyweightDocument(IData document, DocumentFactory factory, DocumentConfig config) {
+		super(document, factory, config);
+		this.current = document;
+	}
+
+	/**
+	 * Makes this instance wrap another {@code IData}.
+	 * 
+	 * @param document instance to wrap
+	 */
+	void rebind(IData document) {
+		this.current = Preconditions.checkNotNull(document);
+	}
+
+	@Override
+	public IData getIData() {
+		return current;
+	}
+}
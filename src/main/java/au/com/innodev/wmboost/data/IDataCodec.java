@@ -0,0 +1,432 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+/**
+ * A compact binary encoding of {@code IData} instances and of the values
+ * they usually hold.
+ * <p>
+ * Entry order and duplicate keys are preserved. Keys are written in full the
+ * first time they appear in a stream and as a small number afterwards, which
+ * keeps streams of documents with the same structure compact. Values of
+ * types without a dedicated encoding are written with Java serialization, so
+ * they must be {@link Serializable}.
+ * <p>
+ * A writer and the reader of the same stream must process the same sequence
+ * of values, since both keep track of the keys seen so far.
+ */
+final class IDataCodec {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// Bounds the key dictionary for documents with arbitrary keys
+	private static final int MAX_DICTIONARY_SIZE = 4096;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int IDATA = 2;
+	private static final int IDATA_ARRAY = 3;
+	private static final int STRING_ARRAY = 4;
+	private static final int STRING_TABLE = 5;
+	private static final int INTEGER = 6;
+	private static final int LONG = 7;
+	private static final int DOUBLE = 8;
+	private static final int FLOAT = 9;
+	private static final int BOOLEAN = 10;
+	private static final int BIG_DECIMAL = 11;
+	private static final int BIG_INTEGER = 12;
+	private static final int DATE = 13;
+	private static final int SHORT = 14;
+	private static final int BYTE = 15;
+	private static final int CHARACTER = 16;
+	private static final int BYTES = 17;
+	private static final int OBJECT_ARRAY = 18;
+	private static final int SERIALIZED = 19;
+
+	private IDataCodec() {
+
+	}
+
+	/**
+	 * Writes documents and values to a stream.
+	 */
+	static final class Writer {
+		private final DataOutputStream output;
+		private final Map<String, Integer> keyIds = new HashMap<String, Integer>();
+
+		Writer(DataOutputStream output) {
+			this.output = output;
+		}
+
+		void writeIData(IData iData) throws IOException {
+			IDataCursor cursor = iData.getCursor();
+			try {
+				boolean hasMore = cursor.first();
+				while (hasMore) {
+					output.writeBoolean(true);
+					writeKey(cursor.getKey());
+					writeValue(cursor.getValue());
+					hasMore = cursor.next();
+				}
+			} finally {
+				cursor.destroy();
+			}
+			output.writeBoolean(false);
+		}
+
+		void writeValue(Object value) throws IOException {
+			if (value == null) {
+				output.writeByte(NULL);
+			} else if (value instanceof String) {
+				output.writeByte(STRING);
+				writeString((String) value);
+			} else if (value instanceof IData) {
+				output.writeByte(IDATA);
+				writeIData((IData) value);
+			} else if (value instanceof Document) {
+				output.writeByte(IDATA);
+				writeIData(((Document) value).getIData());
+			} else if (value instanceof IData[]) {
+				IData[] array = (IData[]) value;
+				output.writeByte(IDATA_ARRAY);
+				writeVarInt(array.length);
+				for (IData element : array) {
+					writeValue(element);
+				}
+			} else if (value instanceof String[][]) {
+				String[][] table = (String[][]) value;
+				output.writeByte(STRING_TABLE);
+				writeVarInt(table.length);
+				for (String[] row : table) {
+					writeValue(row);
+				}
+			} else if (value instanceof String[]) {
+				String[] array = (String[]) value;
+				output.writeByte(STRING_ARRAY);
+				writeVarInt(array.length);
+				for (String element : array) {
+					writeNullableString(element);
+				}
+			} else if (value instanceof Integer) {
+				output.writeByte(INTEGER);
+				output.writeInt(((Integer) value).intValue());
+			} else if (value instanceof Long) {
+				output.writeByte(LONG);
+				output.writeLong(((Long) value).longValue());
+			} else if (value instanceof Double) {
+				output.writeByte(DOUBLE);
+				output.writeDouble(((Double) value).doubleValue());
+			} else if (value instanceof Float) {
+				output.writeByte(FLOAT);
+				output.writeFloat(((Float) value).floatValue());
+			} else if (value instanceof Boolean) {
+				output.writeByte(BOOLEAN);
+				output.writeBoolean(((Boolean) value).booleanValue());
+			} else if (value instanceof BigDecimal) {
+				BigDecimal decimal = (BigDecimal) value;
+				output.writeByte(BIG_DECIMAL);
+				writeBytes(decimal.unscaledValue().toByteArray());
+				output.writeInt(decimal.scale());
+			} else if (value instanceof BigInteger) {
+				output.writeByte(BIG_INTEGER);
+				writeBytes(((BigInteger) value).toByteArray());
+			} else if (value.getClass() == Date.class) {
+				output.writeByte(DATE);
+				output.writeLong(((Date) value).getTime());
+			} else if (value instanceof Short) {
+				output.writeByte(SHORT);
+				output.writeShort(((Short) value).shortValue());
+			} else if (value instanceof Byte) {
+				output.writeByte(BYTE);
+				output.writeByte(((Byte) value).byteValue());
+			} else if (value instanceof Character) {
+				output.writeByte(CHARACTER);
+				output.writeChar(((Character) value).charValue());
+			} else if (value instanceof byte[]) {
+				output.writeByte(BYTES);
+				writeBytes((byte[]) value);
+			} else if (value instanceof Object[] && isEncodableComponent(value.getClass().getComponentType())) {
+				Object[] array = (Object[]) value;
+				output.writeByte(OBJECT_ARRAY);
+				writeString(value.getClass().getComponentType().getName());
+				writeVarInt(array.length);
+				for (Object element : array) {
+					writeValue(element);
+				}
+			} else if (value instanceof Serializable) {
+				output.writeByte(SERIALIZED);
+				writeBytes(serialize(value));
+			} else {
+				throw new DocumentIOException("Unable to encode value of type '" + value.getClass().getName()
+						+ "'. Only IData, common value types and Serializable objects are supported");
+			}
+		}
+
+		private void writeKey(String key) throws IOException {
+			Integer id = keyIds.get(key);
+			if (id != null) {
+				writeVarInt(id.intValue() + 1);
+			} else {
+				writeVarInt(0);
+				writeString(key);
+				if (keyIds.size() < MAX_DICTIONARY_SIZE) {
+					keyIds.put(key, Integer.valueOf(keyIds.size()));
+				}
+			}
+		}
+
+		private void writeNullableString(String value) throws IOException {
+			if (value == null) {
+				writeVarInt(0);
+			} else {
+				byte[] bytes = value.getBytes(UTF_8);
+				writeVarInt(bytes.length + 1);
+				output.write(bytes);
+			}
+		}
+
+		private void writeString(String value) throws IOException {
+			writeBytes(value.getBytes(UTF_8));
+		}
+
+		private void writeBytes(byte[] bytes) throws IOException {
+			writeVarInt(bytes.length);
+			output.write(bytes);
+		}
+
+		private void writeVarInt(int value) throws IOException {
+			int remaining = value;
+			while ((remaining & ~0x7F) != 0) {
+				output.writeByte((remaining & 0x7F) | 0x80);
+				remaining >>>= 7;
+			}
+			output.writeByte(remaining);
+		}
+	}
+
+	/**
+	 * Reads documents and values written by a {@link Writer}.
+	 */
+	static final class Reader {
+		private final DataInputStream input;
+		private final DirectIDataFactory iDataFactory;
+		private final List<String> keys = new ArrayList<String>();
+
+		Reader(DataInputStream input, DirectIDataFactory iDataFactory) {
+			this.input = input;
+			this.iDataFactory = iDataFactory;
+		}
+
+		IData readIData() throws IOException {
+			IData iData = iDataFactory.create();
+			IDataCursor cursor = iData.getCursor();
+			try {
+				// Entries are only appended, in their original order
+				cursor.last();
+				while (input.readBoolean()) {
+					String key = readKey();
+					cursor.insertAfter(key, readValue());
+				}
+			} finally {
+				cursor.destroy();
+			}
+			return iData;
+		}
+
+		Object readValue() throws IOException {
+			int tag = input.readUnsignedByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString();
+			case IDATA:
+				return readIData();
+			case IDATA_ARRAY: {
+				IData[] array = new IData[readVarInt()];
+				for (int i = 0; i < array.length; i++) {
+					array[i] = (IData) readValue();
+				}
+				return array;
+			}
+			case STRING_TABLE: {
+				String[][] table = new String[readVarInt()][];
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (String[]) readValue();
+				}
+				return table;
+			}
+			case STRING_ARRAY: {
+				String[] array = new String[readVarInt()];
+				for (int i = 0; i < array.length; i++) {
+					array[i] = readNullableString();
+				}
+				return array;
+			}
+			case INTEGER:
+				return Integer.valueOf(input.readInt());
+			case LONG:
+				return Long.valueOf(input.readLong());
+			case DOUBLE:
+				return Double.valueOf(input.readDouble());
+			case FLOAT:
+				return Float.valueOf(input.readFloat());
+			case BOOLEAN:
+				return Boolean.valueOf(input.readBoolean());
+			case BIG_DECIMAL: {
+				BigInteger unscaled = new BigInteger(readBytes());
+				return new BigDecimal(unscaled, input.readInt());
+			}
+			case BIG_INTEGER:
+				return new BigInteger(readBytes());
+			case DATE:
+				return new Date(input.readLong());
+			case SHORT:
+				return Short.valueOf(input.readShort());
+			case BYTE:
+				return Byte.valueOf(input.readByte());
+			case CHARACTER:
+				return Character.valueOf(input.readChar());
+			case BYTES:
+				return readBytes();
+			case OBJECT_ARRAY: {
+				Class<?> componentType = loadComponentType(readString());
+				Object[] array = (Object[]) Array.newInstance(componentType, readVarInt());
+				for (int i = 0; i < array.length; i++) {
+					array[i] = readValue();
+				}
+				return array;
+			}
+			case SERIALIZED:
+				return deserialize(readBytes());
+			default:
+				throw new DocumentIOException("Unexpected value tag " + tag + ". The data is corrupted");
+			}
+		}
+
+		private String readKey() throws IOException {
+			int id = readVarInt();
+			if (id > 0) {
+				return keys.get(id - 1);
+			}
+
+			String key = readString();
+			if (keys.size() < MAX_DICTIONARY_SIZE) {
+				keys.add(key);
+			}
+			return key;
+		}
+
+		private String readNullableString() throws IOException {
+			int length = readVarInt();
+			if (length == 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length - 1];
+			input.readFully(bytes);
+			return new String(bytes, UTF_8);
+		}
+
+		private String readString() throws IOException {
+			return new String(readBytes(), UTF_8);
+		}
+
+		private byte[] readBytes() throws IOException {
+			byte[] bytes = new byte[readVarInt()];
+			input.readFully(bytes);
+			return bytes;
+		}
+
+		private int readVarInt() throws IOException {
+			int value = 0;
+			int shift = 0;
+			while (true) {
+				int next = input.readUnsignedByte();
+				value |= (next & 0x7F) << shift;
+				if ((next & 0x80) == 0) {
+					return value;
+				}
+				shift += 7;
+				if (shift > 28) {
+					throw new DocumentIOException("Malformed length. The data is corrupted");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Object arrays are encoded element by element when their component type
+	 * can be restored without a class loader lookup outside the JDK.
+	 */
+	private static boolean isEncodableComponent(Class<?> componentType) {
+		return componentType == Object.class || componentType.getName().startsWith("java.")
+				|| componentType == IData.class;
+	}
+
+	private static Class<?> loadComponentType(String name) throws IOException {
+		if (name.equals(IData.class.getName())) {
+			return IData.class;
+		}
+		try {
+			return Class.forName(name, false, Object.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new DocumentIOException("Unable to restore array of type '" + name + "'", e);
+		}
+	}
+
+	private static byte[] serialize(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objectOutput = new ObjectOutputStream(bytes);
+		try {
+			objectOutput.writeObject(value);
+		} finally {
+			objectOutput.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException {
+		ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return objectInput.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new DocumentIOException("Unable to restore serialized value", e);
+		} finally {
+			objectInput.close();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+/**
+ * Rough estimate of the heap used by an {@code IData} instance and its
+ * values.
+ * <p>
+ * The estimate assumes a 64-bit JVM with compressed references and is only
+ * meant to compare sizes or to enforce a memory budget approximately. Values
+ * reachable more than once are only counted once.
+ */
+final class IDataFootprint {
+
+	private static final long OBJECT_HEADER = 16;
+	private static final long REFERENCE = 4;
+	private static final long ENTRY_OVERHEAD = 32;
+
+	private IDataFootprint() {
+
+	}
+
+	/**
+	 * Estimates the heap used by the given instance, including nested values.
+	 *
+	 * @param iData instance to measure
+	 * @return estimated size in bytes
+	 */
+	static long estimate(IData iData) {
+		return estimateValue(iData, new IdentityHashMap<Object, Boolean>());
+	}
+
+	/**
+	 * Estimates the heap used by a value, including nested values.
+	 *
+	 * @param value value to measure, possibly {@code null}
+	 * @return estimated size in bytes
+	 */
+	static long estimateValue(Object value) {
+		return estimateValue(value, new IdentityHashMap<Object, Boolean>());
+	}
+
+	/*
+	 * Walks the values with an explicit stack, so deep documents don't
+	 * overflow the call stack. Each value is counted once, whatever the order.
+	 */
+	private static long estimateValue(Object root, Map<Object, Boolean> visited) {
+		Deque<Object> pending = new ArrayDeque<Object>();
+		push(root, pending);
+
+		long size = 0;
+		while (!pending.isEmpty()) {
+			Object value = pending.pop();
+			if (value instanceof Boolean || visited.put(value, Boolean.TRUE) != null) {
+				continue;
+			}
+			size += visit(value, pending);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the size of the value itself and pushes the values it
+	 * references.
+	 */
+	private static long visit(Object value, Deque<Object> pending) {
+		if (value instanceof String) {
+			return OBJECT_HEADER + 24 + align(((String) value).length() * 2L);
+		} else if (value instanceof ShapedIData && !((ShapedIData) value).isDictionaryMode()) {
+			// Keys belong to the shape, which is shared
+			ShapedIData shaped = (ShapedIData) value;
+			Object[] values = shaped.getValues();
+			for (int i = 0; i < shaped.getShape().size(); i++) {
+				push(values[i], pending);
+			}
+			return OBJECT_HEADER + 16 + OBJECT_HEADER + align(values.length * REFERENCE);
+		} else if (value instanceof IData) {
+			long size = OBJECT_HEADER + 32;
+			IDataCursor cursor = ((IData) value).getCursor();
+			try {
+				boolean hasMore = cursor.first();
+				while (hasMore) {
+					size += ENTRY_OVERHEAD;
+					push(cursor.getKey(), pending);
+					push(cursor.getValue(), pending);
+					hasMore = cursor.next();
+				}
+			} finally {
+				cursor.destroy();
+			}
+			return size;
+		} else if (value instanceof Document) {
+			push(((Document) value).getIData(), pending);
+			return 0;
+		} else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			for (Object element : array) {
+				push(element, pending);
+			}
+			return OBJECT_HEADER + align(array.length * REFERENCE);
+		} else if (value instanceof Collection<?>) {
+			Collection<?> collection = (Collection<?>) value;
+			for (Object element : collection) {
+				push(element, pending);
+			}
+			return OBJECT_HEADER + 24 + align(collection.size() * REFERENCE);
+		} else if (value instanceof byte[]) {
+			return OBJECT_HEADER + align(((byte[]) value).length);
+		} else if (value instanceof Long || value instanceof Double) {
+			return 24;
+		} else if (value instanceof BigDecimal || value instanceof BigInteger) {
+			return 64;
+		} else if (value.getClass().isArray()) {
+			// Other primitive arrays: assume the widest element type
+			return OBJECT_HEADER + align(Array.getLength(value) * 8L);
+		} else {
+			return OBJECT_HEADER + 16;
+		}
+	}
+
+	private static void push(Object value, Deque<Object> pending) {
+		if (value != null) {
+			pending.push(value);
+		}
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+}
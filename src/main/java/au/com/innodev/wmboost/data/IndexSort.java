@@ -0,0 +1,181 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Stable merge sort of index permutations.
+ * <p>
+ * Sorting indexes instead of the elements themselves allows sort keys to be
+ * extracted once, into arrays, and compared by position.
+ */
+final class IndexSort {
+
+	/**
+	 * Compares the elements at two positions.
+	 */
+	interface IndexComparator {
+		int compare(int index1, int index2);
+	}
+
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	// Below this size, a parallel sort isn't worth the coordination cost
+	static final int PARALLEL_THRESHOLD = 8192;
+
+	private IndexSort() {
+
+	}
+
+	/**
+	 * Sorts the indexes so that the elements they refer to are in ascending
+	 * order. Indexes of equal elements keep their relative order.
+	 *
+	 * @param indexes indexes to sort
+	 * @param comparator element comparator
+	 */
+	static void sort(int[] indexes, IndexComparator comparator) {
+		mergeSort(indexes, new int[indexes.length], 0, indexes.length, comparator);
+	}
+
+	/**
+	 * Sorts the indexes like {@link #sort(int[], IndexComparator)}, using up
+	 * to {@code parallelism} workers: ranges are sorted concurrently and then
+	 * merged pairwise.
+	 *
+	 * @param indexes indexes to sort
+	 * @param comparator element comparator, which must be thread-safe
+	 * @param parallelism maximum number of concurrent workers
+	 * @param executor executor that runs the additional workers
+	 * @return the sorted indexes, which may be a different array
+	 */
+	static int[] parallelSort(int[] indexes, final IndexComparator comparator, int parallelism,
+			ExecutorService executor) {
+		final int size = indexes.length;
+		int runCount = Math.min(parallelism, size / INSERTION_SORT_THRESHOLD);
+		if (runCount <= 1 || size < PARALLEL_THRESHOLD) {
+			sort(indexes, comparator);
+			return indexes;
+		}
+
+		final int[] bounds = new int[runCount + 1];
+		for (int i = 0; i <= runCount; i++) {
+			bounds[i] = (int) ((long) size * i / runCount);
+		}
+
+		final int[] source = indexes;
+		final int[] buffer = new int[size];
+		ParallelRanges.execute(runCount, parallelism, executor, new ParallelRanges.RangeTask() {
+			@Override
+			public void run(int fromRun, int toRun) {
+				for (int run = fromRun; run < toRun; run++) {
+					mergeSort(source, buffer, bounds[run], bounds[run + 1], comparator);
+				}
+			}
+		});
+
+		int[] from = source;
+		int[] to = buffer;
+		int[] currentBounds = bounds;
+		while (currentBounds.length > 2) {
+			final int[] passFrom = from;
+			final int[] passTo = to;
+			final int[] passBounds = currentBounds;
+			final int runs = passBounds.length - 1;
+
+			ParallelRanges.execute((runs + 1) / 2, parallelism, executor, new ParallelRanges.RangeTask() {
+				@Override
+				public void run(int fromPair, int toPair) {
+					for (int pair = fromPair; pair < toPair; pair++) {
+						int low = passBounds[2 * pair];
+						if (2 * pair + 2 <= runs) {
+							merge(passFrom, low, passBounds[2 * pair + 1], passBounds[2 * pair + 2], passTo, comparator);
+						} else {
+							// Odd run out: carried over to the next pass
+							System.arraycopy(passFrom, low, passTo, low, passBounds[runs] - low);
+						}
+					}
+				}
+			});
+
+			int[] nextBounds = new int[(runs + 1) / 2 + 1];
+			for (int i = 0; i < nextBounds.length - 1; i++) {
+				nextBounds[i] = passBounds[2 * i];
+			}
+			nextBounds[nextBounds.length - 1] = size;
+			currentBounds = nextBounds;
+
+			from = passTo;
+			to = passFrom;
+		}
+
+		return from;
+	}
+
+	private static void mergeSort(int[] indexes, int[] buffer, int fromIndex, int toIndex, IndexComparator comparator) {
+		if (toIndex - fromIndex <= INSERTION_SORT_THRESHOLD) {
+			insertionSort(indexes, fromIndex, toIndex, comparator);
+			return;
+		}
+
+		int mid = (fromIndex + toIndex) >>> 1;
+		mergeSort(indexes, buffer, fromIndex, mid, comparator);
+		mergeSort(indexes, buffer, mid, toIndex, comparator);
+
+		if (comparator.compare(indexes[mid - 1], indexes[mid]) <= 0) {
+			// Already in order
+			return;
+		}
+
+		System.arraycopy(indexes, fromIndex, buffer, fromIndex, toIndex - fromIndex);
+		merge(buffer, fromIndex, mid, toIndex, indexes, comparator);
+	}
+
+	private static void insertionSort(int[] indexes, int fromIndex, int toIndex, IndexComparator comparator) {
+		for (int i = fromIndex + 1; i < toIndex; i++) {
+			int current = indexes[i];
+			int j = i - 1;
+			while (j >= fromIndex && comparator.compare(indexes[j], current) > 0) {
+				indexes[j + 1] = indexes[j];
+				j--;
+			}
+			indexes[j + 1] = current;
+		}
+	}
+
+	/**
+	 * Merges two adjacent sorted ranges of {@code source} into the same range
+	 * of {@code target}. On ties, the left range goes first.
+	 */
+	private static void merge(int[] source, int fromIndex, int mid, int toIndex, int[] target,
+			IndexComparator comparator) {
+		int left = fromIndex;
+		int right = mid;
+		int position = fromIndex;
+
+		while (left < mid && right < toIndex) {
+			if (comparator.compare(source[right], source[left]) < 0) {
+				target[position++] = source[right++];
+			} else {
+				target[position++] = source[left++];
+			}
+		}
+		System.arraycopy(source, left, target, position, mid - left);
+		position += mid - left;
+		System.arraycopy(source, right, target, position, toIndex - right);
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * Type of join performed by {@link DocumentJoins}.
+ */
+public enum JoinType {
+	/**
+	 * Only left documents with at least one matching right document are
+	 * included.
+	 */
+	INNER,
+
+	/**
+	 * All left documents are included. Left documents without a match are
+	 * included on their own.
+	 */
+	LEFT
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * Whether the order of entries is taken into account when comparing the
+ * structure of documents.
+ *
+ * @see DocumentTrees#structurallyEquals(Document, Document, KeyOrder)
+ */
+public enum KeyOrder {
+
+	/** Documents with the same entries in a different order are different */
+	SIGNIFICANT,
+
+	/**
+	 * Documents with the same entries in a different order are equal. Entries
+	 * that share a key must still be in the same relative order.
+	 */
+	IGNORED
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * An {@link IData} view over a base instance that is never modified.
+ * <p>
+ * Until the first write, cursors read the base directly. The first write
+ * copies the element references of the base (not its values) into a
+ * {@link CompactIData} and all further operations go to that copy, so
+ * positional cursor semantics are exactly those of a regular instance.
+ * Nested documents and document lists read through the view are overlays
+ * themselves, created on first access, so nested documents that are only
+ * read are never copied.
+ * <p>
+ * {@link #commit()} writes the view to the base and {@link #discard()} drops
+ * the changes. Either way, the view is the base again afterwards and cursors
+ * opened before must not be used anymore.
+ */
+final class OverlayIData implements IData {
+
+	private final IData base;
+	private CompactIData copy;
+	private final Map<Object, Object> overlays = new IdentityHashMap<Object, Object>();
+	private int generation;
+
+	OverlayIData(IData base) {
+		this.base = Preconditions.checkNotNull(base);
+	}
+
+	IData getBase() {
+		return base;
+	}
+
+	/**
+	 * Returns whether the view has been written to since it was created or
+	 * last committed or discarded. Nested overlays aren't considered.
+	 *
+	 * @return {@code true} if the view has been written to
+	 */
+	boolean isCopied() {
+		return copy != null;
+	}
+
+	@Override
+	public IDataCursor getCursor() {
+		return new Cursor(copy != null ? copy.getCursor() : base.getCursor(), copy != null);
+	}
+
+	/**
+	 * Writes the content of the view, including nested overlays, to the base.
+	 */
+	void commit() {
+		if (copy != null) {
+			IDataCursor copyCursor = copy.getCursor();
+			IDataCursor baseCursor = base.getCursor();
+			try {
+				while (baseCursor.first()) {
+					baseCursor.delete();
+				}
+				while (copyCursor.next()) {
+					baseCursor.insertAfter(copyCursor.getKey(), commitValue(copyCursor.getValue()));
+				}
+			} finally {
+				copyCursor.destroy();
+				baseCursor.destroy();
+			}
+		} else {
+			for (Object overlay : new ArrayList<Object>(overlays.values())) {
+				commitValue(overlay);
+			}
+		}
+		reset();
+	}
+
+	/**
+	 * Drops the changes made through the view, including nested overlays.
+	 */
+	void discard() {
+		reset();
+	}
+
+	private void reset() {
+		for (Object overlay : overlays.values()) {
+			if (overlay instanceof OverlayIData) {
+				((OverlayIData) overlay).reset();
+			} else {
+				for (IData element : (IData[]) overlay) {
+					if (element instanceof OverlayIData) {
+						((OverlayIData) element).reset();
+					}
+				}
+			}
+		}
+		copy = null;
+		overlays.clear();
+		generation++;
+	}
+
+	/**
+	 * Commits the overlays referenced by a value and returns the value to
+	 * store in the base.
+	 */
+	private Object commitValue(Object value) {
+		if (value instanceof OverlayIData) {
+			OverlayIData overlay = (OverlayIData) value;
+			overlay.commit();
+			return overlay.base;
+		} else if (value instanceof IData[]) {
+			IData[] array = (IData[]) value;
+			Object overlayArray = overlays.get(array);
+			if (overlayArray != null) {
+				// Unmodified base array read through the view: its elements are updated in place
+				commitValue(overlayArray);
+				return array;
+			}
+			IData[] result = array;
+			for (int i = 0; i < array.length; i++) {
+				if (array[i] instanceof OverlayIData) {
+					if (result == array) {
+						result = array.clone();
+					}
+					result[i] = (IData) commitValue(array[i]);
+				}
+			}
+			return result;
+		} else if (value instanceof IData) {
+			Object overlay = overlays.get(value);
+			if (overlay != null) {
+				commitValue(overlay);
+			}
+			return value;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the value to expose for a value of the base or the copy:
+	 * documents and document lists are replaced by overlays.
+	 */
+	private Object wrap(Object value) {
+		if (value instanceof OverlayIData || !(value instanceof IData || value instanceof IData[])) {
+			return value;
+		}
+
+		Object overlay = overlays.get(value);
+		if (overlay == null) {
+			if (value instanceof IData) {
+				overlay = new OverlayIData((IData) value);
+			} else {
+				IData[] array = (IData[]) value;
+				IData[] overlayArray = new IData[array.length];
+				for (int i = 0; i < array.length; i++) {
+					overlayArray[i] = (array[i] == null || array[i] instanceof OverlayIData) ? array[i]
+							: new OverlayIData(array[i]);
+				}
+				overlay = overlayArray;
+			}
+			overlays.put(value, overlay);
+		}
+		return overlay;
+	}
+
+	private void ensureCopied() {
+		if (copy != null) {
+			return;
+		}
+
+		List<String> keys = new ArrayList<String>();
+		List<Object> values = new ArrayList<Object>();
+		IDataCursor cursor = base.getCursor();
+		try {
+			while (cursor.next()) {
+				keys.add(cursor.getKey());
+				values.add(cursor.getValue());
+			}
+		} finally {
+			cursor.destroy();
+		}
+		copy = new CompactIData(keys.toArray(new String[keys.size()]), values.toArray(), keys.size());
+	}
+
+	private final class Cursor implements IDataCursor {
+
+		private IDataCursor delegate;
+		private boolean onCopy;
+		private final int cursorGeneration;
+
+		Cursor(IDataCursor delegate, boolean onCopy) {
+			this.delegate = delegate;
+			this.onCopy = onCopy;
+			this.cursorGeneration = generation;
+		}
+
+		/**
+		 * Returns the cursor to delegate to, moving it to the copy at the same
+		 * position if the view has been copied since the cursor was created.
+		 */
+		private IDataCursor current() {
+			if (cursorGeneration != generation) {
+				throw new IllegalStateException("Cursor can't be used after the overlay was committed or discarded");
+			}
+			if (!onCopy && copy != null) {
+				delegate = copy.getCursor(positionOf(delegate));
+				onCopy = true;
+			}
+			return delegate;
+		}
+
+		private IDataCursor forWrite() {
+			ensureCopied();
+			return current();
+		}
+
+		private int positionOf(IDataCursor baseCursor) {
+			IDataCursor clone = baseCursor.getCursorClone();
+			try {
+				if (clone.getKey() == null) {
+					// Not positioned: either before the first or after the last element
+					return clone.hasMoreData() ? -1 : copy.size();
+				}
+				int position = 0;
+				while (clone.previous()) {
+					position++;
+				}
+				return position;
+			} finally {
+				clone.destroy();
+			}
+		}
+
+		@Override
+		public void home() {
+			current().home();
+		}
+
+		@Override
+		public String getKey() {
+			return current().getKey();
+		}
+
+		@Override
+		public void setKey(String key) {
+			forWrite().setKey(key);
+		}
+
+		@Override
+		public Object getValue() {
+			return wrap(current().getValue());
+		}
+
+		@Override
+		public void setValue(Object value) {
+			forWrite().setValue(value);
+		}
+
+		@Override
+		public boolean delete() {
+			return forWrite().delete();
+		}
+
+		@Override
+		public void insertBefore(String key, Object value) {
+			forWrite().insertBefore(key, value);
+		}
+
+		@Override
+		public void insertAfter(String key, Object value) {
+			forWrite().insertAfter(key, value);
+		}
+
+		@Override
+		public IData insertDataBefore(String key) {
+			return forWrite().insertDataBefore(key);
+		}
+
+		@Override
+		public IData insertDataAfter(String key) {
+			return forWrite().insertDataAfter(key);
+		}
+
+		@Override
+		public boolean next() {
+			return current().next();
+		}
+
+		@Override
+		public boolean next(String key) {
+			return current().next(key);
+		}
+
+		@Override
+		public boolean previous() {
+			return current().previous();
+		}
+
+		@Override
+		public boolean previous(String key) {
+			return current().previous(key);
+		}
+
+		@Override
+		public boolean first() {
+			return current().first();
+		}
+
+		@Override
+		public boolean first(String key) {
+			return current().first(key);
+		}
+
+		@Override
+		public boolean last() {
+			return current().last();
+		}
+
+		@Override
+		public boolean last(String key) {
+			return current().last(key);
+		}
+
+		@Override
+		public boolean hasMoreData() {
+			return current().hasMoreData();
+		}
+
+		@Override
+		public void destroy() {
+			delegate.destroy();
+		}
+
+		@Override
+		public IDataCursor getCursorClone() {
+			return new Cursor(current().getCursorClone(), onCopy);
+		}
+	}
+}
@@ -70,13 +70,27 @@ class OverlayedConversionService implements ConversionService {
 
 	@Override
 	public Object convert(Object source, TypeDescriptor sourceType, TypeDescriptor targetType) {
+		return resolveLayer(sourceType, targetType).convert(source, sourceType, targetType);
+	}
+
+	/**
+	 * Returns the layer that would perform a conversion between the given types.
+	 * <p>
+	 * Allows callers converting many values of the same types to look up the
+	 * layer once instead of once per value.
+	 *
+	 * @param sourceType source type
+	 * @param targetType target type
+	 * @return conversion service that handles the conversion
+	 */
+	ConversionService resolveLayer(TypeDescriptor sourceType, TypeDescriptor targetType) {
 		for (ConversionService conversionService : allButLast) {
 			if (conversionService.canConvert(sourceType, targetType)) {
-				return conversionService.convert(source, sourceType, targetType);			
+				return conversionService;
 			}
 		}
-		
-		return last.convert(source, sourceType, targetType);
+
+		return last;
 	}
 
 }
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Splits an index range into chunks and processes them concurrently.
+ * <p>
+ * Workers claim chunks until none are left, so uneven processing costs are
+ * balanced between them. The calling thread acts as one of the workers.
+ */
+final class ParallelRanges {
+
+	/**
+	 * Processes the elements in a range of indexes.
+	 */
+	interface RangeTask {
+		void run(int fromIndex, int toIndex);
+	}
+
+	private static final int CHUNKS_PER_WORKER = 4;
+
+	private ParallelRanges() {
+
+	}
+
+	/**
+	 * Returns a shared executor backed by daemon threads. Threads are created
+	 * on demand and discarded when idle.
+	 *
+	 * @return default executor
+	 */
+	static ExecutorService getDefaultExecutor() {
+		return DefaultExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * Processes the range {@code [0, size)}, running at most
+	 * {@code parallelism} workers at the same time. Returns once all chunks
+	 * have been processed.
+	 *
+	 * @param size number of elements
+	 * @param parallelism maximum number of concurrent workers
+	 * @param executor executor that runs the additional workers
+	 * @param task task that processes each chunk
+	 */
+	static void execute(final int size, int parallelism, ExecutorService executor, final RangeTask task) {
+		Preconditions.checkNotNull(executor, "executor cannot be null");
+		Preconditions.checkNotNull(task, "task cannot be null");
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+		}
+
+		int workers = Math.min(parallelism, size);
+		if (workers <= 1) {
+			if (size > 0) {
+				task.run(0, size);
+			}
+			return;
+		}
+
+		final int chunkSize = Math.max(1, size / (workers * CHUNKS_PER_WORKER));
+		final AtomicInteger nextChunk = new AtomicInteger();
+		Callable<Void> worker = new Callable<Void>() {
+			@Override
+			public Void call() {
+				int fromIndex;
+				while ((fromIndex = claim(nextChunk, chunkSize, size)) < size) {
+					task.run(fromIndex, Math.min(size, fromIndex + chunkSize));
+				}
+				return null;
+			}
+		};
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(workers - 1);
+		Throwable failure = null;
+		try {
+			for (int i = 0; i < workers - 1; i++) {
+				futures.add(executor.submit(worker));
+			}
+
+			try {
+				worker.call();
+			} catch (Throwable e) {
+				failure = e;
+			}
+
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for parallel processing to complete", e);
+		}
+
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IllegalStateException("Parallel processing failed", failure);
+		}
+	}
+
+	private static int claim(AtomicInteger nextChunk, int chunkSize, int size) {
+		while (true) {
+			int current = nextChunk.get();
+			if (current >= size) {
+				return size;
+			}
+			// Avoids overflow for sizes close to Integer.MAX_VALUE
+			int next = (int) Math.min((long) current + chunkSize, size);
+			if (nextChunk.compareAndSet(current, next)) {
+				return current;
+			}
+		}
+	}
+
+	private static final class DefaultExecutorHolder {
+		static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "wmboost-data-worker-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
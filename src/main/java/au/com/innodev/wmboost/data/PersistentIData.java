@@ -0,0 +1,627 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * An immutable {@link IData} implementation that can be safely shared among
+ * threads without copying.
+ * <p>
+ * Instances are never modified. {@link #with(String, Object)} and
+ * {@link #without(String)} return new versions in O(log n) time, sharing
+ * the unchanged structure with the original: keys are held in a hash array
+ * mapped trie and insertion order in a persistent 32-way trie indexed by
+ * insertion sequence.
+ * <p>
+ * Cursors support the read operations of {@link IDataCursor}. Mutating
+ * operations (e.g. {@link IDataCursor#setValue(Object)} or
+ * {@link IDataCursor#insertAfter(String, Object)}) throw an
+ * {@link UnsupportedOperationException}, so instances wrapped by
+ * {@link DocumentFactory#wrap(IData)} can be read through the usual
+ * {@link Document} API while any attempt to modify them fails fast.
+ * <p>
+ * Keys are unique and can't be {@code null}. Values are stored as they are:
+ * they are only immutable if they are immutable themselves. Use
+ * {@link #copyOf(IData)} to convert nested documents as well.
+ */
+public final class PersistentIData implements IData {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final PersistentIData EMPTY = new PersistentIData(HamtNode.EMPTY, OrderIndex.EMPTY, 0);
+
+	private final HamtNode root;
+	private final OrderIndex order;
+	private final int size;
+
+	private PersistentIData(HamtNode root, OrderIndex order, int size) {
+		this.root = root;
+		this.order = order;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the empty instance.
+	 *
+	 * @return an instance without elements
+	 */
+	public static PersistentIData empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Returns an immutable copy of an {@code IData} instance. Nested documents,
+	 * both single ({@code IData} or {@link Document}) and arrays of
+	 * documents, are copied too. Other values are referenced by the copy as
+	 * they are.
+	 * <p>
+	 * When the source holds the same key more than once, the last value is
+	 * kept, at the position of the first one.
+	 *
+	 * @param source
+	 *            document to copy
+	 * @return immutable copy
+	 * @throws IllegalArgumentException
+	 *             if the source contains itself
+	 * @throws NullPointerException
+	 *             if the source has {@code null} keys
+	 */
+	public static PersistentIData copyOf(IData source) {
+		Preconditions.checkNotNull(source, "source cannot be null");
+		return copyOf(source, new IdentityHashMap<IData, PersistentIData>());
+	}
+
+	private static PersistentIData copyOf(IData source, Map<IData, PersistentIData> copies) {
+		if (source instanceof PersistentIData) {
+			return (PersistentIData) source;
+		}
+		if (copies.containsKey(source)) {
+			PersistentIData copy = copies.get(source);
+			if (copy == null) {
+				throw new IllegalArgumentException("Document contains itself and can't be made immutable");
+			}
+			return copy;
+		}
+		copies.put(source, null);
+
+		PersistentIData result = EMPTY;
+		IDataCursor cursor = source.getCursor();
+		try {
+			while (cursor.next()) {
+				result = result.with(cursor.getKey(), copyValue(cursor.getValue(), copies));
+			}
+		} finally {
+			cursor.destroy();
+		}
+
+		copies.put(source, result);
+		return result;
+	}
+
+	private static Object copyValue(Object value, Map<IData, PersistentIData> copies) {
+		if (value instanceof IData) {
+			return copyOf((IData) value, copies);
+		} else if (value instanceof Document) {
+			return copyOf(((Document) value).getIData(), copies);
+		} else if (value instanceof IData[]) {
+			IData[] array = (IData[]) value;
+			IData[] copy = new IData[array.length];
+			for (int i = 0; i < array.length; i++) {
+				copy[i] = array[i] != null ? copyOf(array[i], copies) : null;
+			}
+			return copy;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Returns a version with the key associated to the value. If the key
+	 * already exists, its value is replaced and it keeps its position;
+	 * otherwise the key is added at the end.
+	 *
+	 * @param key
+	 *            key, not {@code null}
+	 * @param value
+	 *            value, possibly {@code null}
+	 * @return new version or this instance if the key already had the same
+	 *         value (by reference)
+	 */
+	public PersistentIData with(String key, Object value) {
+		Preconditions.checkNotNull(key, "key cannot be null");
+		int hash = key.hashCode();
+		Entry existing = root.find(hash, 0, key);
+
+		if (existing != null) {
+			if (existing.value == value) {
+				return this;
+			}
+			Entry replacement = new Entry(key, hash, value, existing.sequence);
+			return new PersistentIData(root.put(0, replacement), order.set(existing.sequence, replacement), size);
+		}
+
+		Entry entry = new Entry(key, hash, value, order.length);
+		return new PersistentIData(root.put(0, entry), order.append(entry), size + 1);
+	}
+
+	/**
+	 * Returns a version without the key.
+	 *
+	 * @param key
+	 *            key to remove
+	 * @return new version or this instance if the key didn't exist
+	 */
+	public PersistentIData without(String key) {
+		if (key == null) {
+			return this;
+		}
+		int hash = key.hashCode();
+		Entry existing = root.find(hash, 0, key);
+		if (existing == null) {
+			return this;
+		}
+
+		HamtNode newRoot = root.remove(hash, 0, key);
+		if (newRoot == null) {
+			newRoot = HamtNode.EMPTY;
+		}
+		OrderIndex newOrder = order.set(existing.sequence, null);
+		if (newOrder.length > 32 && size - 1 < newOrder.length / 2) {
+			return compact(newOrder, size - 1);
+		}
+		return new PersistentIData(newRoot, newOrder, size - 1);
+	}
+
+	/**
+	 * Renumbers the elements once removed elements make up half of the order
+	 * index, so that cursors don't skip over long runs of removed elements.
+	 */
+	private static PersistentIData compact(OrderIndex order, int size) {
+		HamtNode newRoot = HamtNode.EMPTY;
+		OrderIndex newOrder = OrderIndex.EMPTY;
+		for (int i = 0; i < order.length; i++) {
+			Entry entry = order.get(i);
+			if (entry != null) {
+				Entry renumbered = new Entry(entry.key, entry.hash, entry.value, newOrder.length);
+				newRoot = newRoot.put(0, renumbered);
+				newOrder = newOrder.append(renumbered);
+			}
+		}
+		return new PersistentIData(newRoot, newOrder, size);
+	}
+
+	/**
+	 * Returns the value associated to the key.
+	 *
+	 * @param key
+	 *            key to look for
+	 * @return the value or {@code null} if the key doesn't exist
+	 */
+	public Object get(String key) {
+		Entry entry = key != null ? root.find(key.hashCode(), 0, key) : null;
+		return entry != null ? entry.value : null;
+	}
+
+	/**
+	 * Returns whether the key exists.
+	 *
+	 * @param key
+	 *            key to look for
+	 * @return {@code true} if the key exists
+	 */
+	public boolean containsKey(String key) {
+		return key != null && root.find(key.hashCode(), 0, key) != null;
+	}
+
+	/**
+	 * Returns the number of elements.
+	 *
+	 * @return number of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public IDataCursor getCursor() {
+		return new Cursor(-1);
+	}
+
+	private static final class Entry {
+		final String key;
+		final int hash;
+		final Object value;
+		final int sequence;
+
+		Entry(String key, int hash, Object value, int sequence) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * Node of the hash array mapped trie. Slots hold either entries or child
+	 * nodes. Nodes below the last level of hash bits hold colliding entries
+	 * only, compared linearly.
+	 */
+	private static final class HamtNode {
+
+		static final HamtNode EMPTY = new HamtNode(0, new Object[0]);
+
+		private final int bitmap;
+		private final Object[] slots;
+
+		HamtNode(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		private static boolean isCollisionLevel(int shift) {
+			return shift >= 32;
+		}
+
+		Entry find(int hash, int shift, String key) {
+			HamtNode node = this;
+			while (true) {
+				if (isCollisionLevel(shift)) {
+					for (Object slot : node.slots) {
+						if (((Entry) slot).key.equals(key)) {
+							return (Entry) slot;
+						}
+					}
+					return null;
+				}
+
+				int bit = 1 << ((hash >>> shift) & MASK);
+				if ((node.bitmap & bit) == 0) {
+					return null;
+				}
+				Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+				if (slot instanceof Entry) {
+					Entry entry = (Entry) slot;
+					return entry.key.equals(key) ? entry : null;
+				}
+				node = (HamtNode) slot;
+				shift += BITS;
+			}
+		}
+
+		HamtNode put(int shift, Entry entry) {
+			if (isCollisionLevel(shift)) {
+				for (int i = 0; i < slots.length; i++) {
+					if (((Entry) slots[i]).key.equals(entry.key)) {
+						return new HamtNode(0, replace(slots, i, entry));
+					}
+				}
+				return new HamtNode(0, insert(slots, slots.length, entry));
+			}
+
+			int bit = 1 << ((entry.hash >>> shift) & MASK);
+			int index = Integer.bitCount(bitmap & (bit - 1));
+			if ((bitmap & bit) == 0) {
+				return new HamtNode(bitmap | bit, insert(slots, index, entry));
+			}
+
+			Object slot = slots[index];
+			Object newSlot;
+			if (slot instanceof HamtNode) {
+				newSlot = ((HamtNode) slot).put(shift + BITS, entry);
+			} else if (((Entry) slot).key.equals(entry.key)) {
+				newSlot = entry;
+			} else {
+				newSlot = EMPTY.put(shift + BITS, (Entry) slot).put(shift + BITS, entry);
+			}
+			return new HamtNode(bitmap, replace(slots, index, newSlot));
+		}
+
+		/**
+		 * Returns the node without the key, or {@code null} if the node would
+		 * become empty.
+		 */
+		HamtNode remove(int hash, int shift, String key) {
+			if (isCollisionLevel(shift)) {
+				for (int i = 0; i < slots.length; i++) {
+					if (((Entry) slots[i]).key.equals(key)) {
+						return slots.length == 1 ? null : new HamtNode(0, delete(slots, i));
+					}
+				}
+				return this;
+			}
+
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int index = Integer.bitCount(bitmap & (bit - 1));
+			Object slot = slots[index];
+			if (slot instanceof Entry) {
+				if (!((Entry) slot).key.equals(key)) {
+					return this;
+				}
+				return withoutSlot(bit, index);
+			}
+
+			HamtNode child = ((HamtNode) slot).remove(hash, shift + BITS, key);
+			if (child == slot) {
+				return this;
+			} else if (child == null) {
+				return withoutSlot(bit, index);
+			} else if (child.slots.length == 1 && child.slots[0] instanceof Entry) {
+				// Pull single entries up so that lookups stay short
+				return new HamtNode(bitmap, replace(slots, index, child.slots[0]));
+			} else {
+				return new HamtNode(bitmap, replace(slots, index, child));
+			}
+		}
+
+		private HamtNode withoutSlot(int bit, int index) {
+			if (slots.length == 1) {
+				return this == EMPTY ? this : null;
+			}
+			return new HamtNode(bitmap & ~bit, delete(slots, index));
+		}
+
+		private static Object[] insert(Object[] array, int index, Object value) {
+			Object[] result = new Object[array.length + 1];
+			System.arraycopy(array, 0, result, 0, index);
+			result[index] = value;
+			System.arraycopy(array, index, result, index + 1, array.length - index);
+			return result;
+		}
+
+		private static Object[] replace(Object[] array, int index, Object value) {
+			Object[] result = array.clone();
+			result[index] = value;
+			return result;
+		}
+
+		private static Object[] delete(Object[] array, int index) {
+			Object[] result = new Object[array.length - 1];
+			System.arraycopy(array, 0, result, 0, index);
+			System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+			return result;
+		}
+	}
+
+	/**
+	 * Persistent vector of entries indexed by insertion sequence. Removed
+	 * entries leave {@code null} slots.
+	 */
+	private static final class OrderIndex {
+
+		static final OrderIndex EMPTY = new OrderIndex(new Object[WIDTH], 0, 0);
+
+		private final Object[] root;
+		/* Bits used by the levels above the leaves */
+		private final int shift;
+		final int length;
+
+		private OrderIndex(Object[] root, int shift, int length) {
+			this.root = root;
+			this.shift = shift;
+			this.length = length;
+		}
+
+		Entry get(int index) {
+			Object[] node = root;
+			for (int level = shift; level > 0; level -= BITS) {
+				node = (Object[]) node[(index >>> level) & MASK];
+			}
+			return (Entry) node[index & MASK];
+		}
+
+		OrderIndex append(Entry entry) {
+			if (length == (WIDTH << shift)) {
+				// Full: add a level on top
+				Object[] newRoot = new Object[WIDTH];
+				newRoot[0] = root;
+				return new OrderIndex(set(newRoot, shift + BITS, length, entry), shift + BITS, length + 1);
+			}
+			return new OrderIndex(set(root, shift, length, entry), shift, length + 1);
+		}
+
+		OrderIndex set(int index, Entry entry) {
+			return new OrderIndex(set(root, shift, index, entry), shift, length);
+		}
+
+		private static Object[] set(Object[] node, int level, int index, Entry entry) {
+			Object[] copy = node != null ? node.clone() : new Object[WIDTH];
+			if (level == 0) {
+				copy[index & MASK] = entry;
+			} else {
+				int slot = (index >>> level) & MASK;
+				copy[slot] = set((Object[]) copy[slot], level - BITS, index, entry);
+			}
+			return copy;
+		}
+	}
+
+	private final class Cursor implements IDataCursor {
+
+		/* Sequence of the current entry. -1: before the first element; order length: after the last element */
+		private int position;
+
+		Cursor(int position) {
+			this.position = position;
+		}
+
+		private Entry current() {
+			return position >= 0 && position < order.length ? order.get(position) : null;
+		}
+
+		@Override
+		public void home() {
+			position = -1;
+		}
+
+		@Override
+		public String getKey() {
+			Entry entry = current();
+			return entry != null ? entry.key : null;
+		}
+
+		@Override
+		public Object getValue() {
+			Entry entry = current();
+			return entry != null ? entry.value : null;
+		}
+
+		@Override
+		public boolean next() {
+			for (int i = position + 1; i < order.length; i++) {
+				if (order.get(i) != null) {
+					position = i;
+					return true;
+				}
+			}
+			position = order.length;
+			return false;
+		}
+
+		@Override
+		public boolean next(String key) {
+			Entry entry = find(key);
+			return moveTo(entry != null && entry.sequence > position ? entry : null);
+		}
+
+		@Override
+		public boolean previous() {
+			for (int i = Math.min(position, order.length) - 1; i >= 0; i--) {
+				if (order.get(i) != null) {
+					position = i;
+					return true;
+				}
+			}
+			position = -1;
+			return false;
+		}
+
+		@Override
+		public boolean previous(String key) {
+			Entry entry = find(key);
+			return moveTo(entry != null && entry.sequence < position ? entry : null);
+		}
+
+		@Override
+		public boolean first() {
+			position = -1;
+			if (next()) {
+				return true;
+			}
+			position = -1;
+			return false;
+		}
+
+		@Override
+		public boolean first(String key) {
+			return moveTo(find(key));
+		}
+
+		@Override
+		public boolean last() {
+			position = order.length;
+			return previous();
+		}
+
+		@Override
+		public boolean last(String key) {
+			// Keys are unique
+			return moveTo(find(key));
+		}
+
+		@Override
+		public boolean hasMoreData() {
+			for (int i = position + 1; i < order.length; i++) {
+				if (order.get(i) != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private Entry find(String key) {
+			return key != null ? root.find(key.hashCode(), 0, key) : null;
+		}
+
+		private boolean moveTo(Entry entry) {
+			if (entry == null) {
+				return false;
+			}
+			position = entry.sequence;
+			return true;
+		}
+
+		@Override
+		public void destroy() {
+			position = -1;
+		}
+
+		@Override
+		public IDataCursor getCursorClone() {
+			return new Cursor(position);
+		}
+
+		@Override
+		public void setKey(String key) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setValue(Object value) {
+			throw readOnly();
+		}
+
+		@Override
+		public boolean delete() {
+			throw readOnly();
+		}
+
+		@Override
+		public void insertBefore(String key, Object value) {
+			throw readOnly();
+		}
+
+		@Override
+		public void insertAfter(String key, Object value) {
+			throw readOnly();
+		}
+
+		@Override
+		public IData insertDataBefore(String key) {
+			throw readOnly();
+		}
+
+		@Override
+		public IData insertDataAfter(String key) {
+			throw readOnly();
+		}
+
+		private UnsupportedOperationException readOnly() {
+			return new UnsupportedOperationException("Immutable document can't be modified. Use with/without to create a new version");
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+/**
+ * An {@link IData} handle created by a {@link PooledIDataFactory}.
+ * <p>
+ * The content is held by a {@link CompactIData} that returns to the pool
+ * when the handle is released. Handles themselves are never reused, so a
+ * released handle stays released: using it afterwards fails even if its
+ * content has been handed out again.
+ */
+final class PooledIData implements IData {
+
+	private final PooledIDataFactory pool;
+	private CompactIData content;
+
+	PooledIData(PooledIDataFactory pool, CompactIData content) {
+		this.pool = pool;
+		this.content = content;
+	}
+
+	@Override
+	public IDataCursor getCursor() {
+		CompactIData current = ensureNotReleased();
+		IDataCursor cursor = current.getCursor();
+		return pool.isDetectingUseAfterRelease() ? new CheckingCursor(cursor) : cursor;
+	}
+
+	boolean isReleased() {
+		return content == null;
+	}
+
+	/**
+	 * Clears the content and returns it to the pool.
+	 */
+	void release() {
+		CompactIData current = ensureNotReleased();
+		content = null;
+		pool.recycle(current);
+	}
+
+	private CompactIData ensureNotReleased() {
+		CompactIData current = content;
+		if (current == null) {
+			throw new IllegalStateException("Document has been released and can't be used anymore");
+		}
+		return current;
+	}
+
+	/**
+	 * Cursor that checks before every operation that the document hasn't been
+	 * released. Only used in debug mode.
+	 */
+	private final class CheckingCursor implements IDataCursor {
+
+		private final IDataCursor delegate;
+
+		CheckingCursor(IDataCursor delegate) {
+			this.delegate = delegate;
+		}
+
+		private IDataCursor delegate() {
+			ensureNotReleased();
+			return delegate;
+		}
+
+		@Override
+		public void home() {
+			delegate().home();
+		}
+
+		@Override
+		public String getKey() {
+			return delegate().getKey();
+		}
+
+		@Override
+		public void setKey(String key) {
+			delegate().setKey(key);
+		}
+
+		@Override
+		public Object getValue() {
+			return delegate().getValue();
+		}
+
+		@Override
+		public void setValue(Object value) {
+			delegate().setValue(value);
+		}
+
+		@Override
+		public boolean delete() {
+			return delegate().delete();
+		}
+
+		@Override
+		public void insertBefore(String key, Object value) {
+			delegate().insertBefore(key, value);
+		}
+
+		@Override
+		public void insertAfter(String key, Object value) {
+			delegate().insertAfter(key, value);
+		}
+
+		@Override
+		public IData insertDataBefore(String key) {
+			IData data = pool.create();
+			delegate().insertBefore(key, data);
+			return data;
+		}
+
+		@Override
+		public IData insertDataAfter(String key) {
+			IData data = pool.create();
+			delegate().insertAfter(key, data);
+			return data;
+		}
+
+		@Override
+		public boolean next() {
+			return delegate().next();
+		}
+
+		@Override
+		public boolean next(String key) {
+			return delegate().next(key);
+		}
+
+		@Override
+		public boolean previous() {
+			return delegate().previous();
+		}
+
+		@Override
+		public boolean previous(String key) {
+			return delegate().previous(key);
+		}
+
+		@Override
+		public boolean first() {
+			return delegate().first();
+		}
+
+		@Override
+		public boolean first(String key) {
+			return delegate().first(key);
+		}
+
+		@Override
+		public boolean last() {
+			return delegate().last();
+		}
+
+		@Override
+		public boolean last(String key) {
+			return delegate().last(key);
+		}
+
+		@Override
+		public boolean hasMoreData() {
+			return delegate().hasMoreData();
+		}
+
+		@Override
+		public void destroy() {
+			delegate.destroy();
+		}
+
+		@Override
+		public IDataCursor getCursorClone() {
+			return new CheckingCursor(delegate().getCursorClone());
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import com.wm.data.IData;
+
+/**
+ * A {@link DirectIDataFactory} that recycles the storage of released
+ * documents, to reduce garbage when many short-lived documents are created
+ * (e.g. request headers, lookup keys or temporary results).
+ * <p>
+ * Documents are released with {@link DocumentTrees#release(Document)} once they're no
+ * longer needed. Their storage (a {@link CompactIData}) is cleared, keeping
+ * its capacity, and kept in a free list of the releasing thread, from which
+ * later {@link #create()} invocations on that thread take it. Documents that
+ * are never released are simply garbage collected.
+ * <p>
+ * A released document can't be used anymore: accessing it throws an
+ * {@link IllegalStateException}. By default, this is checked whenever a
+ * cursor is obtained, which covers all {@link Document} operations. In debug
+ * mode, every operation of cursors obtained before the release is checked
+ * too.
+ * <p>
+ * Releasing a document doesn't release its nested documents. Instances are
+ * thread-safe.
+ *
+ * @see au.com.innodev.wmboost.data.preset.DirectIDataFactories#newPooledFactory()
+ */
+public final class PooledIDataFactory implements DirectIDataFactory {
+
+	/** Default maximum number of free instances kept per thread */
+	public static final int DEFAULT_MAX_FREE_PER_THREAD = 256;
+
+	/* Storage that grew larger than this isn't recycled */
+	private static final int MAX_RECYCLED_CAPACITY = 1024;
+
+	private final int maxFreePerThread;
+	private final boolean detectUseAfterRelease;
+	private final ThreadLocal<FreeList> freeLists = new ThreadLocal<FreeList>() {
+		@Override
+		protected FreeList initialValue() {
+			return new FreeList();
+		}
+	};
+
+	/**
+	 * Creates a factory that keeps at most
+	 * {@value #DEFAULT_MAX_FREE_PER_THREAD} free instances per thread, without
+	 * debug checks.
+	 */
+	public PooledIDataFactory() {
+		this(DEFAULT_MAX_FREE_PER_THREAD, false);
+	}
+
+	/**
+	 * Creates a factory.
+	 * 
+	 * @param maxFreePerThread
+	 *            maximum number of free instances kept per thread
+	 * @param detectUseAfterRelease
+	 *            whether to check every cursor operation for use after release
+	 *            (debug mode)
+	 */
+	public PooledIDataFactory(int maxFreePerThread, boolean detectUseAfterRelease) {
+		if (maxFreePerThread < 0) {
+			throw new IllegalArgumentException("Maximum number of free instances cannot be negative: " + maxFreePerThread);
+		}
+		this.maxFreePerThread = maxFreePerThread;
+		this.detectUseAfterRelease = detectUseAfterRelease;
+	}
+
+	@Override
+	public IData create() {
+		CompactIData content = freeLists.get().pop();
+		return new PooledIData(this, content != null ? content : new CompactIData());
+	}
+
+	boolean isDetectingUseAfterRelease() {
+		return detectUseAfterRelease;
+	}
+
+	/**
+	 * Returns the number of free instances available to the current thread.
+	 * 
+	 * @return number of free instances
+	 */
+	public int getFreeCount() {
+		return freeLists.get().size;
+	}
+
+	void recycle(CompactIData content) {
+		if (content.capacity() > MAX_RECYCLED_CAPACITY) {
+			return;
+		}
+		FreeList freeList = freeLists.get();
+		if (freeList.size < maxFreePerThread) {
+			content.clear();
+			freeList.push(content);
+		}
+	}
+
+	private static final class FreeList {
+		private CompactIData[] items = new CompactIData[16];
+		private int size;
+
+		CompactIData pop() {
+			if (size == 0) {
+				return null;
+			}
+			CompactIData item = items[--size];
+			items[size] = null;
+			return item;
+		}
+
+		void push(CompactIData item) {
+			if (size == items.length) {
+				CompactIData[] newItems = new CompactIData[size * 2];
+				System.arraycopy(items, 0, newItems, 0, size);
+				items = newItems;
+			}
+			items[size++] = item;
+		}
+	}
+}
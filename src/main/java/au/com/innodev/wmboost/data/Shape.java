@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable key layout shared by {@link ShapedIData} instances that hold the
+ * same keys in the same order.
+ * <p>
+ * Shapes form a tree: adding a key to a document moves it from its shape to
+ * a child shape (a <em>transition</em>). Transitions are cached, so documents
+ * built by appending the same keys in the same order end up sharing the same
+ * shape instance. The tree is bounded: shapes with too many keys or too many
+ * distinct transitions refuse further transitions and documents fall back to
+ * a dictionary representation instead.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class Shape {
+
+	/** Maximum number of keys in a shape */
+	static final int MAX_KEYS = 128;
+
+	/** Maximum number of distinct transitions from a single shape */
+	static final int MAX_TRANSITIONS = 32;
+
+	private static final int MAP_THRESHOLD = 8;
+
+	private final Shape root;
+	private final Shape parent;
+	private final String[] keys;
+	private final ConcurrentMap<String, Shape> transitions = new ConcurrentHashMap<String, Shape>();
+	private volatile Map<String, Integer> slots;
+
+	/*
+	 * Number of appends that reached this shape and the most visited child.
+	 * Updated without synchronisation: lost updates only make the size hint
+	 * less accurate.
+	 */
+	private int visits;
+	private volatile Shape dominant;
+
+	/**
+	 * Creates an empty root shape.
+	 */
+	Shape() {
+		this(null, new String[0]);
+	}
+
+	private Shape(Shape parent, String[] keys) {
+		this.root = parent != null ? parent.root : this;
+		this.parent = parent;
+		this.keys = keys;
+	}
+
+	int size() {
+		return keys.length;
+	}
+
+	String getKey(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Returns the shape without the last key, or {@code null} if this is the
+	 * root shape.
+	 *
+	 * @return parent shape
+	 */
+	Shape getParent() {
+		return parent;
+	}
+
+	/**
+	 * Returns the number of keys that documents with this shape are expected
+	 * to reach. The hint follows the most visited transitions as long as most
+	 * documents reaching a shape go on to the next one, so documents that
+	 * grow beyond the usual layout don't inflate the hint for the others.
+	 *
+	 * @return expected number of keys
+	 */
+	int getSizeHint() {
+		Shape expected = this;
+		Shape next = expected.dominant;
+		while (next != null && 2L * next.visits > expected.visits) {
+			expected = next;
+			next = expected.dominant;
+		}
+		return expected.keys.length;
+	}
+
+	/**
+	 * Returns the slot holding the key.
+	 *
+	 * @param key key to look for
+	 * @return zero-based slot or {@code -1} if the shape doesn't have the key
+	 */
+	int indexOf(String key) {
+		if (key == null) {
+			return -1;
+		}
+
+		if (keys.length < MAP_THRESHOLD) {
+			for (int i = 0; i < keys.length; i++) {
+				if (key.equals(keys[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		Map<String, Integer> slotMap = slots;
+		if (slotMap == null) {
+			// Benign race: concurrent callers build equal maps
+			slotMap = new HashMap<String, Integer>(keys.length * 2);
+			for (int i = 0; i < keys.length; i++) {
+				slotMap.put(keys[i], Integer.valueOf(i));
+			}
+			slots = slotMap;
+		}
+		Integer slot = slotMap.get(key);
+		return slot != null ? slot.intValue() : -1;
+	}
+
+	/**
+	 * Returns the shape obtained by appending a key.
+	 *
+	 * @param key key to append
+	 * @return the child shape or {@code null} if the key can't be represented
+	 *         by a shape (e.g. duplicate or {@code null} key, or the shape tree
+	 *         limits were reached)
+	 */
+	Shape withKey(String key) {
+		if (key == null) {
+			return null;
+		}
+
+		Shape child = transitions.get(key);
+		if (child == null) {
+			if (keys.length >= MAX_KEYS || transitions.size() >= MAX_TRANSITIONS || indexOf(key) != -1) {
+				return null;
+			}
+
+			String[] childKeys = new String[keys.length + 1];
+			System.arraycopy(keys, 0, childKeys, 0, keys.length);
+			childKeys[keys.length] = key;
+
+			transitions.putIfAbsent(key, new Shape(this, childKeys));
+			child = transitions.get(key);
+		}
+
+		child.visit();
+		Shape current = dominant;
+		if (current != child && (current == null || child.visits > current.visits)) {
+			dominant = child;
+		}
+		return child;
+	}
+
+	private void visit() {
+		if (visits < Integer.MAX_VALUE) {
+			visits++;
+		}
+	}
+
+	/**
+	 * Returns the root shape of the tree this shape belongs to.
+	 *
+	 * @return root shape
+	 */
+	Shape getRoot() {
+		return root;
+	}
+}
@@ -0,0 +1,430 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+/**
+ * An {@link IData} implementation for large numbers of documents with the
+ * same keys.
+ * <p>
+ * Documents created by the same factory (see {@link #newFactory()}) that
+ * hold the same keys in the same order share an immutable {@link Shape}, so
+ * each instance only holds its values. Documents are typically built by
+ * appending keys, which moves the document from shape to shape through
+ * cached transitions.
+ * <p>
+ * Mutations a shape can't represent, such as duplicate keys, renaming keys,
+ * inserting in the middle or deleting any element other than the last one,
+ * switch the instance to <em>dictionary mode</em>: its content is copied to a
+ * {@link CompactIData} and all further operations are delegated to it.
+ * Existing cursors remain valid when this happens. An instance never goes
+ * back to a shared shape.
+ * <p>
+ * Cursors follow the same conventions as {@link CompactIData} cursors.
+ * Instances are not thread-safe, but factories and their shapes can be shared
+ * among threads.
+ *
+ * @see au.com.innodev.wmboost.data.preset.DirectIDataFactories#newShapedFactory()
+ */
+public final class ShapedIData implements IData {
+
+	private static final Object[] NO_VALUES = new Object[0];
+	private static final int NONE = -1;
+
+	/* In dictionary mode, it's the root shape, used to create nested documents */
+	private Shape shape;
+	private Object[] values;
+	private CompactIData dictionary;
+
+	ShapedIData(Shape shape) {
+		this.shape = shape;
+		this.values = shape.size() == 0 ? NO_VALUES : new Object[shape.size()];
+	}
+
+	/**
+	 * Returns a new factory of instances that share shapes with each other.
+	 * Documents nested through a cursor (e.g.
+	 * {@link IDataCursor#insertDataAfter(String)}) share the same shapes too.
+	 *
+	 * @return new factory
+	 */
+	public static DirectIDataFactory newFactory() {
+		return new Factory(new Shape());
+	}
+
+	@Override
+	public IDataCursor getCursor() {
+		return new Cursor(NONE, null);
+	}
+
+	/**
+	 * Returns whether the instance has switched to dictionary mode.
+	 *
+	 * @return {@code true} if the instance no longer uses a shared shape
+	 */
+	boolean isDictionaryMode() {
+		return dictionary != null;
+	}
+
+	/**
+	 * Returns the shape of the instance.
+	 *
+	 * @return the shape or {@code null} if in dictionary mode
+	 */
+	Shape getShape() {
+		return dictionary == null ? shape : null;
+	}
+
+	/**
+	 * Returns the values of the instance. Only the first
+	 * {@link Shape#size()} elements are in use.
+	 *
+	 * @return the values or {@code null} if in dictionary mode
+	 */
+	Object[] getValues() {
+		return dictionary == null ? values : null;
+	}
+
+	private int size() {
+		return shape.size();
+	}
+
+	private boolean append(String key, Object value) {
+		Shape child = shape.withKey(key);
+		if (child == null) {
+			return false;
+		}
+
+		int slot = shape.size();
+		if (values.length <= slot) {
+			Object[] newValues = new Object[Math.max(slot + 1, child.getSizeHint())];
+			System.arraycopy(values, 0, newValues, 0, slot);
+			values = newValues;
+		}
+		values[slot] = value;
+		shape = child;
+		return true;
+	}
+
+	private void switchToDictionary() {
+		String[] keys = new String[shape.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = shape.getKey(i);
+		}
+		dictionary = new CompactIData(keys, values, keys.length);
+		shape = shape.getRoot();
+		values = null;
+	}
+
+	private static class Factory implements DirectIDataFactory {
+
+		private final Shape root;
+
+		Factory(Shape root) {
+			this.root = root;
+		}
+
+		@Override
+		public IData create() {
+			return new ShapedIData(root);
+		}
+	}
+
+	private final class Cursor implements IDataCursor {
+
+		/* Only used in shaped mode. -1: before the first element; size or greater: after the last element */
+		private int position;
+		/* Only used in dictionary mode */
+		private IDataCursor delegate;
+
+		Cursor(int position, IDataCursor delegate) {
+			this.position = position;
+			this.delegate = delegate;
+		}
+
+		/**
+		 * Returns the cursor to delegate to if the document is in dictionary
+		 * mode, or {@code null} otherwise.
+		 */
+		private IDataCursor dictionaryCursor() {
+			if (dictionary == null) {
+				return null;
+			}
+			if (delegate == null) {
+				delegate = dictionary.getCursor(position);
+			}
+			return delegate;
+		}
+
+		private IDataCursor toDictionaryCursor() {
+			switchToDictionary();
+			return dictionaryCursor();
+		}
+
+		private boolean isPositioned() {
+			return position >= 0 && position < size();
+		}
+
+		private void ensurePositioned() {
+			if (!isPositioned()) {
+				throw new IllegalStateException("Cursor is not positioned on an element");
+			}
+		}
+
+		@Override
+		public void home() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				dictionaryCursor.home();
+				return;
+			}
+			position = NONE;
+		}
+
+		@Override
+		public String getKey() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.getKey();
+			}
+			return isPositioned() ? shape.getKey(position) : null;
+		}
+
+		@Override
+		public void setKey(String key) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				dictionaryCursor.setKey(key);
+				return;
+			}
+			ensurePositioned();
+			if (key == null || !key.equals(shape.getKey(position))) {
+				toDictionaryCursor().setKey(key);
+			}
+		}
+
+		@Override
+		public Object getValue() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.getValue();
+			}
+			return isPositioned() ? values[position] : null;
+		}
+
+		@Override
+		public void setValue(Object value) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				dictionaryCursor.setValue(value);
+				return;
+			}
+			ensurePositioned();
+			values[position] = value;
+		}
+
+		@Override
+		public boolean delete() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.delete();
+			}
+			if (!isPositioned()) {
+				return false;
+			}
+			if (position == size() - 1) {
+				// Deleting the last key goes back to the parent shape
+				values[position] = null;
+				shape = shape.getParent();
+				return false;
+			}
+			return toDictionaryCursor().delete();
+		}
+
+		@Override
+		public void insertBefore(String key, Object value) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				dictionaryCursor.insertBefore(key, value);
+				return;
+			}
+			int target = position < 0 ? 0 : Math.min(position, size());
+			if (target == size() && append(key, value)) {
+				position = target;
+			} else {
+				toDictionaryCursor().insertBefore(key, value);
+			}
+		}
+
+		@Override
+		public void insertAfter(String key, Object value) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				dictionaryCursor.insertAfter(key, value);
+				return;
+			}
+			int target = position < 0 ? size() : Math.min(position + 1, size());
+			if (target == size() && append(key, value)) {
+				position = target;
+			} else {
+				toDictionaryCursor().insertAfter(key, value);
+			}
+		}
+
+		@Override
+		public IData insertDataBefore(String key) {
+			IData data = new ShapedIData(shape.getRoot());
+			insertBefore(key, data);
+			return data;
+		}
+
+		@Override
+		public IData insertDataAfter(String key) {
+			IData data = new ShapedIData(shape.getRoot());
+			insertAfter(key, data);
+			return data;
+		}
+
+		@Override
+		public boolean next() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.next();
+			}
+			if (position + 1 < size()) {
+				position++;
+				return true;
+			}
+			position = size();
+			return false;
+		}
+
+		@Override
+		public boolean next(String key) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.next(key);
+			}
+			int slot = shape.indexOf(key);
+			return moveTo(slot > position ? slot : NONE);
+		}
+
+		@Override
+		public boolean previous() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.previous();
+			}
+			int target = Math.min(position, size()) - 1;
+			if (target >= 0) {
+				position = target;
+				return true;
+			}
+			position = NONE;
+			return false;
+		}
+
+		@Override
+		public boolean previous(String key) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.previous(key);
+			}
+			int slot = shape.indexOf(key);
+			return moveTo(slot < Math.min(position, size()) ? slot : NONE);
+		}
+
+		@Override
+		public boolean first() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.first();
+			}
+			if (size() == 0) {
+				position = NONE;
+				return false;
+			}
+			position = 0;
+			return true;
+		}
+
+		@Override
+		public boolean first(String key) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.first(key);
+			}
+			return moveTo(shape.indexOf(key));
+		}
+
+		@Override
+		public boolean last() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.last();
+			}
+			position = size() - 1;
+			return position >= 0;
+		}
+
+		@Override
+		public boolean last(String key) {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.last(key);
+			}
+			// Keys are unique in shaped mode
+			return moveTo(shape.indexOf(key));
+		}
+
+		private boolean moveTo(int target) {
+			if (target == NONE) {
+				return false;
+			}
+			position = target;
+			return true;
+		}
+
+		@Override
+		public boolean hasMoreData() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return dictionaryCursor.hasMoreData();
+			}
+			return position + 1 < size();
+		}
+
+		@Override
+		public void destroy() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				dictionaryCursor.destroy();
+			}
+			position = NONE;
+		}
+
+		@Override
+		public IDataCursor getCursorClone() {
+			IDataCursor dictionaryCursor = dictionaryCursor();
+			if (dictionaryCursor != null) {
+				return new Cursor(NONE, dictionaryCursor.getCursorClone());
+			}
+			return new Cursor(position, null);
+		}
+	}
+}
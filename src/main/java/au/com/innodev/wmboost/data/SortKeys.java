@@ -0,0 +1,209 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.SortSpec.SortKey;
+
+/**
+ * The sort keys of a set of elements, extracted and converted once into one
+ * array per sort field.
+ * <p>
+ * Integral and floating point fields are kept in primitive arrays; other
+ * fields in arrays of comparable values. Elements are then compared by
+ * position, without reading or converting anything else.
+ */
+final class SortKeys implements IndexSort.IndexComparator {
+
+	private final Column[] columns;
+
+	private SortKeys(Column[] columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Extracts the keys of the given elements, which must not be {@code null}.
+	 *
+	 * @param elements elements to extract keys from
+	 * @param spec sort spec
+	 * @param converter converter used to read fields
+	 * @param parallelism maximum number of concurrent workers
+	 * @param executor executor that runs additional workers, if
+	 *        {@code parallelism} is greater than one
+	 * @return extracted keys
+	 */
+	static SortKeys extract(final IData[] elements, SortSpec spec, BulkArrayConverter converter, int parallelism,
+			ExecutorService executor) {
+		List<SortKey> keys = spec.getKeys();
+		final Column[] columns = new Column[keys.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = newColumn(keys.get(i), converter, elements.length);
+		}
+
+		ParallelRanges.RangeTask task = new ParallelRanges.RangeTask() {
+			@Override
+			public void run(int fromIndex, int toIndex) {
+				for (Column column : columns) {
+					for (int i = fromIndex; i < toIndex; i++) {
+						column.extract(i, elements[i]);
+					}
+				}
+			}
+		};
+
+		if (parallelism > 1 && elements.length >= IndexSort.PARALLEL_THRESHOLD) {
+			ParallelRanges.execute(elements.length, parallelism, executor, task);
+		} else {
+			task.run(0, elements.length);
+		}
+
+		return new SortKeys(columns);
+	}
+
+	@Override
+	public int compare(int index1, int index2) {
+		for (Column column : columns) {
+			int comparison = column.compare(index1, index2);
+			if (comparison != 0) {
+				return comparison;
+			}
+		}
+		return 0;
+	}
+
+	private static Column newColumn(SortKey key, BulkArrayConverter converter, int size) {
+		Field<?> field = key.getField();
+		Class<?> type = field.getType();
+
+		if (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class) {
+			return new LongColumn(newReader(field, converter), key.isDescending(), size);
+		} else if (type == Double.class || type == Float.class) {
+			return new DoubleColumn(newReader(field, converter), key.isDescending(), size);
+		} else {
+			return new ComparableColumn(newReader(field, converter), key.isDescending(), size);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FieldReader<Object> newReader(Field<?> field, BulkArrayConverter converter) {
+		return new FieldReader<Object>((Field<Object>) field, converter);
+	}
+
+	/**
+	 * The values of one sort field. Nulls are sorted last, whatever the
+	 * direction.
+	 */
+	private abstract static class Column {
+		final FieldReader<Object> reader;
+		final boolean descending;
+		final boolean[] nulls;
+
+		Column(FieldReader<Object> reader, boolean descending, int size) {
+			this.reader = reader;
+			this.descending = descending;
+			this.nulls = new boolean[size];
+		}
+
+		final void extract(int index, IData element) {
+			Object value = reader.read(element);
+			if (value == null) {
+				nulls[index] = true;
+			} else {
+				store(index, value);
+			}
+		}
+
+		final int compare(int index1, int index2) {
+			boolean null1 = nulls[index1];
+			boolean null2 = nulls[index2];
+			if (null1 || null2) {
+				return (null1 == null2) ? 0 : (null1 ? 1 : -1);
+			}
+
+			int comparison = compareValues(index1, index2);
+			return descending ? -comparison : comparison;
+		}
+
+		abstract void store(int index, Object value);
+
+		abstract int compareValues(int index1, int index2);
+	}
+
+	private static final class LongColumn extends Column {
+		private final long[] values;
+
+		LongColumn(FieldReader<Object> reader, boolean descending, int size) {
+			super(reader, descending, size);
+			this.values = new long[size];
+		}
+
+		@Override
+		void store(int index, Object value) {
+			values[index] = ((Number) value).longValue();
+		}
+
+		@Override
+		int compareValues(int index1, int index2) {
+			long value1 = values[index1];
+			long value2 = values[index2];
+			return (value1 < value2) ? -1 : ((value1 == value2) ? 0 : 1);
+		}
+	}
+
+	private static final class DoubleColumn extends Column {
+		private final double[] values;
+
+		DoubleColumn(FieldReader<Object> reader, boolean descending, int size) {
+			super(reader, descending, size);
+			this.values = new double[size];
+		}
+
+		@Override
+		void store(int index, Object value) {
+			values[index] = ((Number) value).doubleValue();
+		}
+
+		@Override
+		int compareValues(int index1, int index2) {
+			return Double.compare(values[index1], values[index2]);
+		}
+	}
+
+	private static final class ComparableColumn extends Column {
+		private final Comparable<Object>[] values;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ComparableColumn(FieldReader<Object> reader, boolean descending, int size) {
+			super(reader, descending, size);
+			this.values = new Comparable[size];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		void store(int index, Object value) {
+			values[index] = (Comparable<Object>) value;
+		}
+
+		@Override
+		int compareValues(int index1, int index2) {
+			return values[index1].compareTo(values[index2]);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Describes how to sort documents: one or more fields, each one ascending or
+ * descending. Later fields are only compared when all previous ones are
+ * equal.
+ * 
+ * <pre>
+ * SortSpec byDateThenAmount = SortSpec.ascending(Field.of("date", Date.class))
+ * 		.thenDescending(Field.of("amount", BigDecimal.class));
+ * </pre>
+ * <p>
+ * Values are compared in their natural order after conversion to the field
+ * type. Missing and {@code null} values are sorted last, whatever the
+ * direction. Instances are immutable.
+ * 
+ * @see DocumentSorts
+ */
+public final class SortSpec {
+
+	/**
+	 * A field and its direction.
+	 */
+	static final class SortKey {
+		private final Field<?> field;
+		private final boolean descending;
+
+		SortKey(Field<?> field, boolean descending) {
+			this.field = field;
+			this.descending = descending;
+		}
+
+		Field<?> getField() {
+			return field;
+		}
+
+		boolean isDescending() {
+			return descending;
+		}
+
+		@Override
+		public String toString() {
+			return field.getKey() + (descending ? " desc" : " asc");
+		}
+	}
+
+	private final List<SortKey> keys;
+
+	private SortSpec(List<SortKey> keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * Creates a spec that sorts by a field in ascending order.
+	 * 
+	 * @param field
+	 *            field to sort by
+	 * @return a sort spec
+	 */
+	public static SortSpec ascending(Field<? extends Comparable<?>> field) {
+		return new SortSpec(Collections.<SortKey> emptyList()).then(field, false);
+	}
+
+	/**
+	 * Creates a spec that sorts by a field in descending order.
+	 * 
+	 * @param field
+	 *            field to sort by
+	 * @return a sort spec
+	 */
+	public static SortSpec descending(Field<? extends Comparable<?>> field) {
+		return new SortSpec(Collections.<SortKey> emptyList()).then(field, true);
+	}
+
+	/**
+	 * Returns a spec that, for equal values in this one, sorts by another
+	 * field in ascending order.
+	 * 
+	 * @param field
+	 *            field to sort by
+	 * @return a new sort spec
+	 */
+	public SortSpec thenAscending(Field<? extends Comparable<?>> field) {
+		return then(field, false);
+	}
+
+	/**
+	 * Returns a spec that, for equal values in this one, sorts by another
+	 * field in descending order.
+	 * 
+	 * @param field
+	 *            field to sort by
+	 * @return a new sort spec
+	 */
+	public SortSpec thenDescending(Field<? extends Comparable<?>> field) {
+		return then(field, true);
+	}
+
+	List<SortKey> getKeys() {
+		return keys;
+	}
+
+	private SortSpec then(Field<? extends Comparable<?>> field, boolean descending) {
+		Preconditions.checkNotNull(field, "field cannot be null");
+
+		List<SortKey> newKeys = new ArrayList<SortKey>(keys.size() + 1);
+		newKeys.addAll(keys);
+		newKeys.add(new SortKey(field, descending));
+		return new SortSpec(Collections.unmodifiableList(newKeys));
+	}
+
+	@Override
+	public String toString() {
+		return keys.toString();
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A document list that moves its elements to a temporary file once their
+ * estimated size exceeds a heap budget.
+ * <p>
+ * Elements are appended with {@link #add(Document)} or {@link #add(IData)}
+ * without building an intermediate list. Once spilled, elements are stored
+ * in pages of a compact binary encoding, and {@link #get(int)} reads the page
+ * that contains the requested element, keeping only the last page read in
+ * memory. Iterating in order therefore reads each page once.
+ * <p>
+ * Instances are created with
+ * {@link DocumentLists#newSpillingList(CollectionEntry, long)}, which stores
+ * the list as the entry value. Retrieving that entry as a document list
+ * returns this instance, not a copy. The temporary file is deleted when the
+ * list is closed, when the entry is removed or given another value, when the
+ * document is cleared or when {@link DocumentTrees#close(Document)} is
+ * invoked on the document.
+ * <p>
+ * Documents returned for spilled elements are read from the file, so changes
+ * made to them aren't kept. The list only supports appending and isn't
+ * thread-safe. Values held by the documents must be of common types or be
+ * {@link java.io.Serializable}; disk failures are reported as
+ * {@link DocumentIOException}.
+ */
+public final class SpillingDocumentList extends AbstractList<Document> implements RandomAccess, Closeable {
+
+	// Maximum number of elements per page, so that random access decodes little
+	private static final int MAX_PAGE_ELEMENTS = 256;
+
+	private final DocumentImpl owner;
+	private final long heapBudget;
+
+	// Elements not written to the file yet: all of them until the list spills
+	private List<IData> pending = new ArrayList<IData>();
+	private long pendingBytes;
+
+	private File file;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	private long fileLength;
+	private long[] pageOffsets = new long[16];
+	private int[] pageFirstElements = new int[16];
+	private int pageCount;
+	private int spilledCount;
+
+	private int cachedPage = -1;
+	private IData[] cachedElements;
+	private boolean closed;
+
+	SpillingDocumentList(DocumentImpl owner, long heapBudgetBytes) {
+		this.owner = Preconditions.checkNotNull(owner);
+		if (heapBudgetBytes < 1) {
+			throw new IllegalArgumentException("Heap budget must be positive but was " + heapBudgetBytes);
+		}
+		this.heapBudget = heapBudgetBytes;
+	}
+
+	/**
+	 * Appends a document.
+	 *
+	 * @param document
+	 *            document to append, possibly {@code null}
+	 * @return {@code true}
+	 */
+	@Override
+	public boolean add(Document document) {
+		return add((document != null) ? document.getIData() : null);
+	}
+
+	/**
+	 * Appends an {@code IData} instance.
+	 *
+	 * @param iData
+	 *            element to append, possibly {@code null}
+	 * @return {@code true}
+	 */
+	public boolean add(IData iData) {
+		checkOpen();
+
+		pending.add(iData);
+		pendingBytes += (iData != null) ? IDataFootprint.estimate(iData) : 0;
+		modCount++;
+
+		if (file != null) {
+			if (pending.size() >= MAX_PAGE_ELEMENTS || pendingBytes >= heapBudget) {
+				writePendingPage();
+			}
+		} else if (pendingBytes > heapBudget) {
+			spill();
+		}
+		return true;
+	}
+
+	@Override
+	public Document get(int index) {
+		checkOpen();
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of range for " + size() + " elements");
+		}
+
+		IData iData;
+		if (index >= spilledCount) {
+			iData = pending.get(index - spilledCount);
+		} else {
+			int page = findPage(index);
+			iData = readPage(page)[index - pageFirstElements[page]];
+		}
+		return (iData != null) ? owner.newSibling(iData) : null;
+	}
+
+	@Override
+	public int size() {
+		return spilledCount + pending.size();
+	}
+
+	/**
+	 * Returns whether elements were moved to a temporary file.
+	 *
+	 * @return {@code true} if the list spilled to disk
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * Deletes the temporary file and releases the elements held in memory.
+	 * The list can't be used afterwards. Closing it more than once has no
+	 * effect.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		pending = new ArrayList<IData>();
+		cachedElements = null;
+
+		if (randomAccessFile != null) {
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				// Nothing else can be done: the file is deleted next
+			}
+		}
+		if (file != null && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Returns whether the list was closed.
+	 *
+	 * @return {@code true} if closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private void spill() {
+		try {
+			file = File.createTempFile("wmboost-list-", ".pages");
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			channel = randomAccessFile.getChannel();
+		} catch (IOException e) {
+			close();
+			throw new DocumentIOException("Unable to create temporary file for document list", e);
+		}
+
+		List<IData> elements = pending;
+		pending = new ArrayList<IData>();
+		pendingBytes = 0;
+		for (int from = 0; from < elements.size(); from += MAX_PAGE_ELEMENTS) {
+			List<IData> page = elements.subList(from, Math.min(from + MAX_PAGE_ELEMENTS, elements.size()));
+			writePage(page);
+		}
+	}
+
+	private void writePendingPage() {
+		writePage(pending);
+		pending = new ArrayList<IData>();
+		pendingBytes = 0;
+	}
+
+	/**
+	 * Appends a page to the file. Each page has its own key dictionary, so it
+	 * can be decoded on its own.
+	 */
+	private void writePage(List<IData> elements) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream output = new DataOutputStream(bytes);
+			IDataCodec.Writer writer = new IDataCodec.Writer(output);
+			output.writeInt(elements.size());
+			for (IData element : elements) {
+				writer.writeValue(element);
+			}
+			output.flush();
+
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			long position = fileLength;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+
+			ensurePageCapacity();
+			pageOffsets[pageCount] = fileLength;
+			pageFirstElements[pageCount] = spilledCount;
+			pageCount++;
+			fileLength = position;
+			spilledCount += elements.size();
+		} catch (IOException e) {
+			throw new DocumentIOException("Unable to write document list page to temporary file", e);
+		}
+	}
+
+	private IData[] readPage(int page) {
+		if (page == cachedPage) {
+			return cachedElements;
+		}
+
+		long start = pageOffsets[page];
+		long end = (page + 1 < pageCount) ? pageOffsets[page + 1] : fileLength;
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		try {
+			long position = start;
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					throw new DocumentIOException("Unexpected end of temporary file of document list");
+				}
+				position += read;
+			}
+
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+			IDataCodec.Reader reader = new IDataCodec.Reader(input, owner.getConfig().getCustomIDataFactory());
+			IData[] elements = new IData[input.readInt()];
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = (IData) reader.readValue();
+			}
+
+			cachedPage = page;
+			cachedElements = elements;
+			return elements;
+		} catch (IOException e) {
+			throw new DocumentIOException("Unable to read document list page from temporary file", e);
+		}
+	}
+
+	private int findPage(int index) {
+		int low = 0;
+		int high = pageCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (pageFirstElements[middle] <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	private void ensurePageCapacity() {
+		if (pageCount == pageOffsets.length) {
+			long[] newOffsets = new long[pageOffsets.length * 2];
+			System.arraycopy(pageOffsets, 0, newOffsets, 0, pageCount);
+			pageOffsets = newOffsets;
+
+			int[] newFirstElements = new int[pageFirstElements.length * 2];
+			System.arraycopy(pageFirstElements, 0, newFirstElements, 0, pageCount);
+			pageFirstElements = newFirstElements;
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Document list was closed");
+		}
+	}
+}
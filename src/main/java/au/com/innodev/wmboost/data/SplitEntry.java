@@ -53,6 +53,34 @@ public interface SplitEntry<E> extends HasKey, EntryMutator<Iterable<? extends E
 	 */
 	List<E> getValOrEmpty();
 
+	/**
+	 * Iterates over the values in consecutive chunks of up to {@code size}
+	 * values, retaining the entries.
+	 * 
+	 * @param size
+	 *            maximum number of values per chunk
+	 * @return chunks of the split entry values
+	 * @see #chunks(int, ChunkOption)
+	 */
+	Iterable<List<E>> chunks(int size);
+
+	/**
+	 * Iterates over the values in consecutive chunks of up to {@code size}
+	 * values. Only the values of the current chunk are converted.
+	 * <p>
+	 * With {@link ChunkOption#CONSUME}, the entries that belong to a chunk are
+	 * removed from the document when the next chunk is requested or the
+	 * iteration ends, so values that were processed can be garbage collected
+	 * during the loop.
+	 * 
+	 * @param size
+	 *            maximum number of values per chunk
+	 * @param option
+	 *            whether processed entries are removed
+	 * @return chunks of the split entry values
+	 */
+	Iterable<List<E>> chunks(int size, ChunkOption option);
+
 	/**
 	 * Sets or replaces all values in the split entry with the provided
 	 * ones.
@@ -16,7 +16,9 @@
 package au.com.innodev.wmboost.data;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.springframework.core.convert.TypeDescriptor;
 
@@ -72,6 +74,30 @@ class SplitEntryImpl<E> extends BaseEntry<E, E> implements SplitEntry<E> {
 		return list;
 	}
 
+	final TypeDescriptor getAccessorType() {
+		return accessorType;
+	}
+
+	/**
+	 * Returns the stored values, in document order, without conversion or
+	 * normalisation. Values are read in a single pass.
+	 */
+	final Object[] getRawVals() {
+		List<Object> list = new ArrayList<Object>();
+
+		IDataCursorResource cursorRes = newCursorResource();
+		try {
+			boolean hasMore = cursorRes.getCursor().first(getKey());
+			while (hasMore) {
+				list.add(cursorRes.getCursor().getValue());
+				hasMore = cursorRes.getCursor().next(getKey());
+			}
+		} finally {
+			cursorRes.close();
+		}
+		return list.toArray();
+	}
+
 	@Override
 	public void put(Iterable<? extends E> values) {
 		doPut(values);
@@ -150,4 +176,128 @@ class SplitEntryImpl<E> extends BaseEntry<E, E> implements SplitEntry<E> {
 
 	}
 
+	@Override
+	public Iterable<List<E>> chunks(int size) {
+		return chunks(size, ChunkOption.RETAIN);
+	}
+
+	@Override
+	public Iterable<List<E>> chunks(final int size, final ChunkOption option) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1 but was " + size);
+		}
+		Preconditions.checkNotNull(option, "option cannot be null");
+
+		return new Iterable<List<E>>() {
+			@Override
+			public Iterator<List<E>> iterator() {
+				if (ChunkOption.CONSUME.equals(option)) {
+					return new ConsumingChunkIterator(size);
+				}
+				return new RetainingChunkIterator(size);
+			}
+		};
+	}
+
+	/**
+	 * Iterates over windows of the values present when the iteration started.
+	 */
+	private final class RetainingChunkIterator implements Iterator<List<E>> {
+		private final Object[] values;
+		private final int size;
+		private int position;
+
+		RetainingChunkIterator(int size) {
+			this.values = getRawVals();
+			this.size = size;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return position < values.length;
+		}
+
+		@Override
+		public List<E> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			int to = Math.min(position + size, values.length);
+			List<E> chunk = new ArrayList<E>(to - position);
+			for (int i = position; i < to; i++) {
+				chunk.add(convertAndNormaliseValForGet(values[i], accessorType));
+			}
+			position = to;
+			return chunk;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Chunks can't be removed");
+		}
+	}
+
+	/**
+	 * Reads each chunk from the first entries with the key, and deletes those
+	 * entries before reading the following chunk.
+	 */
+	private final class ConsumingChunkIterator implements Iterator<List<E>> {
+		private final int size;
+		private int pendingRemoval;
+
+		ConsumingChunkIterator(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public boolean hasNext() {
+			IDataCursorResource cursorRes = newCursorResource();
+			try {
+				IDataCursor cursor = cursorRes.getCursor();
+				removePending(cursor);
+				return cursor.first(getKey());
+			} finally {
+				cursorRes.close();
+			}
+		}
+
+		@Override
+		public List<E> next() {
+			List<E> chunk = new ArrayList<E>();
+
+			IDataCursorResource cursorRes = newCursorResource();
+			try {
+				IDataCursor cursor = cursorRes.getCursor();
+				removePending(cursor);
+
+				boolean hasMore = cursor.first(getKey());
+				while (hasMore && chunk.size() < size) {
+					chunk.add(convertAndNormaliseValForGet(cursor.getValue(), accessorType));
+					hasMore = cursor.next(getKey());
+				}
+			} finally {
+				cursorRes.close();
+			}
+
+			if (chunk.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			pendingRemoval = chunk.size();
+			return chunk;
+		}
+
+		private void removePending(IDataCursor cursor) {
+			while (pendingRemoval > 0 && cursor.first(getKey())) {
+				cursor.delete();
+				pendingRemoval--;
+			}
+			pendingRemoval = 0;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Chunks can't be removed");
+		}
+	}
 }
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A bounded table of canonical strings, used to make equal string values
+ * share one instance.
+ * <p>
+ * The table only references its strings weakly: a string that is no longer
+ * used anywhere else is removed from it by the garbage collector. Strings
+ * are interned under a key, typically the key of the document entry that
+ * holds them, and each key may only fill part of the table. This way, keys
+ * with mostly unique values (e.g. identifiers) can't fill the table and
+ * prevent the repeated values of other keys (e.g. codes) from being
+ * interned, wherever they appear in a document. Once a key or the whole
+ * table has reached its bound, new strings are returned as they are (i.e.
+ * not interned) until entries are collected.
+ * <p>
+ * An interner may be shared among threads and reused for many documents.
+ * 
+ * @see CompactOptions#withStringInterner(StringInterner)
+ */
+public final class StringInterner {
+
+	/**
+	 * Default maximum number of strings in the table.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 16384;
+
+	private final int maxSize;
+	private final int maxSizePerKey;
+	private final Map<String, CanonicalReference> table = new WeakHashMap<String, CanonicalReference>();
+	/* Number of strings in the table for each key; the null key groups keyless strings */
+	private final Map<String, int[]> sizesByKey = new HashMap<String, int[]>();
+	private final ReferenceQueue<String> collected = new ReferenceQueue<String>();
+
+	/**
+	 * Creates an interner that holds up to {@link #DEFAULT_MAX_SIZE} strings.
+	 */
+	public StringInterner() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates an interner where each key may hold up to a quarter of the
+	 * table.
+	 * 
+	 * @param maxSize
+	 *            maximum number of strings in the table
+	 */
+	public StringInterner(int maxSize) {
+		this(maxSize, Math.max(1, maxSize / 4));
+	}
+
+	/**
+	 * Creates an interner.
+	 * 
+	 * @param maxSize
+	 *            maximum number of strings in the table
+	 * @param maxSizePerKey
+	 *            maximum number of strings interned under the same key
+	 */
+	public StringInterner(int maxSize, int maxSizePerKey) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		if (maxSizePerKey <= 0) {
+			throw new IllegalArgumentException("maxSizePerKey must be positive: " + maxSizePerKey);
+		}
+		this.maxSize = maxSize;
+		this.maxSizePerKey = maxSizePerKey;
+	}
+
+	/**
+	 * Returns the canonical instance of a string, interning it without a key.
+	 * Strings interned without a key share the bound of a single key.
+	 * 
+	 * @param value
+	 *            string to intern
+	 * @return canonical instance, equal to the given string
+	 * @see #intern(String, String)
+	 */
+	public String intern(String value) {
+		return intern(null, value);
+	}
+
+	/**
+	 * Returns the canonical instance of a string: the first equal string
+	 * admitted to this interner that is still in use, or the given string if
+	 * there's none. The given string is admitted if neither the key nor the
+	 * table has reached its bound.
+	 * 
+	 * @param key
+	 *            key the string is interned under, possibly {@code null}
+	 * @param value
+	 *            string to intern
+	 * @return canonical instance, equal to the given string
+	 */
+	public synchronized String intern(String key, String value) {
+		Preconditions.checkNotNull(value, "value cannot be null");
+
+		CanonicalReference reference = table.get(value);
+		String canonical = (reference != null) ? reference.get() : null;
+		if (canonical != null) {
+			return canonical;
+		}
+
+		releaseCollected();
+		int[] keySize = sizesByKey.get(key);
+		// size() also removes the entries of collected strings
+		if ((keySize == null || keySize[0] < maxSizePerKey) && table.size() < maxSize) {
+			if (keySize == null) {
+				keySize = new int[1];
+				sizesByKey.put(key, keySize);
+			}
+			keySize[0]++;
+			table.put(value, new CanonicalReference(value, key, collected));
+		}
+		return value;
+	}
+
+	private void releaseCollected() {
+		Reference<? extends String> reference;
+		while ((reference = collected.poll()) != null) {
+			String key = ((CanonicalReference) reference).key;
+			int[] keySize = sizesByKey.get(key);
+			if (keySize != null && --keySize[0] == 0) {
+				sizesByKey.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of strings currently in the table.
+	 * 
+	 * @return number of strings
+	 */
+	public synchronized int size() {
+		return table.size();
+	}
+
+	/**
+	 * Returns the maximum number of strings in the table.
+	 * 
+	 * @return maximum size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the maximum number of strings interned under the same key.
+	 * 
+	 * @return maximum size per key
+	 */
+	public int getMaxSizePerKey() {
+		return maxSizePerKey;
+	}
+
+	private static final class CanonicalReference extends WeakReference<String> {
+		private final String key;
+
+		CanonicalReference(String value, String key, ReferenceQueue<String> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,514 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.core.convert.ConversionService;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Computes 64-bit structural hashes of {@code IData} trees and compares trees
+ * by value.
+ * <p>
+ * Values are compared in a canonical form: documents as their {@code IData},
+ * lists and arrays (including primitive arrays) as sequences, and numbers by
+ * numeric value, so that {@code 5}, {@code 5L} and {@code 5.0} are the same.
+ * Non-integral numbers are normalised to {@code BigDecimal} through the
+ * conversion service. Strings are never equal to numbers.
+ * <p>
+ * Hashes are computed and trees compared iteratively, with an explicit stack,
+ * so deeply nested trees don't exhaust the stack, and without wrapping
+ * elements in documents. Equal trees always have equal hashes; the opposite
+ * is only very likely, so {@link #equal} confirms a match. Trees that contain
+ * themselves are rejected with an {@code IllegalArgumentException}.
+ */
+final class StructuralHasher {
+
+	private static final long NULL_HASH = 0x6a09e667f3bcc909L;
+	private static final long STRING_TAG = 0x3c6ef372fe94f82bL;
+	private static final long NUMBER_TAG = 0xa54ff53a5f1d36f1L;
+	private static final long DATE_TAG = 0x510e527fade682d1L;
+	private static final long BOOLEAN_TAG = 0x9b05688c2b3e6c1fL;
+	private static final long OTHER_TAG = 0x1f83d9abfb41bd6bL;
+	private static final long IDATA_TAG = 0x5be0cd19137e2179L;
+	private static final long SEQUENCE_TAG = 0xcbbb9d5dc1059ed8L;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+	private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+	private final ConversionService conversionService;
+	private final boolean ignoreKeyOrder;
+
+	StructuralHasher(ConversionService conversionService, KeyOrder keyOrder) {
+		this.conversionService = Preconditions.checkNotNull(conversionService);
+		this.ignoreKeyOrder = (Preconditions.checkNotNull(keyOrder, "keyOrder cannot be null") == KeyOrder.IGNORED);
+	}
+
+	/**
+	 * Returns the structural hash of a tree.
+	 *
+	 * @param root root of the tree, possibly {@code null}
+	 * @return 64-bit hash
+	 * @throws IllegalArgumentException
+	 *             if the tree contains itself
+	 */
+	long hash(IData root) {
+		if (root == null) {
+			return NULL_HASH;
+		}
+
+		List<Frame> stack = new ArrayList<Frame>();
+		Set<Object> inProgress = newIdentitySet();
+		stack.add(newFrame(root, root, inProgress));
+		while (true) {
+			Frame frame = stack.get(stack.size() - 1);
+			if (frame.position < frame.values.length) {
+				Object value = frame.values[frame.position];
+				Object child = canonical(value);
+				if (isContainer(child)) {
+					stack.add(newFrame(child, value, inProgress));
+				} else {
+					frame.accept(leafHash(child));
+				}
+			} else {
+				stack.remove(stack.size() - 1);
+				inProgress.remove(frame.source);
+				long frameHash = frame.finish();
+				if (stack.isEmpty()) {
+					return frameHash;
+				}
+				stack.get(stack.size() - 1).accept(frameHash);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether two trees are structurally equal. Like hashing, the
+	 * comparison is iterative.
+	 *
+	 * @param iData1 first tree, possibly {@code null}
+	 * @param iData2 second tree, possibly {@code null}
+	 * @return {@code true} if they're equal
+	 * @throws IllegalArgumentException
+	 *             if a tree contains itself
+	 */
+	boolean equal(IData iData1, IData iData2) {
+		if (iData1 == null || iData2 == null) {
+			return iData1 == iData2;
+		}
+
+		List<PairFrame> stack = new ArrayList<PairFrame>();
+		Set<Object> inProgress1 = newIdentitySet();
+		Set<Object> inProgress2 = newIdentitySet();
+		if (!pushPair(stack, iData1, iData2, iData1, iData2, inProgress1, inProgress2)) {
+			return false;
+		}
+
+		while (!stack.isEmpty()) {
+			PairFrame frame = stack.get(stack.size() - 1);
+			if (frame.position < frame.children1.length) {
+				Object value1 = frame.children1[frame.position];
+				Object value2 = frame.children2[frame.position];
+				frame.position++;
+
+				Object canonical1 = canonical(value1);
+				Object canonical2 = canonical(value2);
+				if (canonical1 == canonical2) {
+					continue;
+				} else if (isContainer(canonical1) || isContainer(canonical2)) {
+					if (!pushPair(stack, canonical1, canonical2, value1, value2, inProgress1, inProgress2)) {
+						return false;
+					}
+				} else if (!leavesEqual(canonical1, canonical2)) {
+					return false;
+				}
+			} else {
+				stack.remove(stack.size() - 1);
+				inProgress1.remove(frame.source1);
+				inProgress2.remove(frame.source2);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the elements without structural duplicates, keeping the first
+	 * occurrence of each, in the original order. {@code null} elements are
+	 * treated as equal to each other.
+	 *
+	 * @param elements elements
+	 * @return distinct elements; the given array if there were no duplicates
+	 */
+	IData[] distinct(IData[] elements) {
+		int capacity = Integer.highestOneBit(Math.max(elements.length, 1) * 2 - 1) << 1;
+		int mask = capacity - 1;
+		long[] slotHashes = new long[capacity];
+		int[] slotElements = new int[capacity];
+
+		IData[] kept = new IData[elements.length];
+		int keptCount = 0;
+		boolean nullKept = false;
+
+		for (int i = 0; i < elements.length; i++) {
+			IData element = elements[i];
+			if (element == null) {
+				if (!nullKept) {
+					nullKept = true;
+					kept[keptCount++] = null;
+				}
+				continue;
+			}
+
+			long elementHash = hash(element);
+			int slot = (int) mix(elementHash) & mask;
+			boolean duplicate = false;
+			// Slots store kept positions plus one, so that zero means empty
+			while (slotElements[slot] != 0) {
+				if (slotHashes[slot] == elementHash && equal(kept[slotElements[slot] - 1], element)) {
+					duplicate = true;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			if (!duplicate) {
+				kept[keptCount++] = element;
+				slotHashes[slot] = elementHash;
+				slotElements[slot] = keptCount;
+			}
+		}
+
+		if (keptCount == elements.length) {
+			return elements;
+		}
+		IData[] result = new IData[keptCount];
+		System.arraycopy(kept, 0, result, 0, keptCount);
+		return result;
+	}
+
+	/**
+	 * Pushes the frame comparing the children of two containers.
+	 *
+	 * @return {@code false} if the containers are already known to differ,
+	 *         e.g. because their sizes or keys differ
+	 */
+	private boolean pushPair(List<PairFrame> stack, Object canonical1, Object canonical2, Object source1,
+			Object source2, Set<Object> inProgress1, Set<Object> inProgress2) {
+		Object[] children1;
+		Object[] children2;
+
+		if (canonical1 instanceof IData && canonical2 instanceof IData) {
+			List<String> keys1 = new ArrayList<String>();
+			List<Object> values1 = new ArrayList<Object>();
+			readEntries((IData) canonical1, keys1, values1);
+			List<String> keys2 = new ArrayList<String>();
+			List<Object> values2 = new ArrayList<Object>();
+			readEntries((IData) canonical2, keys2, values2);
+
+			if (keys1.size() != keys2.size()) {
+				return false;
+			}
+
+			if (!ignoreKeyOrder) {
+				if (!keys1.equals(keys2)) {
+					return false;
+				}
+				children1 = values1.toArray();
+				children2 = values2.toArray();
+			} else {
+				// Values with the same key are paired in order of appearance
+				Map<String, List<Object>> groups1 = groupByKey(keys1, values1);
+				Map<String, List<Object>> groups2 = groupByKey(keys2, values2);
+				if (!groups1.keySet().equals(groups2.keySet())) {
+					return false;
+				}
+				children1 = new Object[values1.size()];
+				children2 = new Object[values2.size()];
+				int position = 0;
+				for (Map.Entry<String, List<Object>> group : groups1.entrySet()) {
+					List<Object> groupValues1 = group.getValue();
+					List<Object> groupValues2 = groups2.get(group.getKey());
+					if (groupValues1.size() != groupValues2.size()) {
+						return false;
+					}
+					for (int i = 0; i < groupValues1.size(); i++) {
+						children1[position] = groupValues1.get(i);
+						children2[position] = groupValues2.get(i);
+						position++;
+					}
+				}
+			}
+		} else if (canonical1 instanceof Object[] && canonical2 instanceof Object[]) {
+			children1 = (Object[]) canonical1;
+			children2 = (Object[]) canonical2;
+			if (children1.length != children2.length) {
+				return false;
+			}
+		} else {
+			return false;
+		}
+
+		Object key1 = identityKey(canonical1, source1);
+		Object key2 = identityKey(canonical2, source2);
+		checkNotInProgress(key1, inProgress1);
+		checkNotInProgress(key2, inProgress2);
+		stack.add(new PairFrame(children1, children2, key1, key2));
+		return true;
+	}
+
+	private static Map<String, List<Object>> groupByKey(List<String> keys, List<Object> values) {
+		Map<String, List<Object>> groups = new HashMap<String, List<Object>>();
+		for (int i = 0; i < keys.size(); i++) {
+			List<Object> group = groups.get(keys.get(i));
+			if (group == null) {
+				group = new ArrayList<Object>(1);
+				groups.put(keys.get(i), group);
+			}
+			group.add(values.get(i));
+		}
+		return groups;
+	}
+
+	private static void readEntries(IData iData, List<String> keys, List<Object> values) {
+		IDataCursor cursor = iData.getCursor();
+		try {
+			boolean hasMore = cursor.first();
+			while (hasMore) {
+				keys.add(cursor.getKey());
+				values.add(cursor.getValue());
+				hasMore = cursor.next();
+			}
+		} finally {
+			cursor.destroy();
+		}
+	}
+
+	private Frame newFrame(Object container, Object source, Set<Object> inProgress) {
+		Object key = identityKey(container, source);
+		checkNotInProgress(key, inProgress);
+
+		if (container instanceof IData) {
+			List<String> keys = new ArrayList<String>();
+			List<Object> values = new ArrayList<Object>();
+			readEntries((IData) container, keys, values);
+			return new Frame(keys.toArray(new String[keys.size()]), values.toArray(), ignoreKeyOrder, key);
+		} else {
+			return new Frame(null, (Object[]) container, false, key);
+		}
+	}
+
+	/**
+	 * Returns the instance that identifies a container while it's being
+	 * processed: the value itself, except for documents, which are identified
+	 * by their {@code IData}. Canonical arrays made from collections are new
+	 * instances, so they can't be used.
+	 */
+	private static Object identityKey(Object canonical, Object source) {
+		return (source instanceof Document) ? canonical : source;
+	}
+
+	private static void checkNotInProgress(Object key, Set<Object> inProgress) {
+		if (!inProgress.add(key)) {
+			throw new IllegalArgumentException("Document contains itself and can't be compared structurally");
+		}
+	}
+
+	private static Set<Object> newIdentitySet() {
+		return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	}
+
+	private static boolean isContainer(Object canonical) {
+		return canonical instanceof IData || canonical instanceof Object[];
+	}
+
+	private Object canonical(Object value) {
+		if (value instanceof Document) {
+			return ((Document) value).getIData();
+		} else if (value instanceof Collection<?>) {
+			return ((Collection<?>) value).toArray();
+		} else if (value instanceof Number) {
+			return canonicalNumber((Number) value);
+		} else if (value != null && value.getClass().isArray() && !(value instanceof Object[])) {
+			Object[] boxed = new Object[Array.getLength(value)];
+			for (int i = 0; i < boxed.length; i++) {
+				boxed[i] = Array.get(value, i);
+			}
+			return boxed;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Integral values that fit in a {@code long} become a {@code Long}; any
+	 * other number becomes a {@code BigDecimal} without trailing zeros.
+	 */
+	private Object canonicalNumber(Number number) {
+		if (number instanceof Long || number instanceof Integer || number instanceof Short
+				|| number instanceof Byte) {
+			return Long.valueOf(number.longValue());
+		}
+
+		BigDecimal decimal;
+		if (number instanceof BigDecimal) {
+			decimal = (BigDecimal) number;
+		} else if (number instanceof BigInteger) {
+			decimal = new BigDecimal((BigInteger) number);
+		} else {
+			try {
+				decimal = conversionService.convert(number, BigDecimal.class);
+			} catch (RuntimeException e) {
+				// Not representable as a decimal, e.g. NaN or infinity
+				return number;
+			}
+			if (decimal == null) {
+				return number;
+			}
+		}
+
+		if (decimal.signum() == 0) {
+			return Long.valueOf(0);
+		}
+		decimal = decimal.stripTrailingZeros();
+		if (decimal.scale() <= 0 && decimal.compareTo(LONG_MIN) >= 0 && decimal.compareTo(LONG_MAX) <= 0) {
+			return Long.valueOf(decimal.longValue());
+		}
+		return decimal;
+	}
+
+	private static boolean leavesEqual(Object leaf1, Object leaf2) {
+		if (leaf1 == null || leaf2 == null) {
+			return leaf1 == leaf2;
+		}
+		if (leaf1 instanceof Date && leaf2 instanceof Date) {
+			return ((Date) leaf1).getTime() == ((Date) leaf2).getTime();
+		}
+		return leaf1.equals(leaf2);
+	}
+
+	private static long leafHash(Object leaf) {
+		if (leaf == null) {
+			return NULL_HASH;
+		} else if (leaf instanceof String) {
+			return mix(stringHash((String) leaf) ^ STRING_TAG);
+		} else if (leaf instanceof Long) {
+			return mix(((Long) leaf).longValue() ^ NUMBER_TAG);
+		} else if (leaf instanceof BigDecimal) {
+			return mix(stringHash(leaf.toString()) ^ NUMBER_TAG);
+		} else if (leaf instanceof Date) {
+			return mix(((Date) leaf).getTime() ^ DATE_TAG);
+		} else if (leaf instanceof Boolean) {
+			return mix((((Boolean) leaf).booleanValue() ? 1 : 2) ^ BOOLEAN_TAG);
+		} else {
+			return mix(leaf.hashCode() ^ OTHER_TAG);
+		}
+	}
+
+	private static long stringHash(String value) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	// Finaliser of MurmurHash3, spreads every input bit across the result
+	private static long mix(long value) {
+		long mixed = value;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xff51afd7ed558ccdL;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xc4ceb9fe1a85ec53L;
+		mixed ^= mixed >>> 33;
+		return mixed;
+	}
+
+	/**
+	 * A document or sequence whose children are being hashed.
+	 */
+	private static final class Frame {
+		final String[] keys;
+		final Object[] values;
+		final boolean unordered;
+		final Object source;
+		int position;
+		long accumulated;
+
+		Frame(String[] keys, Object[] values, boolean unordered, Object source) {
+			this.keys = keys;
+			this.values = values;
+			this.unordered = unordered;
+			this.source = source;
+		}
+
+		void accept(long childHash) {
+			long itemHash = childHash;
+			if (keys != null) {
+				itemHash = mix(stringHash(keys[position]) ^ Long.rotateLeft(childHash, 29));
+			}
+
+			if (unordered) {
+				// Addition is commutative, so entry order doesn't affect the result
+				accumulated += itemHash;
+			} else {
+				accumulated = mix(accumulated ^ itemHash) + position;
+			}
+			position++;
+		}
+
+		long finish() {
+			long tag = (keys != null) ? IDATA_TAG : SEQUENCE_TAG;
+			return mix(accumulated ^ tag ^ ((long) values.length << 32));
+		}
+	}
+
+	/**
+	 * Two containers whose children are being compared, pairwise.
+	 */
+	private static final class PairFrame {
+		final Object[] children1;
+		final Object[] children2;
+		final Object source1;
+		final Object source2;
+		int position;
+
+		PairFrame(Object[] children1, Object[] children2, Object source1, Object source2) {
+			this.children1 = children1;
+			this.children2 = children2;
+			this.source1 = source1;
+			this.source2 = source2;
+		}
+	}
+}
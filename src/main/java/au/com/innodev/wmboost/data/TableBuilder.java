@@ -0,0 +1,145 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.BulkArrayConverter.ElementConverter;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Builds a string table ({@code String[][]}) row by row. Every row is
+ * created with the number of columns given to the builder.
+ * <p>
+ * Rows can either be added from values, which are converted to
+ * {@code String} using the document's conversion rules, or be filled in
+ * directly:
+ * 
+ * <pre>
+ * TableBuilder builder = TableEntries.of(pipeDoc, "results").newBuilder(3);
+ * builder.addRow("A1", 5, new BigDecimal("9.90"));
+ * String[] row = builder.newRow();
+ * row[0] = "B2";
+ * builder.put();
+ * </pre>
+ * <p>
+ * A builder is not thread-safe.
+ *
+ * @see TableEntry#newBuilder(int)
+ */
+public final class TableBuilder {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final TypeDescriptor STRING_TYPE = TypeDescriptor.valueOf(String.class);
+
+	private final TableEntry entry;
+	private final BulkArrayConverter converter;
+	private final int columnCount;
+	private final Class<?>[] converterClasses;
+	private final ElementConverter[] converters;
+	private String[][] rows = new String[INITIAL_CAPACITY][];
+	private int rowCount;
+
+	TableBuilder(TableEntry entry, BulkArrayConverter converter, int columnCount) {
+		if (columnCount < 0) {
+			throw new IllegalArgumentException("Column count cannot be negative but was " + columnCount);
+		}
+		this.entry = Preconditions.checkNotNull(entry);
+		this.converter = Preconditions.checkNotNull(converter);
+		this.columnCount = columnCount;
+		this.converterClasses = new Class<?>[columnCount];
+		this.converters = new ElementConverter[columnCount];
+	}
+
+	/**
+	 * Adds an empty row and returns it so that it can be filled in.
+	 * 
+	 * @return the new row, with one {@code null} cell per column
+	 */
+	public String[] newRow() {
+		String[] row = new String[columnCount];
+		if (rowCount == rows.length) {
+			String[][] newRows = new String[rows.length * 2][];
+			System.arraycopy(rows, 0, newRows, 0, rowCount);
+			rows = newRows;
+		}
+		rows[rowCount++] = row;
+		return row;
+	}
+
+	/**
+	 * Adds a row with the given values, converted to {@code String}. Values
+	 * of the same type in the same column share a converter lookup.
+	 * 
+	 * @param values
+	 *            one value per column, possibly {@code null}
+	 * @return this builder
+	 */
+	public TableBuilder addRow(Object... values) {
+		Preconditions.checkNotNull(values, "values cannot be null");
+		if (values.length != columnCount) {
+			throw new IllegalArgumentException(
+					"Expected " + columnCount + " values per row but " + values.length + " were provided");
+		}
+
+		String[] row = newRow();
+		for (int column = 0; column < columnCount; column++) {
+			row[column] = toString(column, values[column]);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the number of rows added so far.
+	 * 
+	 * @return number of rows
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the table built so far.
+	 * 
+	 * @return a table with the added rows
+	 */
+	public String[][] build() {
+		String[][] table = new String[rowCount][];
+		System.arraycopy(rows, 0, table, 0, rowCount);
+		return table;
+	}
+
+	/**
+	 * Stores the table built so far as the value of the entry the builder was
+	 * obtained from.
+	 */
+	public void put() {
+		entry.put(build());
+	}
+
+	private String toString(int column, Object value) {
+		if (value == null || value instanceof String) {
+			return (String) value;
+		}
+
+		Class<?> valueClass = value.getClass();
+		if (converterClasses[column] != valueClass) {
+			converters[column] = converter.getElementConverter(valueClass, STRING_TYPE);
+			converterClasses[column] = valueClass;
+		}
+		return (String) converters[column].convert(value);
+	}
+}
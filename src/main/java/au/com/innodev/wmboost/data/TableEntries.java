@@ -0,0 +1,47 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Utilities to access entries whose value is a string table
+ * ({@code String[][]}).
+ */
+public final class TableEntries {
+
+	private TableEntries() {
+
+	}
+
+	/**
+	 * Returns a reference to an entry with a value treated as a string table
+	 * ({@code String[][]}).
+	 * <p>
+	 * Unlike {@link Document#entry(String, Class)}, the returned entry gives
+	 * access to the stored table rather than a copy.
+	 *
+	 * @param document
+	 *            document that holds the entry
+	 * @param key
+	 *            key that identifies the document entry
+	 * @return an entry reference
+	 */
+	public static TableEntry of(Document document, String key) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+		return new TableEntryImpl(DocumentTrees.getImpl(document), key);
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.List;
+
+/**
+ * A reference to an entry whose value is a string table ({@code String[][]}),
+ * as used by webMethods for flat file and JDBC-style results.
+ * <p>
+ * Besides the regular item entry methods, it gives direct access to the
+ * stored rows and converts whole columns at once:
+ * 
+ * <pre>
+ * TableEntry rows = TableEntries.of(pipeDoc, "results");
+ * int[] quantities = rows.getIntColumn(2);
+ * </pre>
+ * <p>
+ * The value returned by {@link #getVal()} and the rows returned by
+ * {@link #getRow(int)} are the stored arrays (not copies), so changes to them
+ * are reflected in the document. {@link Document#entry(String, Class)} with
+ * {@code String[][]} returns a copy instead. Cells missing from shorter rows,
+ * or in {@code null} rows, are treated as {@code null}.
+ *
+ * @see TableEntries#of(Document, String)
+ */
+public interface TableEntry extends ItemEntry<String[][]> {
+
+	/**
+	 * Returns the number of rows.
+	 * 
+	 * @return number of rows; zero if the entry doesn't exist or its value is
+	 *         {@code null}
+	 */
+	int getRowCount();
+
+	/**
+	 * Returns a row of the table. The stored array is returned, so changes to
+	 * it are reflected in the entry value.
+	 * 
+	 * @param rowIndex
+	 *            zero-based row index
+	 * @return the row, possibly {@code null}
+	 * @throws IndexOutOfBoundsException
+	 *             if there's no such row
+	 */
+	String[] getRow(int rowIndex);
+
+	/**
+	 * Returns the values of a column.
+	 * 
+	 * @param columnIndex
+	 *            zero-based column index
+	 * @return one value per row
+	 */
+	String[] getStringColumn(int columnIndex);
+
+	/**
+	 * Returns the values of a column converted to {@code int}.
+	 * 
+	 * @param columnIndex
+	 *            zero-based column index
+	 * @return one value per row
+	 * @throws UnexpectedEntryValueException
+	 *             if a cell in the column is {@code null}
+	 */
+	int[] getIntColumn(int columnIndex);
+
+	/**
+	 * Returns the values of a column converted to {@code long}.
+	 * 
+	 * @param columnIndex
+	 *            zero-based column index
+	 * @return one value per row
+	 * @throws UnexpectedEntryValueException
+	 *             if a cell in the column is {@code null}
+	 */
+	long[] getLongColumn(int columnIndex);
+
+	/**
+	 * Returns the values of a column converted to {@code double}.
+	 * 
+	 * @param columnIndex
+	 *            zero-based column index
+	 * @return one value per row
+	 * @throws UnexpectedEntryValueException
+	 *             if a cell in the column is {@code null}
+	 */
+	double[] getDoubleColumn(int columnIndex);
+
+	/**
+	 * Returns the values of a column converted to the given type.
+	 * 
+	 * @param columnIndex
+	 *            zero-based column index
+	 * @param type
+	 *            type to convert values to
+	 * @param <T>
+	 *            value type
+	 * @return one value per row; {@code null} cells are returned as
+	 *         {@code null}
+	 */
+	<T> List<T> getColumn(int columnIndex, Class<T> type);
+
+	/**
+	 * Returns a builder of string tables with the given number of columns,
+	 * whose result can be stored in this entry.
+	 * 
+	 * @param columnCount
+	 *            number of columns of each row
+	 * @return a new builder
+	 */
+	TableBuilder newBuilder(int columnCount);
+}
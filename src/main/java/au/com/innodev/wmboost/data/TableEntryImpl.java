@@ -0,0 +1,170 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.BulkArrayConverter.ElementConverter;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Implementation of {@link TableEntry}.
+ */
+class TableEntryImpl extends ItemEntryImpl<String[][]> implements TableEntry {
+
+	private static final String[][] EMPTY = new String[0][];
+
+	public TableEntryImpl(DocumentImpl document, String key) {
+		super(document, key, TypeDescriptor.valueOf(String[][].class), null, NormaliseOption.DONT_NORMALISE);
+	}
+
+	@Override
+	public int getRowCount() {
+		return getTable().length;
+	}
+
+	@Override
+	public String[] getRow(int rowIndex) {
+		String[][] table = getTable();
+		if (rowIndex < 0 || rowIndex >= table.length) {
+			throw new IndexOutOfBoundsException(
+					"Row " + rowIndex + " doesn't exist in table entry '" + getKey() + "' with " + table.length + " rows");
+		}
+		return table[rowIndex];
+	}
+
+	@Override
+	public String[] getStringColumn(int columnIndex) {
+		checkColumnIndex(columnIndex);
+
+		String[][] table = getTable();
+		String[] column = new String[table.length];
+		for (int row = 0; row < table.length; row++) {
+			column[row] = getCell(table, row, columnIndex);
+		}
+		return column;
+	}
+
+	@Override
+	public int[] getIntColumn(int columnIndex) {
+		Object[] values = convertColumn(columnIndex, Integer.class, true);
+		int[] column = new int[values.length];
+		for (int row = 0; row < values.length; row++) {
+			column[row] = ((Integer) values[row]).intValue();
+		}
+		return column;
+	}
+
+	@Override
+	public long[] getLongColumn(int columnIndex) {
+		Object[] values = convertColumn(columnIndex, Long.class, true);
+		long[] column = new long[values.length];
+		for (int row = 0; row < values.length; row++) {
+			column[row] = ((Long) values[row]).longValue();
+		}
+		return column;
+	}
+
+	@Override
+	public double[] getDoubleColumn(int columnIndex) {
+		Object[] values = convertColumn(columnIndex, Double.class, true);
+		double[] column = new double[values.length];
+		for (int row = 0; row < values.length; row++) {
+			column[row] = ((Double) values[row]).doubleValue();
+		}
+		return column;
+	}
+
+	@Override
+	public <T> List<T> getColumn(int columnIndex, Class<T> type) {
+		Preconditions.checkNotNull(type, "type cannot be null");
+
+		Object[] values = convertColumn(columnIndex, type, false);
+		List<T> column = new ArrayList<T>(values.length);
+		for (Object value : values) {
+			column.add(type.cast(value));
+		}
+		return column;
+	}
+
+	@Override
+	public TableBuilder newBuilder(int columnCount) {
+		return new TableBuilder(this, getBulkConverter(), columnCount);
+	}
+
+	/**
+	 * Converts the cells of a column with a single converter, since cells are
+	 * always strings.
+	 */
+	private Object[] convertColumn(int columnIndex, Class<?> type, boolean nonNull) {
+		checkColumnIndex(columnIndex);
+
+		String[][] table = getTable();
+		ElementConverter converter = getBulkConverter().getElementConverter(String.class, TypeDescriptor.valueOf(type));
+		Object[] values = new Object[table.length];
+		for (int row = 0; row < table.length; row++) {
+			String cell = getCell(table, row, columnIndex);
+			Object value = null;
+			if (cell != null) {
+				try {
+					value = converter.convert(cell);
+				} catch (RuntimeException e) {
+					throw new IllegalArgumentException("Unable to convert value [" + cell + "] in row " + row
+							+ ", column " + columnIndex + " of table entry '" + getKey() + "' to type '"
+							+ type.getName() + "'", e);
+				}
+			}
+			if (value == null && nonNull) {
+				throw new UnexpectedEntryValueException("Unexpected null value in row " + row + ", column "
+						+ columnIndex + " of table entry '" + getKey() + "'");
+			}
+			values[row] = value;
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the stored table, converting the value only if it isn't stored as
+	 * a {@code String[][]}.
+	 */
+	@Override
+	protected String[][] internalGetVal() {
+		Object rawVal = getRawVal();
+		if (rawVal instanceof String[][]) {
+			return (String[][]) rawVal;
+		}
+		return super.internalGetVal();
+	}
+
+	private String[][] getTable() {
+		String[][] table = internalGetVal();
+		return (table != null) ? table : EMPTY;
+	}
+
+	private static String getCell(String[][] table, int row, int column) {
+		String[] cells = table[row];
+		return (cells != null && column < cells.length) ? cells[column] : null;
+	}
+
+	private void checkColumnIndex(int columnIndex) {
+		if (columnIndex < 0) {
+			throw new IndexOutOfBoundsException("Column index cannot be negative but was " + columnIndex);
+		}
+	}
+}
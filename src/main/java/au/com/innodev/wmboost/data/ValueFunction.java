@@ -0,0 +1,38 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+/**
+ * A function that computes a new value from the current value of an entry.
+ *
+ * @param <T>
+ *            value type
+ * @see ConcurrentDocument#compute(String, Class, ValueFunction)
+ */
+public interface ValueFunction<T> {
+
+	/**
+	 * Computes the new value.
+	 * <p>
+	 * It may be invoked more than once for the same update, so it must not
+	 * have side effects.
+	 * 
+	 * @param currentValue
+	 *            current value, or {@code null} if the entry doesn't exist
+	 * @return the new value, or {@code null} to remove the entry
+	 */
+	T apply(T currentValue);
+}
@@ -17,7 +17,10 @@ package au.com.innodev.wmboost.data.preset;
 
 import com.wm.data.IData;
 
+import au.com.innodev.wmboost.data.CompactIData;
 import au.com.innodev.wmboost.data.DirectIDataFactory;
+import au.com.innodev.wmboost.data.PooledIDataFactory;
+import au.com.innodev.wmboost.data.ShapedIData;
 
 /**
  * <p>
@@ -27,6 +30,7 @@ import au.com.innodev.wmboost.data.DirectIDataFactory;
 public class DirectIDataFactories {
 
 	private static final WmDefaultDataFactory WM_DEFAULT = new WmDefaultDataFactory();
+	private static final CompactDataFactory COMPACT = new CompactDataFactory();
 
 	/**
 	 * Returns the default webMethods runtime factory.
@@ -39,6 +43,45 @@ public class DirectIDataFactories {
 		return WM_DEFAULT;
 	}
 
+	/**
+	 * Returns a factory of {@link CompactIData} instances.
+	 * 
+	 * Unlike {@link #getWmDefaultRuntimeFactory()}, it doesn't depend on the
+	 * webMethods runtime, and it indexes keys of larger documents.
+	 * 
+	 * @return the compact IData factory
+	 */
+	public static final DirectIDataFactory getCompactFactory() {
+		return COMPACT;
+	}
+
+	/**
+	 * Returns a new factory of {@link ShapedIData} instances.
+	 * 
+	 * Instances created by the same factory share their key layout when they
+	 * hold the same keys in the same order, which significantly reduces the
+	 * memory used by large numbers of records with the same structure. Use a
+	 * separate factory for each kind of workload.
+	 * 
+	 * @return a new shaped IData factory
+	 */
+	public static final DirectIDataFactory newShapedFactory() {
+		return ShapedIData.newFactory();
+	}
+
+	/**
+	 * Returns a new factory that recycles the storage of released documents
+	 * (see {@link au.com.innodev.wmboost.data.DocumentTrees#release}).
+	 * 
+	 * Use {@link PooledIDataFactory#PooledIDataFactory(int, boolean)} to
+	 * change the pool size or enable debug checks.
+	 * 
+	 * @return a new pooled IData factory
+	 */
+	public static final DirectIDataFactory newPooledFactory() {
+		return new PooledIDataFactory();
+	}
+
 	private static class WmDefaultDataFactory implements DirectIDataFactory {
 
 		@Override
@@ -48,6 +91,15 @@ public class DirectIDataFactories {
 
 	}
 
+	private static class CompactDataFactory implements DirectIDataFactory {
+
+		@Override
+		public IData create() {
+			return new CompactIData();
+		}
+
+	}
+
 	private DirectIDataFactories() {
 		// Non-instantiable
 	}
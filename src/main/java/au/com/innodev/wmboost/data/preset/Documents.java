@@ -17,8 +17,12 @@ package au.com.innodev.wmboost.data.preset;
 
 import com.wm.data.IData;
 
+import au.com.innodev.wmboost.data.CompactOptions;
+import au.com.innodev.wmboost.data.CompactionResult;
 import au.com.innodev.wmboost.data.Document;
 import au.com.innodev.wmboost.data.DocumentFactory;
+import au.com.innodev.wmboost.data.DocumentOverlay;
+import au.com.innodev.wmboost.data.DocumentTrees;
 import au.com.innodev.wmboost.data.internal.Preconditions;
 
 /**
@@ -79,6 +83,74 @@ public final class Documents {
 		return DocumentFactories.getDefault().create();
 	}
 
+	/**
+	 * Returns a deep copy of a document.
+	 * 
+	 * @param document
+	 *            document to copy
+	 * @return the copy
+	 * @see DocumentTrees#deepCopy(Document)
+	 */
+	public static Document deepCopy(Document document) {
+		return DocumentTrees.deepCopy(document);
+	}
+
+	/**
+	 * Returns a deep copy of an {@link com.wm.data.IData} instance. New
+	 * instances are created by the default webMethods runtime factory.
+	 * <p>
+	 * Unlike {@code IDataUtil.deepClone}, it doesn't rely on serialization.
+	 * 
+	 * @param iData
+	 *            instance to copy
+	 * @return the copy
+	 * @see DocumentTrees#deepCopy(IData, au.com.innodev.wmboost.data.DirectIDataFactory)
+	 */
+	public static IData deepCopy(IData iData) {
+		return DocumentTrees.deepCopy(iData, DirectIDataFactories.getWmDefaultRuntimeFactory());
+	}
+
+	/**
+	 * Deduplicates the values of a document in place: equal string values
+	 * share one instance and structurally identical nested documents share one
+	 * immutable {@code IData} instance, which can't be modified afterwards.
+	 * 
+	 * @param document
+	 *            document to compact
+	 * @param options
+	 *            what to deduplicate
+	 * @return the outcome, including the estimated number of bytes saved
+	 * @see DocumentTrees#compact(Document, CompactOptions)
+	 */
+	public static CompactionResult compact(Document document, CompactOptions options) {
+		return DocumentTrees.compact(document, options);
+	}
+
+	/**
+	 * Returns a copy-on-write overlay of a document. Changes made through the
+	 * overlay only reach the base document when committed.
+	 * <p>
+	 * Example:
+	 * 
+	 * <pre>
+	 * DocumentOverlay overlay = Documents.overlay(pipeDoc);
+	 * riskyStep(overlay.getDocument());
+	 * if (succeeded) {
+	 * 	overlay.commit();
+	 * } else {
+	 * 	overlay.discard();
+	 * }
+	 * </pre>
+	 * 
+	 * @param base
+	 *            document to overlay
+	 * @return new overlay
+	 * @see DocumentTrees#overlay(Document)
+	 */
+	public static DocumentOverlay overlay(Document base) {
+		return DocumentTrees.overlay(base);
+	}
+
 	private Documents() {
 		// Non-instantiable
 	}
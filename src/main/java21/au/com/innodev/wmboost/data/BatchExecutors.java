@@ -0,0 +1,40 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that run {@link DocumentBatchProcessor} tasks.
+ * <p>
+ * Java 21 version: every task runs on its own virtual thread. Concurrency is
+ * capped by the processor, not by the executor.
+ */
+final class BatchExecutors {
+
+	private BatchExecutors() {
+
+	}
+
+	static ExecutorService newExecutor(int maxConcurrency) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("wmboost-data-batch-", 1).factory());
+	}
+
+	static boolean usesVirtualThreads() {
+		return true;
+	}
+}
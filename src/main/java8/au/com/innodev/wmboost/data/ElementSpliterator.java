@@ -0,0 +1,139 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.BulkArrayConverter.ElementConverter;
+import au.com.innodev.wmboost.data.internal.TextUtil;
+
+/**
+ * A spliterator over a range of an array of raw entry values. Elements are
+ * converted lazily, as they're traversed, to the entry's element type.
+ * <p>
+ * The element converter is resolved once per run of elements with the same
+ * runtime type. Splits halve the range, so the spliterator reports
+ * {@link #SIZED}, {@link #SUBSIZED} and {@link #ORDERED}.
+ *
+ * @param <E> element type
+ */
+final class ElementSpliterator<E> implements Spliterator<E> {
+
+	private final Object[] values;
+	private final BulkArrayConverter converter;
+	private final TypeDescriptor elementType;
+	private final boolean normalise;
+	private final String key;
+	private int index;
+	private final int fence;
+
+	// Converter for the current run of elements, which is local to each spliterator
+	private Class<?> runClass;
+	private ElementConverter runConverter;
+
+	ElementSpliterator(Object[] values, int fromIndex, int toIndex, BulkArrayConverter converter,
+			TypeDescriptor elementType, boolean normalise, String key) {
+		this.values = values;
+		this.index = fromIndex;
+		this.fence = toIndex;
+		this.converter = converter;
+		this.elementType = elementType;
+		this.normalise = normalise;
+		this.key = key;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super E> action) {
+		if (action == null) {
+			throw new NullPointerException("action cannot be null");
+		}
+		if (index >= fence) {
+			return false;
+		}
+
+		int current = index++;
+		action.accept(convert(values[current], current));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super E> action) {
+		if (action == null) {
+			throw new NullPointerException("action cannot be null");
+		}
+
+		int current = index;
+		index = fence;
+		for (; current < fence; current++) {
+			action.accept(convert(values[current], current));
+		}
+	}
+
+	@Override
+	public Spliterator<E> trySplit() {
+		int mid = (index + fence) >>> 1;
+		if (mid <= index) {
+			return null;
+		}
+
+		ElementSpliterator<E> prefix = new ElementSpliterator<E>(values, index, mid, converter, elementType,
+				normalise, key);
+		index = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return fence - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return SIZED | SUBSIZED | ORDERED;
+	}
+
+	private E convert(Object value, int position) {
+		Object converted;
+		if (value == null) {
+			converted = null;
+		} else {
+			Class<?> valueClass = value.getClass();
+			if (valueClass != runClass) {
+				runConverter = converter.getElementConverter(valueClass, elementType);
+				runClass = valueClass;
+			}
+
+			try {
+				converted = runConverter.convert(value);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Unable to convert element " + position + " to type '"
+						+ elementType + "' while retrieving document field '" + key + "'. Actual value was ["
+						+ TextUtil.abbreviateObj(value, 100) + "] of type '" + valueClass + "'", e);
+			}
+		}
+
+		if (normalise) {
+			converted = EntryUtil.normaliseValueForGet(converted, converter);
+		}
+
+		@SuppressWarnings("unchecked")
+		E casted = (E) converted;
+		return casted;
+	}
+}
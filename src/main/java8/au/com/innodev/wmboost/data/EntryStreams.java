@@ -0,0 +1,178 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * Java 8 {@link Stream} support for documents and their entries.
+ * <p>
+ * Collection and split entry streams are backed by spliterators over the
+ * underlying values that report {@link Spliterator#SIZED},
+ * {@link Spliterator#SUBSIZED} and {@link Spliterator#ORDERED}, so parallel
+ * streams split them evenly. Elements are converted lazily, while the stream
+ * is traversed, and are the same as the ones the entry's
+ * {@code getValOrEmpty()} method would return.
+ * <p>
+ * Streams over document entries hold an {@code IDataCursor}. Close the stream
+ * once done, preferably in a try-with-resources statement:
+ *
+ * <pre>
+ * try (Stream&lt;KeyValue&gt; entries = EntryStreams.stream(document)) {
+ * 	entries.filter(...).forEach(...);
+ * }
+ * </pre>
+ * <p>
+ * This class requires Java 8 or higher. The rest of the library doesn't.
+ */
+public final class EntryStreams {
+
+	private EntryStreams() {
+
+	}
+
+	/**
+	 * Returns a stream over the elements of a collection entry. The stream is
+	 * empty if the entry doesn't exist or its value is {@code null}.
+	 * <p>
+	 * The entry value is read when this method is invoked; later changes to
+	 * the entry aren't reflected by the stream.
+	 *
+	 * @param entry
+	 *            collection entry
+	 * @param <E>
+	 *            element type
+	 * @return a sequential stream over the entry elements
+	 */
+	public static <E> Stream<E> stream(CollectionEntry<E> entry) {
+		return StreamSupport.stream(spliterator(entry), false);
+	}
+
+	/**
+	 * Returns a spliterator over the elements of a collection entry.
+	 *
+	 * @param entry
+	 *            collection entry
+	 * @param <E>
+	 *            element type
+	 * @return spliterator over the entry elements
+	 * @see #stream(CollectionEntry)
+	 */
+	public static <E> Spliterator<E> spliterator(CollectionEntry<E> entry) {
+		CollectionEntryImpl<?> impl = DocumentArrays.getImpl(entry);
+		Object rawVal = impl.getRawVal();
+
+		if (rawVal instanceof Object[]) {
+			Object[] values = (Object[]) rawVal;
+			TypeDescriptor elementType = impl.getAccessorType().getElementTypeDescriptor();
+			// Collection values aren't normalised element by element
+			return new ElementSpliterator<E>(values, 0, values.length, impl.getBulkConverter(), elementType, false,
+					impl.getKey());
+		} else {
+			// Values that aren't object arrays (e.g. primitive arrays) go through the regular conversion
+			List<E> values = entry.getValOrEmpty();
+			return Spliterators.spliterator(values, Spliterator.ORDERED);
+		}
+	}
+
+	/**
+	 * Returns a stream over the values of a split entry, in document order.
+	 * <p>
+	 * The values are read when this method is invoked; later changes to the
+	 * entry aren't reflected by the stream.
+	 *
+	 * @param entry
+	 *            split entry
+	 * @param <E>
+	 *            element type
+	 * @return a sequential stream over the entry values
+	 */
+	public static <E> Stream<E> stream(SplitEntry<E> entry) {
+		return StreamSupport.stream(spliterator(entry), false);
+	}
+
+	/**
+	 * Returns a spliterator over the values of a split entry.
+	 *
+	 * @param entry
+	 *            split entry
+	 * @param <E>
+	 *            element type
+	 * @return spliterator over the entry values
+	 * @see #stream(SplitEntry)
+	 */
+	public static <E> Spliterator<E> spliterator(SplitEntry<E> entry) {
+		Preconditions.checkNotNull(entry, "entry cannot be null");
+		if (!(entry instanceof SplitEntryImpl<?>)) {
+			throw new IllegalArgumentException("Unsupported entry implementation: " + entry.getClass().getName());
+		}
+
+		SplitEntryImpl<?> impl = (SplitEntryImpl<?>) entry;
+		Object[] values = impl.getRawVals();
+		return new ElementSpliterator<E>(values, 0, values.length, impl.getBulkConverter(),
+				impl.getAccessorType(), impl.isNormalisingForGet(), impl.getKey());
+	}
+
+	/**
+	 * Returns a stream over all entries in a document, in document order.
+	 * Values are normalised as in {@link Document#getAllEntries()}.
+	 * <p>
+	 * The stream holds a cursor over the document, which is released when the
+	 * stream is closed.
+	 *
+	 * @param document
+	 *            document to iterate over
+	 * @return a sequential stream over the document entries
+	 */
+	public static Stream<KeyValue> stream(Document document) {
+		Preconditions.checkNotNull(document, "document cannot be null");
+
+		int size = document.getTotalEntries();
+		EntryIterableResource entries = document.getAllEntries();
+		return closingStream(Spliterators.spliterator(entries.iterator(), size,
+				Spliterator.ORDERED | Spliterator.NONNULL), entries);
+	}
+
+	/**
+	 * Returns a stream over the given entries. Closing the stream closes the
+	 * entries resource.
+	 *
+	 * @param entries
+	 *            entries to iterate over
+	 * @return a sequential stream over the entries
+	 */
+	public static Stream<KeyValue> stream(EntryIterableResource entries) {
+		Preconditions.checkNotNull(entries, "entries cannot be null");
+
+		Iterator<KeyValue> iterator = entries.iterator();
+		return closingStream(Spliterators.spliteratorUnknownSize(iterator,
+				Spliterator.ORDERED | Spliterator.NONNULL), entries);
+	}
+
+	private static Stream<KeyValue> closingStream(Spliterator<KeyValue> spliterator,
+			EntryIterableResource resource) {
+		return StreamSupport.stream(spliterator, false).onClose(resource::close);
+	}
+}
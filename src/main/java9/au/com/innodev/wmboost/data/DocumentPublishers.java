@@ -0,0 +1,166 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.PullPublisher.Source;
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * {@link Flow.Publisher} adapters for document lists, split entries and
+ * document entries.
+ * <p>
+ * The publishers honour back-pressure: values are only converted and emitted
+ * as the subscriber requests them, on the thread that requests them. This
+ * allows slow consumers (e.g. a JMS sender or a database batch insert) to
+ * process large lists at their own pace:
+ *
+ * <pre>
+ * DocumentPublishers.publisher(pipeDoc.docsEntry("records"), 500).subscribe(batchInsertSubscriber);
+ * </pre>
+ * <p>
+ * Each publisher takes a snapshot of the references to the values when it's
+ * created and clears each reference as soon as the value is emitted, so
+ * emitted values can be garbage collected during long runs. For that to
+ * happen, the values must not be referenced elsewhere; e.g. remove the entry
+ * from its document once the publisher is created.
+ * <p>
+ * {@code null} values can't be signalled to a subscriber and are skipped. A
+ * publisher can only be subscribed to once.
+ * <p>
+ * This class requires Java 9 or higher. The rest of the library doesn't.
+ */
+public final class DocumentPublishers {
+
+	private static final TypeDescriptor DOCUMENT_TYPE = TypeDescriptor.valueOf(Document.class);
+
+	private DocumentPublishers() {
+
+	}
+
+	/**
+	 * Returns a publisher that emits the documents in a document list.
+	 *
+	 * @param entry
+	 *            document list entry
+	 * @return a publisher of documents
+	 */
+	public static Flow.Publisher<Document> publisher(CollectionEntry<Document> entry) {
+		return new PullPublisher<Document>(source(entry));
+	}
+
+	/**
+	 * Returns a publisher that emits the documents in a document list, in
+	 * batches of up to {@code batchSize} documents. Each batch counts as a
+	 * single item for the purposes of {@link Flow.Subscription#request(long)}.
+	 *
+	 * @param entry
+	 *            document list entry
+	 * @param batchSize
+	 *            maximum number of documents per batch
+	 * @return a publisher of document batches
+	 */
+	public static Flow.Publisher<List<Document>> publisher(CollectionEntry<Document> entry, int batchSize) {
+		checkBatchSize(batchSize);
+		return new PullPublisher<List<Document>>(PublisherSources.batched(source(entry), batchSize));
+	}
+
+	/**
+	 * Returns a publisher that emits the documents in a split entry, in
+	 * document order.
+	 *
+	 * @param entry
+	 *            split entry
+	 * @return a publisher of documents
+	 */
+	public static Flow.Publisher<Document> publisher(SplitEntry<Document> entry) {
+		return new PullPublisher<Document>(source(entry));
+	}
+
+	/**
+	 * Returns a publisher that emits the documents in a split entry, in
+	 * batches of up to {@code batchSize} documents.
+	 *
+	 * @param entry
+	 *            split entry
+	 * @param batchSize
+	 *            maximum number of documents per batch
+	 * @return a publisher of document batches
+	 * @see #publisher(CollectionEntry, int)
+	 */
+	public static Flow.Publisher<List<Document>> publisher(SplitEntry<Document> entry, int batchSize) {
+		checkBatchSize(batchSize);
+		return new PullPublisher<List<Document>>(PublisherSources.batched(source(entry), batchSize));
+	}
+
+	/**
+	 * Returns a publisher that emits document entries. The entries are read
+	 * lazily and closed once the publisher completes, fails or is cancelled.
+	 *
+	 * @param entries
+	 *            entries to emit, e.g. {@link Document#getAllEntries()}
+	 * @return a publisher of entries
+	 */
+	public static Flow.Publisher<KeyValue> publisher(EntryIterableResource entries) {
+		Preconditions.checkNotNull(entries, "entries cannot be null");
+		return new PullPublisher<KeyValue>(PublisherSources.fromEntries(entries));
+	}
+
+	/**
+	 * Returns a publisher that emits document entries in batches of up to
+	 * {@code batchSize} entries.
+	 *
+	 * @param entries
+	 *            entries to emit
+	 * @param batchSize
+	 *            maximum number of entries per batch
+	 * @return a publisher of entry batches
+	 * @see #publisher(EntryIterableResource)
+	 */
+	public static Flow.Publisher<List<KeyValue>> publisher(EntryIterableResource entries, int batchSize) {
+		Preconditions.checkNotNull(entries, "entries cannot be null");
+		checkBatchSize(batchSize);
+		return new PullPublisher<List<KeyValue>>(
+				PublisherSources.batched(PublisherSources.fromEntries(entries), batchSize));
+	}
+
+	private static Source<Document> source(CollectionEntry<Document> entry) {
+		CollectionEntryImpl<?> impl = DocumentArrays.getImpl(entry);
+		// The stored array is shared with the entry, so a copy is taken before any slot is cleared
+		Object[] values = DocumentArrays.readOrEmpty(entry).clone();
+		return PublisherSources.fromOwnedArray(values, impl.getBulkConverter(), DOCUMENT_TYPE);
+	}
+
+	private static Source<Document> source(SplitEntry<Document> entry) {
+		Preconditions.checkNotNull(entry, "entry cannot be null");
+		if (!(entry instanceof SplitEntryImpl<?>)) {
+			throw new IllegalArgumentException("Unsupported entry implementation: " + entry.getClass().getName());
+		}
+
+		SplitEntryImpl<?> impl = (SplitEntryImpl<?>) entry;
+		return PublisherSources.fromOwnedArray(impl.getRawVals(), impl.getBulkConverter(), DOCUMENT_TYPE);
+	}
+
+	private static void checkBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be greater than zero but was " + batchSize);
+		}
+	}
+}
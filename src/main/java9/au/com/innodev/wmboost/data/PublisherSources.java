@@ -0,0 +1,171 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+import au.com.innodev.wmboost.data.BulkArrayConverter.ElementConverter;
+import au.com.innodev.wmboost.data.PullPublisher.Source;
+
+/**
+ * Sources for {@link PullPublisher}.
+ */
+final class PublisherSources {
+
+	private PublisherSources() {
+
+	}
+
+	/**
+	 * Returns a source over the non-null values of an array that is owned by
+	 * the source. Each slot is cleared once its element has been emitted, so
+	 * the element can be garbage collected as soon as the subscriber no longer
+	 * references it.
+	 */
+	static <T> Source<T> fromOwnedArray(Object[] values, BulkArrayConverter converter, TypeDescriptor elementType) {
+		return new OwnedArraySource<T>(values, converter, elementType);
+	}
+
+	/**
+	 * Returns a source over document entries. The entries are closed when the
+	 * source is released.
+	 */
+	static Source<KeyValue> fromEntries(EntryIterableResource entries) {
+		return new EntriesSource(entries);
+	}
+
+	/**
+	 * Groups the items of a source into lists of up to {@code batchSize}
+	 * items.
+	 */
+	static <T> Source<List<T>> batched(Source<T> source, int batchSize) {
+		return new BatchSource<T>(source, batchSize);
+	}
+
+	private static final class OwnedArraySource<T> implements Source<T> {
+		private Object[] values;
+		private final BulkArrayConverter converter;
+		private final TypeDescriptor elementType;
+		private int index;
+
+		private Class<?> runClass;
+		private ElementConverter runConverter;
+
+		OwnedArraySource(Object[] values, BulkArrayConverter converter, TypeDescriptor elementType) {
+			this.values = values;
+			this.converter = converter;
+			this.elementType = elementType;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (values == null) {
+				return false;
+			}
+
+			// Null elements can't be emitted
+			while (index < values.length && values[index] == null) {
+				index++;
+			}
+			return index < values.length;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			Object value = values[index];
+			values[index] = null;
+			index++;
+
+			Class<?> valueClass = value.getClass();
+			if (valueClass != runClass) {
+				runConverter = converter.getElementConverter(valueClass, elementType);
+				runClass = valueClass;
+			}
+
+			@SuppressWarnings("unchecked")
+			T converted = (T) runConverter.convert(value);
+			return converted;
+		}
+
+		@Override
+		public void release() {
+			values = null;
+		}
+	}
+
+	private static final class EntriesSource implements Source<KeyValue> {
+		private final EntryIterableResource entries;
+		private final Iterator<KeyValue> iterator;
+
+		EntriesSource(EntryIterableResource entries) {
+			this.entries = entries;
+			this.iterator = entries.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		@Override
+		public KeyValue next() {
+			return iterator.next();
+		}
+
+		@Override
+		public void release() {
+			entries.close();
+		}
+	}
+
+	private static final class BatchSource<T> implements Source<List<T>> {
+		private final Source<T> source;
+		private final int batchSize;
+
+		BatchSource(Source<T> source, int batchSize) {
+			this.source = source;
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return source.hasNext();
+		}
+
+		@Override
+		public List<T> next() {
+			List<T> batch = new ArrayList<T>(batchSize);
+			while (batch.size() < batchSize && source.hasNext()) {
+				batch.add(source.next());
+			}
+			return batch;
+		}
+
+		@Override
+		public void release() {
+			source.release();
+		}
+	}
+}
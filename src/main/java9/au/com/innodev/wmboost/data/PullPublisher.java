@@ -0,0 +1,205 @@
+/**
+ * Copyright 2017 Innodev
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package au.com.innodev.wmboost.data;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import au.com.innodev.wmboost.data.internal.Preconditions;
+
+/**
+ * A publisher that pulls items from a source only when the subscriber has
+ * requested them.
+ * <p>
+ * Items are emitted on the thread that invokes {@link Flow.Subscription#request(long)}
+ * (or {@link #subscribe(Flow.Subscriber)} for items requested from
+ * {@code onSubscribe}). The source can only be consumed once, so the publisher
+ * accepts a single subscriber.
+ *
+ * @param <T> item type
+ */
+final class PullPublisher<T> implements Flow.Publisher<T> {
+
+	/**
+	 * A source of items. Only accessed by one thread at a time.
+	 */
+	interface Source<T> {
+		boolean hasNext();
+
+		/**
+		 * Returns the next item, never {@code null}.
+		 */
+		T next();
+
+		/**
+		 * Releases the resources held by the source. Invoked once, when the
+		 * source is no longer needed.
+		 */
+		void release();
+	}
+
+	private final Source<T> source;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	PullPublisher(Source<T> source) {
+		this.source = Preconditions.checkNotNull(source);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		Preconditions.checkNotNull(subscriber, "subscriber cannot be null");
+
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("Publisher only supports a single subscriber"));
+			return;
+		}
+
+		PullSubscription<T> subscription = new PullSubscription<T>(source, subscriber);
+		subscriber.onSubscribe(subscription);
+		// Completes empty sources even if nothing has been requested
+		subscription.drain();
+	}
+
+	private static final class PullSubscription<T> implements Flow.Subscription {
+
+		private final Source<T> source;
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		// Serialises access to the source and signals to the subscriber
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable failure;
+		private boolean done;
+
+		PullSubscription(Source<T> source, Flow.Subscriber<? super T> subscriber) {
+			this.source = source;
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				if (failure == null) {
+					failure = new IllegalArgumentException("Number of requested items must be positive but was " + n);
+				}
+				drain();
+				return;
+			}
+
+			long current;
+			long updated;
+			do {
+				current = requested.get();
+				if (current == Long.MAX_VALUE) {
+					break;
+				}
+				updated = current + n;
+				if (updated < 0) {
+					updated = Long.MAX_VALUE;
+				}
+			} while (!requested.compareAndSet(current, updated));
+
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			drain();
+		}
+
+		void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+
+			int missed = 1;
+			do {
+				if (done) {
+					return;
+				}
+
+				long demand = requested.get();
+				long emitted = 0;
+
+				while (!cancelled) {
+					if (failure != null) {
+						terminate();
+						subscriber.onError(failure);
+						return;
+					}
+
+					boolean hasNext;
+					T item = null;
+					try {
+						hasNext = source.hasNext();
+						if (hasNext && emitted != demand) {
+							item = source.next();
+						}
+					} catch (RuntimeException e) {
+						terminate();
+						subscriber.onError(e);
+						return;
+					}
+
+					if (!hasNext) {
+						terminate();
+						subscriber.onComplete();
+						return;
+					}
+					if (item == null) {
+						// No outstanding demand
+						break;
+					}
+
+					subscriber.onNext(item);
+					emitted++;
+				}
+
+				if (cancelled) {
+					terminate();
+					return;
+				}
+				if (failure != null) {
+					continue;
+				}
+
+				if (emitted != 0 && demand != Long.MAX_VALUE) {
+					requested.addAndGet(-emitted);
+				}
+
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void terminate() {
+			done = true;
+			cancelled = true;
+			source.release();
+		}
+	}
+}
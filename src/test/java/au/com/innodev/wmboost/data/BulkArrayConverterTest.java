@@ -0,0 +1,130 @@
+package au.com.innodev.wmboost.data;
+
+import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.convert.TypeDescriptor;
+
+import com.google.common.collect.Lists;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataUtil;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class BulkArrayConverterTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private BulkArrayConverter getConverter() {
+		return ((DocumentImpl) docFactory.create()).getBulkConverter();
+	}
+
+	@Test
+	public void testStringArrayToIntegerList() {
+		String[] source = new String[] { "1", null, "3" };
+
+		Object result = getConverter().convert(source, TypeDescriptor.forObject(source),
+				TypeDescriptor.collection(List.class, TypeDescriptor.valueOf(Integer.class)));
+
+		assertEquals(Lists.newArrayList(1, null, 3), result);
+	}
+
+	@Test
+	public void testMixedElementTypesToStringArray() {
+		Object[] source = new Object[] { 1, 2L, "3", 4 };
+
+		Object result = getConverter().convert(source, TypeDescriptor.forObject(source),
+				TypeDescriptor.array(TypeDescriptor.valueOf(String.class)));
+
+		assertArrayEquals(new String[] { "1", "2", "3", "4" }, (String[]) result);
+	}
+
+	@Test
+	public void testIDataArrayToDocumentList() {
+		IData[] source = new IData[] { newIDataWithValue("a"), newIDataWithValue("b") };
+
+		@SuppressWarnings("unchecked")
+		List<Document> result = (List<Document>) getConverter().convert(source, TypeDescriptor.forObject(source),
+				TypeDescriptor.collection(List.class, TypeDescriptor.valueOf(Document.class)));
+
+		assertEquals(2, result.size());
+		assertSame(source[0], result.get(0).getIData());
+		assertSame(source[1], result.get(1).getIData());
+	}
+
+	@Test
+	public void testSameArrayTypeIsReturnedAsIs() {
+		String[] source = new String[] { "a", "b" };
+
+		Object result = getConverter().convert(source, TypeDescriptor.forObject(source),
+				TypeDescriptor.array(TypeDescriptor.valueOf(String.class)));
+
+		assertSame(source, result);
+	}
+
+	@Test
+	public void testListWithMatchingElementsIsReturnedAsIs() {
+		List<String> source = Lists.newArrayList("a", "b");
+
+		Object result = getConverter().convert(source, TypeDescriptor.forObject(source),
+				TypeDescriptor.collection(List.class, TypeDescriptor.valueOf(String.class)));
+
+		assertSame(source, result);
+	}
+
+	@Test
+	public void testListWithOtherElementsIsConverted() {
+		List<Object> source = Lists.<Object> newArrayList("1", 2L);
+
+		Object result = getConverter().convert(source, TypeDescriptor.forObject(source),
+				TypeDescriptor.collection(List.class, TypeDescriptor.valueOf(Integer.class)));
+
+		assertEquals(Lists.newArrayList(1, 2), result);
+	}
+
+	@Test
+	public void testDocumentsToIDataArray() {
+		Document doc1 = docFactory.create();
+		Document doc2 = docFactory.create();
+
+		IData[] result = getConverter().toIDataArray(Lists.newArrayList(doc1, doc2));
+
+		assertArrayEquals(new IData[] { doc1.getIData(), doc2.getIData() }, result);
+	}
+
+	@Test
+	public void testNonDocumentsToIDataArray() {
+		assertNull(getConverter().toIDataArray(Lists.<Object>newArrayList(docFactory.create(), "text")));
+		assertNull(getConverter().toIDataArray(Lists.<Object>newArrayList(docFactory.create(), null)));
+	}
+
+	@Test
+	public void testNonCollectionIterableOfDocuments() {
+		final Document doc = docFactory.create();
+		Iterable<Document> iterable = new Iterable<Document>() {
+			@Override
+			public Iterator<Document> iterator() {
+				return Lists.newArrayList(doc).iterator();
+			}
+		};
+
+		Document top = docFactory.create();
+		top.entry("docs").put(iterable);
+
+		IDataCursor cursor = top.getIData().getCursor();
+		Object stored = IDataUtil.get(cursor, "docs");
+		cursor.destroy();
+
+		assertTrue(stored instanceof IData[]);
+		assertSame(doc.getIData(), ((IData[]) stored)[0]);
+	}
+}
@@ -2,10 +2,14 @@ package au.com.innodev.wmboost.data;
 
 import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
@@ -13,6 +17,7 @@ import org.junit.Test;
 import com.google.common.collect.Lists;
 import com.wm.data.IData;
 import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
 
 import au.com.innodev.wmboost.data.preset.DocumentFactories;
 
@@ -129,4 +134,74 @@ public class CollectionEntryTest {
 
 		assertEquals(expected, document.intsEntry("inexistentEntry").getValOrDefault(Lists.newArrayList(9)));
 	}
+
+	@Test
+	public void testChunksRetain() {
+		IData idata = newIDataWithValue(new String[] { "1", "2", "3", "4", "5" });
+		Document document = docFactory.wrap(idata);
+
+		List<List<Integer>> chunks = Lists.newArrayList(document.intsEntry("value1").chunks(2));
+
+		assertEquals(3, chunks.size());
+		assertEquals(Lists.newArrayList(1, 2), chunks.get(0));
+		assertEquals(Lists.newArrayList(5), chunks.get(2));
+		assertEquals(5, document.stringsEntry("value1").getVal().size());
+		assertEquals("5", document.stringsEntry("value1").getVal().get(4));
+	}
+
+	@Test
+	public void testChunksConsume() {
+		IData[] records = new IData[] { newIDataWithValue("a"), newIDataWithValue("b"), newIDataWithValue("c") };
+		Document document = docFactory.wrap(newIDataWithValue(records));
+
+		Iterator<List<Document>> chunks = document.docsEntry("value1").chunks(2, ChunkOption.CONSUME).iterator();
+		// The document holds a copy whose slots are released
+		IData[] stored = (IData[]) IDataUtil.get(document.getIData().getCursor(), "value1");
+		assertNotSame(records, stored);
+
+		List<Document> first = chunks.next();
+		assertEquals("b", first.get(1).stringEntry("value1").getVal());
+		assertNotNull(stored[1]);
+
+		List<Document> second = chunks.next();
+		assertEquals(1, second.size());
+		assertNull(stored[0]);
+		assertNull(stored[1]);
+		assertNotNull(stored[2]);
+
+		assertFalse(chunks.hasNext());
+		assertNull(stored[2]);
+		assertNotNull(records[0]);
+	}
+
+	@Test
+	public void testChunksConsumeOfImmutableDocument() {
+		IData[] records = new IData[] { newIDataWithValue("a"), newIDataWithValue("b") };
+		Document document = DocumentTrees.immutableCopy(docFactory.wrap(newIDataWithValue(records)));
+
+		try {
+			document.docsEntry("value1").chunks(1, ChunkOption.CONSUME).iterator();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// test succeeded
+		}
+
+		List<Document> values = document.docsEntry("value1").getVal();
+		assertEquals(2, values.size());
+		assertEquals("a", values.get(0).stringEntry("value1").getVal());
+		assertEquals("b", values.get(1).stringEntry("value1").getVal());
+	}
+
+	@Test
+	public void testChunksOfInexistentEntry() {
+		Document document = docFactory.create();
+
+		assertFalse(document.docsEntry("records").chunks(10, ChunkOption.CONSUME).iterator().hasNext());
+		try {
+			document.docsEntry("records").chunks(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+	}
 }
@@ -0,0 +1,106 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class ColumnarViewTest {
+
+	private static final Field<Integer> QTY = Field.of("qty", Integer.class);
+	private static final Field<Double> PRICE = Field.of("price", Double.class);
+	private static final Field<String> SKU = Field.of("sku", String.class);
+	private static final Field<BigDecimal> AMOUNT = Field.of("amount", BigDecimal.class);
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newTrade(String sku, Object qty, Object price) {
+		Document trade = docFactory.create();
+		trade.stringEntry("sku").put(sku);
+		if (qty != null) {
+			trade.entry("qty").put(qty);
+		}
+		trade.entry("price").put(price);
+		return trade.getIData();
+	}
+
+	@Test
+	public void testExtraction() {
+		Document top = docFactory.create();
+		top.entry("trades").put(new IData[] { newTrade("A", 3, "1.5"), null, newTrade("B", "4", null),
+				newTrade("C", null, 2.25) });
+
+		ColumnarView view = ColumnarView.of(top.docsEntry("trades"), SKU, QTY, PRICE);
+
+		assertEquals(4, view.size());
+		assertEquals("A", view.getStrings("sku")[0]);
+		assertNull(view.getStrings("sku")[1]);
+		assertEquals(3, view.getInts("qty")[0]);
+		assertEquals(4, view.getInts("qty")[2]);
+		assertEquals(1.5, view.getDoubles("price")[0], 0);
+		assertEquals(2.25, view.getDoubles("price")[3], 0);
+
+		assertFalse(view.isNull("qty", 0));
+		assertTrue(view.isNull("qty", 1));
+		assertTrue(view.isNull("qty", 3));
+		assertTrue(view.isNull("price", 2));
+		assertTrue(view.isNull("sku", 1));
+		assertEquals(2, view.getNulls("qty").cardinality());
+	}
+
+	@Test
+	public void testWrongColumnType() {
+		ColumnarView view = ColumnarView.create(2, QTY);
+		try {
+			view.getLongs("qty");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+
+		try {
+			ColumnarView.create(2, Field.of("date", Date.class));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testWriteTo() {
+		ColumnarView view = ColumnarView.create(3, SKU, QTY, AMOUNT);
+		String[] skus = view.getStrings("sku");
+		int[] quantities = view.getInts("qty");
+		BigDecimal[] amounts = view.getDecimals("amount");
+		for (int i = 0; i < 3; i++) {
+			skus[i] = "S" + i;
+			quantities[i] = i * 10;
+			amounts[i] = new BigDecimal(i);
+		}
+		view.getNulls("qty").set(1);
+		amounts[2] = null;
+
+		Document top = docFactory.create();
+		view.writeTo(top.docsEntry("result"));
+
+		List<Document> result = top.docsEntry("result").getVal();
+		assertEquals(3, result.size());
+		assertEquals("S0", result.get(0).stringEntry("sku").getVal());
+		assertEquals(Integer.valueOf(0), result.get(0).intEntry("qty").getVal());
+		assertFalse(result.get(1).containsKey("qty"));
+		assertEquals(Integer.valueOf(20), result.get(2).intEntry("qty").getVal());
+		assertFalse(result.get(2).containsKey("amount"));
+		assertEquals(new BigDecimal(1), result.get(1).bigDecimalEntry("amount").getVal());
+	}
+}
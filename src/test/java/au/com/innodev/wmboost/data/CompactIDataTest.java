@@ -0,0 +1,200 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.convert.ConversionServiceUtils;
+import au.com.innodev.wmboost.data.preset.DirectIDataFactories;
+
+public class CompactIDataTest {
+
+	@Test
+	public void testInsertPositions() {
+		CompactIData idata = new CompactIData();
+		IDataCursor cursor = idata.getCursor();
+		cursor.insertAfter("b", "2");
+		cursor.insertAfter("d", "4");
+		assertEquals("d", cursor.getKey());
+
+		cursor.insertBefore("c", "3");
+		assertEquals("c", cursor.getKey());
+
+		cursor.home();
+		cursor.insertBefore("a", "1");
+		cursor.home();
+		cursor.insertAfter("e", "5");
+
+		assertEquals("a,b,c,d,e", keysOf(idata));
+	}
+
+	@Test
+	public void testDuplicateKeys() {
+		CompactIData idata = new CompactIData();
+		IDataCursor cursor = idata.getCursor();
+		cursor.insertAfter("item", "1");
+		cursor.insertAfter("other", "x");
+		cursor.insertAfter("item", "2");
+		cursor.insertAfter("item", "3");
+
+		cursor.home();
+		List<Object> values = new ArrayList<Object>();
+		while (cursor.next("item")) {
+			values.add(cursor.getValue());
+		}
+		assertEquals(3, values.size());
+		assertEquals("1", values.get(0));
+		assertEquals("3", values.get(2));
+
+		assertTrue(cursor.last("item"));
+		assertEquals("3", cursor.getValue());
+		assertTrue(cursor.previous("item"));
+		assertEquals("2", cursor.getValue());
+		assertTrue(cursor.previous("item"));
+		assertEquals("1", cursor.getValue());
+		assertFalse(cursor.previous("item"));
+		assertEquals("1", cursor.getValue());
+	}
+
+	@Test
+	public void testDelete() {
+		CompactIData idata = new CompactIData();
+		IDataCursor cursor = idata.getCursor();
+		assertFalse(cursor.delete());
+
+		cursor.insertAfter("a", "1");
+		cursor.insertAfter("b", "2");
+
+		assertTrue(cursor.first());
+		assertTrue(cursor.delete());
+		assertEquals("b", cursor.getKey());
+		assertFalse(cursor.delete());
+		assertNull(cursor.getKey());
+		assertEquals(0, idata.size());
+		assertFalse(cursor.first());
+	}
+
+	@Test
+	public void testCursorMovement() {
+		CompactIData idata = new CompactIData();
+		IDataCursor cursor = idata.getCursor();
+		assertNull(cursor.getKey());
+		assertFalse(cursor.hasMoreData());
+
+		cursor.insertAfter("a", "1");
+		cursor.insertAfter("b", "2");
+		cursor.home();
+
+		assertTrue(cursor.hasMoreData());
+		assertTrue(cursor.next());
+		assertTrue(cursor.next());
+		assertFalse(cursor.hasMoreData());
+		assertFalse(cursor.next());
+		assertNull(cursor.getValue());
+		assertTrue(cursor.previous());
+		assertEquals("b", cursor.getKey());
+
+		IDataCursor clone = cursor.getCursorClone();
+		assertTrue(clone.previous());
+		assertEquals("a", clone.getKey());
+		assertEquals("b", cursor.getKey());
+	}
+
+	@Test
+	public void testIndexedOperationsMatchLinearSearch() {
+		CompactIData idata = new CompactIData(4);
+		List<String> expectedKeys = new ArrayList<String>();
+		List<Object> expectedValues = new ArrayList<Object>();
+		Random random = new Random(43);
+
+		IDataCursor cursor = idata.getCursor();
+		for (int i = 0; i < 2000; i++) {
+			String key = "k" + random.nextInt(40);
+			int operation = random.nextInt(10);
+			if (operation < 5 || expectedKeys.isEmpty()) {
+				cursor.last();
+				cursor.insertAfter(key, Integer.valueOf(i));
+				expectedKeys.add(key);
+				expectedValues.add(Integer.valueOf(i));
+			} else if (operation < 7) {
+				if (cursor.first(key)) {
+					cursor.insertBefore("n" + i, Integer.valueOf(i));
+					int position = expectedKeys.indexOf(key);
+					expectedKeys.add(position, "n" + i);
+					expectedValues.add(position, Integer.valueOf(i));
+				}
+			} else if (operation < 9) {
+				if (cursor.last(key)) {
+					cursor.delete();
+					int position = expectedKeys.lastIndexOf(key);
+					expectedKeys.remove(position);
+					expectedValues.remove(position);
+				}
+			} else {
+				if (cursor.first(key)) {
+					cursor.setKey("r" + i);
+					expectedKeys.set(expectedKeys.indexOf(key), "r" + i);
+				}
+			}
+
+			String probe = "k" + random.nextInt(40);
+			assertEquals(expectedKeys.indexOf(probe) >= 0, cursor.first(probe));
+			if (expectedKeys.indexOf(probe) >= 0) {
+				assertEquals(expectedValues.get(expectedKeys.indexOf(probe)), cursor.getValue());
+				assertTrue(cursor.last(probe));
+				assertEquals(expectedValues.get(expectedKeys.lastIndexOf(probe)), cursor.getValue());
+			}
+		}
+
+		assertEquals(expectedKeys.size(), idata.size());
+		IDataCursor verifier = idata.getCursor();
+		for (int i = 0; i < expectedKeys.size(); i++) {
+			assertTrue(verifier.next());
+			assertEquals(expectedKeys.get(i), verifier.getKey());
+			assertEquals(expectedValues.get(i), verifier.getValue());
+		}
+	}
+
+	@Test
+	public void testAsDocumentStorage() {
+		DocumentFactoryBuilder builder = new DocumentFactoryBuilder();
+		builder.setConversionService(ConversionServiceUtils.createDefaultConversionService());
+		builder.setDirectIDataFactory(DirectIDataFactories.getCompactFactory());
+		DocumentFactory factory = builder.build();
+
+		Document document = factory.create();
+		document.stringEntry("name").put("Alice");
+		document.stringsSplitEntry("tag").put(Arrays.asList("a", "b"));
+		document.docEntry("address").putNew().stringEntry("city").put("Sydney");
+
+		IData idata = document.getIData();
+		assertTrue(idata instanceof CompactIData);
+		assertEquals("Alice", document.stringEntry("name").getVal());
+		assertEquals(2, document.stringsSplitEntry("tag").getValOrEmpty().size());
+		assertTrue(document.docEntry("address").getVal().getIData() instanceof CompactIData);
+		assertEquals("Sydney", document.docEntry("address").getVal().stringEntry("city").getVal());
+	}
+
+	private static String keysOf(IData idata) {
+		StringBuilder sb = new StringBuilder();
+		IDataCursor cursor = idata.getCursor();
+		while (cursor.next()) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(cursor.getKey());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,155 @@
+package au.com.innodev.wmboost.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+/**
+ * Timed comparison of a {@link ConcurrentDocument} with a regular document
+ * guarded by a lock, under a read-mostly workload shared by several threads.
+ * It isn't part of the test suite: run its {@code main} method to print the
+ * timings.
+ */
+public class ConcurrentDocumentBenchmark {
+
+	private static final int THREADS = 8;
+	private static final int OPERATIONS = 20000;
+	private static final int KEYS = 16;
+	private static final int WRITE_EVERY = 10;
+
+	private interface Counters {
+		Integer read(String key);
+
+		void increment(String key);
+
+		int total();
+	}
+
+	private static final ValueFunction<Integer> INCREMENT = new ValueFunction<Integer>() {
+		@Override
+		public Integer apply(Integer currentValue) {
+			return currentValue == null ? 1 : currentValue + 1;
+		}
+	};
+
+	private static class ConcurrentCounters implements Counters {
+		private final ConcurrentDocument document;
+
+		ConcurrentCounters(ConcurrentDocument document) {
+			this.document = document;
+		}
+
+		@Override
+		public Integer read(String key) {
+			return document.getDocument().intEntry(key).getValOrNull();
+		}
+
+		@Override
+		public void increment(String key) {
+			document.compute(key, Integer.class, INCREMENT);
+		}
+
+		@Override
+		public int total() {
+			return sum(document.snapshot());
+		}
+	}
+
+	private static class SynchronizedCounters implements Counters {
+		private final Document document;
+
+		SynchronizedCounters(Document document) {
+			this.document = document;
+		}
+
+		@Override
+		public synchronized Integer read(String key) {
+			return document.intEntry(key).getValOrNull();
+		}
+
+		@Override
+		public synchronized void increment(String key) {
+			document.intEntry(key).put(INCREMENT.apply(document.intEntry(key).getValOrNull()));
+		}
+
+		@Override
+		public synchronized int total() {
+			return sum(document);
+		}
+	}
+
+	private static int sum(Document document) {
+		int total = 0;
+		for (int k = 0; k < KEYS; k++) {
+			Integer value = document.intEntry("counter" + k).getValOrNull();
+			total += value == null ? 0 : value.intValue();
+		}
+		return total;
+	}
+
+	private static long run(final Counters counters) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < THREADS; t++) {
+				final int offset = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < OPERATIONS; i++) {
+							String key = "counter" + ((i + offset) % KEYS);
+							if (i % WRITE_EVERY == 0) {
+								counters.increment(key);
+							} else {
+								counters.read(key);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			long startTime = System.nanoTime();
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			return System.nanoTime() - startTime;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		DocumentFactory docFactory = DocumentFactories.getDefault();
+
+		// Warm-up, so that neither run pays for class loading and compilation
+		run(new ConcurrentCounters(ConcurrentDocument.create(docFactory)));
+		run(new SynchronizedCounters(docFactory.create()));
+
+		Counters concurrent = new ConcurrentCounters(ConcurrentDocument.create(docFactory));
+		Counters synchronised = new SynchronizedCounters(docFactory.create());
+
+		long concurrentTime = run(concurrent);
+		long synchronisedTime = run(synchronised);
+
+		int expectedTotal = THREADS * OPERATIONS / WRITE_EVERY;
+		if (concurrent.total() != expectedTotal || synchronised.total() != expectedTotal) {
+			throw new IllegalStateException("Lost updates: expected " + expectedTotal + ", got " + concurrent.total()
+					+ " (concurrent) and " + synchronised.total() + " (synchronized)");
+		}
+
+		System.out.println("Contention (" + THREADS + " threads, " + OPERATIONS + " operations each): concurrent "
+				+ TimeUnit.NANOSECONDS.toMillis(concurrentTime) + " ms, synchronized "
+				+ TimeUnit.NANOSECONDS.toMillis(synchronisedTime) + " ms");
+	}
+}
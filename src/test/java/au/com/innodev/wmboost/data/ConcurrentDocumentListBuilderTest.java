@@ -0,0 +1,99 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class ConcurrentDocumentListBuilderTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private void runWorkers(final ConcurrentDocumentListBuilder builder, final boolean sequenced) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int worker = 0; worker < 4; worker++) {
+				final int firstSeq = worker;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int seq = firstSeq; seq < 1000; seq += 4) {
+							Document record = docFactory.create();
+							record.intEntry("seq").put(seq);
+							if (sequenced) {
+								builder.add(seq, record);
+							} else {
+								builder.add(record);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testPublishInSequenceOrder() throws Exception {
+		ConcurrentDocumentListBuilder builder = new ConcurrentDocumentListBuilder();
+		runWorkers(builder, true);
+		assertEquals(1000, builder.size());
+
+		Document top = docFactory.create();
+		assertEquals(1000, builder.publishTo(top, "records"));
+
+		List<Document> records = top.docsEntry("records").getVal();
+		assertEquals(1000, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			assertEquals(Integer.valueOf(i), records.get(i).intEntry("seq").getVal());
+		}
+		assertEquals(0, builder.size());
+	}
+
+	@Test
+	public void testPublishWithoutSequence() throws Exception {
+		ConcurrentDocumentListBuilder builder = new ConcurrentDocumentListBuilder();
+		runWorkers(builder, false);
+
+		Document top = docFactory.create();
+		builder.publishTo(top, "records");
+
+		boolean[] seen = new boolean[1000];
+		for (Document record : top.docsEntry("records").getVal()) {
+			seen[record.intEntry("seq").getVal()] = true;
+		}
+		for (boolean value : seen) {
+			assertTrue(value);
+		}
+	}
+
+	@Test
+	public void testMixedSequencesAreRejected() {
+		ConcurrentDocumentListBuilder builder = new ConcurrentDocumentListBuilder();
+		builder.add(docFactory.create());
+		builder.add(1, docFactory.create());
+
+		try {
+			builder.toArray();
+			fail();
+		} catch (IllegalStateException e) {
+			// test succeeded
+		}
+	}
+}
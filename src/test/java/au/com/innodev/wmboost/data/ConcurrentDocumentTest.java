@@ -0,0 +1,231 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class ConcurrentDocumentTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private static final ValueFunction<Integer> INCREMENT = new ValueFunction<Integer>() {
+		@Override
+		public Integer apply(Integer currentValue) {
+			return currentValue == null ? 1 : currentValue + 1;
+		}
+	};
+
+	@Test
+	public void testConcurrentCompute() throws Exception {
+		final ConcurrentDocument counters = ConcurrentDocument.create(docFactory);
+		final int threads = 8;
+		final int increments = 2000;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				final String ownKey = "thread" + t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < increments; i++) {
+							counters.compute("total", Integer.class, INCREMENT);
+							counters.getDocument().intEntry(ownKey).put(i);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		Document document = counters.getDocument();
+		assertEquals(Integer.valueOf(threads * increments), document.intEntry("total").getVal());
+		for (int t = 0; t < threads; t++) {
+			assertEquals(Integer.valueOf(increments - 1), document.intEntry("thread" + t).getVal());
+		}
+	}
+
+	@Test
+	public void testPutIfAbsentAndCompareAndSet() {
+		ConcurrentDocument document = ConcurrentDocument.create(docFactory);
+
+		assertTrue(document.putIfAbsent("status", "NEW"));
+		assertFalse(document.putIfAbsent("status", "OTHER"));
+		assertFalse(document.compareAndSet("status", "OPEN", "CLOSED"));
+		assertTrue(document.compareAndSet("status", "NEW", "OPEN"));
+		assertEquals("OPEN", document.getDocument().stringEntry("status").getVal());
+
+		assertTrue(document.compareAndSet("missing", null, "created"));
+		assertEquals("created", document.getDocument().stringEntry("missing").getVal());
+
+		document.compute("status", String.class, new ValueFunction<String>() {
+			@Override
+			public String apply(String currentValue) {
+				return null;
+			}
+		});
+		assertFalse(document.getDocument().stringEntry("status").isAssigned());
+	}
+
+	@Test
+	public void testSnapshotIsolation() {
+		ConcurrentDocument concurrent = ConcurrentDocument.create(docFactory);
+		Document document = concurrent.getDocument();
+		document.stringEntry("a").put("1");
+		document.stringEntry("b").put("2");
+
+		Document snapshot = concurrent.snapshot();
+		List<String> keys = new ArrayList<String>();
+		EntryIterableResource entries = concurrent.getAllEntries();
+		try {
+			for (KeyValue keyValue : entries) {
+				keys.add(keyValue.getKey());
+				document.stringEntry("c" + keys.size()).put("added");
+			}
+		} finally {
+			entries.close();
+		}
+
+		assertEquals(2, keys.size());
+		assertEquals(2, snapshot.getKeys().size());
+		assertEquals(4, document.getKeys().size());
+	}
+
+	@Test
+	public void testSnapshotsFreezeNestedDocuments() {
+		ConcurrentDocument concurrent = ConcurrentDocument.create(docFactory);
+		Document document = concurrent.getDocument();
+		document.docEntry("n").putNew().intEntry("x").put(1);
+		Document item = ConcurrentDocument.create(docFactory).getDocument();
+		item.intEntry("x").put(1);
+		document.docsEntry("items").put(Arrays.asList(item));
+
+		Document snapshot = concurrent.snapshot();
+		document.docEntry("n").getVal().intEntry("x").put(2);
+		document.docsEntry("items").getVal().get(0).intEntry("x").put(2);
+
+		assertEquals(Integer.valueOf(1), snapshot.docEntry("n").getVal().intEntry("x").getVal());
+		assertEquals(Integer.valueOf(1), snapshot.docsEntry("items").getVal().get(0).intEntry("x").getVal());
+		try {
+			snapshot.docEntry("n").getVal().intEntry("x").put(3);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(Integer.valueOf(2), document.docEntry("n").getVal().intEntry("x").getVal());
+	}
+
+	@Test
+	public void testRegularDocumentOperations() {
+		Document source = docFactory.create();
+		source.stringEntry("name").put("Alice");
+		source.docEntry("address").putNew().stringEntry("city").put("Hobart");
+
+		ConcurrentDocument concurrent = ConcurrentDocument.copyOf(source);
+		Document document = concurrent.getDocument();
+		document.stringEntry("name").put("Bob");
+		document.docEntry("address").getVal().stringEntry("city").remove();
+		document.docEntry("created").putNew().intEntry("count").put(1);
+
+		assertEquals("Alice", source.stringEntry("name").getVal());
+		assertEquals("Bob", document.stringEntry("name").getVal());
+		assertFalse(document.docEntry("address").getVal().stringEntry("city").isAssigned());
+		assertEquals(Integer.valueOf(1), document.docEntry("created").getVal().intEntry("count").getVal());
+
+		document.clear();
+		assertEquals(0, document.getKeys().size());
+	}
+
+	@Test
+	public void testConsumingChunksDoesNotAffectSnapshots() {
+		ConcurrentDocument shared = ConcurrentDocument.create(docFactory);
+		shared.getDocument().entry("values").put(new String[] { "a", "b", "c" });
+		Document snapshot = shared.snapshot();
+
+		int count = 0;
+		for (List<String> chunk : shared.getDocument().stringsEntry("values").chunks(2, ChunkOption.CONSUME)) {
+			count += chunk.size();
+		}
+
+		assertEquals(3, count);
+		assertEquals(Arrays.asList("a", "b", "c"), snapshot.stringsEntry("values").getVal());
+	}
+
+	@Test
+	public void testDuplicateKeyInsertsAreRejected() {
+		ConcurrentDocument concurrent = ConcurrentDocument.create(docFactory);
+		Document document = concurrent.getDocument();
+		document.splitEntry("code", String.class).put(Arrays.asList("a"));
+		assertEquals("a", document.stringEntry("code").getVal());
+
+		try {
+			document.splitEntry("code", String.class).put(Arrays.asList("b", "c"));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		document.stringEntry("name").put("Alice");
+		IDataCursor cursor = document.getIData().getCursor();
+		try {
+			cursor.insertAfter("name", "Bob");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		} finally {
+			cursor.destroy();
+		}
+		assertEquals("Alice", document.stringEntry("name").getVal());
+	}
+
+	@Test
+	public void testConcurrentPutsOfNewKeys() throws Exception {
+		final ConcurrentDocument concurrent = ConcurrentDocument.create(docFactory);
+		final int threads = 8;
+		final int keys = 500;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < keys; i++) {
+							concurrent.getDocument().intEntry("key" + i).put(i);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(keys, concurrent.getDocument().getKeys().size());
+	}
+}
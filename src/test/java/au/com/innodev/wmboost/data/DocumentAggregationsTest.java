@@ -0,0 +1,123 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentAggregationsTest {
+
+	private static final Field<String> CUSTOMER = Field.of("customer", String.class);
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newOrder(String customer, String amount, int quantity) {
+		Document order = docFactory.create();
+		order.stringEntry("customer").put(customer);
+		order.stringEntry("amount").put(amount);
+		order.intEntry("quantity").put(quantity);
+		return order.getIData();
+	}
+
+	private Document newTopDocument(IData... orders) {
+		Document top = docFactory.create();
+		top.entry("orders").put(orders);
+		return top;
+	}
+
+	@Test
+	public void testGroupBy() {
+		Document top = newTopDocument(newOrder("ann", "10.50", 1), newOrder("bob", "3", 2), null,
+				newOrder("ann", "4.25", 5));
+
+		List<Document> result = DocumentAggregations.groupBy(CUSTOMER).count("orders").sumDecimal("amount", "total")
+				.sumLong("quantity", "quantity").max(Field.of("quantity", Integer.class), "maxQuantity")
+				.aggregate(top.docsEntry("orders"));
+
+		assertEquals(2, result.size());
+		Document ann = result.get(0);
+		assertEquals("ann", ann.stringEntry("customer").getVal());
+		assertEquals(Long.valueOf(2), ann.entry("orders").getVal());
+		assertEquals(new BigDecimal("14.75"), ann.entry("total").getVal());
+		assertEquals(Long.valueOf(6), ann.entry("quantity").getVal());
+		assertEquals(Integer.valueOf(5), ann.entry("maxQuantity").getVal());
+		assertEquals("bob", result.get(1).stringEntry("customer").getVal());
+	}
+
+	@Test
+	public void testAllWithoutElements() {
+		Document top = docFactory.create();
+
+		List<Document> result = DocumentAggregations.all().count("orders").sumDouble("amount", "total")
+				.aggregate(top.docsEntry("orders"));
+
+		assertEquals(1, result.size());
+		assertEquals(Long.valueOf(0), result.get(0).entry("orders").getVal());
+		assertEquals(Double.valueOf(0), result.get(0).entry("total").getVal());
+	}
+
+	@Test
+	public void testTopK() {
+		Document top = newTopDocument(newOrder("ann", "1", 7), newOrder("ann", "1", 3), newOrder("ann", "1", 9),
+				newOrder("ann", "1", 1));
+
+		List<Document> result = DocumentAggregations.all().topK(Field.of("quantity", Integer.class), 2, "top")
+				.aggregate(top.docsEntry("orders"));
+
+		assertEquals(Arrays.asList(9, 7), result.get(0).intsEntry("top").getVal());
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		IData[] orders = new IData[5000];
+		for (int i = 0; i < orders.length; i++) {
+			orders[i] = newOrder("c" + (i % 7), String.valueOf(i), i);
+		}
+		Document top = newTopDocument(orders);
+
+		DocumentAggregation aggregation = DocumentAggregations.groupBy(CUSTOMER).count("orders")
+				.sumDecimal("amount", "total").min(Field.of("quantity", Integer.class), "minQuantity");
+
+		List<Document> sequential = aggregation.aggregate(top.docsEntry("orders"));
+		List<Document> parallel;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			parallel = aggregation.aggregate(top.docsEntry("orders"), 4, executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(7, parallel.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			assertEquals(sequential.get(i).stringEntry("customer").getVal(), parallel.get(i).stringEntry("customer").getVal());
+			assertEquals(sequential.get(i).entry("orders").getVal(), parallel.get(i).entry("orders").getVal());
+			assertEquals(sequential.get(i).entry("total").getVal(), parallel.get(i).entry("total").getVal());
+			assertEquals(sequential.get(i).entry("minQuantity").getVal(), parallel.get(i).entry("minQuantity").getVal());
+		}
+	}
+
+	@Test
+	public void testSplitEntry() {
+		Document top = docFactory.create();
+		List<IData> orders = new ArrayList<IData>();
+		orders.add(newOrder("ann", "1", 1));
+		orders.add(newOrder("bob", "2", 1));
+		orders.add(newOrder("ann", "3", 1));
+		top.splitEntry("order", IData.class).put(orders);
+
+		List<Document> result = DocumentAggregations.groupBy(CUSTOMER).sumDecimal("amount", "total")
+				.aggregate(top.splitEntry("order", Document.class));
+
+		assertEquals(new BigDecimal("4"), result.get(0).entry("total").getVal());
+	}
+}
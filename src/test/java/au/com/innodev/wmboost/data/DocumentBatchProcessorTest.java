@@ -0,0 +1,154 @@
+package au.com.innodev.wmboost.data;
+
+import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentBatchProcessorTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private List<IData> newInputs(int size) {
+		List<IData> inputs = new ArrayList<IData>();
+		for (int i = 0; i < size; i++) {
+			inputs.add(newIDataWithValue("v" + i));
+		}
+		return inputs;
+	}
+
+	@Test
+	public void testResultsInInputOrder() {
+		DocumentBatchProcessor processor = new DocumentBatchProcessor(docFactory, 8);
+
+		List<String> results = processor.process(newInputs(200), new DocumentFunction<String>() {
+			@Override
+			public String apply(Document document) {
+				return document.stringEntry("value1").getVal().toUpperCase();
+			}
+		});
+
+		assertEquals(200, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals("V" + i, results.get(i));
+		}
+	}
+
+	@Test
+	public void testConcurrencyIsCapped() {
+		DocumentBatchProcessor processor = new DocumentBatchProcessor(docFactory, 3);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		processor.process(newInputs(50), new DocumentFunction<Void>() {
+			@Override
+			public Void apply(Document document) {
+				int current = running.incrementAndGet();
+				int max;
+				do {
+					max = maxRunning.get();
+				} while (current > max && !maxRunning.compareAndSet(max, current));
+
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				return null;
+			}
+		});
+
+		assertTrue(maxRunning.get() <= 3);
+	}
+
+	@Test
+	public void testNullAndDocumentInputs() {
+		DocumentBatchProcessor processor = new DocumentBatchProcessor(docFactory, 2);
+		List<Object> inputs = new ArrayList<Object>();
+		inputs.add(null);
+		inputs.add(docFactory.wrap(newIDataWithValue("doc")));
+
+		List<String> results = processor.process(inputs, new DocumentFunction<String>() {
+			@Override
+			public String apply(Document document) {
+				return (document == null) ? null : document.stringEntry("value1").getVal();
+			}
+		});
+
+		assertNull(results.get(0));
+		assertEquals("doc", results.get(1));
+	}
+
+	@Test
+	public void testFailuresAndStatistics() {
+		DocumentBatchProcessor processor = new DocumentBatchProcessor(docFactory, 4);
+
+		try {
+			processor.process(newInputs(20), new DocumentFunction<String>() {
+				@Override
+				public String apply(Document document) {
+					String value = document.stringEntry("value1").getVal();
+					if (value.endsWith("5")) {
+						throw new IllegalStateException(value);
+					}
+					return value;
+				}
+			});
+			fail();
+		} catch (DocumentListProcessingException e) {
+			assertEquals(2, e.getTotalFailures());
+			assertEquals(5, e.getFailures().get(0).getIndex());
+			assertEquals(15, e.getFailures().get(1).getIndex());
+		}
+
+		BatchStatistics statistics = processor.getStatistics();
+		assertEquals(1, statistics.getBatchCount());
+		assertEquals(20, statistics.getDocumentCount());
+		assertEquals(2, statistics.getFailureCount());
+	}
+
+	@Test
+	public void testUnsupportedInputCancelsSubmittedTasks() throws InterruptedException {
+		DocumentBatchProcessor processor = new DocumentBatchProcessor(docFactory, 4);
+		List<Object> inputs = new ArrayList<Object>(newInputs(2));
+		inputs.add("unsupported");
+		final AtomicInteger completed = new AtomicInteger();
+
+		try {
+			processor.process(inputs, new DocumentFunction<Void>() {
+				@Override
+				public Void apply(Document document) {
+					try {
+						Thread.sleep(200);
+						completed.incrementAndGet();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return null;
+				}
+			});
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		Thread.sleep(400);
+		assertEquals(0, completed.get());
+		BatchStatistics statistics = processor.getStatistics();
+		assertEquals(1, statistics.getBatchCount());
+		assertEquals(2, statistics.getDocumentCount());
+		assertEquals(2, statistics.getFailureCount());
+	}
+}
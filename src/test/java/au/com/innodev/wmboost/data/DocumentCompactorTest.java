@@ -0,0 +1,255 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentCompactorTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newAddress(Object number) {
+		Document address = docFactory.create();
+		address.entry("street").put(new String("Collins St"));
+		address.entry("number").put(number);
+		address.entry("city").put(new String("Melbourne"));
+		return address;
+	}
+
+	private Document newOrders(int size) {
+		IData[] orders = new IData[size];
+		for (int i = 0; i < size; i++) {
+			Document order = docFactory.create();
+			order.intEntry("id").put(i);
+			order.entry("status").put(new String("SHIPPED"));
+			order.docEntry("address").put(newAddress(Integer.valueOf(120)));
+			orders[i] = order.getIData();
+		}
+
+		Document top = docFactory.create();
+		top.entry("orders").put(orders);
+		return top;
+	}
+
+	private static Object getRaw(IData iData, String key) {
+		IDataCursor cursor = iData.getCursor();
+		try {
+			return cursor.first(key) ? cursor.getValue() : null;
+		} finally {
+			cursor.destroy();
+		}
+	}
+
+	private static IData getOrder(Document top, int index) {
+		return ((IData[]) getRaw(top.getIData(), "orders"))[index];
+	}
+
+	@Test
+	public void testSharesIdenticalSubtrees() {
+		Document top = newOrders(100);
+		assertNotSame(getRaw(getOrder(top, 0), "address"), getRaw(getOrder(top, 1), "address"));
+
+		CompactionResult result = DocumentTrees.compact(top, CompactOptions.defaults());
+
+		Object firstAddress = getRaw(getOrder(top, 0), "address");
+		for (int i = 1; i < 100; i++) {
+			assertSame(firstAddress, getRaw(getOrder(top, i), "address"));
+			assertSame(getRaw(getOrder(top, 0), "status"), getRaw(getOrder(top, i), "status"));
+		}
+		assertNotSame(getOrder(top, 0), getOrder(top, 1));
+		assertEquals(99, result.getSharedSubtreeCount());
+		assertTrue(result.getInternedStringCount() >= 99);
+		assertTrue(result.getBytesSaved() > 0);
+		assertEquals(result.getBytesBefore() - result.getBytesAfter(), result.getBytesSaved());
+
+		Document order = docFactory.wrap(getOrder(top, 42));
+		assertEquals(Integer.valueOf(42), order.intEntry("id").getVal());
+		assertEquals("Melbourne", order.docEntry("address").getVal().stringEntry("city").getVal());
+	}
+
+	@Test
+	public void testSharesWholeIdenticalDocuments() {
+		IData[] lines = new IData[3];
+		for (int i = 0; i < lines.length; i++) {
+			Document line = docFactory.create();
+			line.entry("sku").put(new String("A-1"));
+			line.entry("codes").put(new String[] { "x", "y" });
+			line.docEntry("address").put(newAddress(Integer.valueOf(1)));
+			lines[i] = line.getIData();
+		}
+		Document top = docFactory.create();
+		top.entry("lines").put(lines);
+
+		CompactionResult result = DocumentTrees.compact(top, CompactOptions.defaults());
+
+		IData[] compacted = (IData[]) getRaw(top.getIData(), "lines");
+		assertSame(compacted[0], compacted[1]);
+		assertSame(compacted[0], compacted[2]);
+		assertEquals(4, result.getSharedSubtreeCount());
+	}
+
+	@Test
+	public void testSharedSubtreesAreImmutable() {
+		Document top = newOrders(3);
+
+		DocumentTrees.compact(top, CompactOptions.defaults());
+
+		assertTrue(getRaw(getOrder(top, 0), "address") instanceof PersistentIData);
+		Document order = docFactory.wrap(getOrder(top, 1));
+		try {
+			order.docEntry("address").getVal().stringEntry("city").put("Sydney");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals("Melbourne", docFactory.wrap(getOrder(top, 2)).docEntry("address").getVal()
+				.stringEntry("city").getVal());
+
+		// Documents found only once can still be modified
+		assertFalse(getOrder(top, 1) instanceof PersistentIData);
+		order.stringEntry("status").put("RETURNED");
+		assertEquals("SHIPPED", docFactory.wrap(getOrder(top, 2)).stringEntry("status").getVal());
+	}
+
+	@Test
+	public void testDeepDocuments() {
+		int depth = 20000;
+		Document top = docFactory.create();
+		Document current = top;
+		for (int i = 0; i < depth; i++) {
+			current = current.docEntry("child").putNew();
+			current.intEntry("level").put(i);
+			current.docEntry("address").put(newAddress(Integer.valueOf(1)));
+		}
+
+		CompactionResult result = DocumentTrees.compact(top, CompactOptions.defaults());
+
+		assertEquals(depth - 1, result.getSharedSubtreeCount());
+		assertTrue(result.getBytesSaved() > 0);
+	}
+
+	@Test
+	public void testValuesOfDifferentTypesAreNotShared() {
+		Document top = docFactory.create();
+		top.docEntry("a").put(newAddress(Integer.valueOf(5)));
+		top.docEntry("b").put(newAddress(Long.valueOf(5)));
+
+		CompactionResult result = DocumentTrees.compact(top, CompactOptions.defaults());
+
+		assertNotSame(getRaw(top.getIData(), "a"), getRaw(top.getIData(), "b"));
+		assertEquals(0, result.getSharedSubtreeCount());
+		assertSame(getRaw((IData) getRaw(top.getIData(), "a"), "city"),
+				getRaw((IData) getRaw(top.getIData(), "b"), "city"));
+	}
+
+	@Test
+	public void testMutableValuesAreNotShared() {
+		Document top = docFactory.create();
+		top.docEntry("a").put(newAddress(new Date(0)));
+		top.docEntry("b").put(newAddress(new Date(0)));
+
+		DocumentTrees.compact(top, CompactOptions.defaults());
+
+		assertNotSame(getRaw(top.getIData(), "a"), getRaw(top.getIData(), "b"));
+	}
+
+	@Test
+	public void testMaxSubtreeSize() {
+		Document top = newOrders(2);
+
+		CompactionResult result = DocumentTrees.compact(top, CompactOptions.defaults().withMaxSubtreeSize(2));
+
+		assertNotSame(getRaw(getOrder(top, 0), "address"), getRaw(getOrder(top, 1), "address"));
+		assertEquals(0, result.getSharedSubtreeCount());
+	}
+
+	@Test
+	public void testDisabledOptions() {
+		Document top = newOrders(2);
+
+		CompactionResult result = DocumentTrees.compact(top,
+				CompactOptions.defaults().withStringInterning(false).withSubtreeSharing(false));
+
+		assertNotSame(getRaw(getOrder(top, 0), "address"), getRaw(getOrder(top, 1), "address"));
+		assertNotSame(getRaw(getOrder(top, 0), "status"), getRaw(getOrder(top, 1), "status"));
+		assertEquals(0, result.getSharedSubtreeCount());
+		assertEquals(0, result.getInternedStringCount());
+		assertEquals(0, result.getBytesSaved());
+	}
+
+	@Test
+	public void testSharedInterner() {
+		StringInterner interner = new StringInterner();
+		CompactOptions options = CompactOptions.defaults().withStringInterner(interner).withSubtreeSharing(false);
+		Document top1 = docFactory.create();
+		top1.entry("value").put(new String("shared"));
+		Document top2 = docFactory.create();
+		top2.entry("value").put(new String("shared"));
+
+		DocumentTrees.compact(top1, options);
+		DocumentTrees.compact(top2, options);
+
+		assertSame(getRaw(top1.getIData(), "value"), getRaw(top2.getIData(), "value"));
+	}
+
+	@Test
+	public void testInternerIsBounded() {
+		StringInterner interner = new StringInterner(1);
+		String first = new String("a");
+		String second = new String("b");
+
+		assertSame(first, interner.intern(first));
+		assertSame(first, interner.intern(new String("a")));
+		assertSame(second, interner.intern(second));
+		assertNotSame(second, interner.intern(new String("b")));
+		assertEquals(1, interner.size());
+	}
+
+	@Test
+	public void testInternerBoundIsPerKey() {
+		StringInterner interner = new StringInterner(8, 2);
+		CompactOptions options = CompactOptions.defaults().withStringInterner(interner);
+		Document top = docFactory.create();
+		IData[] records = new IData[100];
+		for (int i = 0; i < records.length; i++) {
+			Document record = docFactory.create();
+			record.entry("id").put("ID-" + i);
+			if (i >= 50) {
+				// Repeated values only appear after many unique ones
+				record.entry("code").put(new String(i % 2 == 0 ? "EVEN" : "ODD"));
+			}
+			records[i] = record.getIData();
+		}
+		top.entry("records").put(records);
+
+		DocumentTrees.compact(top, options);
+
+		IData[] compacted = (IData[]) getRaw(top.getIData(), "records");
+		assertSame(getRaw(compacted[50], "code"), getRaw(compacted[98], "code"));
+		assertSame(getRaw(compacted[51], "code"), getRaw(compacted[99], "code"));
+		assertEquals(4, interner.size());
+	}
+
+	@Test
+	public void testSelfContainingDocument() {
+		Document top = newOrders(2);
+		IData order = getOrder(top, 0);
+		docFactory.wrap(order).entry("self").put(order);
+
+		DocumentTrees.compact(top, CompactOptions.defaults());
+
+		assertSame(order, getRaw(order, "self"));
+	}
+}
@@ -0,0 +1,130 @@
+package au.com.innodev.wmboost.data;
+
+import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentCursorTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newTopDocument(IData... elements) {
+		Document top = docFactory.create();
+		top.entry("records").put(elements);
+		return top;
+	}
+
+	@Test
+	public void testEntriesFollowCursor() {
+		Document top = newTopDocument(newIDataWithValue("a"), newIDataWithValue("b"));
+
+		DocumentCursor cursor = DocumentLists.cursor(top.docsEntry("records"));
+		Document flyweight = cursor.getDocument();
+		StringEntry valueEntry = flyweight.stringEntry("value1");
+
+		List<String> values = new ArrayList<String>();
+		while (cursor.next()) {
+			assertSame(flyweight, cursor.get());
+			values.add(valueEntry.getVal());
+		}
+
+		assertEquals(2, values.size());
+		assertEquals("a", values.get(0));
+		assertEquals("b", values.get(1));
+	}
+
+	@Test
+	public void testWritesGoToElements() {
+		IData element1 = newIDataWithValue("a");
+		IData element2 = newIDataWithValue("b");
+		Document top = newTopDocument(element1, element2);
+
+		DocumentCursor cursor = DocumentLists.cursor(top.docsEntry("records"));
+		StringEntry copyEntry = cursor.getDocument().stringEntry("copy");
+		while (cursor.next()) {
+			copyEntry.put(cursor.getDocument().stringEntry("value1").getVal());
+		}
+
+		assertEquals("a", docFactory.wrap(element1).stringEntry("copy").getVal());
+		assertEquals("b", docFactory.wrap(element2).stringEntry("copy").getVal());
+	}
+
+	@Test
+	public void testNullElements() {
+		Document top = newTopDocument(newIDataWithValue("a"), null);
+
+		DocumentCursor cursor = DocumentLists.cursor(top.docsEntry("records"));
+		assertTrue(cursor.next());
+		assertFalse(cursor.isNull());
+		assertTrue(cursor.next());
+		assertTrue(cursor.isNull());
+		assertNull(cursor.get());
+		assertFalse(cursor.getDocument().containsKey("value1"));
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void testNullElementsAreReadOnly() {
+		IData element = newIDataWithValue("a");
+		Document top = newTopDocument(null, element);
+
+		DocumentCursor cursor = DocumentLists.cursor(top.docsEntry("records"));
+		assertTrue(cursor.next());
+		try {
+			cursor.getDocument().stringEntry("value1").put("b");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// test succeeded
+		}
+
+		assertTrue(cursor.next());
+		assertSame(element, cursor.getDocument().getIData());
+	}
+
+	@Test
+	public void testInexistentEntryIsEmpty() {
+		Document top = docFactory.create();
+
+		DocumentCursor cursor = DocumentLists.cursor(top.docsEntry("records"));
+		assertEquals(0, cursor.size());
+		assertFalse(cursor.next());
+
+		try {
+			cursor.get();
+			fail();
+		} catch (NoSuchElementException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testForEachReusing() {
+		Document top = newTopDocument(newIDataWithValue("a"), newIDataWithValue("b"));
+
+		final List<String> visited = new ArrayList<String>();
+		DocumentLists.forEachReusing(top.docsEntry("records"), new DocumentVisitor() {
+			@Override
+			public void visit(Document document, int index) {
+				visited.add(index + ":" + document.stringEntry("value1").getVal());
+			}
+		});
+
+		assertEquals(2, visited.size());
+		assertEquals("0:a", visited.get(0));
+		assertEquals("1:b", visited.get(1));
+	}
+}
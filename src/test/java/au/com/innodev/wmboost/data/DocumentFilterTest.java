@@ -0,0 +1,102 @@
+package au.com.innodev.wmboost.data;
+
+import static au.com.innodev.wmboost.data.DocumentFilter.field;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentFilterTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newOrder(String status, Object amount) {
+		Document order = docFactory.create();
+		order.stringEntry("status").put(status);
+		if (amount != null) {
+			order.entry("amount").put(amount);
+		}
+		return order.getIData();
+	}
+
+	private Document newTopDocument(IData... orders) {
+		Document top = docFactory.create();
+		top.entry("orders").put(orders);
+		return top;
+	}
+
+	@Test
+	public void testAndCondition() {
+		IData match = newOrder("OPEN", "150.50");
+		Document top = newTopDocument(newOrder("OPEN", "99"), match, newOrder("CLOSED", "500"), null);
+
+		DocumentFilter filter = field("status").eq("OPEN").and(field("amount", BigDecimal.class).gt(100));
+		IData[] result = filter.filter(top.docsEntry("orders"));
+
+		assertEquals(1, result.length);
+		assertSame(match, result[0]);
+	}
+
+	@Test
+	public void testBitmap() {
+		Document top = newTopDocument(newOrder("OPEN", 1), newOrder("CLOSED", 2), newOrder("PENDING", 3));
+
+		BitSet matches = field("status").in("OPEN", "PENDING").matches(top.docsEntry("orders"));
+
+		assertTrue(matches.get(0));
+		assertFalse(matches.get(1));
+		assertTrue(matches.get(2));
+	}
+
+	@Test
+	public void testConstantsAreConvertedToFieldType() {
+		Document top = newTopDocument(newOrder("OPEN", "10"), newOrder("OPEN", 20), newOrder("OPEN", "30.0"));
+
+		assertEquals(2, field("amount", BigDecimal.class).ge("20").count(top.docsEntry("orders")));
+		assertEquals(1, field("amount", BigDecimal.class).eq(30).count(top.docsEntry("orders")));
+	}
+
+	@Test
+	public void testUntypedNumericConstantsMatchDecimals() {
+		Document top = newTopDocument(newOrder("OPEN", "150.75"), newOrder("OPEN", "99.99"), newOrder("OPEN", 100L),
+				newOrder("OPEN", Double.valueOf(100.5)));
+
+		assertEquals(2, field("amount").gt(100).count(top.docsEntry("orders")));
+		assertEquals(1, field("amount").eq(100).count(top.docsEntry("orders")));
+		assertEquals(1, field("amount").le(99.99).count(top.docsEntry("orders")));
+	}
+
+	@Test
+	public void testMissingValues() {
+		Document top = newTopDocument(newOrder("OPEN", null), newOrder("OPEN", 5));
+
+		assertEquals(1, field("amount").isNull().count(top.docsEntry("orders")));
+		assertEquals(1, field("amount", Integer.class).ne(1).count(top.docsEntry("orders")));
+		assertEquals(0, field("amount", Integer.class).lt(5).count(top.docsEntry("orders")));
+	}
+
+	@Test
+	public void testOrAndNegate() {
+		Document top = newTopDocument(newOrder("OPEN", 1), newOrder("CLOSED", 2), newOrder("PENDING", 3));
+
+		DocumentFilter filter = field("status").eq("OPEN").or(field("status").eq("CLOSED"));
+
+		assertEquals(2, filter.count(top.docsEntry("orders")));
+		assertEquals(1, filter.negate().count(top.docsEntry("orders")));
+		assertTrue(filter.test(docFactory.wrap(newOrder("CLOSED", 1))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOrderingRequiresComparableType() {
+		field("status", Object.class).gt("A");
+	}
+}
@@ -0,0 +1,102 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentIndexTest {
+
+	private static final Field<String> SKU = Field.of("sku", String.class);
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newProduct(Object sku, String name) {
+		Document product = docFactory.create();
+		product.entry("sku").put(sku);
+		product.stringEntry("name").put(name);
+		return product.getIData();
+	}
+
+	private Document newCatalog(IData... products) {
+		Document top = docFactory.create();
+		top.entry("catalog").put(products);
+		return top;
+	}
+
+	@Test
+	public void testUniqueIndex() {
+		Document top = newCatalog(newProduct("A1", "Apple"), newProduct("B2", "Banana"), null,
+				newProduct(null, "Unknown"));
+
+		DocumentIndex<String> index = DocumentIndex.buildUnique(top.docsEntry("catalog"), SKU);
+
+		assertTrue(index.isUnique());
+		assertEquals(2, index.size());
+		assertEquals("Banana", index.get("B2").stringEntry("name").getVal());
+		assertNull(index.get("C3"));
+		assertFalse(index.containsKey(null));
+	}
+
+	@Test
+	public void testUniqueIndexRejectsDuplicates() {
+		Document top = newCatalog(newProduct("A1", "Apple"), newProduct("A1", "Apricot"));
+
+		try {
+			DocumentIndex.buildUnique(top.docsEntry("catalog"), SKU);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testMultiValuedIndex() {
+		Document top = newCatalog(newProduct("A1", "Apple"), newProduct("B2", "Banana"),
+				newProduct("A1", "Apricot"));
+
+		DocumentIndex<String> index = DocumentIndex.build(top.docsEntry("catalog"), SKU);
+
+		List<Document> matches = index.getAll("A1");
+		assertEquals(2, matches.size());
+		assertEquals("Apple", matches.get(0).stringEntry("name").getVal());
+		assertEquals("Apricot", matches.get(1).stringEntry("name").getVal());
+		assertEquals(3, index.getIndexedCount());
+		assertTrue(index.getAll("C3").isEmpty());
+	}
+
+	@Test
+	public void testKeysAreConverted() {
+		Document top = newCatalog(newProduct("10", "Ten"), newProduct(20, "Twenty"));
+
+		DocumentIndex<Integer> index = DocumentIndex.buildUnique(top.docsEntry("catalog"),
+				Field.of("sku", Integer.class));
+
+		assertEquals("Ten", index.get(10).stringEntry("name").getVal());
+		assertEquals("Twenty", index.get(20).stringEntry("name").getVal());
+	}
+
+	@Test
+	public void testCustomKeyExtractor() {
+		Document top = newCatalog(newProduct("A1", "Apple"), newProduct("B2", "Banana"));
+
+		DocumentIndex<String> index = DocumentIndex.buildUnique(top.docsEntry("catalog"),
+				new DocumentFunction<String>() {
+					@Override
+					public String apply(Document document) {
+						return document.stringEntry("name").getVal().toLowerCase();
+					}
+				});
+
+		assertEquals("B2", index.get("banana").stringEntry("sku").getVal());
+	}
+}
@@ -0,0 +1,90 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentJoinsTest {
+
+	private static final Field<String> SKU = Field.of("sku", String.class);
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newRecord(String sku, String key, String value) {
+		Document record = docFactory.create();
+		record.stringEntry("sku").put(sku);
+		record.stringEntry(key).put(value);
+		return record.getIData();
+	}
+
+	private Document newTopDocument() {
+		Document top = docFactory.create();
+		top.entry("lines").put(new IData[] { newRecord("A1", "qty", "1"), newRecord("Z9", "qty", "2"),
+				newRecord("B2", "qty", "3") });
+		top.entry("catalog").put(new IData[] { newRecord("A1", "name", "Apple"),
+				newRecord("B2", "name", "Banana"), newRecord("B2", "name", "Blueberry") });
+		return top;
+	}
+
+	@Test
+	public void testInnerJoin() {
+		Document top = newTopDocument();
+
+		List<Document> joined = DocumentJoins.hashJoin(top.docsEntry("lines"), top.docsEntry("catalog"), SKU, SKU);
+
+		assertEquals(3, joined.size());
+		assertEquals("1", joined.get(0).stringEntry("qty").getVal());
+		assertEquals("Apple", joined.get(0).stringEntry("name").getVal());
+		assertEquals("Banana", joined.get(1).stringEntry("name").getVal());
+		assertEquals("Blueberry", joined.get(2).stringEntry("name").getVal());
+		assertEquals(3, joined.get(2).getTotalEntries());
+	}
+
+	@Test
+	public void testLeftJoin() {
+		Document top = newTopDocument();
+
+		List<Document> joined = DocumentJoins.hashJoin(top.docsEntry("lines"), top.docsEntry("catalog"), SKU, SKU,
+				JoinType.LEFT);
+
+		assertEquals(4, joined.size());
+		assertEquals("Z9", joined.get(1).stringEntry("sku").getVal());
+		assertFalse(joined.get(1).containsKey("name"));
+	}
+
+	@Test
+	public void testEnrich() {
+		Document top = newTopDocument();
+		DocumentIndex<String> catalog = DocumentIndex.build(top.docsEntry("catalog"), SKU);
+
+		int enriched = DocumentJoins.enrich(top.docsEntry("lines"), SKU, catalog, "product");
+
+		assertEquals(2, enriched);
+		List<Document> lines = top.docsEntry("lines").getVal();
+		assertEquals("Apple", lines.get(0).docEntry("product").getVal().stringEntry("name").getVal());
+		assertFalse(lines.get(1).containsKey("product"));
+		assertEquals("Banana", lines.get(2).docEntry("product").getVal().stringEntry("name").getVal());
+	}
+
+	@Test
+	public void testEnrichedDocumentsAreIndependent() {
+		Document top = docFactory.create();
+		top.entry("lines").put(new IData[] { newRecord("A1", "qty", "1"), newRecord("A1", "qty", "2") });
+		top.entry("catalog").put(new IData[] { newRecord("A1", "name", "Apple") });
+		DocumentIndex<String> catalog = DocumentIndex.buildUnique(top.docsEntry("catalog"), SKU);
+
+		DocumentJoins.enrich(top.docsEntry("lines"), SKU, catalog, "product");
+		List<Document> lines = top.docsEntry("lines").getVal();
+		lines.get(0).docEntry("product").getVal().stringEntry("name").put("Apricot");
+
+		assertEquals("Apple", lines.get(1).docEntry("product").getVal().stringEntry("name").getVal());
+		assertEquals("Apple", catalog.get("A1").stringEntry("name").getVal());
+	}
+}
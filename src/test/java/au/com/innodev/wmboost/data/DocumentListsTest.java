@@ -0,0 +1,121 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentListsTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newTopDocument(int size) {
+		IData[] records = new IData[size];
+		for (int i = 0; i < size; i++) {
+			Document record = docFactory.create();
+			record.intEntry("num").put(i);
+			records[i] = record.getIData();
+		}
+
+		Document top = docFactory.create();
+		top.entry("records").put(records);
+		return top;
+	}
+
+	@Test
+	public void testParallelMapPreservesOrder() {
+		Document top = newTopDocument(1000);
+		final DocumentFactory factory = docFactory;
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			DocumentLists.parallelMap(top.docsEntry("records"), new DocumentFunction<Document>() {
+				@Override
+				public Document apply(Document document) {
+					Document result = factory.create();
+					result.intEntry("doubled").put(document.intEntry("num").getVal() * 2);
+					return result;
+				}
+			}, 4, executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		List<Document> results = top.docsEntry("records").getVal();
+		assertEquals(1000, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(Integer.valueOf(i * 2), results.get(i).intEntry("doubled").getVal());
+		}
+	}
+
+	@Test
+	public void testParallelMapReturningSameDocument() {
+		Document top = newTopDocument(50);
+		List<Document> before = top.docsEntry("records").getVal();
+
+		DocumentLists.parallelMap(top.docsEntry("records"), new DocumentFunction<Document>() {
+			@Override
+			public Document apply(Document document) {
+				document.stringEntry("processed").put("yes");
+				return document;
+			}
+		}, 3);
+
+		List<Document> after = top.docsEntry("records").getVal();
+		for (int i = 0; i < after.size(); i++) {
+			assertSame(before.get(i).getIData(), after.get(i).getIData());
+			assertEquals("yes", after.get(i).stringEntry("processed").getVal());
+		}
+	}
+
+	@Test
+	public void testParallelForEachAggregatesFailures() {
+		Document top = newTopDocument(100);
+		List<Document> before = top.docsEntry("records").getVal();
+
+		try {
+			DocumentLists.parallelForEach(top.docsEntry("records"), new DocumentVisitor() {
+				@Override
+				public void visit(Document document, int index) {
+					if (index % 10 == 3) {
+						throw new IllegalStateException("Failed " + index);
+					}
+				}
+			}, 4);
+			fail();
+		} catch (DocumentListProcessingException e) {
+			assertEquals(10, e.getTotalFailures());
+			assertEquals(10, e.getFailures().size());
+			for (int i = 0; i < 10; i++) {
+				assertEquals(i * 10 + 3, e.getFailures().get(i).getIndex());
+			}
+		}
+
+		List<Document> after = top.docsEntry("records").getVal();
+		assertEquals(before.size(), after.size());
+	}
+
+	@Test
+	public void testParallelMapOnInexistentEntry() {
+		Document top = docFactory.create();
+
+		DocumentLists.parallelMap(top.docsEntry("records"), new DocumentFunction<Document>() {
+			@Override
+			public Document apply(Document document) {
+				throw new IllegalStateException("Not expected to be called");
+			}
+		}, 4);
+
+		assertFalse(top.docsEntry("records").isAssigned());
+	}
+}
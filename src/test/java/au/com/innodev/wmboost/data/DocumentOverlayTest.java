@@ -0,0 +1,119 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+import au.com.innodev.wmboost.data.preset.Documents;
+
+public class DocumentOverlayTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newPipeline() {
+		Document pipeline = docFactory.create();
+		pipeline.stringEntry("orderId").put("A1");
+		pipeline.docEntry("customer").putNew().stringEntry("name").put("Alice");
+		List<Document> lines = new ArrayList<Document>();
+		for (int i = 0; i < 3; i++) {
+			Document line = docFactory.create();
+			line.intEntry("qty").put(i + 1);
+			lines.add(line);
+		}
+		pipeline.docsEntry("lines").put(lines);
+		pipeline.stringEntry("status").put("NEW");
+		return pipeline;
+	}
+
+	@Test
+	public void testReadsFallThrough() {
+		Document base = newPipeline();
+		Document view = Documents.overlay(base).getDocument();
+
+		assertEquals("A1", view.stringEntry("orderId").getVal());
+		assertEquals("Alice", view.docEntry("customer").getVal().stringEntry("name").getVal());
+		assertEquals(3, view.docsEntry("lines").getVal().size());
+		assertEquals(new ArrayList<String>(base.getKeys()), new ArrayList<String>(view.getKeys()));
+	}
+
+	@Test
+	public void testDiscard() {
+		Document base = newPipeline();
+		DocumentOverlay overlay = DocumentTrees.overlay(base);
+		Document view = overlay.getDocument();
+
+		view.stringEntry("status").put("FAILED");
+		view.stringEntry("orderId").remove();
+		view.docEntry("customer").getVal().stringEntry("name").put("Bob");
+		view.docsEntry("lines").getVal().get(1).intEntry("qty").put(99);
+
+		assertEquals("FAILED", view.stringEntry("status").getVal());
+		assertFalse(view.stringEntry("orderId").isAssigned());
+		assertEquals("Bob", view.docEntry("customer").getVal().stringEntry("name").getVal());
+		assertEquals(Integer.valueOf(99), view.docsEntry("lines").getVal().get(1).intEntry("qty").getVal());
+
+		assertTrue(DocumentTrees.structurallyEquals(newPipeline(), base));
+
+		overlay.discard();
+		assertTrue(DocumentTrees.structurallyEquals(base, view));
+		assertEquals("NEW", view.stringEntry("status").getVal());
+	}
+
+	@Test
+	public void testCommit() {
+		Document base = newPipeline();
+		DocumentOverlay overlay = DocumentTrees.overlay(base);
+		Document view = overlay.getDocument();
+
+		view.stringEntry("status").put("DONE");
+		view.docEntry("customer").getVal().stringEntry("name").put("Bob");
+		view.docsEntry("lines").getVal().get(2).intEntry("qty").put(30);
+		view.stringEntry("note").put("added");
+
+		overlay.commit();
+
+		assertEquals("DONE", base.stringEntry("status").getVal());
+		assertEquals("Bob", base.docEntry("customer").getVal().stringEntry("name").getVal());
+		assertEquals(Integer.valueOf(30), base.docsEntry("lines").getVal().get(2).intEntry("qty").getVal());
+		assertEquals("added", base.stringEntry("note").getVal());
+		assertTrue(DocumentTrees.structurallyEquals(base, view));
+
+		// Nested-only changes are committed in place
+		view.docEntry("customer").getVal().stringEntry("name").put("Carol");
+		overlay.commit();
+		assertEquals("Carol", base.docEntry("customer").getVal().stringEntry("name").getVal());
+	}
+
+	@Test
+	public void testKeyOrderMatchesRegularDocument() {
+		Document base = newPipeline();
+		Document expected = newPipeline();
+		Document view = DocumentTrees.overlay(base).getDocument();
+
+		for (Document document : new Document[] { expected, view }) {
+			document.stringEntry("orderId").remove();
+			document.stringEntry("extra").put("x");
+			document.stringEntry("status").put("CHANGED");
+			document.stringsSplitEntry("tag").put(Arrays.asList("a", "b"));
+		}
+
+		assertEquals(new ArrayList<String>(expected.getKeys()), new ArrayList<String>(view.getKeys()));
+		List<String> expectedEntries = new ArrayList<String>();
+		for (KeyValue keyValue : expected.getUnitEntries()) {
+			expectedEntries.add(keyValue.getKey());
+		}
+		List<String> viewEntries = new ArrayList<String>();
+		for (KeyValue keyValue : view.getUnitEntries()) {
+			viewEntries.add(keyValue.getKey());
+		}
+		assertEquals(expectedEntries, viewEntries);
+		assertEquals(2, view.stringsSplitEntry("tag").getValOrEmpty().size());
+	}
+}
@@ -0,0 +1,115 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentSortsTest {
+
+	private static final Field<String> NAME = Field.of("name", String.class);
+	private static final Field<Integer> RANK = Field.of("rank", Integer.class);
+	private static final Field<Integer> SEQ = Field.of("seq", Integer.class);
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newRecord(String name, Object rank, int seq) {
+		Document record = docFactory.create();
+		record.stringEntry("name").put(name);
+		if (rank != null) {
+			record.entry("rank").put(rank);
+		}
+		record.intEntry("seq").put(seq);
+		return record.getIData();
+	}
+
+	private Document newTopDocument(IData... records) {
+		Document top = docFactory.create();
+		top.entry("records").put(records);
+		return top;
+	}
+
+	@Test
+	public void testMultiKeySort() {
+		Document top = newTopDocument(newRecord("b", "1", 0), newRecord("a", 2, 1), newRecord("b", 3, 2),
+				newRecord("a", "10", 3));
+
+		DocumentSorts.sort(top.docsEntry("records"), SortSpec.ascending(NAME).thenDescending(RANK));
+
+		List<Document> sorted = top.docsEntry("records").getVal();
+		assertEquals(Integer.valueOf(3), sorted.get(0).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(1), sorted.get(1).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(2), sorted.get(2).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(0), sorted.get(3).intEntry("seq").getVal());
+	}
+
+	@Test
+	public void testStableWithNullsLast() {
+		Document top = newTopDocument(newRecord("x", null, 0), null, newRecord("x", 5, 1), newRecord("x", 1, 2),
+				newRecord("x", 5, 3));
+
+		DocumentSorts.sort(top.docsEntry("records"), SortSpec.descending(RANK));
+
+		List<Document> sorted = top.docsEntry("records").getVal();
+		assertEquals(Integer.valueOf(1), sorted.get(0).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(3), sorted.get(1).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(2), sorted.get(2).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(0), sorted.get(3).intEntry("seq").getVal());
+		assertNull(sorted.get(4));
+	}
+
+	@Test
+	public void testParallelSortMatchesSequential() {
+		Random random = new Random(42);
+		IData[] records = new IData[20000];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = newRecord("n" + random.nextInt(50), random.nextInt(100), i);
+		}
+		Document sequential = newTopDocument(records.clone());
+		Document parallel = newTopDocument(records.clone());
+		SortSpec spec = SortSpec.ascending(NAME).thenAscending(RANK);
+
+		DocumentSorts.sort(sequential.docsEntry("records"), spec);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			DocumentSorts.sort(parallel.docsEntry("records"), spec, 4, executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		List<Document> expected = sequential.docsEntry("records").getVal();
+		List<Document> actual = parallel.docsEntry("records").getVal();
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).intEntry("seq").getVal(), actual.get(i).intEntry("seq").getVal());
+		}
+
+		// Stability: for equal keys, the original order is kept
+		for (int i = 1; i < expected.size(); i++) {
+			Document previous = expected.get(i - 1);
+			Document current = expected.get(i);
+			if (previous.stringEntry("name").getVal().equals(current.stringEntry("name").getVal())
+					&& previous.intEntry("rank").getVal().equals(current.intEntry("rank").getVal())) {
+				assertEquals(true, previous.intEntry("seq").getVal() < current.intEntry("seq").getVal());
+			}
+		}
+	}
+
+	@Test
+	public void testInexistentEntryIsLeftAsIs() {
+		Document top = docFactory.create();
+
+		DocumentSorts.sort(top.docsEntry("records"), SortSpec.ascending(SEQ));
+
+		assertFalse(top.containsKey("records"));
+	}
+}
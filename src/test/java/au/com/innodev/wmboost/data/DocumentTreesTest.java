@@ -0,0 +1,238 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentTreesTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newOrder(Object amount, String... tags) {
+		Document line = docFactory.create();
+		line.stringEntry("sku").put("A1");
+		line.entry("qty").put(Integer.valueOf(2));
+
+		Document order = docFactory.create();
+		order.stringEntry("id").put("o-1");
+		order.entry("amount").put(amount);
+		order.entry("tags").put(tags);
+		order.entry("lines").put(new IData[] { line.getIData() });
+		return order;
+	}
+
+	@Test
+	public void testNumbersAndSequencesAreNormalised() {
+		Document order1 = newOrder(Integer.valueOf(10), "x", "y");
+		Document order2 = newOrder(new BigDecimal("10.00"), "x", "y");
+		order2.entry("tags").put(Arrays.asList("x", "y"));
+
+		assertTrue(DocumentTrees.structurallyEquals(order1, order2));
+		assertEquals(DocumentTrees.structuralHash(order1), DocumentTrees.structuralHash(order2));
+	}
+
+	@Test
+	public void testLongRangeBoundaries() {
+		Object[][] equalPairs = {
+				{ Long.valueOf(2000000000000000000L), new BigDecimal("2000000000000000000") },
+				{ Long.valueOf(Long.MAX_VALUE), new BigInteger(String.valueOf(Long.MAX_VALUE)) },
+				{ Long.valueOf(Long.MIN_VALUE), new BigDecimal(String.valueOf(Long.MIN_VALUE)) } };
+		for (Object[] pair : equalPairs) {
+			Document order1 = newOrder(pair[0]);
+			Document order2 = newOrder(pair[1]);
+			assertTrue(DocumentTrees.structurallyEquals(order1, order2));
+			assertEquals(DocumentTrees.structuralHash(order1), DocumentTrees.structuralHash(order2));
+		}
+
+		assertFalse(DocumentTrees.structurallyEquals(newOrder(Long.valueOf(Long.MAX_VALUE)),
+				newOrder(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE))));
+	}
+
+	@Test
+	public void testDifferencesAreDetected() {
+		Document order = newOrder(Double.valueOf(10.5), "x", "y");
+
+		assertFalse(DocumentTrees.structurallyEquals(order, newOrder(Double.valueOf(10.25), "x", "y")));
+		assertFalse(DocumentTrees.structurallyEquals(order, newOrder(Double.valueOf(10.5), "y", "x")));
+		assertFalse(DocumentTrees.structurallyEquals(order, newOrder("10.5", "x", "y")));
+		assertNotEquals(DocumentTrees.structuralHash(order), DocumentTrees.structuralHash(newOrder("10.5", "x", "y")));
+
+		Document nestedChange = newOrder(Double.valueOf(10.5), "x", "y");
+		nestedChange.docsEntry("lines").getVal().get(0).intEntry("qty").put(3);
+		assertFalse(DocumentTrees.structurallyEquals(order, nestedChange));
+		assertNotEquals(DocumentTrees.structuralHash(order), DocumentTrees.structuralHash(nestedChange));
+	}
+
+	@Test
+	public void testKeyOrder() {
+		Document document1 = docFactory.create();
+		document1.stringEntry("a").put("1");
+		document1.stringEntry("b").put("2");
+		Document document2 = docFactory.create();
+		document2.stringEntry("b").put("2");
+		document2.stringEntry("a").put("1");
+
+		assertFalse(DocumentTrees.structurallyEquals(document1, document2));
+		assertTrue(DocumentTrees.structurallyEquals(document1, document2, KeyOrder.IGNORED));
+		assertEquals(DocumentTrees.structuralHash(document1, KeyOrder.IGNORED),
+				DocumentTrees.structuralHash(document2, KeyOrder.IGNORED));
+	}
+
+	private Document newDeepDocument(int depth, String leaf) {
+		Document top = docFactory.create();
+		Document current = top;
+		for (int i = 0; i < depth; i++) {
+			current.stringEntry("level").put(String.valueOf(i));
+			current = current.docEntry("child").putNew();
+		}
+		current.stringEntry("leaf").put(leaf);
+		return top;
+	}
+
+	@Test
+	public void testDeepDocuments() {
+		Document document1 = newDeepDocument(20000, "bottom");
+		Document document2 = newDeepDocument(20000, "bottom");
+
+		assertTrue(DocumentTrees.structurallyEquals(document1, document2));
+		assertTrue(DocumentTrees.structurallyEquals(document1, document2, KeyOrder.IGNORED));
+		assertFalse(DocumentTrees.structurallyEquals(document1, newDeepDocument(20000, "other")));
+
+		Document top = docFactory.create();
+		top.entry("documents").put(new IData[] { document1.getIData(), document2.getIData() });
+		assertEquals(1, DocumentLists.distinct(top.docsEntry("documents")));
+	}
+
+	@Test
+	public void testSelfContainingDocumentsAreRejected() {
+		Document document1 = newOrder(Integer.valueOf(1));
+		document1.entry("self").put(document1.getIData());
+		Document document2 = newOrder(Integer.valueOf(1));
+		document2.entry("self").put(document2.getIData());
+
+		try {
+			DocumentTrees.structuralHash(document1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+
+		try {
+			DocumentTrees.structurallyEquals(document1, document2);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testDistinct() {
+		Document order1 = newOrder(Integer.valueOf(10), "x");
+		Document order2 = newOrder(Long.valueOf(10), "x");
+		Document order3 = newOrder(Integer.valueOf(11), "x");
+
+		Document top = docFactory.create();
+		top.entry("orders").put(new IData[] { order1.getIData(), null, order2.getIData(), order3.getIData(), null,
+				order1.getIData() });
+
+		assertEquals(3, DocumentLists.distinct(top.docsEntry("orders")));
+
+		List<Document> result = top.docsEntry("orders").getVal();
+		assertEquals(3, result.size());
+		assertSame(order1.getIData(), result.get(0).getIData());
+		assertNull(result.get(1));
+		assertSame(order3.getIData(), result.get(2).getIData());
+	}
+
+	@Test
+	public void testDistinctWithoutDuplicates() {
+		Document top = docFactory.create();
+		top.entry("orders").put(new IData[] { newOrder(Integer.valueOf(1)).getIData(),
+				newOrder(Integer.valueOf(2)).getIData() });
+
+		assertEquals(0, DocumentLists.distinct(top.docsEntry("orders"), KeyOrder.IGNORED));
+		assertEquals(0, DocumentLists.distinct(top.docsEntry("missing")));
+		assertFalse(top.containsKey("missing"));
+	}
+
+	@Test
+	public void testDeepCopy() {
+		Document order = newOrder(Integer.valueOf(10), "x", "y");
+		Document copy = DocumentTrees.deepCopy(order);
+
+		assertTrue(DocumentTrees.structurallyEquals(order, copy));
+		Document originalLine = order.docsEntry("lines").getVal().get(0);
+		Document copiedLine = copy.docsEntry("lines").getVal().get(0);
+		assertNotSame(originalLine.getIData(), copiedLine.getIData());
+		assertSame(originalLine.stringEntry("sku").getVal(), copiedLine.stringEntry("sku").getVal());
+
+		copiedLine.stringEntry("sku").put("B2");
+		copy.entry("tags").put(new String[] { "z" });
+		assertEquals("A1", originalLine.stringEntry("sku").getVal());
+		assertEquals(2, order.stringsEntry("tags").getVal().size());
+	}
+
+	@Test
+	public void testDeepCopyPreservesSharingAndCycles() {
+		Document shared = docFactory.create();
+		shared.stringEntry("name").put("shared");
+		Document top = docFactory.create();
+		top.entry("first").put(shared.getIData());
+		top.entry("second").put(shared.getIData());
+		top.entry("self").put(top.getIData());
+
+		Document copy = DocumentTrees.deepCopy(top);
+		IData copiedShared = copy.docEntry("first").getVal().getIData();
+		assertNotSame(shared.getIData(), copiedShared);
+		assertSame(copiedShared, copy.docEntry("second").getVal().getIData());
+		assertSame(copy.getIData(), copy.docEntry("self").getVal().getIData());
+	}
+
+	@Test
+	public void testDeepCopyOfDeepDocument() {
+		Document top = docFactory.create();
+		Document current = top;
+		for (int i = 0; i < 20000; i++) {
+			current = current.docEntry("child").putNew();
+		}
+		current.stringEntry("leaf").put("bottom");
+
+		Document copy = DocumentTrees.deepCopy(top);
+		Document copiedLeaf = copy;
+		for (int i = 0; i < 20000; i++) {
+			copiedLeaf = copiedLeaf.docEntry("child").getVal();
+		}
+		assertEquals("bottom", copiedLeaf.stringEntry("leaf").getVal());
+	}
+
+	@Test
+	public void testParallelDeepCopy() {
+		Document top = docFactory.create();
+		IData[] orders = new IData[500];
+		for (int i = 0; i < orders.length; i++) {
+			orders[i] = newOrder(Integer.valueOf(i), "t" + i).getIData();
+		}
+		top.entry("orders").put(orders);
+		top.stringEntry("batch").put("b-1");
+
+		Document copy = DocumentTrees.deepCopy(top, 4);
+		assertTrue(DocumentTrees.structurallyEquals(top, copy));
+		assertNotSame(orders[499], copy.docsEntry("orders").getVal().get(499).getIData());
+	}
+}
@@ -0,0 +1,152 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class ExternalDocumentSorterTest {
+
+	private static final Field<Integer> RANK = Field.of("rank", Integer.class);
+	private static final Field<String> NAME = Field.of("name", String.class);
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private IData newRecord(Integer rank, int seq) {
+		Document record = docFactory.create();
+		record.entry("rank").put(rank);
+		record.intEntry("seq").put(seq);
+		record.stringEntry("name").put("name" + (seq % 7));
+		return record.getIData();
+	}
+
+	private ExternalDocumentSorter newSorter(SortSpec spec, long memoryBudget) {
+		ExternalDocumentSorter sorter = new ExternalDocumentSorter(docFactory, spec, memoryBudget);
+		sorter.setTempDirectory(tempFolder.getRoot());
+		return sorter;
+	}
+
+	private List<Document> drain(DocumentIteratorResource iterator) {
+		List<Document> result = new ArrayList<Document>();
+		try {
+			while (iterator.hasNext()) {
+				result.add(iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+		return result;
+	}
+
+	@Test
+	public void testSpillingSortIsStable() {
+		Random random = new Random(7);
+		List<Object> inputs = new ArrayList<Object>();
+		for (int i = 0; i < 2000; i++) {
+			inputs.add(newRecord(random.nextInt(50), i));
+		}
+
+		// A small budget forces many runs and an intermediate merge pass
+		List<Document> sorted = drain(newSorter(SortSpec.descending(RANK), 2 * 1024).sort(inputs));
+
+		assertEquals(2000, sorted.size());
+		for (int i = 1; i < sorted.size(); i++) {
+			int previousRank = sorted.get(i - 1).intEntry("rank").getVal();
+			int rank = sorted.get(i).intEntry("rank").getVal();
+			assertTrue(previousRank >= rank);
+			if (previousRank == rank) {
+				assertTrue(sorted.get(i - 1).intEntry("seq").getVal() < sorted.get(i).intEntry("seq").getVal());
+			}
+		}
+		assertEquals(0, tempFolder.getRoot().list().length);
+	}
+
+	@Test
+	public void testInMemorySortWithNulls() {
+		List<Object> inputs = new ArrayList<Object>();
+		inputs.add(newRecord(null, 0));
+		inputs.add(null);
+		inputs.add(docFactory.wrap(newRecord(3, 1)));
+		inputs.add(newRecord(1, 2));
+
+		List<Document> sorted = drain(
+				newSorter(SortSpec.ascending(RANK).thenAscending(NAME), 1024 * 1024).sort(inputs));
+
+		assertEquals(4, sorted.size());
+		assertEquals(Integer.valueOf(2), sorted.get(0).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(1), sorted.get(1).intEntry("seq").getVal());
+		assertEquals(Integer.valueOf(0), sorted.get(2).intEntry("seq").getVal());
+		assertNull(sorted.get(3));
+	}
+
+	@Test
+	public void testValuesSurviveSpilling() {
+		Date date = new Date(1500000000000L);
+		Document nested = docFactory.create();
+		nested.stringEntry("city").put("Sydney");
+
+		List<Object> inputs = new ArrayList<Object>();
+		for (int i = 0; i < 3; i++) {
+			Document record = docFactory.create();
+			record.intEntry("rank").put(3 - i);
+			record.entry("amount").put(new BigDecimal("12.50"));
+			record.entry("date").put(date);
+			record.entry("tags").put(new String[] { "a", null, "c" });
+			record.entry("address").put(nested.getIData());
+			record.entry("lines").put(new IData[] { nested.getIData(), null });
+			record.entry("blank").put(null);
+			inputs.add(record.getIData());
+		}
+
+		List<Document> sorted = drain(newSorter(SortSpec.ascending(RANK), 1).sort(inputs));
+
+		assertEquals(3, sorted.size());
+		Document first = sorted.get(0);
+		assertEquals(Integer.valueOf(1), first.intEntry("rank").getVal());
+		assertEquals(new BigDecimal("12.50"), first.entry("amount").getVal());
+		assertEquals(date, first.entry("date").getVal());
+		assertEquals(Arrays.asList("a", null, "c"), first.stringsEntry("tags").getVal());
+		assertEquals("Sydney", first.docEntry("address").getVal().stringEntry("city").getVal());
+		assertEquals(2, first.docsEntry("lines").getVal().size());
+		assertTrue(first.containsKey("blank"));
+		assertEquals(Arrays.asList("rank", "amount", "date", "tags", "address", "lines", "blank"),
+				new ArrayList<String>(first.getKeys()));
+		assertEquals(0, tempFolder.getRoot().list().length);
+	}
+
+	@Test
+	public void testCloseDeletesRuns() {
+		List<Object> inputs = new ArrayList<Object>();
+		for (int i = 0; i < 10; i++) {
+			inputs.add(newRecord(i, i));
+		}
+
+		File root = tempFolder.getRoot();
+		DocumentIteratorResource iterator = newSorter(SortSpec.ascending(RANK), 1).sort(inputs);
+		assertEquals(10, root.list().length);
+		assertEquals(Integer.valueOf(0), iterator.next().intEntry("rank").getVal());
+
+		iterator.close();
+		assertEquals(0, root.list().length);
+		assertFalse(iterator.hasNext());
+	}
+}
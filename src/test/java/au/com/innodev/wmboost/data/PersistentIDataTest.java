@@ -0,0 +1,180 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class PersistentIDataTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	@Test
+	public void testVersionsAreIndependent() {
+		PersistentIData version1 = PersistentIData.empty().with("a", "1").with("b", "2");
+		PersistentIData version2 = version1.with("a", "changed").with("c", "3");
+		PersistentIData version3 = version2.without("b");
+
+		assertEquals("a,b", keysOf(version1));
+		assertEquals("1", version1.get("a"));
+		assertEquals("a,b,c", keysOf(version2));
+		assertEquals("changed", version2.get("a"));
+		assertEquals("a,c", keysOf(version3));
+		assertEquals(2, version3.size());
+
+		assertSame(version3, version3.without("missing"));
+		assertSame(version3, version3.with("c", version3.get("c")));
+	}
+
+	@Test
+	public void testHashCollisions() {
+		// "Aa" and "BB" have the same hash code
+		PersistentIData idata = PersistentIData.empty().with("Aa", "1").with("BB", "2");
+		assertEquals("1", idata.get("Aa"));
+		assertEquals("2", idata.get("BB"));
+
+		PersistentIData removed = idata.without("Aa");
+		assertFalse(removed.containsKey("Aa"));
+		assertEquals("2", removed.get("BB"));
+		assertEquals("BB", keysOf(removed));
+	}
+
+	@Test
+	public void testMatchesOrderedMap() {
+		Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+		PersistentIData idata = PersistentIData.empty();
+		Random random = new Random(45);
+
+		for (int i = 0; i < 5000; i++) {
+			String key = "k" + random.nextInt(800);
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				idata = idata.without(key);
+			} else {
+				expected.put(key, Integer.valueOf(i));
+				idata = idata.with(key, Integer.valueOf(i));
+			}
+		}
+
+		assertEquals(expected.size(), idata.size());
+		IDataCursor cursor = idata.getCursor();
+		Iterator<Map.Entry<String, Integer>> expectedIterator = expected.entrySet().iterator();
+		while (expectedIterator.hasNext()) {
+			Map.Entry<String, Integer> expectedEntry = expectedIterator.next();
+			assertTrue(cursor.next());
+			assertEquals(expectedEntry.getKey(), cursor.getKey());
+			assertEquals(expectedEntry.getValue(), cursor.getValue());
+		}
+		assertFalse(cursor.next());
+		assertTrue(cursor.previous());
+		assertEquals(expected.containsKey("k1"), cursor.first("k1"));
+	}
+
+	@Test
+	public void testCursorIsReadOnly() {
+		PersistentIData idata = PersistentIData.empty().with("a", "1");
+		IDataCursor cursor = idata.getCursor();
+		assertTrue(cursor.first("a"));
+		assertFalse(cursor.next("a"));
+		assertEquals("a", cursor.getKey());
+		assertFalse(cursor.next());
+		assertNull(cursor.getKey());
+
+		try {
+			cursor.insertAfter("b", "2");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// test succeeded
+		}
+
+		assertTrue(cursor.first());
+		try {
+			cursor.setValue("changed");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// test succeeded
+		}
+		assertEquals("1", idata.get("a"));
+	}
+
+	@Test
+	public void testImmutableCopyOfDocument() {
+		Document original = docFactory.create();
+		original.stringEntry("currency").put("AUD");
+		original.docEntry("limits").putNew().intEntry("max").put(100);
+		List<Document> rates = new ArrayList<Document>();
+		for (int i = 0; i < 3; i++) {
+			Document rate = docFactory.create();
+			rate.intEntry("value").put(i);
+			rates.add(rate);
+		}
+		original.docsEntry("rates").put(rates);
+
+		Document copy = DocumentTrees.immutableCopy(original);
+		original.stringEntry("currency").put("NZD");
+		original.docEntry("limits").getVal().intEntry("max").put(5);
+
+		assertTrue(copy.getIData() instanceof PersistentIData);
+		assertEquals("AUD", copy.stringEntry("currency").getVal());
+		assertEquals(Integer.valueOf(100), copy.docEntry("limits").getVal().intEntry("max").getVal());
+		assertEquals(3, copy.docsEntry("rates").getVal().size());
+		assertEquals(Integer.valueOf(2), copy.docsEntry("rates").getVal().get(2).intEntry("value").getVal());
+		assertTrue(DocumentTrees.structurallyEquals(copy, docFactory.wrap(copy.getIData())));
+
+		try {
+			copy.stringEntry("currency").put("USD");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// test succeeded
+		}
+		try {
+			copy.docEntry("limits").getVal().intEntry("max").put(1);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testCopyOfSelfContainingDocument() {
+		IData idata = docFactory.create().getIData();
+		IDataCursor cursor = idata.getCursor();
+		cursor.insertAfter("self", idata);
+		cursor.destroy();
+
+		try {
+			PersistentIData.copyOf(idata);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+	}
+
+	private static String keysOf(IData idata) {
+		StringBuilder sb = new StringBuilder();
+		IDataCursor cursor = idata.getCursor();
+		while (cursor.next()) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(cursor.getKey());
+		}
+		return sb.toString();
+	}
+}
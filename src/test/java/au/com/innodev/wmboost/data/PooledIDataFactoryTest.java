@@ -0,0 +1,103 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.wm.data.IDataCursor;
+
+import au.com.innodev.wmboost.data.convert.ConversionServiceUtils;
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class PooledIDataFactoryTest {
+
+	private static DocumentFactory newDocumentFactory(DirectIDataFactory idataFactory) {
+		DocumentFactoryBuilder builder = new DocumentFactoryBuilder();
+		builder.setConversionService(ConversionServiceUtils.createDefaultConversionService());
+		builder.setDirectIDataFactory(idataFactory);
+		return builder.build();
+	}
+
+	@Test
+	public void testReleasedStorageIsReused() {
+		PooledIDataFactory pool = new PooledIDataFactory();
+		DocumentFactory factory = newDocumentFactory(pool);
+
+		Document document = factory.create();
+		document.stringEntry("header").put("value");
+		document.docEntry("nested").putNew().stringEntry("a").put("b");
+		assertEquals(0, pool.getFreeCount());
+
+		DocumentTrees.release(document);
+		assertEquals(1, pool.getFreeCount());
+
+		Document reused = factory.create();
+		assertEquals(0, pool.getFreeCount());
+		assertNotSame(document.getIData(), reused.getIData());
+		assertFalse(reused.containsKey("header"));
+		assertEquals(0, reused.getKeys().size());
+	}
+
+	@Test
+	public void testUseAfterRelease() {
+		DocumentFactory factory = newDocumentFactory(new PooledIDataFactory());
+		Document document = factory.create();
+		document.stringEntry("a").put("1");
+		DocumentTrees.release(document);
+
+		try {
+			document.stringEntry("a").getVal();
+			fail();
+		} catch (IllegalStateException e) {
+			// test succeeded
+		}
+
+		try {
+			DocumentTrees.release(document);
+			fail();
+		} catch (IllegalStateException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testDebugModeChecksOpenCursors() {
+		DocumentFactory factory = newDocumentFactory(new PooledIDataFactory(10, true));
+		Document document = factory.create();
+		document.stringEntry("a").put("1");
+
+		IDataCursor cursor = document.getIData().getCursor();
+		DocumentTrees.release(document);
+		try {
+			cursor.first();
+			fail();
+		} catch (IllegalStateException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testFreeListIsBounded() {
+		PooledIDataFactory pool = new PooledIDataFactory(2, false);
+		DocumentFactory factory = newDocumentFactory(pool);
+		Document[] documents = new Document[5];
+		for (int i = 0; i < documents.length; i++) {
+			documents[i] = factory.create();
+		}
+		for (Document document : documents) {
+			DocumentTrees.release(document);
+		}
+		assertEquals(2, pool.getFreeCount());
+	}
+
+	@Test
+	public void testReleaseOfRegularDocumentDoesNothing() {
+		Document document = DocumentFactories.getDefault().create();
+		document.stringEntry("a").put("1");
+		DocumentTrees.release(document);
+		assertEquals("1", document.stringEntry("a").getVal());
+	}
+}
@@ -0,0 +1,147 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+
+import au.com.innodev.wmboost.data.convert.ConversionServiceUtils;
+import au.com.innodev.wmboost.data.preset.DirectIDataFactories;
+
+public class ShapedIDataTest {
+
+	private final DirectIDataFactory idataFactory = DirectIDataFactories.newShapedFactory();
+
+	private ShapedIData newRecord(int id) {
+		ShapedIData idata = (ShapedIData) idataFactory.create();
+		IDataCursor cursor = idata.getCursor();
+		cursor.insertAfter("id", Integer.valueOf(id));
+		cursor.insertAfter("name", "Name " + id);
+		cursor.insertAfter("status", "OPEN");
+		return idata;
+	}
+
+	@Test
+	public void testSameKeysShareShape() {
+		ShapedIData record1 = newRecord(1);
+		ShapedIData record2 = newRecord(2);
+
+		assertFalse(record1.isDictionaryMode());
+		assertSame(record1.getShape(), record2.getShape());
+		assertEquals(3, record2.getValues().length);
+
+		IDataCursor cursor = record2.getCursor();
+		assertTrue(cursor.first("name"));
+		assertEquals("Name 2", cursor.getValue());
+		assertFalse(cursor.next("id"));
+		assertTrue(cursor.previous("id"));
+		assertEquals(Integer.valueOf(2), cursor.getValue());
+	}
+
+	@Test
+	public void testDuplicateKeySwitchesToDictionary() {
+		ShapedIData record = newRecord(1);
+		IDataCursor cursor = record.getCursor();
+		assertTrue(cursor.first("name"));
+		IDataCursor other = record.getCursor();
+
+		cursor.insertAfter("id", Integer.valueOf(99));
+
+		assertTrue(record.isDictionaryMode());
+		assertEquals("id", cursor.getKey());
+		assertTrue(other.last());
+		assertEquals("status", other.getKey());
+		assertTrue(cursor.last("id"));
+		assertEquals(Integer.valueOf(99), cursor.getValue());
+		assertTrue(cursor.previous("id"));
+		assertEquals(Integer.valueOf(1), cursor.getValue());
+
+		// Other instances aren't affected
+		assertFalse(newRecord(2).isDictionaryMode());
+	}
+
+	@Test
+	public void testDeletingLastKeyKeepsShape() {
+		ShapedIData record = newRecord(1);
+		Shape shape = record.getShape();
+
+		IDataCursor cursor = record.getCursor();
+		assertTrue(cursor.last());
+		assertFalse(cursor.delete());
+		assertSame(shape.getParent(), record.getShape());
+
+		cursor.insertAfter("status", "CLOSED");
+		assertSame(shape, record.getShape());
+
+		assertTrue(cursor.first());
+		assertTrue(cursor.delete());
+		assertTrue(record.isDictionaryMode());
+		assertEquals("name", cursor.getKey());
+	}
+
+	@Test
+	public void testTransparentToDocument() {
+		DocumentFactoryBuilder builder = new DocumentFactoryBuilder();
+		builder.setConversionService(ConversionServiceUtils.createDefaultConversionService());
+		builder.setDirectIDataFactory(idataFactory);
+		DocumentFactory factory = builder.build();
+
+		Document document = factory.create();
+		document.intEntry("id").put(7);
+		document.stringEntry("name").put("Seven");
+		document.docEntry("address").putNew().stringEntry("city").put("Perth");
+		document.stringEntry("name").remove();
+
+		assertTrue(document.getIData() instanceof ShapedIData);
+		assertEquals(Integer.valueOf(7), document.intEntry("id").getVal());
+		assertFalse(document.stringEntry("name").isAssigned());
+		Document address = document.docEntry("address").getVal();
+		assertTrue(address.getIData() instanceof ShapedIData);
+		assertEquals("Perth", address.stringEntry("city").getVal());
+	}
+
+	@Test
+	public void testFootprintExcludesSharedKeys() {
+		ShapedIData shaped = (ShapedIData) idataFactory.create();
+		IData generic = IDataFactory.create();
+		IDataCursor shapedCursor = shaped.getCursor();
+		IDataCursor genericCursor = generic.getCursor();
+		for (int i = 0; i < 20; i++) {
+			Integer value = Integer.valueOf(i);
+			shapedCursor.insertAfter("field" + i, value);
+			genericCursor.insertAfter("field" + i, value);
+		}
+		assertNotNull(shaped.getShape());
+
+		assertTrue(IDataFootprint.estimate(shaped) * 2 < IDataFootprint.estimate(generic));
+	}
+
+	@Test
+	public void testOutlierDoesNotInflateOtherDocuments() {
+		for (int i = 0; i < 100; i++) {
+			newRecord(i);
+		}
+		ShapedIData outlier = newRecord(100);
+		IDataCursor cursor = outlier.getCursor();
+		cursor.last();
+		for (int i = 0; i < 100; i++) {
+			cursor.insertAfter("extra" + i, Integer.valueOf(i));
+		}
+		assertEquals(103, outlier.getShape().size());
+
+		ShapedIData record = newRecord(101);
+		long recordFootprint = IDataFootprint.estimate(record);
+		for (int i = 102; i < 200; i++) {
+			record = newRecord(i);
+			assertEquals(3, record.getValues().length);
+			assertEquals(recordFootprint, IDataFootprint.estimate(record));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class SpillingDocumentListTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newRecord(int seq) {
+		Document record = docFactory.create();
+		record.intEntry("seq").put(seq);
+		record.stringEntry("name").put("record " + seq);
+		return record;
+	}
+
+	@Test
+	public void testSpillsAndReadsBack() {
+		Document top = docFactory.create();
+		SpillingDocumentList list = DocumentLists.newSpillingList(top.docsEntry("records"), 4 * 1024);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				list.add(i == 500 ? null : newRecord(i));
+			}
+
+			assertTrue(list.isSpilled());
+			assertEquals(1000, list.size());
+			assertEquals(Integer.valueOf(999), list.get(999).intEntry("seq").getVal());
+			assertEquals("record 3", list.get(3).stringEntry("name").getVal());
+			assertNull(list.get(500));
+
+			List<Document> entryValue = top.docsEntry("records").getVal();
+			assertSame(list, entryValue);
+
+			int expected = 0;
+			for (Document record : entryValue) {
+				if (expected != 500) {
+					assertEquals(Integer.valueOf(expected), record.intEntry("seq").getVal());
+				}
+				expected++;
+			}
+			assertEquals(1000, expected);
+		} finally {
+			list.close();
+		}
+	}
+
+	@Test
+	public void testStaysInMemoryWithinBudget() {
+		Document top = docFactory.create();
+		SpillingDocumentList list = DocumentLists.newSpillingList(top.docsEntry("records"), 1024 * 1024);
+		Document record = newRecord(1);
+		list.add(record);
+
+		assertFalse(list.isSpilled());
+		assertSame(record.getIData(), list.get(0).getIData());
+		list.close();
+	}
+
+	@Test
+	public void testRemovingEntryClosesList() {
+		Document top = docFactory.create();
+		SpillingDocumentList list = DocumentLists.newSpillingList(top.docsEntry("records"), 1);
+		list.add(newRecord(1));
+
+		top.docsEntry("records").remove();
+		assertTrue(list.isClosed());
+	}
+
+	@Test
+	public void testReplacingEntryValueClosesList() {
+		Document top = docFactory.create();
+		SpillingDocumentList list = DocumentLists.newSpillingList(top.docsEntry("records"), 1);
+		list.add(newRecord(1));
+
+		top.docsEntry("records").put(Arrays.asList(newRecord(2)));
+		assertTrue(list.isClosed());
+		assertEquals(Integer.valueOf(2), top.docsEntry("records").getVal().get(0).intEntry("seq").getVal());
+	}
+
+	@Test
+	public void testPuttingListBackKeepsItsElements() {
+		Document top = docFactory.create();
+		SpillingDocumentList list = DocumentLists.newSpillingList(top.docsEntry("records"), 1);
+		list.add(newRecord(1));
+
+		// The elements are read into a new value before the list is closed
+		top.docsEntry("records").put(list);
+		assertTrue(list.isClosed());
+		assertEquals(Integer.valueOf(1), top.docsEntry("records").getVal().get(0).intEntry("seq").getVal());
+	}
+
+	@Test
+	public void testClearingDocumentClosesList() {
+		Document top = docFactory.create();
+		SpillingDocumentList list = DocumentLists.newSpillingList(top.docsEntry("records"), 1);
+		list.add(newRecord(1));
+
+		top.clear();
+		assertTrue(list.isClosed());
+		assertTrue(top.isEmpty());
+	}
+
+	@Test
+	public void testClosingDocumentClosesNestedLists() {
+		Document top = docFactory.create();
+		Document nested = top.docEntry("nested").putNew();
+		SpillingDocumentList list = DocumentLists.newSpillingList(nested.docsEntry("records"), 1);
+		list.add(newRecord(1));
+
+		DocumentTrees.close(top);
+		assertTrue(list.isClosed());
+	}
+}
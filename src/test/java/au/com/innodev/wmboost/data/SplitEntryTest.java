@@ -2,10 +2,13 @@ package au.com.innodev.wmboost.data;
 
 import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.collections.CollectionUtils;
@@ -302,4 +305,28 @@ public class SplitEntryTest {
 		assertEquals(5, IDataUtil.size(document.getIData().getCursor()));
 	}
 
+	@Test
+	public void testChunks() {
+		IData iData = IDataFactory.create();
+		IDataCursor cursor = iData.getCursor();
+		cursor.insertAfter("item", "1");
+		cursor.insertAfter("other", "x");
+		cursor.insertAfter("item", "2");
+		cursor.insertAfter("item", "3");
+		cursor.destroy();
+		Document document = docFactory.wrap(iData);
+
+		List<List<Integer>> retained = Lists.newArrayList(document.intsSplitEntry("item").chunks(2));
+		assertEquals(Arrays.<List<Integer>>asList(Arrays.asList(1, 2), Arrays.asList(3)), retained);
+		assertEquals(3, document.stringsSplitEntry("item").getValOrEmpty().size());
+
+		Iterator<List<Integer>> consumed = document.intsSplitEntry("item").chunks(2, ChunkOption.CONSUME).iterator();
+		assertEquals(Lists.newArrayList(1, 2), consumed.next());
+		assertEquals(3, document.stringsSplitEntry("item").getValOrEmpty().size());
+		assertEquals(Lists.newArrayList(3), consumed.next());
+		assertEquals(Lists.newArrayList("3"), document.stringsSplitEntry("item").getValOrEmpty());
+		assertFalse(consumed.hasNext());
+		assertEquals(1, IDataUtil.size(document.getIData().getCursor()));
+		assertTrue(document.containsKey("other"));
+	}
 }
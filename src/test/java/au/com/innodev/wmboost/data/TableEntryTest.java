@@ -0,0 +1,105 @@
+package au.com.innodev.wmboost.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class TableEntryTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newDocument() {
+		String[][] table = new String[][] { { "A1", "3", "1.5" }, { "B2", "4" }, null, { "C3", "5", "2.25" } };
+		Document document = docFactory.create();
+		document.entry("rows").put(table);
+		return document;
+	}
+
+	@Test
+	public void testRowsAreNotCopied() {
+		Document document = newDocument();
+		TableEntry entry = TableEntries.of(document, "rows");
+
+		assertEquals(4, entry.getRowCount());
+		assertSame(entry.getVal()[1], entry.getRow(1));
+		assertNull(entry.getRow(2));
+		assertSame(entry.getVal(), TableEntries.of(document, "rows").getVal());
+	}
+
+	@Test
+	public void testItemEntryReturnsCopy() {
+		Document document = newDocument();
+		String[][] copy = document.entry("rows", String[][].class).getVal();
+
+		assertNotSame(TableEntries.of(document, "rows").getVal(), copy);
+		copy[0] = new String[] { "changed" };
+		assertEquals("A1", TableEntries.of(document, "rows").getRow(0)[0]);
+	}
+
+	@Test
+	public void testColumns() {
+		TableEntry entry = TableEntries.of(newDocument(), "rows");
+
+		assertArrayEquals(new String[] { "A1", "B2", null, "C3" }, entry.getStringColumn(0));
+		assertEquals(Arrays.asList(Double.valueOf(1.5), null, null, Double.valueOf(2.25)),
+				entry.getColumn(2, Double.class));
+
+		try {
+			entry.getIntColumn(1);
+			fail();
+		} catch (UnexpectedEntryValueException e) {
+			// test succeeded: row 2 is null
+		}
+	}
+
+	@Test
+	public void testPrimitiveColumns() {
+		Document document = docFactory.create();
+		TableEntries.of(document, "rows").put(new String[][] { { "1", "10" }, { "2", "20" } });
+
+		TableEntry entry = TableEntries.of(document, "rows");
+		assertArrayEquals(new int[] { 1, 2 }, entry.getIntColumn(0));
+		assertArrayEquals(new long[] { 10, 20 }, entry.getLongColumn(1));
+		assertArrayEquals(new double[] { 10, 20 }, entry.getDoubleColumn(1), 0);
+	}
+
+	@Test
+	public void testBuilder() {
+		Document document = docFactory.create();
+		TableBuilder builder = TableEntries.of(document, "rows").newBuilder(3);
+		builder.addRow("A1", 5, new BigDecimal("9.90"));
+		String[] row = builder.newRow();
+		row[0] = "B2";
+		builder.put();
+
+		String[][] table = TableEntries.of(document, "rows").getVal();
+		assertEquals(2, table.length);
+		assertArrayEquals(new String[] { "A1", "5", "9.90" }, table[0]);
+		assertArrayEquals(new String[] { "B2", null, null }, table[1]);
+
+		try {
+			builder.addRow("too", "few");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// test succeeded
+		}
+	}
+
+	@Test
+	public void testInexistentEntry() {
+		TableEntry entry = TableEntries.of(docFactory.create(), "rows");
+
+		assertEquals(0, entry.getRowCount());
+		assertEquals(0, entry.getIntColumn(0).length);
+	}
+}
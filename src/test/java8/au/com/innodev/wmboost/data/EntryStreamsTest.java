@@ -0,0 +1,123 @@
+package au.com.innodev.wmboost.data;
+
+import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class EntryStreamsTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	@Test
+	public void testCollectionEntryConvertsElements() {
+		Document document = docFactory.create();
+		document.entry("numbers").put(new String[] { "1", "2", null, "4" });
+
+		List<Integer> values = EntryStreams.stream(document.intsEntry("numbers")).collect(Collectors.toList());
+		assertEquals(Arrays.asList(1, 2, null, 4), values);
+	}
+
+	@Test
+	public void testCollectionEntrySplitsInOrder() {
+		Document document = docFactory.create();
+		String[] values = new String[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = String.valueOf(i);
+		}
+		document.stringsEntry("numbers").put(Arrays.asList(values));
+
+		Spliterator<String> spliterator = EntryStreams.spliterator(document.stringsEntry("numbers"));
+		assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+		assertEquals(1000, spliterator.getExactSizeIfKnown());
+
+		List<String> collected = EntryStreams.stream(document.stringsEntry("numbers")).parallel()
+				.collect(Collectors.toList());
+		assertEquals(Arrays.asList(values), collected);
+	}
+
+	@Test
+	public void testDocumentsEntry() {
+		Document document = docFactory.create();
+		document.entry("records").put(new IData[] { newIDataWithValue("a"), newIDataWithValue("b") });
+
+		String joined = EntryStreams.stream(document.docsEntry("records"))
+				.map(d -> d.stringEntry("value1").getVal()).collect(Collectors.joining(","));
+		assertEquals("a,b", joined);
+	}
+
+	@Test
+	public void testInexistentCollectionEntryIsEmpty() {
+		Document document = docFactory.create();
+
+		assertEquals(0, EntryStreams.stream(document.stringsEntry("numbers")).count());
+	}
+
+	@Test
+	public void testSplitEntry() {
+		Document document = docFactory.create();
+		document.splitEntry("item").put(Arrays.asList(newIDataWithValue("a"), "b"));
+
+		List<Object> values = EntryStreams.stream(document.splitEntry("item")).collect(Collectors.toList());
+		assertEquals(2, values.size());
+		assertEquals("a", ((Document) values.get(0)).stringEntry("value1").getVal());
+		assertEquals("b", values.get(1));
+	}
+
+	@Test
+	public void testDocumentEntries() {
+		Document document = docFactory.create();
+		IntStream.range(0, 5).forEach(i -> document.intEntry("key" + i).put(i));
+
+		try (Stream<KeyValue> entries = EntryStreams.stream(document)) {
+			assertEquals("key0,key1,key2,key3,key4",
+					entries.map(KeyValue::getKey).collect(Collectors.joining(",")));
+		}
+	}
+
+	@Test
+	public void testClosingStreamClosesResource() {
+		Document document = docFactory.create();
+		document.stringEntry("key").put("value");
+		TrackedEntries entries = new TrackedEntries(document.getAllEntries());
+
+		Stream<KeyValue> stream = EntryStreams.stream(entries);
+		assertEquals(1, stream.count());
+		stream.close();
+
+		assertTrue(entries.closed);
+	}
+
+	private static class TrackedEntries implements EntryIterableResource {
+		private final EntryIterableResource delegate;
+		private boolean closed;
+
+		TrackedEntries(EntryIterableResource delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Iterator<KeyValue> iterator() {
+			return delegate.iterator();
+		}
+
+		@Override
+		public void close() {
+			delegate.close();
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package au.com.innodev.wmboost.data;
+
+import static au.com.innodev.wmboost.data.TestUtil.newIDataWithValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+import com.wm.data.IData;
+
+import au.com.innodev.wmboost.data.preset.DocumentFactories;
+
+public class DocumentPublishersTest {
+
+	private final DocumentFactory docFactory = DocumentFactories.getDefault();
+
+	private Document newTopDocument(int size) {
+		IData[] records = new IData[size];
+		for (int i = 0; i < size; i++) {
+			records[i] = newIDataWithValue("v" + i);
+		}
+		Document top = docFactory.create();
+		top.entry("records").put(records);
+		return top;
+	}
+
+	@Test
+	public void testHonoursDemand() {
+		Document top = newTopDocument(5);
+		RecordingSubscriber<Document> subscriber = new RecordingSubscriber<Document>();
+
+		DocumentPublishers.publisher(top.docsEntry("records")).subscribe(subscriber);
+		assertEquals(0, subscriber.items.size());
+
+		subscriber.subscription.request(2);
+		assertEquals(2, subscriber.items.size());
+		assertEquals("v1", subscriber.items.get(1).stringEntry("value1").getVal());
+		assertFalse(subscriber.completed);
+
+		subscriber.subscription.request(10);
+		assertEquals(5, subscriber.items.size());
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void testBatches() {
+		Document top = newTopDocument(5);
+		RecordingSubscriber<List<Document>> subscriber = new RecordingSubscriber<List<Document>>();
+
+		DocumentPublishers.publisher(top.docsEntry("records"), 2).subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+
+		assertEquals(3, subscriber.items.size());
+		assertEquals(2, subscriber.items.get(0).size());
+		assertEquals(1, subscriber.items.get(2).size());
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void testEntryIsNotModified() {
+		Document top = newTopDocument(3);
+		RecordingSubscriber<Document> subscriber = new RecordingSubscriber<Document>();
+
+		DocumentPublishers.publisher(top.docsEntry("records")).subscribe(subscriber);
+		subscriber.subscription.request(3);
+
+		List<Document> records = top.docsEntry("records").getVal();
+		assertEquals(3, records.size());
+		assertEquals("v0", records.get(0).stringEntry("value1").getVal());
+	}
+
+	@Test
+	public void testSplitEntry() {
+		Document top = docFactory.create();
+		List<IData> values = new ArrayList<IData>();
+		values.add(newIDataWithValue("a"));
+		values.add(newIDataWithValue("b"));
+		top.splitEntry("item", IData.class).put(values);
+
+		RecordingSubscriber<Document> subscriber = new RecordingSubscriber<Document>();
+		DocumentPublishers.publisher(top.splitEntry("item", Document.class)).subscribe(subscriber);
+		subscriber.subscription.request(5);
+
+		assertEquals(2, subscriber.items.size());
+		assertEquals("b", subscriber.items.get(1).stringEntry("value1").getVal());
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void testEmptyListCompletesWithoutDemand() {
+		Document top = docFactory.create();
+		RecordingSubscriber<Document> subscriber = new RecordingSubscriber<Document>();
+
+		DocumentPublishers.publisher(top.docsEntry("records")).subscribe(subscriber);
+
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void testInvalidRequestSignalsError() {
+		Document top = newTopDocument(3);
+		RecordingSubscriber<Document> subscriber = new RecordingSubscriber<Document>();
+
+		DocumentPublishers.publisher(top.docsEntry("records")).subscribe(subscriber);
+		subscriber.subscription.request(0);
+
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void testCancel() {
+		Document top = newTopDocument(3);
+		RecordingSubscriber<Document> subscriber = new RecordingSubscriber<Document>();
+
+		DocumentPublishers.publisher(top.docsEntry("records")).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(5);
+
+		assertEquals(1, subscriber.items.size());
+		assertFalse(subscriber.completed);
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	public void testSecondSubscriberIsRejected() {
+		Document top = newTopDocument(1);
+		Flow.Publisher<Document> publisher = DocumentPublishers.publisher(top.docsEntry("records"));
+		publisher.subscribe(new RecordingSubscriber<Document>());
+
+		RecordingSubscriber<Document> second = new RecordingSubscriber<Document>();
+		publisher.subscribe(second);
+
+		assertTrue(second.error instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testDocumentEntries() {
+		Document top = docFactory.create();
+		top.stringEntry("a").put("1");
+		top.stringEntry("b").put("2");
+
+		RecordingSubscriber<KeyValue> subscriber = new RecordingSubscriber<KeyValue>();
+		DocumentPublishers.publisher(top.getAllEntries()).subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+
+		assertEquals(2, subscriber.items.size());
+		assertEquals("b", subscriber.items.get(1).getKey());
+		assertTrue(subscriber.completed);
+	}
+
+	private static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+		private Flow.Subscription subscription;
+		private final List<T> items = new ArrayList<T>();
+		private boolean completed;
+		private Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(T item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			this.completed = true;
+		}
+	}
+}